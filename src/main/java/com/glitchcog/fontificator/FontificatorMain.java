@@ -14,9 +14,12 @@ import org.apache.log4j.PatternLayout;
 import com.glitchcog.fontificator.bot.ChatViewerBot;
 import com.glitchcog.fontificator.bot.SocialStreamHttpServer;
 import com.glitchcog.fontificator.config.FontificatorProperties;
+import com.glitchcog.fontificator.gui.chat.ChatFrameRenderer;
+import com.glitchcog.fontificator.gui.chat.ChatPanel;
 import com.glitchcog.fontificator.gui.chat.ChatWindow;
 import com.glitchcog.fontificator.gui.controls.ControlWindow;
 import com.glitchcog.fontificator.gui.controls.panel.LogBox;
+import com.glitchcog.fontificator.metrics.PipelineMetrics;
 
 /**
  * Houses the main method for the program
@@ -29,14 +32,26 @@ public class FontificatorMain
 
     public final static PatternLayout LOG_PATTERN_LAYOUT = new PatternLayout("[%p] %d{MM-dd-yyyy HH:mm:ss} %c %M - %m%n");
 
+    /**
+     * System properties for sizing the Social Stream HTTP server's request handler pool
+     */
+    private static final String SOCIAL_STREAM_THREADS_PROPERTY = "socialstream.threads";
+    private static final String SOCIAL_STREAM_QUEUE_PROPERTY = "socialstream.queue";
+
+    /**
+     * System property to keep the chat window hidden and only serve the chat as rendered frames over HTTP
+     */
+    private static final String RENDER_ONLY_PROPERTY = "fontificator.renderOnly";
+
 	/**
 	 * Setup the Social Stream HTTP server to receive messages from Social Stream Ninja
 	 * 
 	 * @param bot The ChatViewerBot to send messages to
+	 * @param chatPanel The chat to serve rendered frames of
 	 * @param port The port to listen on
 	 * @param fProps The properties containing configuration
 	 */
-	private static void setupSocialStreamHttpServer(ChatViewerBot bot, int port, FontificatorProperties fProps) {
+	private static void setupSocialStreamHttpServer(ChatViewerBot bot, ChatPanel chatPanel, int port, FontificatorProperties fProps) {
 		try {
 			if (bot == null) {
 				logger.error("Cannot setup SocialStreamHttpServer: ChatViewerBot is null");
@@ -49,7 +64,11 @@ public class FontificatorMain
 				logger.info("Set MessageConfig for ChatViewerBot");
 			}
 			
-			SocialStreamHttpServer server = new SocialStreamHttpServer(port, bot);
+			// The handler pool can be sized for heavy relays with -Dsocialstream.threads=N -Dsocialstream.queue=N
+			final int threads = Integer.getInteger(SOCIAL_STREAM_THREADS_PROPERTY, SocialStreamHttpServer.DEFAULT_THREADS);
+			final int queueCapacity = Integer.getInteger(SOCIAL_STREAM_QUEUE_PROPERTY, SocialStreamHttpServer.DEFAULT_QUEUE_CAPACITY);
+			SocialStreamHttpServer server = new SocialStreamHttpServer(port, bot, Math.max(1, threads), Math.max(1, queueCapacity));
+			server.setFrameRenderer(new ChatFrameRenderer(chatPanel));
 			server.start();
 			logger.info("Successfully started SocialStreamHttpServer on port " + port);
 		} catch (IOException e) {
@@ -122,6 +141,16 @@ public class FontificatorMain
 
         // Give the debug tab to the chat panel, since it doesn't have a shared reference to a config object for the settings
         chatWindow.getChatPanel().setDebugSettings(controlWindow.getDebugPanel());
+
+        // Report whether the bot is connected to IRC in the pipeline metrics served by the HTTP server
+        PipelineMetrics.registerGauge(PipelineMetrics.GAUGE_IRC_CONNECTED, "Whether the bot is connected to IRC, 1 if it is and 0 if not", new PipelineMetrics.GaugeSource()
+        {
+            @Override
+            public long getValue()
+            {
+                return controlWindow.getBot().isConnected() ? 1L : 0L;
+            }
+        });
         
         // Initialize ChatBot for the chat panel
         if (chatWindow.getChatPanel().getChatBot() == null) {
@@ -133,10 +162,18 @@ public class FontificatorMain
         
         // Setup Social Stream HTTP server to receive messages from Social Stream Ninja
         logger.info("Setting up SocialStreamHttpServer...");
-		setupSocialStreamHttpServer(chatWindow.getChatPanel().getChatBot(), 8888, fProps);
+		setupSocialStreamHttpServer(chatWindow.getChatPanel().getChatBot(), chatWindow.getChatPanel(), 8888, fProps);
 
-        // Finally, display the chat and control windows now that everything has been constructed and connected
-        chatWindow.setVisible(true);
+        // Finally, display the chat and control windows now that everything has been constructed and connected. When
+        // only rendering frames over HTTP, the chat window is laid out but never shown, so there is nothing to capture.
+        if (Boolean.getBoolean(RENDER_ONLY_PROPERTY))
+        {
+            logger.info("Chat window hidden, serving the chat from http://localhost:8888/frame.png and /frames");
+        }
+        else
+        {
+            chatWindow.setVisible(true);
+        }
         try
         {
             // Do it ugly but thread safe
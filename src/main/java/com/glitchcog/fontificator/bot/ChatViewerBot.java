@@ -8,16 +8,22 @@ import java.io.InputStreamReader;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.log4j.Logger;
 import org.jibble.pircbot.PircBot;
 
+import com.glitchcog.fontificator.bot.replay.IrcRecorder;
+import com.glitchcog.fontificator.config.ColorResolver;
 import com.glitchcog.fontificator.config.ConfigMessage;
 import com.glitchcog.fontificator.gui.chat.ChatPanel;
+import com.glitchcog.fontificator.gui.chat.MessageDeduplicator;
 import com.glitchcog.fontificator.gui.controls.panel.ControlPanelIrc;
+import com.glitchcog.fontificator.metrics.PipelineMetrics;
 import com.google.gson.Gson;
 
 /**
@@ -43,11 +49,25 @@ public class ChatViewerBot extends PircBot
         String line;
         while ((line = br.readLine()) != null)
         {
-            onUnknown(line);
+            replayLine(line, System.nanoTime());
         }
         br.close();
     }
 
+    /**
+     * Feed a previously captured raw IRC line through the same handling as a line from the server, without recording
+     * it
+     * 
+     * @param line
+     *            The raw IRC line
+     * @param receivedNanos
+     *            The System.nanoTime() value to treat as the moment the line was received
+     */
+    public void replayLine(String line, long receivedNanos)
+    {
+        processLine(line, receivedNanos);
+    }
+
     /**
      * Separates segments of the post, the parameters, the prefix, and the message itself, for Twitch messages
      */
@@ -99,13 +119,19 @@ public class ChatViewerBot extends PircBot
     private Map<String, TwitchPrivmsg> privmsgs;
 
     /**
-     * Default constructor, just initializes the username case map
+     * Records each raw line received from the server when set, or null when not recording
+     */
+    private volatile IrcRecorder recorder;
+
+    /**
+     * Default constructor, just initializes the username case map. The maps are concurrent because messages are built
+     * on the Social Stream server's handler threads as well as the IRC thread.
      */
     public ChatViewerBot()
     {
-        this.usernameCases = new HashMap<String, String>();
-        this.usernameIds = new HashMap<String, String>();
-        this.privmsgs = new HashMap<String, TwitchPrivmsg>();
+        this.usernameCases = new ConcurrentHashMap<String, String>();
+        this.usernameIds = new ConcurrentHashMap<String, String>();
+        this.privmsgs = new ConcurrentHashMap<String, TwitchPrivmsg>();
 
         final String encoding = "UTF-8";
         try
@@ -209,7 +235,9 @@ public class ChatViewerBot extends PircBot
     protected void onJoin(String channel, String sender, String login, String hostname)
     {
         TwitchPrivmsg privmsg = getPrivmsg(sender);
-        sendMessageToChat(MessageType.JOIN, "joined " + channel + ".", privmsg);
+        privmsg.setChannel(channel);
+        privmsg.setChannelStyle(controlPanel.getChannelStyle(channel));
+        sendMessageToChat(MessageType.JOIN, "joined " + channel + ".", privmsg, System.nanoTime());
     }
 
     /**
@@ -232,19 +260,58 @@ public class ChatViewerBot extends PircBot
     protected void onAction(String sender, String login, String hostname, String target, String action)
     {
         TwitchPrivmsg privmsg = getPrivmsg(sender);
-        sendMessageToChat(MessageType.ACTION, action, privmsg);
+        privmsg.setChannel(target);
+        privmsg.setChannelStyle(controlPanel.getChannelStyle(target));
+        sendMessageToChat(MessageType.ACTION, action, privmsg, System.nanoTime());
     }
 
+    /**
+     * The name messages received over IRC are counted under in the pipeline metrics
+     */
+    private static final String INGEST_SOURCE = "irc";
+
+    /**
+     * The source Twitch message ids are remembered under for dropping duplicates
+     */
+    private static final String DEDUP_SOURCE = "twitch";
+
     private static final String TWITCH_CAP_MESSAGE = ":tmi.twitch.tv CAP * ACK :twitch.tv/";
 
     private static final String PING_MESSAGE = "PING ";
 
+    private static final String CLEARCHAT_COMMAND = "CLEARCHAT";
+
+    private static final String CLEARMSG_COMMAND = "CLEARMSG";
+
+    private static final String USERNOTICE_COMMAND = "USERNOTICE";
+
     /**
      * When the bot registers for Twitch-specific capabilities, the message will be prepended with subscriber, emote, and other information. This will prevent the onMessage method from being fired because PircBot no longer recognizes the
      * message. It will instead trigger this onUnknown method.
      */
     @Override
     protected void handleLine(String response)
+    {
+        final long receivedNanos = System.nanoTime();
+        final IrcRecorder currentRecorder = recorder;
+        if (currentRecorder != null)
+        {
+            currentRecorder.record(receivedNanos, response);
+        }
+        final long parseStart = System.nanoTime();
+        processLine(response, receivedNanos);
+        PipelineMetrics.IRC_PARSE.record(System.nanoTime() - parseStart);
+    }
+
+    /**
+     * Handle a single raw line, whether it came from the server or from a replay
+     * 
+     * @param response
+     *            The raw IRC line
+     * @param receivedNanos
+     *            When the line was received, carried onto any message posted so the time to draw it can be measured
+     */
+    private void processLine(String response, long receivedNanos)
     {
         if (response == null)
         {
@@ -260,31 +327,42 @@ public class ChatViewerBot extends PircBot
         }
         else if (response.startsWith("@"))
         {
-            if (response.startsWith("@ban"))
+            final String twitchCommand = getTaggedCommand(response);
+            if (CLEARCHAT_COMMAND.equals(twitchCommand))
             {
                 try
                 {
-                    int firstBreak = response.indexOf(POST_SEPARATOR);
-                    int secondBreak = response.indexOf(POST_SEPARATOR, firstBreak + POST_SEPARATOR.length());
-
-                    Map<String, String> params = parseMessageParams(response, firstBreak, secondBreak);
-                    String bannedUserId = params.get("target-user-id");
-                    String bannedUsername = usernameIds.get(bannedUserId);
-                    String bannedReason = params.get("ban-reason");
-                    if (bannedReason == null || bannedReason.trim().isEmpty())
-                    {
-                        bannedReason = "TWITCH PURGE";
-                    }
-                    String banDuration = params.get("ban-duration");
-                    if (banDuration != null && banDuration.trim().isEmpty())
-                    {
-                        banDuration = null;
-                    }
-                    chat.purgeMessagesForUser(bannedUsername, bannedReason + (banDuration == null ? "" : " FOR " + banDuration + " ms"));
+                    handleClearChat(response);
+                }
+                catch (Exception e)
+                {
+                    log("Unparsable CLEARCHAT: " + response);
+                }
+            }
+            else if (CLEARMSG_COMMAND.equals(twitchCommand))
+            {
+                try
+                {
+                    handleClearMsg(response);
+                }
+                catch (Exception e)
+                {
+                    log("Unparsable CLEARMSG: " + response);
+                }
+            }
+            else if (isDuplicateLine(response))
+            {
+                logger.debug("Dropped duplicate message: " + response);
+            }
+            else if (USERNOTICE_COMMAND.equals(twitchCommand))
+            {
+                try
+                {
+                    handleUserNotice(response, receivedNanos);
                 }
                 catch (Exception e)
                 {
-                    log("Unparsable ban: " + response);
+                    log("Unparsable USERNOTICE: " + response);
                 }
             }
             else
@@ -310,7 +388,7 @@ public class ChatViewerBot extends PircBot
                             message = message.substring(message.indexOf(commandSplit) + commandSplit.length());
                             if ("ACTION".equals(command))
                             {
-                                sendMessageToChat(MessageType.ACTION, message, privmsg);
+                                sendMessageToChat(MessageType.ACTION, message, privmsg, receivedNanos);
                             }
                             else
                             {
@@ -324,7 +402,7 @@ public class ChatViewerBot extends PircBot
                     }
                     else if (privmsg.isDisplayMessage())
                     {
-                        sendMessageToChat(MessageType.NORMAL, message, privmsg);
+                        sendMessageToChat(MessageType.NORMAL, message, privmsg, receivedNanos);
                     }
                 }
                 catch (Exception e)
@@ -339,6 +417,318 @@ public class ChatViewerBot extends PircBot
         }
     }
 
+    /**
+     * Check whether a tagged Twitch line carries a message that has already been received, going by the id Twitch gave
+     * it, and for a PRIVMSG also by who sent it and what it says, so the same chat line relayed by Social Stream is
+     * caught too. This only looks at the tags, prefix and trailing parameter, so a duplicate is dropped without the
+     * rest of the line being parsed.
+     * 
+     * @param rawMessage
+     * @return whether the line is a duplicate
+     */
+    private boolean isDuplicateLine(String rawMessage)
+    {
+        if (!chat.getDeduplicator().isEnabled())
+        {
+            return false;
+        }
+        final String messageId = getTagValue(rawMessage, "id");
+        final String idKey = messageId == null ? null : MessageDeduplicator.getIdKey(DEDUP_SOURCE, messageId);
+        return isDuplicate(idKey, getContentKey(rawMessage));
+    }
+
+    /**
+     * Get the content dedup key of a tagged PRIVMSG line, from the name it's displayed under and its text, with any
+     * CTCP ACTION wrapping taken off to match how other sources relay it
+     * 
+     * @param rawMessage
+     * @return content key, or null if the line isn't a PRIVMSG
+     */
+    private static String getContentKey(String rawMessage)
+    {
+        String[] parts = getTaggedCommandParts(rawMessage);
+        String content = getTaggedTrailing(rawMessage);
+        if (parts.length < 2 || !"PRIVMSG".equals(parts[1]) || content == null)
+        {
+            return null;
+        }
+
+        String username = unescapeTagValue(getTagValue(rawMessage, "display-name"));
+        if (username == null || username.trim().isEmpty())
+        {
+            final int nickEnd = parts[0].indexOf('!');
+            username = nickEnd < 0 ? parts[0] : parts[0].substring(0, nickEnd);
+        }
+
+        final String action = CTCP_INDICATOR + "ACTION ";
+        if (content.startsWith(action))
+        {
+            content = content.substring(action.length(), content.endsWith(CTCP_INDICATOR) ? content.length() - 1 : content.length());
+        }
+        return MessageDeduplicator.getContentKey(username, content);
+    }
+
+    /**
+     * Check whether a message has already been received by any source, remembering it if it hasn't
+     * 
+     * @param dedupKey
+     *            The key from MessageDeduplicator.getIdKey or getContentKey
+     * @return whether the message is a duplicate and should be dropped
+     */
+    public boolean isDuplicate(String dedupKey)
+    {
+        return chat.getDeduplicator().isDuplicate(dedupKey);
+    }
+
+    /**
+     * Check whether a message has already been received by any source under either its id or its content, remembering
+     * both if it hasn't
+     * 
+     * @param idKey
+     *            The key from MessageDeduplicator.getIdKey, or null if the message has no id
+     * @param contentKey
+     *            The key from MessageDeduplicator.getContentKey, or null
+     * @return whether the message is a duplicate and should be dropped
+     */
+    public boolean isDuplicate(String idKey, String contentKey)
+    {
+        return chat.getDeduplicator().isDuplicate(idKey, contentKey);
+    }
+
+    /**
+     * Get the value of a single tag from the tags at the start of a Twitch line, without parsing the rest of them
+     * 
+     * @param rawMessage
+     * @param tagName
+     * @return value or null if the tag is missing or empty
+     */
+    private static String getTagValue(String rawMessage, String tagName)
+    {
+        final int tagsEnd = rawMessage.indexOf(' ');
+        if (!rawMessage.startsWith("@") || tagsEnd < 0)
+        {
+            return null;
+        }
+
+        final String prefix = tagName + "=";
+        int start = 1;
+        while (start < tagsEnd)
+        {
+            int end = rawMessage.indexOf(';', start);
+            if (end < 0 || end > tagsEnd)
+            {
+                end = tagsEnd;
+            }
+            if (rawMessage.startsWith(prefix, start))
+            {
+                return end > start + prefix.length() ? rawMessage.substring(start + prefix.length(), end) : null;
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+
+    /**
+     * Get the command of a tagged Twitch line, like PRIVMSG or CLEARCHAT
+     * 
+     * @param rawMessage
+     * @return command or null if the line has no command
+     */
+    private static String getTaggedCommand(String rawMessage)
+    {
+        String[] parts = getTaggedCommandParts(rawMessage);
+        return parts.length > 1 ? parts[1] : null;
+    }
+
+    /**
+     * Get the channel of a tagged Twitch line
+     * 
+     * @param rawMessage
+     * @return channel with the hash ('#') or null if the line has no channel
+     */
+    private static String getTaggedChannel(String rawMessage)
+    {
+        String[] parts = getTaggedCommandParts(rawMessage);
+        return parts.length > 2 && parts[2].startsWith("#") ? parts[2] : null;
+    }
+
+    /**
+     * Split the part of a tagged Twitch line between the tags and the trailing parameter into the prefix, the command,
+     * and the middle parameters
+     * 
+     * @param rawMessage
+     * @return parts
+     */
+    private static String[] getTaggedCommandParts(String rawMessage)
+    {
+        final int firstBreak = rawMessage.indexOf(POST_SEPARATOR);
+        if (firstBreak < 0)
+        {
+            return new String[0];
+        }
+        int secondBreak = rawMessage.indexOf(POST_SEPARATOR, firstBreak + POST_SEPARATOR.length());
+        if (secondBreak < 0)
+        {
+            secondBreak = rawMessage.length();
+        }
+        return rawMessage.substring(firstBreak + POST_SEPARATOR.length(), secondBreak).trim().split(" ");
+    }
+
+    /**
+     * Get the trailing parameter of a tagged Twitch line, which is the message content for a PRIVMSG and the target
+     * username for a CLEARCHAT
+     * 
+     * @param rawMessage
+     * @return trailing parameter or null if there is none
+     */
+    private static String getTaggedTrailing(String rawMessage)
+    {
+        final int firstBreak = rawMessage.indexOf(POST_SEPARATOR);
+        final int secondBreak = firstBreak < 0 ? -1 : rawMessage.indexOf(POST_SEPARATOR, firstBreak + POST_SEPARATOR.length());
+        return secondBreak < 0 ? null : rawMessage.substring(secondBreak + POST_SEPARATOR.length());
+    }
+
+    /**
+     * Handle a CLEARCHAT line, which is either a timeout or ban of a single user, or a clearing of the whole chat when
+     * there's no target user
+     * 
+     * @param rawMessage
+     */
+    private void handleClearChat(String rawMessage)
+    {
+        Map<String, String> params = parseMessageParams(rawMessage, rawMessage.indexOf(POST_SEPARATOR), -1);
+        final String channel = getTaggedChannel(rawMessage);
+
+        final String targetUserId = params.get("target-user-id");
+        final boolean hasTargetUserId = targetUserId != null && !targetUserId.trim().isEmpty();
+
+        final String login = getTaggedTrailing(rawMessage);
+        final boolean hasLogin = login != null && !login.trim().isEmpty();
+        if (!hasLogin && !hasTargetUserId)
+        {
+            chat.purgeAllMessages(channel, "TWITCH CLEAR");
+            return;
+        }
+
+        // Messages are kept by display name, which can differ from the login (for localized names), so the user ID is
+        // the surer way to find them. The login is only a fallback for a user whose ID hasn't been seen.
+        String bannedUsername = hasTargetUserId ? usernameIds.get(targetUserId) : null;
+        if (bannedUsername == null)
+        {
+            if (!hasLogin)
+            {
+                // A timeout or ban of a user who hasn't chatted while connected has no messages here to purge
+                logger.debug("Ignored CLEARCHAT for unknown user ID " + targetUserId);
+                return;
+            }
+            bannedUsername = login;
+        }
+
+        String bannedReason = unescapeTagValue(params.get("ban-reason"));
+        if (bannedReason == null || bannedReason.trim().isEmpty())
+        {
+            bannedReason = "TWITCH PURGE";
+        }
+        String banDuration = params.get("ban-duration");
+        if (banDuration != null && banDuration.trim().isEmpty())
+        {
+            banDuration = null;
+        }
+        chat.purgeMessagesForUser(bannedUsername.trim(), channel, bannedReason + (banDuration == null ? "" : " FOR " + banDuration + " s"));
+    }
+
+    /**
+     * Handle a CLEARMSG line, which deletes the single message identified by its target-msg-id tag
+     * 
+     * @param rawMessage
+     */
+    private void handleClearMsg(String rawMessage)
+    {
+        Map<String, String> params = parseMessageParams(rawMessage, rawMessage.indexOf(POST_SEPARATOR), -1);
+        chat.purgeMessageById(params.get("target-msg-id"), "TWITCH DELETE");
+    }
+
+    /**
+     * Handle a USERNOTICE line, like a subscription, gifted subscription, or raid. The system message Twitch composes is
+     * posted as an action by the user, followed by the message the user attached, if any.
+     * 
+     * @param rawMessage
+     * @param receivedNanos
+     */
+    private void handleUserNotice(String rawMessage, long receivedNanos)
+    {
+        Map<String, String> params = parseMessageParams(rawMessage, rawMessage.indexOf(POST_SEPARATOR), -1);
+
+        String systemMessage = unescapeTagValue(params.get("system-msg"));
+        if (systemMessage != null && !systemMessage.trim().isEmpty())
+        {
+            // The emote indices belong to the attached message, and the message ID identifies only it
+            TwitchPrivmsg noticePrivmsg = parseRawTwitchMessage(rawMessage);
+            noticePrivmsg.getEmotes().clear();
+            noticePrivmsg.setMessageId(null);
+
+            final String displayName = noticePrivmsg.getDisplayName();
+            if (displayName != null && systemMessage.startsWith(displayName + " "))
+            {
+                systemMessage = systemMessage.substring(displayName.length() + 1);
+            }
+            sendMessageToChat(MessageType.ACTION, systemMessage.trim(), noticePrivmsg, receivedNanos);
+        }
+
+        final String attachedMessage = getTaggedTrailing(rawMessage);
+        if (attachedMessage != null && !attachedMessage.trim().isEmpty())
+        {
+            sendMessageToChat(MessageType.NORMAL, attachedMessage, parseRawTwitchMessage(rawMessage), receivedNanos);
+        }
+    }
+
+    /**
+     * Undo the IRCv3 escaping of a tag value
+     * 
+     * @param value
+     * @return unescaped value, or null if the value is null
+     */
+    private static String unescapeTagValue(String value)
+    {
+        if (value == null || value.indexOf('\\') < 0)
+        {
+            return value;
+        }
+
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++)
+        {
+            final char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length())
+            {
+                final char next = value.charAt(++i);
+                switch (next)
+                {
+                case 's':
+                    unescaped.append(' ');
+                    break;
+                case ':':
+                    unescaped.append(';');
+                    break;
+                case 'r':
+                    unescaped.append('\r');
+                    break;
+                case 'n':
+                    unescaped.append('\n');
+                    break;
+                default:
+                    unescaped.append(next);
+                    break;
+                }
+            }
+            else if (c != '\\')
+            {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+
     /**
      * Get the TwitchPrivmsg object from the map, or add a newly instantiated one to the map and return it
      * 
@@ -368,14 +758,28 @@ public class ChatViewerBot extends PircBot
 
         int firstBreak = rawMessage.indexOf(POST_SEPARATOR);
         int secondBreak = rawMessage.indexOf(POST_SEPARATOR, firstBreak + POST_SEPARATOR.length());
+        if (secondBreak < 0)
+        {
+            // No trailing parameter, like a USERNOTICE without an attached message
+            secondBreak = rawMessage.length();
+        }
 
         Map<String, String> paramMap = parseMessageParams(rawMessage, firstBreak, secondBreak);
 
+        String messageId = paramMap.get("id");
+        privmsg.setMessageId(messageId == null || messageId.isEmpty() ? null : messageId);
+
         String messageClassification = null;
+        String channel = null;
         try
         {
             String mc = rawMessage.substring(firstBreak, secondBreak).trim();
-            messageClassification = mc.split(" ")[1].trim();
+            String[] mcSplit = mc.split(" ");
+            messageClassification = mcSplit[1].trim();
+            if (mcSplit.length > 2 && mcSplit[2].startsWith("#"))
+            {
+                channel = mcSplit[2].trim();
+            }
         }
         catch (Exception e)
         {
@@ -383,20 +787,13 @@ public class ChatViewerBot extends PircBot
             messageClassification = null;
         }
         privmsg.setMessageClassification(messageClassification);
+        privmsg.setChannel(channel);
+        privmsg.setChannelStyle(controlPanel.getChannelStyle(channel));
 
-        String colorStr = paramMap.get("color");
-        if (colorStr != null && !colorStr.trim().isEmpty())
+        Color color = ColorResolver.resolve(paramMap.get("color"));
+        if (color != null)
         {
-            try
-            {
-                final String hexString = colorStr.substring((colorStr.startsWith("#") ? 1 : 0) + (colorStr.startsWith("0x") ? 2 : 0));
-                Color color = new Color(Integer.parseInt(hexString, 16));
-                privmsg.setColor(color);
-            }
-            catch (Exception e)
-            {
-                logger.trace("Unable to parse color from Twitch", e);
-            }
+            privmsg.setColor(color);
         }
         String displayName = paramMap.get("display-name");
         if (displayName != null && !displayName.trim().isEmpty())
@@ -465,10 +862,11 @@ public class ChatViewerBot extends PircBot
         privmsg.setPrime(paramMap.get("badges") != null && paramMap.get("badges").contains("premium"));
 
         String userTypeStr = paramMap.get("user-type");
-        if (displayName != null && !displayName.trim().isEmpty() && displayName.equalsIgnoreCase(this.controlPanel.getChannelNoHash()))
+        final String broadcasterName = channel == null ? this.controlPanel.getChannelNoHash() : channel.substring(1);
+        if (displayName != null && !displayName.trim().isEmpty() && displayName.equalsIgnoreCase(broadcasterName))
         {
-            // Set the broadcaster badge based on the display name matching the channel connected to, since Twitch
-            // doesn't put this usertype into its IRC tags.
+            // Set the broadcaster badge based on the display name matching the channel the message was posted to,
+            // since Twitch doesn't put this usertype into its IRC tags.
             privmsg.setUserType(UserType.BROADCASTER);
         }
         else if (userTypeStr != null && !userTypeStr.trim().isEmpty())
@@ -482,7 +880,7 @@ public class ChatViewerBot extends PircBot
 
         if (displayName == null || displayName.trim().isEmpty())
         {
-            privmsg.setDisplayName(prefix.substring(0, prefix.indexOf("!")));
+            privmsg.setDisplayName(prefix.contains("!") ? prefix.substring(0, prefix.indexOf("!")) : paramMap.get("login"));
         }
 
         return privmsg;
@@ -555,6 +953,62 @@ public class ChatViewerBot extends PircBot
 	 * @param privmsg
 	 */
 	public void sendMessageToChat(MessageType type, String message, TwitchPrivmsg privmsg)
+	{
+		chat.enqueueMessage(createMessage(type, message, privmsg, System.nanoTime()));
+	}
+
+	/**
+	 * Post a message received over IRC to chat, specifying when the line carrying it was received
+	 * 
+	 * @param type
+	 * @param message
+	 * @param privmsg
+	 * @param receivedNanos
+	 */
+	private void sendMessageToChat(MessageType type, String message, TwitchPrivmsg privmsg, long receivedNanos)
+	{
+		PipelineMetrics.countIngested(INGEST_SOURCE, 1);
+		chat.enqueueMessage(createMessage(type, message, privmsg, receivedNanos));
+	}
+
+	/**
+	 * Post a batch of already constructed messages to chat in a single hand-off to the chat display
+	 * 
+	 * @param msgs
+	 *            Messages built with createMessage
+	 * @return for each message, whether the chat accepted it, or false if it was dropped because the chat is flooded
+	 */
+	public boolean[] sendMessagesToChat(List<Message> msgs)
+	{
+		return chat.enqueueMessages(msgs);
+	}
+
+	/**
+	 * Wait for the chat display to have room for more messages, for sources that can hold off on sending
+	 * 
+	 * @param timeoutMillis
+	 * @return whether there is room
+	 * @throws InterruptedException
+	 */
+	public boolean awaitChatRoom(long timeoutMillis) throws InterruptedException
+	{
+		return chat.getIngestQueue().awaitRoom(timeoutMillis);
+	}
+
+	/**
+	 * Construct a message ready to be posted to chat, resolving the username casing and counting the post
+	 * 
+	 * @param type
+	 * @param message
+	 * @param privmsg
+	 * @return msg
+	 */
+	public Message createMessage(MessageType type, String message, TwitchPrivmsg privmsg)
+	{
+		return createMessage(type, message, privmsg, System.nanoTime());
+	}
+
+	private Message createMessage(MessageType type, String message, TwitchPrivmsg privmsg, long receivedNanos)
 	{
 		// Check if messageConfig is null
 		if (messageConfig == null) {
@@ -568,9 +1022,10 @@ public class ChatViewerBot extends PircBot
 		privmsg.setDisplayName(casedUsername);
 		privmsg.incrementPostCount();
 
-		// Finally, construct the message and send it on to the chat display
+		// Finally, construct the message for the chat display
 		Message msg = new Message(type, casedUsername, message, privmsg);
-		chat.addMessage(msg);
+		msg.setReceivedNanos(receivedNanos);
+		return msg;
 	}
 
     /**
@@ -634,7 +1089,11 @@ public class ChatViewerBot extends PircBot
                             }
                             br.close();
 
-                            casedUsername = (String) new Gson().fromJson(jsonResult, Map.class).get("display_name");
+                            final String displayName = (String) new Gson().fromJson(jsonResult, Map.class).get("display_name");
+                            if (displayName != null)
+                            {
+                                casedUsername = displayName;
+                            }
                         }
                         catch (Exception e)
                         {
@@ -714,7 +1173,7 @@ public class ChatViewerBot extends PircBot
             {
                 logger.info("Attempting to reconnect");
                 reconnect();
-                logger.info("Attempting to rejoin channel");
+                logger.info("Attempting to rejoin channels");
                 controlPanel.joinChannel();
             }
             catch (Exception e)
@@ -755,6 +1214,22 @@ public class ChatViewerBot extends PircBot
         this.messageConfig = messageConfig;
     }
 
+    /**
+     * Set the recorder to capture every raw line received from the server, or null to stop recording. The previous
+     * recorder, if any, is not closed by this method.
+     * 
+     * @param recorder
+     */
+    public void setRecorder(IrcRecorder recorder)
+    {
+        this.recorder = recorder;
+    }
+
+    public IrcRecorder getRecorder()
+    {
+        return recorder;
+    }
+
     public void setDisconnectExpected(boolean disconnectExpected)
     {
         this.disconnectExpected = disconnectExpected;
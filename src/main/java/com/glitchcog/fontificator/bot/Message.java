@@ -6,9 +6,6 @@ import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.apache.log4j.Logger;
 
@@ -17,7 +14,9 @@ import com.glitchcog.fontificator.config.ConfigMessage;
 import com.glitchcog.fontificator.config.MessageCasing;
 import com.glitchcog.fontificator.emoji.EmojiManager;
 import com.glitchcog.fontificator.emoji.EmojiType;
+import com.glitchcog.fontificator.emoji.FfzBadgeUsers;
 import com.glitchcog.fontificator.emoji.LazyLoadEmoji;
+import com.glitchcog.fontificator.emoji.TwitterEmojiSegmenter;
 import com.glitchcog.fontificator.emoji.TypedEmojiMap;
 import com.glitchcog.fontificator.sprite.SpriteCharacterKey;
 
@@ -38,12 +37,6 @@ public class Message
      */
     public static final String SPACE_BOUNDARY_REGEX = "(?:(?=\\s+)(?<!\\s+)|(?<=\\s+)(?!\\s+))";
 
-    /**
-     * Why doesn't this catch 🤖 (U+0x1f916)?
-     */
-    private static final String TWITTER_EMOJI_REGEX = "((([\uD83C\uDF00-\uD83D\uDDFF]|[\uD83D\uDE00-\uD83D\uDE4F]|[\uD83D\uDE80-\uD83D\uDEFF]|[\u2600-\u26FF]|[\u2700-\u27BF])[\\x{1F3FB}-\\x{1F3FF}]?))";
-    private static final Pattern TWITTER_EMOJI_PATTERN = Pattern.compile(TWITTER_EMOJI_REGEX);
-
     /**
      * The state of the user that is prepended to the message from Twitch. This reference is the same one that's stored
      * in the ChatViewerBot, so it is possible to update that object and see the effects on this message
@@ -135,6 +128,16 @@ public class Message
      */
     private long completedTime;
 
+    /**
+     * The System.nanoTime() value when the line carrying this message was received
+     */
+    private long receivedNanos;
+
+    /**
+     * Whether any of this message has been painted yet, used to time from the message being received to it appearing
+     */
+    private boolean painted;
+
     /**
      * Construct a message specifying the type, username and content, but set the time stamp to the current local time
      * 
@@ -177,6 +180,8 @@ public class Message
         this.lastEmojiConfig = new ConfigEmoji();
         this.privmsg = privmsg;
         this.completedTime = UNCOMPLETED_TIME;
+        this.receivedNanos = System.nanoTime();
+        this.painted = false;
     }
 
     /**
@@ -284,6 +289,39 @@ public class Message
         completedTime = System.currentTimeMillis();
     }
 
+    /**
+     * Get the System.nanoTime() value when the line carrying this message was received
+     * 
+     * @return receivedNanos
+     */
+    public long getReceivedNanos()
+    {
+        return receivedNanos;
+    }
+
+    /**
+     * Set when the line carrying this message was received, if earlier than the construction of this message
+     * 
+     * @param receivedNanos
+     *            System.nanoTime() value
+     */
+    public void setReceivedNanos(long receivedNanos)
+    {
+        this.receivedNanos = receivedNanos;
+    }
+
+    /**
+     * Mark that some of this message has been painted
+     * 
+     * @return whether this is the first time the message has been painted
+     */
+    public boolean markPainted()
+    {
+        final boolean first = !painted;
+        painted = true;
+        return first;
+    }
+
     /**
      * Get the time stamp
      * 
@@ -352,6 +390,10 @@ public class Message
             {
                 start += TIMESTAMP_USERNAME_SPACER.length();
             }
+            if (getChannelPrefix() != null)
+            {
+                start += getChannelPrefix().length();
+            }
             final String usernameFormat = messageConfig.getUsernameFormat();
             if (usernameFormat.indexOf(ConfigMessage.USERNAME_REPLACE) > 0)
             {
@@ -434,6 +476,8 @@ public class Message
             badges = new LinkedHashMap<String, LazyLoadEmoji>();
 
             final boolean userIsModerator = privmsg.getUserType() == UserType.MOD;
+            // Subscriber and custom moderator badges are kept per channel
+            final String modBadgeKey = EmojiManager.getChannelBadgeKey(UserType.MOD.getKey(), privmsg.getChannel());
 
             // Bank to pull Twitch badges from
             TypedEmojiMap twitchBadgeBank = emojiManager.getEmojiByType(EmojiType.TWITCH_BADGE);
@@ -445,9 +489,9 @@ public class Message
             {
                 LazyLoadEmoji testBadge;
                 // FFZ badges are enabled, the user is a moderator, and the custom FFZ moderator badge exists
-                if (emojiConfig.isFfzBadgesEnabled() && userIsModerator && ffzBadgeBank.getEmoji(UserType.MOD.getKey()) != null)
+                if (emojiConfig.isFfzBadgesEnabled() && userIsModerator && (testBadge = ffzBadgeBank.getEmoji(modBadgeKey)) != null)
                 {
-                    badges.put(UserType.MOD.getKey(), ffzBadgeBank.getEmoji(UserType.MOD.getKey()));
+                    badges.put(UserType.MOD.getKey(), testBadge);
                 }
                 else if (emojiConfig.isTwitchBadgesEnabled() && (testBadge = twitchBadgeBank.getEmoji(privmsg.getUserType().getKey())) != null)
                 {
@@ -459,14 +503,14 @@ public class Message
 
             if (emojiConfig.isFfzBadgesEnabled())
             {
-                Map<Integer, Set<String>> ffzBadgeUsers = emojiManager.getFfzBadgeUsers();
-                for (Integer ffzBadgeType : ffzBadgeUsers.keySet())
+                FfzBadgeUsers ffzBadgeUsers = emojiManager.getFfzBadgeUsers();
+                // One lookup for all of the user's badges, then a bit at a time in the order the badges were loaded
+                for (long ffzBadgeMask = ffzBadgeUsers.getBadgeMask(rawUsername); ffzBadgeMask != 0L; ffzBadgeMask &= ffzBadgeMask - 1L)
                 {
-                    final String ffzBadgeKey = ffzBadgeType == null ? null : Integer.toString(ffzBadgeType);
-                    Set<String> users = ffzBadgeUsers.get(ffzBadgeType);
-                    if (users.contains(rawUsername.toLowerCase()))
+                    final String ffzBadgeKey = ffzBadgeUsers.getBadgeKey(Long.numberOfTrailingZeros(ffzBadgeMask));
+                    LazyLoadEmoji ffzBadge = ffzBadgeBank.getEmoji(ffzBadgeKey);
+                    if (ffzBadge != null)
                     {
-                        LazyLoadEmoji ffzBadge = ffzBadgeBank.getEmoji(ffzBadgeType);
                         if (ffzBadge.isReplacement() && badges.containsKey(ffzBadge.getReplaces()))
                         {
                             badges.put(ffzBadge.getReplaces(), ffzBadge);
@@ -487,9 +531,10 @@ public class Message
             if (emojiConfig.isTwitchBadgesEnabled())
             {
                 final String subStr = "subscriber";
-                if (privmsg.isSubscriber() && twitchBadgeBank.getEmoji(subStr) != null)
+                LazyLoadEmoji subBadge;
+                if (privmsg.isSubscriber() && (subBadge = twitchBadgeBank.getEmoji(EmojiManager.getChannelBadgeKey(subStr, privmsg.getChannel()))) != null)
                 {
-                    badges.put(subStr, twitchBadgeBank.getEmoji(subStr));
+                    badges.put(subStr, subBadge);
                 }
             }
 
@@ -524,6 +569,10 @@ public class Message
             {
                 keyList.addAll(toSpriteArray(TIMESTAMP_USERNAME_SPACER));
             }
+            if (getChannelPrefix() != null)
+            {
+                keyList.addAll(toSpriteArray(getChannelPrefix()));
+            }
             String casedUsername = getFormattedUsername(messageConfig);
             keyList.addAll(toSpriteArray(casedUsername));
         }
@@ -600,6 +649,23 @@ public class Message
 
         String[] words = codePointSpaceSplit(content); // content.split(SPACE_BOUNDARY_REGEX);
 
+        final TwitterEmojiSegmenter twitterEmoji = emojiConfig.isTwitterEnabled() ? emojiManager.getTwitterEmojiSegmenter() : null;
+        // Adds the text and Twitter emoji of words that have any
+        final TwitterEmojiSegmenter.Segments twitterSegments = new TwitterEmojiSegmenter.Segments()
+        {
+            @Override
+            public void text(String word, int start, int end)
+            {
+                keyList.addAll(toSpriteArray(applyCasing(word.substring(start, end), casing)));
+            }
+
+            @Override
+            public void emoji(LazyLoadEmoji emoji)
+            {
+                keyList.add(new SpriteCharacterKey(emoji, false));
+            }
+        };
+
         int codeIndex = 0;
 
         LazyLoadEmoji emoji = null;
@@ -632,12 +698,13 @@ public class Message
                 {
                     // As a known bug here, all manual messages will have access to all Twitch emotes, regardless of
                     // subscriber status
-                    emoji = emojiManager.getEmojiWords(EmojiType.MANUAL_EMOJI_TYPES, words[w], emojiConfig);
+                    emoji = emojiManager.getEmojiWords(EmojiType.MANUAL_EMOJI_TYPES, words[w], emojiConfig, privmsg.getChannel());
                 }
                 // Only check 3rd party emotes
                 else
                 {
-                    emoji = emojiManager.getEmojiWords(EmojiType.THIRD_PARTY_EMOJI_TYPES, words[w], emojiConfig);
+                    // Channel emotes only show in messages from the channel they belong to
+                    emoji = emojiManager.getEmojiWords(EmojiType.THIRD_PARTY_EMOJI_TYPES, words[w], emojiConfig, privmsg.getChannel());
                 }
             }
 
@@ -645,44 +712,7 @@ public class Message
             // within the word
             if (emoji == null)
             {
-                Matcher matcher = TWITTER_EMOJI_PATTERN.matcher(words[w]);
-                if (emojiConfig.isTwitterEnabled() && matcher.find())
-                {
-                    matcher.reset();
-
-                    String twitterEmojiUrl = null;
-                    int i = 0;
-                    while (matcher.find())
-                    {
-                        String rawCode = matcher.group(2);
-                        String iconId = toCodePoint(rawCode.indexOf('\u200D') < 0 ? rawCode.replace("\uFE0F", "") : rawCode);
-                        twitterEmojiUrl = "https://twemoji.maxcdn.com/2/" + "72x72" + "/" + iconId + ".png";
-                        LazyLoadEmoji lle = emojiManager.getEmojiByType(EmojiType.TWITTER_EMOJI).getEmoji(iconId);
-                        if (lle == null)
-                        {
-                            try
-                            {
-                                lle = new LazyLoadEmoji(iconId, twitterEmojiUrl, EmojiType.TWITTER_EMOJI);
-                                emojiManager.getEmojiByType(EmojiType.TWITTER_EMOJI).put(iconId, lle);
-                            }
-                            catch (MalformedURLException e)
-                            {
-                                logger.error("Couldn't parse emoji URL: " + twitterEmojiUrl, e);
-                            }
-                        }
-                        final String wordBit = words[w].substring(i, matcher.start());
-
-                        keyList.addAll(toSpriteArray(applyCasing(wordBit, casing)));
-                        if (lle != null)
-                        {
-                            keyList.add(new SpriteCharacterKey(lle, false));
-                        }
-                        i = matcher.end();
-                    }
-                    final String wordBit = words[w].substring(i, words[w].length());
-                    keyList.addAll(toSpriteArray(applyCasing(wordBit, casing)));
-                }
-                else
+                if (twitterEmoji == null || !twitterEmoji.segment(words[w], twitterSegments))
                 {
                     keyList.addAll(toSpriteArray(applyCasing(words[w], casing)));
                 }
@@ -699,44 +729,6 @@ public class Message
         }
     }
 
-    /**
-     * From https://gist.github.com/heyarny/71c246f2f7fa4d9d10904fb9d5b1fa1d
-     * 
-     * @param unicodeSurrogates
-     * @param sep
-     * @return codePoint
-     */
-    private static String toCodePoint(String unicodeSurrogates)
-    {
-        ArrayList<String> r = new ArrayList<String>();
-        int c = 0, p = 0, i = 0;
-        while (i < unicodeSurrogates.length())
-        {
-            c = unicodeSurrogates.charAt(i++);
-            if (p != 0)
-            {
-                r.add(Integer.toString((0x10000 + ((p - 0xD800) << 10) + (c - 0xDC00)), 16));
-                p = 0;
-            }
-            else if (0xD800 <= c && c <= 0xDBFF)
-            {
-                p = c;
-            }
-            else
-            {
-                r.add(Integer.toString(c, 16));
-            }
-        }
-
-        String output = "";
-        for (String str : r)
-        {
-            output += (output.isEmpty() ? "" : "-") + str;
-        }
-
-        return output;
-    }
-
     public String getCensoredReason()
     {
         return censoredReason;
@@ -799,6 +791,27 @@ public class Message
         return privmsg;
     }
 
+    /**
+     * Get the unique ID Twitch gave the message
+     * 
+     * @return message ID or null if there is none
+     */
+    public String getMessageId()
+    {
+        return privmsg == null ? null : privmsg.getMessageId();
+    }
+
+    /**
+     * Get the prefix of the channel the message was posted to, placed right before the username to tell apart messages
+     * from different channels
+     * 
+     * @return channel prefix or null if there is none
+     */
+    private String getChannelPrefix()
+    {
+        return privmsg.getChannelStyle() == null ? null : privmsg.getChannelStyle().getPrefix();
+    }
+
     /**
      * @return age of the message since it was completely drawn, or zero if it isn't yet completed in seconds
      */
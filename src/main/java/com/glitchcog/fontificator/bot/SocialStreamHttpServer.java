@@ -1,14 +1,31 @@
 package com.glitchcog.fontificator.bot;
 
+import java.awt.Color;
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.StringReader;
 import java.net.InetSocketAddress;
-import java.util.Scanner;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 import org.json.JSONObject;
 
+import com.glitchcog.fontificator.config.ColorResolver;
+import com.glitchcog.fontificator.gui.chat.ChatFrameRenderer;
+import com.glitchcog.fontificator.metrics.PipelineMetrics;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.sun.net.httpserver.Filter;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
@@ -19,10 +36,129 @@ import com.sun.net.httpserver.HttpServer;
 public class SocialStreamHttpServer {
     
     private static final Logger logger = Logger.getLogger(SocialStreamHttpServer.class);
+
+    /**
+     * The default number of threads handling requests
+     */
+    public static final int DEFAULT_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * The default number of requests that can wait for a free handler thread. Once this many are waiting, the next
+     * request is turned away with a 503 rather than run on the dispatcher thread, where a long-lived stream would stall
+     * every endpoint.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    /**
+     * The number of turned away requests that can wait to be answered with a 503. Past that, their connections are
+     * just closed.
+     */
+    private static final int BUSY_QUEUE_CAPACITY = 64;
+
+    /**
+     * Set on the busy thread while it answers a turned away request
+     */
+    private static final ThreadLocal<Boolean> BUSY = new ThreadLocal<Boolean>();
+
+    /**
+     * The most messages accepted in a single batch posted to /messages
+     */
+    public static final int MAX_BATCH_SIZE = 5000;
+
+    /**
+     * Per-item statuses in the batch response
+     */
+    private static final String STATUS_OK = "ok";
+    private static final String STATUS_DROPPED = "dropped";
+    private static final String STATUS_INVALID = "invalid";
+    private static final String STATUS_DUPLICATE = "duplicate";
+
+    /**
+     * The number of messages a client of /stream may send ahead of the acks, restored with each ack once the chat has
+     * room
+     */
+    public static final int STREAM_WINDOW = 256;
+
+    /**
+     * The most lines read off of a stream before they are handed to the chat and acked, even if more are already
+     * waiting
+     */
+    private static final int STREAM_BATCH_SIZE = 64;
+
+    /**
+     * How long to wait for the chat to have room before acking without granting credits, and how often to check again
+     * after that
+     */
+    private static final long STREAM_ROOM_WAIT_MILLIS = 250L;
+
+    /**
+     * The default and most frames per second pushed to a client of /frames
+     */
+    private static final int DEFAULT_FRAME_RATE = 30;
+    private static final int MAX_FRAME_RATE = 60;
+
+    private static final String FRAME_BOUNDARY = "fontificatorframe";
+
+    /**
+     * The names messages from each endpoint are counted under in the pipeline metrics
+     */
+    private static final String INGEST_SOURCE = "socialstream";
+    private static final String INGEST_SOURCE_BATCH = "socialstream_batch";
+    private static final String INGEST_SOURCE_STREAM = "socialstream_stream";
+
+    /**
+     * How long messages can sit waiting without any of them making it into the chat before /health reports a stall
+     */
+    private static final long STALL_MILLIS = 10000L;
+
+    /**
+     * The username color for a color name that isn't recognized
+     */
+    private static final Color UNKNOWN_NAME_COLOR = ColorResolver.resolve("lightblue");
+
+    /**
+     * How long an idle handler thread above the core count is kept around
+     */
+    private static final long KEEP_ALIVE_SECONDS = 30L;
+
     private HttpServer server;
     private ChatViewerBot chatBot;
+    private ThreadPoolExecutor executor;
+
+    /**
+     * The one thread that answers requests turned away because every handler thread was busy
+     */
+    private ThreadPoolExecutor busyExecutor;
+
+    /**
+     * Each open stream holds a handler thread for as long as it's connected, so they're limited to leave threads free
+     * for the one-shot endpoints
+     */
+    private final int maxStreams;
+    private final AtomicInteger activeStreams;
+    private volatile boolean stopped;
+
+    /**
+     * Renders the chat for the frame endpoints, or null if they're not being served
+     */
+    private volatile ChatFrameRenderer frameRenderer;
     
     public SocialStreamHttpServer(int port, ChatViewerBot chatBot) throws IOException {
+        this(port, chatBot, DEFAULT_THREADS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Create the server, bound to the specified port but not yet started
+     *
+     * @param port
+     * @param chatBot
+     * @param threads
+     *            The number of threads handling requests
+     * @param queueCapacity
+     *            The number of requests that can wait for a free handler thread
+     * @throws IOException
+     */
+    public SocialStreamHttpServer(int port, ChatViewerBot chatBot, int threads, int queueCapacity) throws IOException {
         // Store the chat bot reference
         if (chatBot == null) {
             logger.error("ChatViewerBot is null in SocialStreamHttpServer constructor");
@@ -32,9 +168,23 @@ public class SocialStreamHttpServer {
         
         // Create the HTTP server
         server = HttpServer.create(new InetSocketAddress(port), 0);
-        server.createContext("/message", new MessageHandler());
-        server.createContext("/", new MessageHandler());
-        server.setExecutor(null);
+        createContext("/message", new MessageHandler());
+        createContext("/messages", new BatchHandler());
+        createContext("/stream", new StreamHandler());
+        createContext("/frame.png", new FrameHandler());
+        createContext("/frames", new FrameStreamHandler());
+        createContext("/metrics", new MetricsHandler());
+        createContext("/health", new HealthHandler());
+        createContext("/", new MessageHandler());
+
+        busyExecutor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(BUSY_QUEUE_CAPACITY), new HandlerThreadFactory("Social Stream HTTP Busy"), new ThreadPoolExecutor.AbortPolicy());
+        busyExecutor.allowCoreThreadTimeOut(true);
+        executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity), new HandlerThreadFactory("Social Stream HTTP"), new BusyPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        server.setExecutor(executor);
+
+        maxStreams = Math.max(1, threads / 2);
+        activeStreams = new AtomicInteger();
     }
     
     public void start() {
@@ -44,131 +194,725 @@ public class SocialStreamHttpServer {
         }
         
         server.start();
-        logger.info("Social Stream HTTP server started on port " + server.getAddress().getPort());
+        logger.info("Social Stream HTTP server started on port " + server.getAddress().getPort() + " with " + executor.getMaximumPoolSize() + " handler threads");
+    }
+
+    /**
+     * Serve the rendered chat from /frame.png and /frames, or stop serving it if null
+     *
+     * @param frameRenderer
+     */
+    public void setFrameRenderer(ChatFrameRenderer frameRenderer) {
+        this.frameRenderer = frameRenderer;
+    }
+
+    /**
+     * Stop accepting requests and release the handler threads
+     */
+    public void stop() {
+        stopped = true;
+        server.stop(0);
+        executor.shutdown();
+        busyExecutor.shutdown();
+    }
+
+    /**
+     * Serve the path with the handler, behind the filter that turns away requests when every handler thread is busy
+     *
+     * @param path
+     * @param handler
+     */
+    private void createContext(String path, HttpHandler handler) {
+        server.createContext(path, handler).getFilters().add(new BusyFilter());
+    }
+
+    /**
+     * Names the handler threads and makes them daemons so they don't hold the program open
+     */
+    private static class HandlerThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private HandlerThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, name + " " + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+    /**
+     * Hands a request that found every handler thread busy and the queue full to the busy thread, to be answered with a
+     * 503. If the busy thread is backed up too, the request is aborted and the server closes its connection.
+     */
+    private class BusyPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(final Runnable r, ThreadPoolExecutor rejectedBy) {
+            busyExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    BUSY.set(Boolean.TRUE);
+                    try {
+                        r.run();
+                    } finally {
+                        BUSY.remove();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Answers 503 instead of handling the request when it's run on the busy thread
+     */
+    private static class BusyFilter extends Filter {
+        @Override
+        public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+            if (BUSY.get() != null) {
+                try {
+                    sendText(exchange, 503, "Server busy");
+                } finally {
+                    exchange.close();
+                }
+                return;
+            }
+            chain.doFilter(exchange);
+        }
+
+        @Override
+        public String description() {
+            return "Turns away requests while every handler thread is busy";
+        }
+    }
+
+    /**
+     * Build the chat bot's message metadata for a Social Stream message and hand it off to the chat, unless it has
+     * already been received
+     *
+     * @param msg
+     * @return whether the message was handed off, or false if it was a duplicate
+     */
+    private boolean postMessage(SocialStreamMessage msg) {
+        if (chatBot.isDuplicate(msg.getIdKey(), msg.getContentKey())) {
+            return false;
+        }
+        PipelineMetrics.countIngested(INGEST_SOURCE, 1);
+        chatBot.sendMessageToChat(msg.getMessageType(), msg.getContent(), createPrivmsg(msg));
+        return true;
+    }
+
+    /**
+     * Create a TwitchPrivmsg object to hold the metadata of a Social Stream message
+     *
+     * @param msg
+     * @return privmsg
+     */
+    private static TwitchPrivmsg createPrivmsg(SocialStreamMessage msg) {
+        TwitchPrivmsg privmsg = new TwitchPrivmsg(msg.getUsername());
+        applyColor(privmsg, msg.getColor());
+        return privmsg;
+    }
+
+    /**
+     * Set the username color on the privmsg from a hex value or a color name
+     *
+     * @param privmsg
+     * @param colorStr
+     */
+    private static void applyColor(TwitchPrivmsg privmsg, String colorStr) {
+        if (colorStr == null || colorStr.isEmpty()) {
+            return;
+        }
+
+        Color color = ColorResolver.resolve(colorStr);
+        if (color != null) {
+            privmsg.setColor(color);
+        } else if (colorStr.startsWith("#")) {
+            logger.debug("Error parsing color: " + colorStr);
+        } else {
+            // Default to a light blue color if the name isn't recognized
+            privmsg.setColor(UNKNOWN_NAME_COLOR);
+        }
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String response) throws IOException {
+        final byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/plain");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(bytes);
+        os.close();
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String response) throws IOException {
+        final byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(bytes);
+        os.close();
+    }
+
+    /**
+     * Add the CORS headers to allow all origins, and answer the request if it's a preflight
+     *
+     * @param exchange
+     * @return whether the request was a preflight and has been answered
+     * @throws IOException
+     */
+    private static boolean handleCors(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type, Authorization");
+        exchange.getResponseHeaders().add("Access-Control-Max-Age", "3600");
+
+        // Handle OPTIONS requests for preflight
+        if ("OPTIONS".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+            return true;
+        }
+        return false;
     }
     
     private class MessageHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
-            // Add CORS headers to allow all origins
-            exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-            exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
-            exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type, Authorization");
-            exchange.getResponseHeaders().add("Access-Control-Max-Age", "3600");
-
-            // Handle OPTIONS requests for preflight
-            if ("OPTIONS".equals(exchange.getRequestMethod())) {
-                exchange.sendResponseHeaders(204, -1);
+            if (handleCors(exchange)) {
                 return;
             }
 
             if ("POST".equals(exchange.getRequestMethod())) {
-                String body = "";
+                JsonReader reader = null;
                 try {
                     // Check if ChatViewerBot is available
                     if (chatBot == null) {
                         throw new IllegalStateException("ChatViewerBot is not available");
                     }
                     
-                    // Read the request body
-                    InputStream is = exchange.getRequestBody();
-                    Scanner s = new Scanner(is).useDelimiter("\\A");
-                    body = s.hasNext() ? s.next() : "";
-                    s.close();
+                    // Pull just the fields the chat uses straight off of the request body
+                    reader = new JsonReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+                    SocialStreamMessage msg = SocialStreamMessage.read(reader);
                     
-                    // Log the received JSON for debugging
-                    logger.info("Received JSON: " + body);
-                    
-                    // Process the JSON message
-                    JSONObject json = new JSONObject(body);
-                    
-                    // Extract required fields with defaults if missing
-                    String username = json.optString("chatname", "Guest");
-                    String content = json.optString("chatmessage", "");
-                    
-                    // Default to NORMAL if type is missing or invalid
-                    String typeStr = json.optString("type", "NORMAL").toUpperCase();
-                    MessageType messageType = MessageType.NORMAL;
-                    try {
-                        if ("ACTION".equals(typeStr)) {
-                            messageType = MessageType.ACTION;
-                        } else if ("JOIN".equals(typeStr)) {
-                            messageType = MessageType.JOIN;
-                        }
-                    } catch (Exception e) {
-                        logger.warn("Invalid message type: " + typeStr + ", defaulting to NORMAL");
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Received Social Stream message: " + msg);
                     }
                     
-                    // Create a TwitchPrivmsg object to hold message metadata
-                    TwitchPrivmsg privmsg = new TwitchPrivmsg(username);
-                    
-                    // Handle color property - check both nameColor and color fields
-                    if (json.has("nameColor") || json.has("color")) {
-                        try {
-                            String colorStr = json.has("nameColor") ? 
-                                    json.getString("nameColor") : 
-                                    json.optString("color", "");
-                                    
-                            if (colorStr != null && !colorStr.isEmpty()) {
-                                // Handle color names or hex values
-                                if (colorStr.startsWith("#")) {
-                                    colorStr = colorStr.substring(1);
-                                    privmsg.setColor(new java.awt.Color(Integer.parseInt(colorStr, 16)));
-                                } else {
-                                    // Try to parse as a color name using reflection
-                                    try {
-                                        java.lang.reflect.Field field = java.awt.Color.class.getField(colorStr.toLowerCase());
-                                        privmsg.setColor((java.awt.Color)field.get(null));
-                                    } catch (Exception e) {
-                                        // Default to a light blue color if parsing fails
-                                        privmsg.setColor(new java.awt.Color(173, 216, 230));
-                                    }
-                                }
-                            }
-                        } catch (Exception e) {
-                            logger.warn("Error parsing color: " + e.getMessage());
-                        }
+                    // Send the message to chat, answering a repeat the same as the original so a relay doesn't retry it
+                    if (postMessage(msg)) {
+                        sendText(exchange, 200, "Message received");
+                    } else {
+                        sendText(exchange, 200, "Duplicate message ignored");
                     }
-                    
-                    // You could add additional processing here for any other fields you want to support
-                    
-                    // Send the message to chat
-                    chatBot.sendMessageToChat(messageType, content, privmsg);
-                    
-                    // Send a success response
-                    String response = "Message received";
-                    exchange.getResponseHeaders().add("Content-Type", "text/plain");
-                    exchange.sendResponseHeaders(200, response.length());
-                    OutputStream os = exchange.getResponseBody();
-                    os.write(response.getBytes());
-                    os.close();
-                    
                 } catch (Exception e) {
                     logger.error("Error processing message: " + e.getMessage(), e);
-                    logger.error("JSON body was: " + body);
-                    
-                    String response = "Error processing message: " + e.getMessage();
-                    exchange.getResponseHeaders().add("Content-Type", "text/plain");
-                    exchange.sendResponseHeaders(500, response.length());
-                    OutputStream os = exchange.getResponseBody();
-                    os.write(response.getBytes());
-                    os.close();
+                    sendText(exchange, 500, "Error processing message: " + e.getMessage());
+                } finally {
+                    if (reader != null) {
+                        reader.close();
+                    }
                 }
             } else if ("GET".equals(exchange.getRequestMethod())) {
                 // Add a simple GET handler for status checks
-                String response = "SocialStreamHttpServer is running";
-                exchange.getResponseHeaders().add("Content-Type", "text/plain");
-                exchange.sendResponseHeaders(200, response.length());
-                OutputStream os = exchange.getResponseBody();
-                os.write(response.getBytes());
-                os.close();
+                sendText(exchange, 200, "SocialStreamHttpServer is running");
             } else {
-                String response = "Method not allowed";
-                exchange.getResponseHeaders().add("Content-Type", "text/plain");
-                exchange.sendResponseHeaders(405, response.length());
-                OutputStream os = exchange.getResponseBody();
-                os.write(response.getBytes());
-                os.close();
+                sendText(exchange, 405, "Method not allowed");
+            }
+        }
+    }
+
+    /**
+     * Accepts a burst of messages in one request, either as a JSON array of message objects or as newline delimited
+     * JSON with one message object per line. The whole batch is handed to the chat in one call, and the response holds
+     * a status for each item in the order posted: ok, dropped if the chat is flooded and let it go, duplicate if the
+     * message had already been received, or invalid if the item wasn't a message object.
+     */
+    private class BatchHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (handleCors(exchange)) {
+                return;
+            }
+
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendText(exchange, 405, "Method not allowed");
+                return;
+            }
+
+            List<Message> messages = new ArrayList<Message>();
+            List<String> statuses = new ArrayList<String>();
+            // The index in statuses of each message, so the chat's results can be slotted back in order
+            List<Integer> messageIndices = new ArrayList<Integer>();
+            String error = null;
+
+            JsonReader reader = new JsonReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+            try {
+                // Lenient to allow several top level values, which is what newline delimited JSON is
+                reader.setLenient(true);
+                final boolean array = reader.peek() == JsonToken.BEGIN_ARRAY;
+                if (array) {
+                    reader.beginArray();
+                }
+
+                while (array ? reader.hasNext() : reader.peek() != JsonToken.END_DOCUMENT) {
+                    if (statuses.size() >= MAX_BATCH_SIZE) {
+                        sendText(exchange, 413, "Batch is larger than " + MAX_BATCH_SIZE + " messages");
+                        return;
+                    }
+
+                    if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        SocialStreamMessage msg = SocialStreamMessage.read(reader);
+                        if (chatBot.isDuplicate(msg.getIdKey(), msg.getContentKey())) {
+                            statuses.add(STATUS_DUPLICATE);
+                        } else {
+                            messageIndices.add(statuses.size());
+                            messages.add(chatBot.createMessage(msg.getMessageType(), msg.getContent(), createPrivmsg(msg)));
+                            statuses.add(STATUS_OK);
+                        }
+                    } else {
+                        reader.skipValue();
+                        statuses.add(STATUS_INVALID);
+                    }
+                }
+            } catch (Exception e) {
+                // Malformed JSON ends the batch, but whatever was read cleanly before it still gets posted
+                logger.warn("Error reading Social Stream batch after " + statuses.size() + " items: " + e.getMessage());
+                error = e.getMessage();
+            } finally {
+                reader.close();
+            }
+
+            if (statuses.isEmpty() && error != null) {
+                sendText(exchange, 400, "Error reading messages: " + error);
+                return;
+            }
+
+            if (!messages.isEmpty()) {
+                PipelineMetrics.countIngested(INGEST_SOURCE_BATCH, messages.size());
+                boolean[] accepted = chatBot.sendMessagesToChat(messages);
+                for (int i = 0; i < accepted.length; i++) {
+                    if (!accepted[i]) {
+                        statuses.set(messageIndices.get(i), STATUS_DROPPED);
+                    }
+                }
+            }
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("Received Social Stream batch of " + statuses.size() + " items");
+            }
+
+            sendJson(exchange, 200, getBatchResponse(statuses, error));
+        }
+    }
+
+    /**
+     * Build the compact batch response, like {"received":3,"ok":2,"status":["ok","invalid","ok"]}
+     *
+     * @param statuses
+     * @param error
+     *            The reason reading stopped early, or null if the whole batch was read
+     * @return response JSON
+     */
+    private static String getBatchResponse(List<String> statuses, String error) {
+        int okCount = 0;
+        StringBuilder status = new StringBuilder();
+        for (String s : statuses) {
+            if (STATUS_OK.equals(s)) {
+                okCount++;
+            }
+            status.append(status.length() == 0 ? "" : ",").append('"').append(s).append('"');
+        }
+
+        StringBuilder response = new StringBuilder();
+        response.append("{\"received\":").append(statuses.size());
+        response.append(",\"ok\":").append(okCount);
+        response.append(",\"status\":[").append(status).append(']');
+        if (error != null) {
+            response.append(",\"error\":").append(JSONObject.quote(error));
+        }
+        response.append('}');
+        return response.toString();
+    }
+
+    /**
+     * A long-lived ingestion channel, so a relay can keep one connection open instead of making a request per chat
+     * line. The client POSTs a chunked request body of newline delimited JSON, one message object per line, and reads
+     * newline delimited JSON control lines back on the chunked response while it keeps sending:
+     * <ul>
+     * <li>{"credits":256} when the stream opens, the number of messages the client may send before it hears back</li>
+     * <li>{"ack":n,"ok":n,"dropped":n,"invalid":n,"duplicate":n,"credits":n} after each run of lines is handed to the
+     * chat, with the counts running totals over the whole stream and credits the number of additional messages
+     * granted</li>
+     * <li>{"credits":n} on its own if credits were held back because the chat was flooded, once it has caught up</li>
+     * </ul>
+     * Lines are read as they arrive, and the ones already waiting are handed to the chat together. Credits are only
+     * granted while the chat has room, and a client sending beyond its credits isn't read any faster, so a flood backs up
+     * onto the relay rather than into the overlay. Each line stands alone, so a malformed line is counted as invalid
+     * without ending the stream.
+     */
+    private class StreamHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (handleCors(exchange)) {
+                return;
+            }
+
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendText(exchange, 405, "Method not allowed");
+                return;
+            }
+
+            if (activeStreams.incrementAndGet() > maxStreams) {
+                activeStreams.decrementAndGet();
+                sendText(exchange, 503, "Too many open streams");
+                return;
+            }
+
+            BufferedReader in = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+            OutputStream out = null;
+            try {
+                exchange.getResponseHeaders().add("Content-Type", "application/x-ndjson");
+                exchange.getResponseHeaders().add("Cache-Control", "no-cache");
+                // Zero length means the response is chunked and open ended
+                exchange.sendResponseHeaders(200, 0);
+                out = exchange.getResponseBody();
+
+                logger.info("Social Stream client " + exchange.getRemoteAddress() + " opened a stream");
+
+                int outstanding = STREAM_WINDOW;
+                writeControl(out, "{\"credits\":" + STREAM_WINDOW + "}");
+
+                long received = 0L;
+                long ok = 0L;
+                long dropped = 0L;
+                long invalid = 0L;
+                long duplicate = 0L;
+
+                List<Message> batch = new ArrayList<Message>(STREAM_BATCH_SIZE);
+                String line;
+                while (!stopped && (line = in.readLine()) != null) {
+                    // Gather up whatever lines have already arrived, without waiting on more
+                    int lineCount = 0;
+                    do {
+                        line = line.trim();
+                        if (line.isEmpty()) {
+                            continue;
+                        }
+                        lineCount++;
+                        SocialStreamMessage msg = parseStreamLine(line);
+                        if (msg == null) {
+                            invalid++;
+                        } else if (chatBot.isDuplicate(msg.getIdKey(), msg.getContentKey())) {
+                            duplicate++;
+                        } else {
+                            batch.add(chatBot.createMessage(msg.getMessageType(), msg.getContent(), createPrivmsg(msg)));
+                        }
+                    } while (lineCount < STREAM_BATCH_SIZE && in.ready() && (line = in.readLine()) != null);
+
+                    if (lineCount == 0) {
+                        continue;
+                    }
+
+                    received += lineCount;
+                    if (!batch.isEmpty()) {
+                        PipelineMetrics.countIngested(INGEST_SOURCE_STREAM, batch.size());
+                        for (boolean accepted : chatBot.sendMessagesToChat(batch)) {
+                            if (accepted) {
+                                ok++;
+                            } else {
+                                dropped++;
+                            }
+                        }
+                        batch.clear();
+                    }
+
+                    outstanding = Math.max(0, outstanding - lineCount);
+                    int granted = 0;
+                    if (chatBot.awaitChatRoom(STREAM_ROOM_WAIT_MILLIS)) {
+                        granted = STREAM_WINDOW - outstanding;
+                        outstanding = STREAM_WINDOW;
+                    }
+                    writeControl(out, "{\"ack\":" + received + ",\"ok\":" + ok + ",\"dropped\":" + dropped + ",\"invalid\":" + invalid + ",\"duplicate\":" + duplicate + ",\"credits\":" + granted + "}");
+
+                    if (granted == 0 && outstanding == 0) {
+                        // The client is out of credits, so nothing more will arrive until some are granted
+                        while (!stopped && !chatBot.awaitChatRoom(STREAM_ROOM_WAIT_MILLIS)) {
+                            // Keep waiting for the chat to catch up
+                        }
+                        outstanding = STREAM_WINDOW;
+                        writeControl(out, "{\"credits\":" + STREAM_WINDOW + "}");
+                    }
+                }
+
+                logger.info("Social Stream client " + exchange.getRemoteAddress() + " closed its stream after " + received + " messages");
+            } catch (InterruptedException e) {
+                logger.debug("Social Stream stream interrupted");
+            } catch (IOException e) {
+                logger.info("Social Stream stream ended: " + e.getMessage());
+            } finally {
+                activeStreams.decrementAndGet();
+                in.close();
+                if (out != null) {
+                    out.close();
+                } else {
+                    exchange.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Parse a single newline delimited JSON line into a message
+     *
+     * @param line
+     * @return message, or null if the line isn't a message object
+     */
+    private SocialStreamMessage parseStreamLine(String line) {
+        try {
+            JsonReader reader = new JsonReader(new StringReader(line));
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                return null;
+            }
+            return SocialStreamMessage.read(reader);
+        } catch (Exception e) {
+            logger.debug("Invalid Social Stream line: " + line, e);
+            return null;
+        }
+    }
+
+    /**
+     * Write a control line back to a streaming client and push it out immediately as its own chunk
+     *
+     * @param out
+     * @param json
+     * @throws IOException
+     */
+    private static void writeControl(OutputStream out, String json) throws IOException {
+        out.write((json + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    /**
+     * Get the value of a query string parameter
+     *
+     * @param exchange
+     * @param name
+     * @return value, or null if the parameter isn't there
+     */
+    private static String getQueryParam(HttpExchange exchange, String name) {
+        final String query = exchange.getRequestURI().getQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            final int eq = pair.indexOf('=');
+            if (name.equals(eq < 0 ? pair : pair.substring(0, eq))) {
+                return eq < 0 ? "" : pair.substring(eq + 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether the frame should include the background, which is left transparent unless ?background=true
+     *
+     * @param exchange
+     * @return transparent
+     */
+    private static boolean isTransparentRequested(HttpExchange exchange) {
+        final String background = getQueryParam(exchange, "background");
+        return !("true".equalsIgnoreCase(background) || "1".equals(background));
+    }
+
+    /**
+     * Serves the current chat as a single PNG with an ETag, so a poller gets a 304 with no body until the chat changes
+     */
+    private class FrameHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (handleCors(exchange)) {
+                return;
+            }
+
+            final ChatFrameRenderer renderer = frameRenderer;
+            if (renderer == null) {
+                sendText(exchange, 404, "Frames are not being served");
+                return;
+            }
+
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendText(exchange, 405, "Method not allowed");
+                return;
+            }
+
+            ChatFrameRenderer.Frame frame = renderer.getFrame(isTransparentRequested(exchange));
+            if (frame == null) {
+                sendText(exchange, 503, "Chat is not ready to be drawn");
+                return;
+            }
+
+            exchange.getResponseHeaders().add("ETag", frame.getEtag());
+            exchange.getResponseHeaders().add("Cache-Control", "no-cache");
+            if (frame.getEtag().equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+
+            exchange.getResponseHeaders().add("Content-Type", "image/png");
+            exchange.sendResponseHeaders(200, frame.getPng().length);
+            OutputStream os = exchange.getResponseBody();
+            os.write(frame.getPng());
+            os.close();
+        }
+    }
+
+    /**
+     * Serves the pipeline metrics in the Prometheus text format
+     */
+    private class MetricsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (handleCors(exchange)) {
+                return;
+            }
+
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendText(exchange, 405, "Method not allowed");
+                return;
+            }
+
+            final byte[] bytes = PipelineMetrics.toPrometheusText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            OutputStream os = exchange.getResponseBody();
+            os.write(bytes);
+            os.close();
+        }
+    }
+
+    /**
+     * Reports whether messages are making it through to the chat, answering 503 if they've been stuck waiting for
+     * longer than the stall time, so a monitor can alert on an overlay that has stopped updating
+     */
+    private class HealthHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (handleCors(exchange)) {
+                return;
+            }
+
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendText(exchange, 405, "Method not allowed");
+                return;
+            }
+
+            final Long queueDepth = PipelineMetrics.getGauge(PipelineMetrics.GAUGE_QUEUE_DEPTH);
+            final Long ircConnected = PipelineMetrics.getGauge(PipelineMetrics.GAUGE_IRC_CONNECTED);
+            final long sinceChatAdd = PipelineMetrics.getMillisSinceChatAdd();
+            final boolean stalled = queueDepth != null && queueDepth > 0 && (sinceChatAdd < 0 || sinceChatAdd > STALL_MILLIS);
+
+            StringBuilder json = new StringBuilder();
+            json.append("{\"status\":").append(JSONObject.quote(stalled ? "stalled" : "ok"));
+            json.append(",\"ircConnected\":").append(ircConnected != null && ircConnected != 0L);
+            json.append(",\"queueDepth\":").append(queueDepth == null ? 0L : queueDepth);
+            json.append(",\"millisSinceChatAdd\":").append(sinceChatAdd);
+            json.append(",\"millisSincePaint\":").append(PipelineMetrics.getMillisSincePaint());
+            json.append(",\"uptimeMillis\":").append(PipelineMetrics.getUptimeMillis());
+            json.append("}");
+
+            sendJson(exchange, stalled ? 503 : 200, json.toString());
+        }
+    }
+
+    /**
+     * Pushes the chat as a multipart/x-mixed-replace stream of PNGs, sending a new part only when the chat has changed,
+     * at no more than ?fps=N frames per second
+     */
+    private class FrameStreamHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (handleCors(exchange)) {
+                return;
+            }
+
+            final ChatFrameRenderer renderer = frameRenderer;
+            if (renderer == null) {
+                sendText(exchange, 404, "Frames are not being served");
+                return;
+            }
+
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendText(exchange, 405, "Method not allowed");
+                return;
+            }
+
+            int fps = DEFAULT_FRAME_RATE;
+            try {
+                final String fpsStr = getQueryParam(exchange, "fps");
+                if (fpsStr != null) {
+                    fps = Math.max(1, Math.min(MAX_FRAME_RATE, Integer.parseInt(fpsStr)));
+                }
+            } catch (NumberFormatException e) {
+                sendText(exchange, 400, "Invalid fps");
+                return;
+            }
+            final long frameMillis = 1000L / fps;
+            final boolean transparent = isTransparentRequested(exchange);
+
+            if (activeStreams.incrementAndGet() > maxStreams) {
+                activeStreams.decrementAndGet();
+                sendText(exchange, 503, "Too many open streams");
+                return;
+            }
+
+            OutputStream out = null;
+            try {
+                exchange.getResponseHeaders().add("Content-Type", "multipart/x-mixed-replace; boundary=" + FRAME_BOUNDARY);
+                exchange.getResponseHeaders().add("Cache-Control", "no-cache");
+                exchange.sendResponseHeaders(200, 0);
+                out = exchange.getResponseBody();
+
+                long checkedVersion = -1L;
+                String sentEtag = null;
+                while (!stopped) {
+                    final long start = System.currentTimeMillis();
+                    if (renderer.getVersion() != checkedVersion) {
+                        ChatFrameRenderer.Frame frame = renderer.getFrame(transparent);
+                        if (frame != null) {
+                            checkedVersion = frame.getVersion();
+                        }
+                        // A repaint that changed nothing hands back the same frame, which isn't sent again
+                        if (frame != null && !frame.getEtag().equals(sentEtag)) {
+                            sentEtag = frame.getEtag();
+                            final String header = "--" + FRAME_BOUNDARY + "\r\nContent-Type: image/png\r\nContent-Length: " + frame.getPng().length + "\r\n\r\n";
+                            out.write(header.getBytes(StandardCharsets.US_ASCII));
+                            out.write(frame.getPng());
+                            out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+                            out.flush();
+                        }
+                    }
+                    Thread.sleep(Math.max(1L, frameMillis - (System.currentTimeMillis() - start)));
+                }
+            } catch (InterruptedException e) {
+                logger.debug("Frame stream interrupted");
+            } catch (IOException e) {
+                logger.debug("Frame stream ended: " + e.getMessage());
+            } finally {
+                activeStreams.decrementAndGet();
+                if (out != null) {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        logger.trace("Unable to close frame stream", e);
+                    }
+                } else {
+                    exchange.close();
+                }
             }
         }
     }
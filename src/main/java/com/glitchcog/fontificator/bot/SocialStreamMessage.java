@@ -0,0 +1,157 @@
+package com.glitchcog.fontificator.bot;
+
+import java.io.IOException;
+
+import com.glitchcog.fontificator.gui.chat.MessageDeduplicator;
+import com.glitchcog.fontificator.metrics.PipelineMetrics;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * The few fields of a Social Stream Ninja message that the chat displays. Social Stream posts carry a lot more than
+ * this (avatars, badges, source images, donation details, and so on), so rather than building a whole JSON object tree
+ * for every post, the fields are pulled off of a streaming reader and everything else is skipped without being
+ * materialized.
+ */
+public class SocialStreamMessage {
+
+    private static final String DEFAULT_USERNAME = "Guest";
+
+    private static final String DEDUP_SOURCE = "socialstream";
+
+    private String chatname;
+
+    private String chatmessage;
+
+    private String type;
+
+    private String nameColor;
+
+    private String color;
+
+    private String id;
+
+    /**
+     * Read one JSON object from the reader, keeping only the fields the chat uses
+     *
+     * @param reader
+     *            Positioned at the start of the object
+     * @return message
+     * @throws IOException
+     *             If the reader doesn't hold a well formed JSON object
+     */
+    public static SocialStreamMessage read(JsonReader reader) throws IOException {
+        final long start = System.nanoTime();
+        SocialStreamMessage msg = new SocialStreamMessage();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if ("chatname".equals(name)) {
+                msg.chatname = nextStringOrNull(reader);
+            } else if ("chatmessage".equals(name)) {
+                msg.chatmessage = nextStringOrNull(reader);
+            } else if ("type".equals(name)) {
+                msg.type = nextStringOrNull(reader);
+            } else if ("nameColor".equals(name)) {
+                msg.nameColor = nextStringOrNull(reader);
+            } else if ("color".equals(name)) {
+                msg.color = nextStringOrNull(reader);
+            } else if ("id".equals(name)) {
+                msg.id = nextStringOrNull(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        PipelineMetrics.SOCIAL_STREAM_PARSE.record(System.nanoTime() - start);
+        return msg;
+    }
+
+    /**
+     * Read a scalar value as a string, or skip a null, object or array value
+     *
+     * @param reader
+     * @return value, or null if the value isn't a scalar
+     * @throws IOException
+     */
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        final JsonToken token = reader.peek();
+        switch (token) {
+        case STRING:
+        case NUMBER:
+            return reader.nextString();
+        case BOOLEAN:
+            return Boolean.toString(reader.nextBoolean());
+        default:
+            reader.skipValue();
+            return null;
+        }
+    }
+
+    /**
+     * Get the name of the poster, defaulting to a guest name if none was specified
+     *
+     * @return username
+     */
+    public String getUsername() {
+        return chatname == null ? DEFAULT_USERNAME : chatname;
+    }
+
+    /**
+     * Get the text of the message, or an empty string if none was specified
+     *
+     * @return content
+     */
+    public String getContent() {
+        return chatmessage == null ? "" : chatmessage;
+    }
+
+    /**
+     * Get the type of the message, defaulting to NORMAL if it's missing or isn't an action or join
+     *
+     * @return messageType
+     */
+    public MessageType getMessageType() {
+        if (type != null) {
+            if ("ACTION".equalsIgnoreCase(type)) {
+                return MessageType.ACTION;
+            } else if ("JOIN".equalsIgnoreCase(type)) {
+                return MessageType.JOIN;
+            }
+        }
+        return MessageType.NORMAL;
+    }
+
+    /**
+     * Get the username color as posted, preferring nameColor over color
+     *
+     * @return color string, or null if neither was specified
+     */
+    public String getColor() {
+        return nameColor != null ? nameColor : color;
+    }
+
+    /**
+     * Get the key for recognizing this message if it arrives again by the id Social Stream gave it
+     *
+     * @return dedup key, or null if it has no id
+     */
+    public String getIdKey() {
+        return id == null || id.isEmpty() ? null : MessageDeduplicator.getIdKey(DEDUP_SOURCE, id);
+    }
+
+    /**
+     * Get the key for recognizing this message by who posted it and what it says, which is what matches a copy of it
+     * that also came in over IRC
+     *
+     * @return dedup key
+     */
+    public String getContentKey() {
+        return MessageDeduplicator.getContentKey(getUsername(), getContent());
+    }
+
+    @Override
+    public String toString() {
+        return getMessageType() + " " + getUsername() + ": " + getContent();
+    }
+}
@@ -4,6 +4,8 @@ import java.awt.Color;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.glitchcog.fontificator.config.ChannelStyle;
+
 /**
  * A TwitchPrivmsg model to house the data that comes in the header of a Twitch IRC message. Could also be a whisper
  * message, which is specified by the messageClassification member variable.
@@ -58,6 +60,21 @@ public class TwitchPrivmsg
      */
     private String messageClassification;
 
+    /**
+     * The unique ID Twitch gives the message, used to delete a single message, or null if there is none
+     */
+    private String messageId;
+
+    /**
+     * The channel the message was posted to, with the hash ('#'), or null if unknown
+     */
+    private String channel;
+
+    /**
+     * The style of the channel the message was posted to, or null if the channel isn't styled
+     */
+    private ChannelStyle channelStyle;
+
     /**
      * Default constructor that sets default values for everything but displayName
      */
@@ -97,7 +114,7 @@ public class TwitchPrivmsg
      * 
      * @return postCount
      */
-    public int getPostCount()
+    public synchronized int getPostCount()
     {
         return postCount;
     }
@@ -105,7 +122,7 @@ public class TwitchPrivmsg
     /**
      * Increment the number of posts for this user this connection session
      */
-    public void incrementPostCount()
+    public synchronized void incrementPostCount()
     {
         postCount++;
     }
@@ -113,7 +130,7 @@ public class TwitchPrivmsg
     /**
      * Rest the nubmer of posts to zero for this user, used when a new session is opened
      */
-    public void resetPostCount()
+    public synchronized void resetPostCount()
     {
         postCount = 0;
     }
@@ -268,6 +285,66 @@ public class TwitchPrivmsg
         this.messageClassification = messageClassification;
     }
 
+    /**
+     * Get the unique ID Twitch gives the message
+     * 
+     * @return messageId or null if there is none
+     */
+    public String getMessageId()
+    {
+        return messageId;
+    }
+
+    /**
+     * Set the unique ID Twitch gives the message
+     * 
+     * @param messageId
+     */
+    public void setMessageId(String messageId)
+    {
+        this.messageId = messageId;
+    }
+
+    /**
+     * Get the channel the message was posted to
+     * 
+     * @return channel, with the hash ('#'), or null if unknown
+     */
+    public String getChannel()
+    {
+        return channel;
+    }
+
+    /**
+     * Set the channel the message was posted to
+     * 
+     * @param channel
+     */
+    public void setChannel(String channel)
+    {
+        this.channel = channel;
+    }
+
+    /**
+     * Get the style of the channel the message was posted to
+     * 
+     * @return channelStyle or null if the channel isn't styled
+     */
+    public ChannelStyle getChannelStyle()
+    {
+        return channelStyle;
+    }
+
+    /**
+     * Set the style of the channel the message was posted to
+     * 
+     * @param channelStyle
+     */
+    public void setChannelStyle(ChannelStyle channelStyle)
+    {
+        this.channelStyle = channelStyle;
+    }
+
     /**
      * Get whether the message is a PRIVMSG to be displayed in chat, and specifically not a WHISPER message which should
      * not be shown
@@ -0,0 +1,532 @@
+package com.glitchcog.fontificator.bot.fake;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A small embedded IRC server that speaks the subset of the Twitch IRC protocol the ChatViewerBot uses: the
+ * membership, tags, and commands capabilities, JOIN, PING and PONG. Once a client joins a channel, it emits synthetic
+ * tagged PRIVMSG posts, CLEARCHAT bans, and PINGs at configurable rates, and it can drop every connection on demand to
+ * exercise reconnecting. This makes it possible to load test the bot without connecting to Twitch.
+ *
+ * @author Matt Yanos
+ */
+public class FakeTwitchIrcServer
+{
+    private static final Logger logger = Logger.getLogger(FakeTwitchIrcServer.class);
+
+    private static final String SERVER_NAME = "tmi.twitch.tv";
+
+    /**
+     * How often the emitter wakes up to send whatever is due at the configured rates
+     */
+    private static final long EMIT_TICK_MILLIS = 10L;
+
+    // @formatter:off
+    private static final String[] USERNAMES = new String[] { "Mario", "Luigi", "Peach", "Toad", "Bowser", "Yoshi", "Link", "Zelda", "Ganon", "Samus",
+                                                             "Ridley", "Kirby", "Sonic", "Tails", "Knuckles", "Pikachu", "Ness", "Chrono", "Marle", "Lucca",
+                                                             "Frog", "Terra", "Locke", "Celes", "Kefka", "Cloud", "Tifa", "Aerith", "Simon", "Alucard" };
+
+    private static final String[] WORDS = new String[] { "a", "winner", "is", "you", "it's", "dangerous", "to", "go", "alone", "take", "this",
+                                                         "the", "cake", "lie", "all", "your", "base", "are", "belong", "us", "hey", "listen",
+                                                         "what", "horrible", "night", "have", "curse", "thank", "but", "princess", "another", "castle" };
+
+    /**
+     * Global Twitch emote codes and their emote IDs, to put realistic emotes tags on the posts
+     */
+    private static final String[] EMOTE_CODES = new String[] { "Kappa", "Keepo", "4Head", "PogChamp", "BibleThump" };
+
+    private static final int[] EMOTE_IDS = new int[] { 25, 1902, 354, 88, 86 };
+
+    private static final String[] BADGES = new String[] { "", "subscriber/12", "moderator/1,subscriber/3", "premium/1", "turbo/1", "vip/1" };
+    // @formatter:on
+
+    private final int port;
+
+    private ServerSocket serverSocket;
+
+    private final List<Client> clients;
+
+    private volatile boolean running;
+
+    private volatile double messagesPerSecond;
+
+    private volatile double bansPerSecond;
+
+    private volatile double pingsPerSecond;
+
+    private final AtomicLong messagesSent;
+
+    private final AtomicLong bansSent;
+
+    private final AtomicLong pingsSent;
+
+    private final AtomicLong disconnectsInjected;
+
+    private final Random rnd;
+
+    /**
+     * Construct a fake server that isn't started
+     *
+     * @param port
+     *            The port to listen on, or zero for any free port
+     */
+    public FakeTwitchIrcServer(int port)
+    {
+        this.port = port;
+        this.clients = new CopyOnWriteArrayList<Client>();
+        this.messagesPerSecond = 1.0;
+        this.bansPerSecond = 0.0;
+        this.pingsPerSecond = 0.0;
+        this.messagesSent = new AtomicLong();
+        this.bansSent = new AtomicLong();
+        this.pingsSent = new AtomicLong();
+        this.disconnectsInjected = new AtomicLong();
+        this.rnd = new Random();
+    }
+
+    /**
+     * Begin listening for connections and emitting traffic
+     *
+     * @throws IOException
+     */
+    public synchronized void start() throws IOException
+    {
+        if (running)
+        {
+            return;
+        }
+
+        serverSocket = new ServerSocket(port);
+        running = true;
+
+        Thread acceptThread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                acceptLoop();
+            }
+        }, "Fake IRC Accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+
+        Thread emitThread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                emitLoop();
+            }
+        }, "Fake IRC Emitter");
+        emitThread.setDaemon(true);
+        emitThread.start();
+
+        logger.info("Fake Twitch IRC server listening on port " + getPort());
+    }
+
+    /**
+     * Stop listening and close every client connection
+     */
+    public synchronized void stop()
+    {
+        running = false;
+        try
+        {
+            if (serverSocket != null)
+            {
+                serverSocket.close();
+            }
+        }
+        catch (IOException e)
+        {
+            logger.trace("Error closing fake IRC server socket", e);
+        }
+        closeAllClients();
+    }
+
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    /**
+     * Get the port actually being listened on, which differs from the constructor port if it was zero
+     *
+     * @return port
+     */
+    public int getPort()
+    {
+        return serverSocket == null ? port : serverSocket.getLocalPort();
+    }
+
+    /**
+     * Abruptly drop every client connection without a QUIT, to simulate a lost connection
+     */
+    public void injectDisconnect()
+    {
+        disconnectsInjected.incrementAndGet();
+        closeAllClients();
+    }
+
+    public void setMessagesPerSecond(double messagesPerSecond)
+    {
+        this.messagesPerSecond = Math.max(0.0, messagesPerSecond);
+    }
+
+    public void setBansPerSecond(double bansPerSecond)
+    {
+        this.bansPerSecond = Math.max(0.0, bansPerSecond);
+    }
+
+    public void setPingsPerSecond(double pingsPerSecond)
+    {
+        this.pingsPerSecond = Math.max(0.0, pingsPerSecond);
+    }
+
+    /**
+     * Get a one line human readable summary of the traffic sent so far
+     *
+     * @return summary
+     */
+    public String getStats()
+    {
+        return "Fake IRC server port " + getPort() + ": " + clients.size() + " clients, " + messagesSent.get() + " messages, " + bansSent.get() + " bans, " + pingsSent.get() + " pings, " + disconnectsInjected.get() + " injected disconnects";
+    }
+
+    private void acceptLoop()
+    {
+        while (running)
+        {
+            try
+            {
+                Socket socket = serverSocket.accept();
+                Client client = new Client(socket);
+                clients.add(client);
+                Thread clientThread = new Thread(client, "Fake IRC Client " + socket.getPort());
+                clientThread.setDaemon(true);
+                clientThread.start();
+            }
+            catch (SocketException e)
+            {
+                // Server socket closed by stop
+            }
+            catch (IOException e)
+            {
+                logger.error("Fake IRC server unable to accept connection", e);
+            }
+        }
+    }
+
+    /**
+     * Send whatever traffic is due at the configured rates. Fractional amounts carry over between ticks, so low rates
+     * and rates above the tick frequency are both honored.
+     */
+    private void emitLoop()
+    {
+        double messagesDue = 0.0;
+        double bansDue = 0.0;
+        double pingsDue = 0.0;
+        long last = System.nanoTime();
+
+        while (running)
+        {
+            try
+            {
+                Thread.sleep(EMIT_TICK_MILLIS);
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+
+            final long now = System.nanoTime();
+            final double elapsedSeconds = (now - last) / 1000000000.0;
+            last = now;
+
+            messagesDue += messagesPerSecond * elapsedSeconds;
+            bansDue += bansPerSecond * elapsedSeconds;
+            pingsDue += pingsPerSecond * elapsedSeconds;
+
+            for (Client client : clients)
+            {
+                // One snapshot for the whole tick, since the client can part channels while this runs
+                final String[] joined = client.channels.toArray(new String[0]);
+                if (joined.length == 0)
+                {
+                    continue;
+                }
+
+                List<String> lines = new ArrayList<String>();
+                for (int i = 0; i < (int) messagesDue; i++)
+                {
+                    lines.add(buildPrivmsg(pickChannel(joined)));
+                }
+                for (int i = 0; i < (int) bansDue; i++)
+                {
+                    lines.add(buildClearchat(pickChannel(joined)));
+                }
+                for (int i = 0; i < (int) pingsDue; i++)
+                {
+                    lines.add("PING :" + SERVER_NAME);
+                }
+                client.send(lines);
+
+                messagesSent.addAndGet((int) messagesDue);
+                bansSent.addAndGet((int) bansDue);
+                pingsSent.addAndGet((int) pingsDue);
+            }
+
+            messagesDue -= (int) messagesDue;
+            bansDue -= (int) bansDue;
+            pingsDue -= (int) pingsDue;
+        }
+    }
+
+    private int pickUserIndex()
+    {
+        return rnd.nextInt(USERNAMES.length);
+    }
+
+    private String pickChannel(String[] joined)
+    {
+        return joined[rnd.nextInt(joined.length)];
+    }
+
+    /**
+     * Build a PRIVMSG line with the tags Twitch puts on a post: badges, color, display name, emotes, subscriber, turbo,
+     * user ID, and user type
+     *
+     * @param channel
+     * @return line
+     */
+    private String buildPrivmsg(String channel)
+    {
+        final int userIndex = pickUserIndex();
+        final String displayName = USERNAMES[userIndex];
+        final String login = displayName.toLowerCase();
+        final String badges = BADGES[rnd.nextInt(BADGES.length)];
+
+        StringBuilder content = new StringBuilder();
+        StringBuilder emotes = new StringBuilder();
+        final int wordCount = 1 + rnd.nextInt(12);
+        for (int w = 0; w < wordCount; w++)
+        {
+            if (w > 0)
+            {
+                content.append(' ');
+            }
+            if (rnd.nextInt(5) == 0)
+            {
+                final int e = rnd.nextInt(EMOTE_CODES.length);
+                if (emotes.length() > 0)
+                {
+                    emotes.append('/');
+                }
+                emotes.append(EMOTE_IDS[e]).append(':').append(content.length()).append('-').append(content.length() + EMOTE_CODES[e].length() - 1);
+                content.append(EMOTE_CODES[e]);
+            }
+            else
+            {
+                content.append(WORDS[rnd.nextInt(WORDS.length)]);
+            }
+        }
+
+        final boolean mod = badges.contains("moderator");
+
+        StringBuilder line = new StringBuilder();
+        line.append("@badge-info=;badges=").append(badges);
+        line.append(";color=#").append(String.format("%06X", rnd.nextInt(0x1000000)));
+        line.append(";display-name=").append(displayName);
+        line.append(";emotes=").append(emotes);
+        line.append(";id=").append(UUID.randomUUID());
+        line.append(";mod=").append(mod ? 1 : 0);
+        line.append(";room-id=1;subscriber=").append(badges.contains("subscriber") ? 1 : 0);
+        line.append(";tmi-sent-ts=").append(System.currentTimeMillis());
+        line.append(";turbo=").append(badges.contains("turbo") ? 1 : 0);
+        line.append(";user-id=").append(1000 + userIndex);
+        line.append(";user-type=").append(mod ? "mod" : "");
+        line.append(" :").append(login).append('!').append(login).append('@').append(login).append('.').append(SERVER_NAME);
+        line.append(" PRIVMSG ").append(channel).append(" :").append(content);
+        return line.toString();
+    }
+
+    /**
+     * Build a CLEARCHAT line banning or timing out one of the synthetic users
+     *
+     * @param channel
+     * @return line
+     */
+    private String buildClearchat(String channel)
+    {
+        final int userIndex = pickUserIndex();
+        final boolean timeout = rnd.nextBoolean();
+        final String tags = (timeout ? "@ban-duration=" + (1 + rnd.nextInt(600)) + ";" : "@") + "room-id=1;target-user-id=" + (1000 + userIndex) + ";tmi-sent-ts=" + System.currentTimeMillis();
+        return tags + " :" + SERVER_NAME + " CLEARCHAT " + channel + " :" + USERNAMES[userIndex].toLowerCase();
+    }
+
+    private void closeAllClients()
+    {
+        for (Client client : clients)
+        {
+            client.close();
+        }
+        clients.clear();
+    }
+
+    /**
+     * A single connection to the fake server
+     */
+    private class Client implements Runnable
+    {
+        private final Socket socket;
+
+        private final BufferedWriter writer;
+
+        private final Set<String> channels;
+
+        private String nick;
+
+        private Client(Socket socket) throws IOException
+        {
+            this.socket = socket;
+            this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            this.channels = new CopyOnWriteArraySet<String>();
+            this.nick = "justinfan";
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    handle(line);
+                }
+            }
+            catch (IOException e)
+            {
+                logger.trace("Fake IRC client connection ended", e);
+            }
+            finally
+            {
+                close();
+                clients.remove(this);
+            }
+        }
+
+        private void handle(String line)
+        {
+            final String upper = line.toUpperCase();
+            if (upper.startsWith("NICK "))
+            {
+                nick = line.substring("NICK ".length()).trim();
+                // @formatter:off
+                send(":" + SERVER_NAME + " 001 " + nick + " :Welcome, GLHF!",
+                     ":" + SERVER_NAME + " 002 " + nick + " :Your host is " + SERVER_NAME,
+                     ":" + SERVER_NAME + " 003 " + nick + " :This server is rather new",
+                     ":" + SERVER_NAME + " 004 " + nick + " :-",
+                     ":" + SERVER_NAME + " 375 " + nick + " :-",
+                     ":" + SERVER_NAME + " 372 " + nick + " :You are in a maze of twisty passages, all alike.",
+                     ":" + SERVER_NAME + " 376 " + nick + " :>");
+                // @formatter:on
+            }
+            else if (upper.startsWith("CAP REQ "))
+            {
+                final String caps = line.substring(line.indexOf(':') + 1);
+                send(":" + SERVER_NAME + " CAP * ACK :" + caps);
+            }
+            else if (upper.startsWith("JOIN "))
+            {
+                for (String chan : line.substring("JOIN ".length()).trim().split(","))
+                {
+                    chan = chan.trim().toLowerCase();
+                    channels.add(chan);
+                    final String prefix = ":" + nick + "!" + nick + "@" + nick + "." + SERVER_NAME;
+                    // @formatter:off
+                    send(prefix + " JOIN " + chan,
+                         ":" + nick + "." + SERVER_NAME + " 353 " + nick + " = " + chan + " :" + nick,
+                         ":" + nick + "." + SERVER_NAME + " 366 " + nick + " " + chan + " :End of /NAMES list");
+                    // @formatter:on
+                }
+            }
+            else if (upper.startsWith("PART "))
+            {
+                channels.remove(line.substring("PART ".length()).trim().toLowerCase());
+            }
+            else if (upper.startsWith("PING"))
+            {
+                send("PONG " + line.substring("PING".length()).trim());
+            }
+            else if (upper.startsWith("QUIT"))
+            {
+                close();
+            }
+            // PASS, USER, and PONG need no reply
+        }
+
+        private void send(String... lines)
+        {
+            send(Arrays.asList(lines));
+        }
+
+        private void send(List<String> lines)
+        {
+            if (lines.isEmpty())
+            {
+                return;
+            }
+
+            synchronized (writer)
+            {
+                try
+                {
+                    for (String line : lines)
+                    {
+                        writer.write(line);
+                        writer.write("\r\n");
+                    }
+                    writer.flush();
+                }
+                catch (IOException e)
+                {
+                    logger.trace("Unable to write to fake IRC client", e);
+                    close();
+                }
+            }
+        }
+
+        private void close()
+        {
+            try
+            {
+                socket.close();
+            }
+            catch (IOException e)
+            {
+                logger.trace("Error closing fake IRC client socket", e);
+            }
+        }
+    }
+}
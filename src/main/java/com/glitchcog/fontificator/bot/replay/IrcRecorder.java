@@ -0,0 +1,144 @@
+package com.glitchcog.fontificator.bot.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Records raw IRC lines along with the nanosecond time they were received to a compact, append-only file, so the
+ * traffic can be played back later by the IrcReplayer.
+ * <p>
+ * The file starts with a magic header. Each record that follows is a variable length encoded count of nanoseconds since
+ * the previous record, a variable length encoded byte count, and then the UTF-8 bytes of the line. The first record
+ * written in each recording session has a delta of zero, so sessions appended onto an existing file play back without
+ * the gap between them.
+ *
+ * @author Matt Yanos
+ */
+public class IrcRecorder
+{
+    private static final Logger logger = Logger.getLogger(IrcRecorder.class);
+
+    /**
+     * Identifies a recording file, followed by a format version byte
+     */
+    static final byte[] MAGIC = new byte[] { 'F', 'I', 'R', 'C', 1 };
+
+    private final File file;
+
+    private OutputStream out;
+
+    /**
+     * The receive time of the previous record, or a negative value if nothing has been recorded yet this session
+     */
+    private long previousNanos;
+
+    private long recordCount;
+
+    /**
+     * Open the specified file for appending, writing the header if the file is new or empty
+     *
+     * @param file
+     * @throws IOException
+     */
+    public IrcRecorder(File file) throws IOException
+    {
+        this.file = file;
+        final boolean writeHeader = !file.exists() || file.length() == 0L;
+        this.out = new BufferedOutputStream(new FileOutputStream(file, true));
+        if (writeHeader)
+        {
+            out.write(MAGIC);
+        }
+        this.previousNanos = -1L;
+        this.recordCount = 0L;
+    }
+
+    /**
+     * Append a line to the recording
+     *
+     * @param receivedNanos
+     *            The System.nanoTime() value when the line was received
+     * @param line
+     */
+    public synchronized void record(long receivedNanos, String line)
+    {
+        if (out == null || line == null)
+        {
+            return;
+        }
+
+        final long delta = previousNanos < 0L ? 0L : Math.max(0L, receivedNanos - previousNanos);
+        previousNanos = receivedNanos;
+
+        try
+        {
+            final byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(out, delta);
+            writeVarLong(out, bytes.length);
+            out.write(bytes);
+            recordCount++;
+        }
+        catch (IOException e)
+        {
+            logger.error("Unable to record IRC line to " + file.getAbsolutePath() + ", recording stopped", e);
+            close();
+        }
+    }
+
+    /**
+     * Get the number of lines recorded this session
+     *
+     * @return record count
+     */
+    public synchronized long getRecordCount()
+    {
+        return recordCount;
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Flush and close the recording file. Further calls to record are ignored.
+     */
+    public synchronized void close()
+    {
+        if (out != null)
+        {
+            try
+            {
+                out.close();
+            }
+            catch (IOException e)
+            {
+                logger.error("Unable to close IRC recording " + file.getAbsolutePath(), e);
+            }
+            out = null;
+        }
+    }
+
+    /**
+     * Write an unsigned variable length long, seven bits at a time with the high bit marking that more bytes follow
+     *
+     * @param out
+     * @param value
+     * @throws IOException
+     */
+    private static void writeVarLong(OutputStream out, long value) throws IOException
+    {
+        while ((value & ~0x7FL) != 0L)
+        {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
@@ -0,0 +1,291 @@
+package com.glitchcog.fontificator.bot.replay;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+
+import com.glitchcog.fontificator.bot.ChatViewerBot;
+import com.glitchcog.fontificator.gui.chat.ChatPanel;
+import com.glitchcog.fontificator.gui.controls.panel.LogBox;
+
+/**
+ * Plays back a file written by the IrcRecorder through the ChatViewerBot line handling, at the recorded pace, at a
+ * multiple of it, or as fast as possible. When playback is done, it reports the ingestion latency percentiles and the
+ * end-to-end time from each line being received to the first glyph of its message being painted.
+ *
+ * @author Matt Yanos
+ */
+public class IrcReplayer implements Runnable
+{
+    private static final Logger logger = Logger.getLogger(IrcReplayer.class);
+
+    /**
+     * Any speed at or below this value means replay as fast as possible
+     */
+    public static final double MAX_SPEED = 0.0;
+
+    /**
+     * How long to wait for replayed messages to be painted before reporting the end-to-end timing
+     */
+    private static final long DRAIN_TIMEOUT_MILLIS = 10000L;
+
+    /**
+     * How long the end-to-end sample count must stay unchanged for the chat to be considered drained
+     */
+    private static final long DRAIN_IDLE_MILLIS = 1000L;
+
+    private static final long DRAIN_POLL_MILLIS = 250L;
+
+    private final File file;
+
+    private final ChatViewerBot bot;
+
+    private final ChatPanel chat;
+
+    private final LogBox logBox;
+
+    private final double speed;
+
+    private final LatencyStats ingestStats;
+
+    private final LatencyStats lagStats;
+
+    private final LatencyStats endToEndStats;
+
+    private volatile boolean halted;
+
+    private Thread thread;
+
+    /**
+     * Construct a replayer
+     *
+     * @param file
+     *            The recording to play back
+     * @param bot
+     *            The bot to feed the lines into
+     * @param chat
+     *            The chat panel to measure end-to-end timing on, or null to skip it
+     * @param logBox
+     *            Where to put the report, or null to only log it
+     * @param speed
+     *            The multiple of the recorded pace to play back at, or MAX_SPEED
+     */
+    public IrcReplayer(File file, ChatViewerBot bot, ChatPanel chat, LogBox logBox, double speed)
+    {
+        this.file = file;
+        this.bot = bot;
+        this.chat = chat;
+        this.logBox = logBox;
+        this.speed = speed;
+        this.ingestStats = new LatencyStats("Ingestion");
+        this.lagStats = new LatencyStats("Schedule lag");
+        this.endToEndStats = new LatencyStats("Received to painted");
+    }
+
+    /**
+     * Begin playback on its own thread
+     */
+    public synchronized void start()
+    {
+        if (thread == null)
+        {
+            halted = false;
+            thread = new Thread(this, "IRC Replay");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stop playback before the end of the recording. The report is still produced for the lines replayed so far.
+     */
+    public void halt()
+    {
+        halted = true;
+    }
+
+    public boolean isRunning()
+    {
+        return thread != null && thread.isAlive();
+    }
+
+    @Override
+    public void run()
+    {
+        if (chat != null)
+        {
+            chat.setDrawLatencyStats(endToEndStats);
+        }
+
+        long lineCount = 0L;
+        final long startNanos = System.nanoTime();
+        InputStream in = null;
+        try
+        {
+            in = new BufferedInputStream(new FileInputStream(file));
+            readMagic(in);
+
+            long recordedNanos = 0L;
+            while (!halted)
+            {
+                final long delta;
+                try
+                {
+                    delta = readVarLong(in);
+                }
+                catch (EOFException e)
+                {
+                    break;
+                }
+                final byte[] bytes = new byte[(int) readVarLong(in)];
+                new DataInputStream(in).readFully(bytes);
+                final String line = new String(bytes, StandardCharsets.UTF_8);
+
+                recordedNanos += delta;
+                long scheduledNanos = System.nanoTime();
+                if (speed > MAX_SPEED)
+                {
+                    scheduledNanos = startNanos + (long) (recordedNanos / speed);
+                    long waitNanos;
+                    while ((waitNanos = scheduledNanos - System.nanoTime()) > 0L && !halted)
+                    {
+                        LockSupport.parkNanos(waitNanos);
+                    }
+                }
+
+                final long receivedNanos = System.nanoTime();
+                bot.replayLine(line, receivedNanos);
+                ingestStats.add(System.nanoTime() - receivedNanos);
+                lagStats.add(receivedNanos - scheduledNanos);
+                lineCount++;
+            }
+        }
+        catch (IOException e)
+        {
+            logger.error("Unable to replay IRC recording " + file.getAbsolutePath(), e);
+            report("Error reading IRC recording " + file.getName() + ": " + e.getMessage());
+        }
+        finally
+        {
+            if (in != null)
+            {
+                try
+                {
+                    in.close();
+                }
+                catch (IOException e)
+                {
+                    logger.trace("Unable to close IRC recording", e);
+                }
+            }
+        }
+
+        final long elapsedNanos = System.nanoTime() - startNanos;
+
+        if (chat != null)
+        {
+            awaitDrain();
+            chat.setDrawLatencyStats(null);
+        }
+
+        final double elapsedSeconds = elapsedNanos / 1000000000.0;
+        report(String.format("Replayed %d lines from %s in %.3f s (%.1f lines/s) at %s", lineCount, file.getName(), elapsedSeconds, elapsedSeconds > 0.0 ? lineCount / elapsedSeconds : 0.0, speed > MAX_SPEED ? speed + "x" : "max speed"));
+        report(ingestStats.getSummary());
+        if (speed > MAX_SPEED)
+        {
+            report(lagStats.getSummary());
+        }
+        if (chat != null)
+        {
+            report(endToEndStats.getSummary());
+        }
+    }
+
+    /**
+     * Wait for the messages from the replay to finish being painted, up to a timeout, so the end-to-end timing includes
+     * them
+     */
+    private void awaitDrain()
+    {
+        final long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+        int lastCount = -1;
+        long lastChange = System.currentTimeMillis();
+        while (System.currentTimeMillis() < deadline && !halted)
+        {
+            final int count = endToEndStats.getCount();
+            if (count != lastCount)
+            {
+                lastCount = count;
+                lastChange = System.currentTimeMillis();
+            }
+            else if (System.currentTimeMillis() - lastChange >= DRAIN_IDLE_MILLIS)
+            {
+                return;
+            }
+
+            try
+            {
+                Thread.sleep(DRAIN_POLL_MILLIS);
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+        }
+    }
+
+    private void report(String line)
+    {
+        logger.info(line);
+        if (logBox != null)
+        {
+            logBox.log(line);
+        }
+    }
+
+    private static void readMagic(InputStream in) throws IOException
+    {
+        byte[] header = new byte[IrcRecorder.MAGIC.length];
+        new DataInputStream(in).readFully(header);
+        if (!Arrays.equals(header, IrcRecorder.MAGIC))
+        {
+            throw new IOException("Not an IRC recording file");
+        }
+    }
+
+    /**
+     * Read an unsigned variable length long as written by the IrcRecorder
+     *
+     * @param in
+     * @return value
+     * @throws IOException
+     *             EOFException if the stream ends before the value begins
+     */
+    private static long readVarLong(InputStream in) throws IOException
+    {
+        long value = 0L;
+        int shift = 0;
+        int b;
+        do
+        {
+            b = in.read();
+            if (b < 0)
+            {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        }
+        while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,94 @@
+package com.glitchcog.fontificator.bot.replay;
+
+import java.util.Arrays;
+
+/**
+ * Collects latency samples in nanoseconds and summarizes them as percentiles. Samples are kept in a growable primitive
+ * array so recording a sample on a hot path doesn't allocate per call.
+ *
+ * @author Matt Yanos
+ */
+public class LatencyStats
+{
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final String name;
+
+    private long[] samples;
+
+    private int count;
+
+    public LatencyStats(String name)
+    {
+        this.name = name;
+        this.samples = new long[INITIAL_CAPACITY];
+        this.count = 0;
+    }
+
+    /**
+     * Add a single sample
+     *
+     * @param nanos
+     */
+    public synchronized void add(long nanos)
+    {
+        if (count == samples.length)
+        {
+            samples = Arrays.copyOf(samples, samples.length * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    public synchronized int getCount()
+    {
+        return count;
+    }
+
+    public synchronized void clear()
+    {
+        count = 0;
+    }
+
+    /**
+     * Get the value at the specified percentile, using the nearest-rank method
+     *
+     * @param percentile
+     *            0 to 100
+     * @return nanos, or zero if there are no samples
+     */
+    public synchronized long getPercentile(double percentile)
+    {
+        if (count == 0)
+        {
+            return 0L;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return getPercentile(sorted, percentile);
+    }
+
+    /**
+     * Get a one line human readable summary of the samples, in milliseconds
+     *
+     * @return summary
+     */
+    public synchronized String getSummary()
+    {
+        if (count == 0)
+        {
+            return name + ": no samples";
+        }
+
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return String.format("%s: n=%d p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms", name, count, getPercentile(sorted, 50.0) / NANOS_PER_MILLI, getPercentile(sorted, 90.0) / NANOS_PER_MILLI, getPercentile(sorted, 99.0) / NANOS_PER_MILLI, sorted[count - 1] / NANOS_PER_MILLI);
+    }
+
+    private static long getPercentile(long[] sorted, double percentile)
+    {
+        final int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+}
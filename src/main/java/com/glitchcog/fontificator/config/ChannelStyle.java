@@ -0,0 +1,49 @@
+package com.glitchcog.fontificator.config;
+
+import java.awt.Color;
+
+/**
+ * The optional styling applied to every message that originates from a specific IRC channel, used to tell apart the
+ * channels when several are merged into one chat display
+ *
+ * @author Matt Yanos
+ */
+public class ChannelStyle
+{
+    /**
+     * The color in which to display the username, overriding any Twitch or palette color, or null to not override
+     */
+    private final Color color;
+
+    /**
+     * The text to put right before the username, or null for no prefix
+     */
+    private final String prefix;
+
+    public ChannelStyle(Color color, String prefix)
+    {
+        this.color = color;
+        this.prefix = prefix == null || prefix.isEmpty() ? null : prefix;
+    }
+
+    /**
+     * Get the color in which to display the username
+     *
+     * @return color or null if the color is not overridden for the channel
+     */
+    public Color getColor()
+    {
+        return color;
+    }
+
+    /**
+     * Get the text to put right before the username
+     *
+     * @return prefix or null if there is no prefix for the channel
+     */
+    public String getPrefix()
+    {
+        return prefix;
+    }
+
+}
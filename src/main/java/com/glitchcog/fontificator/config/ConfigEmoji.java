@@ -1,7 +1,10 @@
 package com.glitchcog.fontificator.config;
 
 import java.awt.Color;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Properties;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 
@@ -104,14 +107,14 @@ public class ConfigEmoji extends Config
     private Boolean ffzCacheEnabled;
 
     /**
-     * The loaded Twitch badges channel, or null if none is loaded
+     * The channels the Twitch badges have been loaded for
      */
-    private String twitchBadgesLoadedChannel;
+    private Set<String> twitchBadgesLoadedChannels;
 
     /**
-     * The loaded FrankerFaceZ badges channel, or null if none is loaded
+     * The channels the FrankerFaceZ badges have been loaded for
      */
-    private String ffzBadgesLoadedChannel;
+    private Set<String> ffzBadgesLoadedChannels;
 
     /**
      * Whether the Twitch emotes have been loaded
@@ -124,9 +127,9 @@ public class ConfigEmoji extends Config
     private Boolean twitchCached;
 
     /**
-     * The loaded FrankerFaceZ channel, or null if none is loaded
+     * The channels the FrankerFaceZ channel emotes have been loaded for
      */
-    private String ffzLoadedChannel;
+    private Set<String> ffzLoadedChannels;
 
     /**
      * Whether the FrankerFaceZ global emotes are loaded
@@ -149,9 +152,9 @@ public class ConfigEmoji extends Config
     private Boolean bttvCacheEnabled;
 
     /**
-     * The loaded BetterTTV channel, or null if none is loaded
+     * The channels the BetterTTV channel emotes have been loaded for
      */
-    private String bttvLoadedChannel;
+    private Set<String> bttvLoadedChannels;
 
     /**
      * Whether the BetterTTV global emotes are loaded
@@ -192,7 +195,7 @@ public class ConfigEmoji extends Config
         ffzCacheEnabled = null;
         bttvEnabled = null;
         bttvCacheEnabled = null;
-        bttvLoadedChannel = null;
+        bttvLoadedChannels = newChannelSet();
         bttvGlobalLoaded = null;
         bttvCached = null;
         twitterEnabled = null;
@@ -395,13 +398,13 @@ public class ConfigEmoji extends Config
             switch (type)
             {
             case FRANKERFACEZ_CHANNEL:
-                return ffzEnabled != null && ffzEnabled && ffzLoadedChannel != null;
+                return ffzEnabled != null && ffzEnabled && !ffzLoadedChannels.isEmpty();
             case FRANKERFACEZ_GLOBAL:
                 return ffzEnabled != null && ffzEnabled && ffzGlobalLoaded != null && ffzGlobalLoaded;
             case FRANKERFACEZ_BADGE:
-                return ffzBadgesEnabled != null && ffzBadgesEnabled && ffzBadgesLoadedChannel != null;
+                return ffzBadgesEnabled != null && ffzBadgesEnabled && !ffzBadgesLoadedChannels.isEmpty();
             case BETTER_TTV_CHANNEL:
-                return bttvEnabled != null && bttvEnabled && bttvLoadedChannel != null;
+                return bttvEnabled != null && bttvEnabled && !bttvLoadedChannels.isEmpty();
             case BETTER_TTV_GLOBAL:
                 return bttvEnabled != null && bttvEnabled && bttvGlobalLoaded != null && bttvGlobalLoaded;
             // case TWITCH_V2:
@@ -409,7 +412,7 @@ public class ConfigEmoji extends Config
             //     // Only V2 and V3. Chat V1 doesn't use the normal EmojiTypeMap, so it doesn't need to be checked. They're loaded on the fly.
             //     return ControlPanelEmoji.TWITCH_EMOTE_VERSION.equals(type) && twitchEnabled != null && twitchEnabled && twitchLoaded != null && twitchLoaded;
             case TWITCH_BADGE:
-                return twitchBadgesEnabled != null && twitchBadgesEnabled && twitchBadgesLoadedChannel != null;
+                return twitchBadgesEnabled != null && twitchBadgesEnabled && !twitchBadgesLoadedChannels.isEmpty();
             case TWITTER_EMOJI:
                 return twitterEnabled;
             default:
@@ -504,10 +507,10 @@ public class ConfigEmoji extends Config
         result = prime * result + ((twitchBadgesEnabled == null) ? 0 : twitchBadgesEnabled.hashCode());
         result = prime * result + ((ffzBadgesEnabled == null) ? 0 : ffzBadgesEnabled.hashCode());
         result = prime * result + ((ffzEnabled == null) ? 0 : ffzEnabled.hashCode());
-        result = prime * result + ((ffzLoadedChannel == null) ? 0 : ffzLoadedChannel.hashCode());
+        result = prime * result + ((ffzLoadedChannels == null) ? 0 : ffzLoadedChannels.hashCode());
         result = prime * result + ((ffzGlobalLoaded == null) ? 0 : ffzGlobalLoaded.hashCode());
         result = prime * result + ((bttvEnabled == null) ? 0 : bttvEnabled.hashCode());
-        result = prime * result + ((bttvLoadedChannel == null) ? 0 : bttvLoadedChannel.hashCode());
+        result = prime * result + ((bttvLoadedChannels == null) ? 0 : bttvLoadedChannels.hashCode());
         result = prime * result + ((bttvGlobalLoaded == null) ? 0 : bttvGlobalLoaded.hashCode());
         result = prime * result + ((emojiScale == null) ? 0 : emojiScale.hashCode());
         result = prime * result + ((emojiScaleToLine == null) ? 0 : emojiScaleToLine.hashCode());
@@ -516,7 +519,7 @@ public class ConfigEmoji extends Config
         result = prime * result + ((badgeHeightOffset == null) ? 0 : badgeHeightOffset.hashCode());
         result = prime * result + ((twitchEnabled == null) ? 0 : twitchEnabled.hashCode());
         result = prime * result + ((twitchLoaded == null) ? 0 : twitchLoaded.hashCode());
-        result = prime * result + ((twitchBadgesLoadedChannel == null) ? 0 : twitchBadgesLoadedChannel.hashCode());
+        result = prime * result + ((twitchBadgesLoadedChannels == null) ? 0 : twitchBadgesLoadedChannels.hashCode());
         return result;
     }
 
@@ -584,14 +587,14 @@ public class ConfigEmoji extends Config
         {
             return false;
         }
-        if (ffzLoadedChannel == null)
+        if (ffzLoadedChannels == null)
         {
-            if (other.ffzLoadedChannel != null)
+            if (other.ffzLoadedChannels != null)
             {
                 return false;
             }
         }
-        else if (!ffzLoadedChannel.equals(other.ffzLoadedChannel))
+        else if (!ffzLoadedChannels.equals(other.ffzLoadedChannels))
         {
             return false;
         }
@@ -617,14 +620,14 @@ public class ConfigEmoji extends Config
         {
             return false;
         }
-        if (bttvLoadedChannel == null)
+        if (bttvLoadedChannels == null)
         {
-            if (other.bttvLoadedChannel != null)
+            if (other.bttvLoadedChannels != null)
             {
                 return false;
             }
         }
-        else if (!bttvLoadedChannel.equals(other.bttvLoadedChannel))
+        else if (!bttvLoadedChannels.equals(other.bttvLoadedChannels))
         {
             return false;
         }
@@ -716,14 +719,14 @@ public class ConfigEmoji extends Config
         {
             return false;
         }
-        if (twitchBadgesLoadedChannel == null)
+        if (twitchBadgesLoadedChannels == null)
         {
-            if (other.twitchBadgesLoadedChannel != null)
+            if (other.twitchBadgesLoadedChannels != null)
             {
                 return false;
             }
         }
-        else if (!twitchBadgesLoadedChannel.equals(other.twitchBadgesLoadedChannel))
+        else if (!twitchBadgesLoadedChannels.equals(other.twitchBadgesLoadedChannels))
         {
             return false;
         }
@@ -761,12 +764,12 @@ public class ConfigEmoji extends Config
         this.twitchEnabled = copy.twitchEnabled;
         this.ffzEnabled = copy.ffzEnabled;
         this.twitchLoaded = copy.twitchLoaded;
-        this.twitchBadgesLoadedChannel = copy.twitchBadgesLoadedChannel;
-        this.ffzLoadedChannel = copy.ffzLoadedChannel;
+        this.twitchBadgesLoadedChannels = copyChannelSet(copy.twitchBadgesLoadedChannels);
+        this.ffzLoadedChannels = copyChannelSet(copy.ffzLoadedChannels);
         this.ffzGlobalLoaded = copy.ffzGlobalLoaded;
         this.bttvEnabled = copy.bttvEnabled;
         this.bttvCacheEnabled = copy.bttvCacheEnabled;
-        this.bttvLoadedChannel = copy.bttvLoadedChannel;
+        this.bttvLoadedChannels = copyChannelSet(copy.bttvLoadedChannels);
         this.bttvGlobalLoaded = copy.bttvGlobalLoaded;
         this.bttvCached = copy.bttvCached;
         this.twitterEnabled = copy.twitterEnabled;
@@ -819,7 +822,7 @@ public class ConfigEmoji extends Config
      */
     public boolean isTwitchBadgesLoaded(String testChannel)
     {
-        return twitchBadgesLoadedChannel != null && twitchBadgesLoadedChannel.equals(testChannel);
+        return testChannel != null && twitchBadgesLoadedChannels.contains(testChannel);
     }
 
     /**
@@ -829,29 +832,29 @@ public class ConfigEmoji extends Config
      */
     public boolean isFfzBadgesLoaded(String testChannel)
     {
-        return ffzBadgesLoadedChannel != null && ffzBadgesLoadedChannel.equals(testChannel);
+        return testChannel != null && ffzBadgesLoadedChannels.contains(testChannel);
     }
 
     /**
-     * Set whether the Twitch badges have been loaded
+     * Mark the Twitch badges as loaded for a channel
      * 
-     * @param twitchLoadedChannel
-     *            from which the Twitch emotes are loaded
+     * @param twitchBadgesLoadedChannel
+     *            from which the Twitch badges are loaded
      */
     public void setTwitchBadgesLoaded(String twitchBadgesLoadedChannel)
     {
-        this.twitchBadgesLoadedChannel = twitchBadgesLoadedChannel;
+        addChannel(twitchBadgesLoadedChannels, twitchBadgesLoadedChannel);
     }
 
     /**
-     * Set whether the FrankerFaceZ badges have been loaded
+     * Mark the FrankerFaceZ badges as loaded for a channel
      * 
-     * @param ffzLoadedChannel
-     *            from which the FrankerFaceZ emotes are loaded
+     * @param ffzBadgesLoadedChannel
+     *            from which the FrankerFaceZ badges are loaded
      */
     public void setFfzBadgesLoaded(String ffzBadgesLoadedChannel)
     {
-        this.ffzBadgesLoadedChannel = ffzBadgesLoadedChannel;
+        addChannel(ffzBadgesLoadedChannels, ffzBadgesLoadedChannel);
     }
 
     /**
@@ -861,18 +864,18 @@ public class ConfigEmoji extends Config
      */
     public boolean isFfzLoaded(String testChannel)
     {
-        return ffzLoadedChannel != null && ffzLoadedChannel.equals(testChannel);
+        return testChannel != null && ffzLoadedChannels.contains(testChannel);
     }
 
     /**
-     * Set whether the FrankerFaceZ emotes have been loaded
+     * Mark the FrankerFaceZ emotes as loaded for a channel
      * 
      * @param ffzLoadedChannel
      *            from which the FrankerFaceZ emotes are loaded
      */
     public void setFfzLoaded(String ffzLoadedChannel)
     {
-        this.ffzLoadedChannel = ffzLoadedChannel;
+        addChannel(ffzLoadedChannels, ffzLoadedChannel);
     }
 
     /**
@@ -921,14 +924,19 @@ public class ConfigEmoji extends Config
         props.setProperty(FontificatorProperties.KEY_EMOJI_BTTV_ENABLE, Boolean.toString(bttvEnabled));
     }
 
-    public String getBttvLoadedChannel()
+    /**
+     * Get the channels the BetterTTV channel emotes have been loaded for
+     * 
+     * @return channels
+     */
+    public Set<String> getBttvLoadedChannels()
     {
-        return bttvLoadedChannel;
+        return Collections.unmodifiableSet(bttvLoadedChannels);
     }
 
     public void setBttvLoadedChannel(String bttvLoadedChannel)
     {
-        this.bttvLoadedChannel = bttvLoadedChannel;
+        addChannel(bttvLoadedChannels, bttvLoadedChannel);
     }
 
     public void setBttvGlobalLoaded(Boolean bttvGlobalLoaded)
@@ -938,12 +946,12 @@ public class ConfigEmoji extends Config
 
     public boolean isBttvLoaded(String testChannel)
     {
-        return bttvLoadedChannel != null && bttvLoadedChannel.equals(testChannel);
+        return testChannel != null && bttvLoadedChannels.contains(testChannel);
     }
 
     public void setBttfLoaded(String bttvLoadedChannel)
     {
-        this.bttvLoadedChannel = bttvLoadedChannel;
+        addChannel(bttvLoadedChannels, bttvLoadedChannel);
     }
 
     public Boolean isBttvGlobalLoaded()
@@ -992,11 +1000,11 @@ public class ConfigEmoji extends Config
 
         if (EmojiType.TWITCH_BADGE.equals(emojiType))
         {
-            this.twitchBadgesLoadedChannel = job.getChannel();
+            addChannel(twitchBadgesLoadedChannels, job.getChannel());
         }
         else if (EmojiType.FRANKERFACEZ_BADGE.equals(emojiType))
         {
-            this.ffzBadgesLoadedChannel = job.getChannel();
+            addChannel(ffzBadgesLoadedChannels, job.getChannel());
         }
         else if (emojiType.isTwitchEmote()) // This would also include TWITCH_BADGE, but it's already checked above
         {
@@ -1015,7 +1023,7 @@ public class ConfigEmoji extends Config
             {
                 if (emojiType == EmojiType.FRANKERFACEZ_CHANNEL)
                 {
-                    this.ffzLoadedChannel = job.getChannel();
+                    addChannel(ffzLoadedChannels, job.getChannel());
                 }
                 else if (emojiType == EmojiType.FRANKERFACEZ_GLOBAL)
                 {
@@ -1033,7 +1041,7 @@ public class ConfigEmoji extends Config
             {
                 if (emojiType == EmojiType.BETTER_TTV_CHANNEL)
                 {
-                    this.bttvLoadedChannel = job.getChannel();
+                    addChannel(bttvLoadedChannels, job.getChannel());
                 }
                 else if (emojiType == EmojiType.BETTER_TTV_GLOBAL)
                 {
@@ -1055,12 +1063,12 @@ public class ConfigEmoji extends Config
     {
         this.twitchLoaded = false;
         this.twitchCached = false;
-        this.twitchBadgesLoadedChannel = null;
-        this.ffzBadgesLoadedChannel = null;
-        this.ffzLoadedChannel = null;
+        this.twitchBadgesLoadedChannels = newChannelSet();
+        this.ffzBadgesLoadedChannels = newChannelSet();
+        this.ffzLoadedChannels = newChannelSet();
         this.ffzGlobalLoaded = false;
         this.ffzCached = null;
-        this.bttvLoadedChannel = null;
+        this.bttvLoadedChannels = newChannelSet();
         this.bttvGlobalLoaded = false;
         this.bttvCached = null;
     }
@@ -1073,10 +1081,39 @@ public class ConfigEmoji extends Config
     public boolean isAnyWorkDone()
     {
         // @formatter:off
-        return twitchBadgesLoadedChannel != null || isTwitchLoaded() || isTwitchCached() || 
-               ffzBadgesLoadedChannel != null || ffzLoadedChannel != null || isFfzGlobalLoaded() || isFfzCached() || 
-               bttvLoadedChannel != null || isBttvGlobalLoaded() || isBttvCached();
+        return !twitchBadgesLoadedChannels.isEmpty() || isTwitchLoaded() || isTwitchCached() || 
+               !ffzBadgesLoadedChannels.isEmpty() || !ffzLoadedChannels.isEmpty() || isFfzGlobalLoaded() || isFfzCached() || 
+               !bttvLoadedChannels.isEmpty() || isBttvGlobalLoaded() || isBttvCached();
         // @formatter:on
     }
 
+    /**
+     * Make a set for the channels a type of emoji has been loaded for, which is read while messages are being built
+     * and added to as loading jobs finish
+     * 
+     * @return channel set
+     */
+    private static Set<String> newChannelSet()
+    {
+        return Collections.synchronizedSet(new HashSet<String>());
+    }
+
+    private static Set<String> copyChannelSet(Set<String> channels)
+    {
+        Set<String> copy = newChannelSet();
+        if (channels != null)
+        {
+            copy.addAll(channels);
+        }
+        return copy;
+    }
+
+    private static void addChannel(Set<String> channels, String channel)
+    {
+        if (channel != null)
+        {
+            channels.add(channel);
+        }
+    }
+
 }
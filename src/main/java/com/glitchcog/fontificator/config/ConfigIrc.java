@@ -1,5 +1,11 @@
 package com.glitchcog.fontificator.config;
 
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import com.glitchcog.fontificator.config.loadreport.LoadConfigReport;
@@ -11,6 +17,16 @@ import com.glitchcog.fontificator.config.loadreport.LoadConfigReport;
  */
 public class ConfigIrc extends Config
 {
+    /**
+     * Separates the channels in the channel value, and the channel entries in the channel styles value
+     */
+    public static final String CHANNEL_SEPARATOR = ",";
+
+    /**
+     * Separates the channel, color, and prefix of a single channel style entry
+     */
+    public static final String CHANNEL_STYLE_SEPARATOR = ":";
+
     private String username;
 
     private String host;
@@ -19,8 +35,21 @@ public class ConfigIrc extends Config
 
     private String authorization;
 
+    /**
+     * One channel, or several channels separated by commas, all of which are joined over the same connection
+     */
     private String channel;
 
+    /**
+     * The raw channel styles value, in the form channel:color:prefix, separated by commas
+     */
+    private String channelStyles;
+
+    /**
+     * The parsed channel styles, keyed off of the lowercase channel name with no hash
+     */
+    private Map<String, ChannelStyle> channelStyleMap = new HashMap<String, ChannelStyle>();
+
     private Boolean anonymous;
 
     private Boolean autoReconnect;
@@ -34,6 +63,8 @@ public class ConfigIrc extends Config
         authorization = null;
         anonymous = null;
         channel = null;
+        channelStyles = null;
+        channelStyleMap.clear();
         setAutoReconnect(null);
     }
 
@@ -59,6 +90,7 @@ public class ConfigIrc extends Config
         final String propChan = props.getProperty(FontificatorProperties.KEY_IRC_CHAN);
         final String propHost = props.getProperty(FontificatorProperties.KEY_IRC_HOST);
         final String propPort = props.getProperty(FontificatorProperties.KEY_IRC_PORT);
+        final String propStyles = props.getProperty(FontificatorProperties.KEY_IRC_CHAN_STYLES);
 
         if (propUser != null && !propUser.isEmpty())
         {
@@ -85,6 +117,12 @@ public class ConfigIrc extends Config
             this.port = propPort;
         }
 
+        if (propStyles != null && !propStyles.isEmpty())
+        {
+            this.channelStyles = propStyles;
+            this.channelStyleMap = parseChannelStyles(propStyles);
+        }
+
         setAutoReconnect(!Boolean.FALSE.toString().equalsIgnoreCase(props.getProperty(FontificatorProperties.KEY_IRC_AUTO_RECONNECT)));
 
         return report;
@@ -135,21 +173,54 @@ public class ConfigIrc extends Config
         props.setProperty(FontificatorProperties.KEY_IRC_AUTH, authorization);
     }
 
+    /**
+     * Get the primary channel, the first one listed, with a hash ('#')
+     * 
+     * @return primary channel
+     */
     public String getChannel()
     {
-        if (channel != null && !channel.startsWith("#"))
+        List<String> channels = getChannels();
+        return channels.isEmpty() ? channel : channels.get(0);
+    }
+
+    public String getChannelNoHash()
+    {
+        return getChannel() == null ? null : getChannel().length() < 1 ? "" : getChannel().substring(1);
+    }
+
+    /**
+     * Get every channel to join, each with a hash ('#')
+     * 
+     * @return channels
+     */
+    public List<String> getChannels()
+    {
+        if (channel == null)
         {
-            return "#" + channel;
+            return Collections.emptyList();
         }
-        else
+
+        List<String> channels = new ArrayList<String>();
+        for (String chan : channel.split(CHANNEL_SEPARATOR))
         {
-            return channel;
+            chan = chan.trim();
+            if (!chan.isEmpty())
+            {
+                channels.add(chan.startsWith("#") ? chan : "#" + chan);
+            }
         }
+        return channels;
     }
 
-    public String getChannelNoHash()
+    /**
+     * Get the channel value as it was entered, which may be a list of channels
+     * 
+     * @return channel text
+     */
+    public String getChannelText()
     {
-        return getChannel() == null ? null : getChannel().length() < 1 ? "" : getChannel().substring(1);
+        return channel;
     }
 
     public void setChannel(String channel)
@@ -158,6 +229,80 @@ public class ConfigIrc extends Config
         props.setProperty(FontificatorProperties.KEY_IRC_CHAN, channel);
     }
 
+    public String getChannelStyles()
+    {
+        return channelStyles;
+    }
+
+    public void setChannelStyles(String channelStyles)
+    {
+        this.channelStyles = channelStyles;
+        this.channelStyleMap = parseChannelStyles(channelStyles);
+        props.setProperty(FontificatorProperties.KEY_IRC_CHAN_STYLES, channelStyles == null ? "" : channelStyles);
+    }
+
+    /**
+     * Get the style for messages from the specified channel
+     * 
+     * @param chan
+     *            The channel, with or without the hash ('#')
+     * @return style or null if the channel isn't styled
+     */
+    public ChannelStyle getChannelStyle(String chan)
+    {
+        if (chan == null)
+        {
+            return null;
+        }
+        return channelStyleMap.get(stripHash(chan).toLowerCase());
+    }
+
+    private static String stripHash(String chan)
+    {
+        return chan.startsWith("#") ? chan.substring(1) : chan;
+    }
+
+    /**
+     * Parse the channel styles value. Each entry is channel:color:prefix, with the color as a hex value and the prefix
+     * optional. Entries that can't be parsed are skipped.
+     * 
+     * @param styles
+     * @return channel style map
+     */
+    private static Map<String, ChannelStyle> parseChannelStyles(String styles)
+    {
+        Map<String, ChannelStyle> styleMap = new HashMap<String, ChannelStyle>();
+        if (styles == null)
+        {
+            return styleMap;
+        }
+
+        for (String entry : styles.split(CHANNEL_SEPARATOR))
+        {
+            String[] parts = entry.split(CHANNEL_STYLE_SEPARATOR, 3);
+            final String chan = stripHash(parts[0].trim()).toLowerCase();
+            if (chan.isEmpty())
+            {
+                continue;
+            }
+
+            Color color = null;
+            if (parts.length > 1 && !parts[1].trim().isEmpty())
+            {
+                color = ColorResolver.resolve(parts[1].trim());
+                if (color == null)
+                {
+                    continue;
+                }
+            }
+            final String prefix = parts.length > 2 ? parts[2] : null;
+
+            styleMap.put(chan, new ChannelStyle(color, prefix));
+        }
+
+        return styleMap;
+    }
+
     public Boolean isAnonymous()
     {
         return anonymous;
@@ -32,6 +32,15 @@ public class ConfigMessage extends Config
     public static final int MIN_MESSAGE_EXPIRATION = 0;
     public static final int MAX_MESSAGE_EXPIRATION = 720;
 
+    public static final int MIN_INGEST_CAPACITY = 16;
+    public static final int MAX_INGEST_CAPACITY = 10000;
+    public static final int DEFAULT_INGEST_CAPACITY = 1000;
+    public static final IngestPolicy DEFAULT_INGEST_POLICY = IngestPolicy.DROP_OLDEST;
+
+    public static final int MIN_DEDUP_WINDOW = 1;
+    public static final int MAX_DEDUP_WINDOW = 300;
+    public static final int DEFAULT_DEDUP_WINDOW = 30;
+
     public static final String USERNAME_REPLACE = "%user%";
     public static final String DEFAULT_CONTENT_BREAKER = ": ";
 
@@ -113,6 +122,27 @@ public class ConfigMessage extends Config
      */
     private MessageCasing messageCasing;
 
+    /**
+     * What to do with incoming messages when the ingestion queue between the message sources and the chat is full
+     */
+    private IngestPolicy ingestPolicy;
+
+    /**
+     * The number of incoming messages that can wait to be added to the chat before the ingest policy kicks in
+     */
+    private Integer ingestCapacity;
+
+    /**
+     * Whether to drop messages that have already been received, as when a relay retries or a message arrives from both
+     * IRC and Social Stream
+     */
+    private Boolean dedupEnabled;
+
+    /**
+     * How many seconds a message is remembered for catching duplicates of it
+     */
+    private Integer dedupWindow;
+
     @Override
     public void reset()
     {
@@ -130,6 +160,10 @@ public class ConfigMessage extends Config
         this.caseResolutionType = null;
         this.specifyCaseAllowed = null;
         this.messageCasing = null;
+        this.ingestPolicy = null;
+        this.ingestCapacity = null;
+        this.dedupEnabled = null;
+        this.dedupWindow = null;
     }
 
     public LoadConfigReport validateTimeFormat(LoadConfigReport report, String timeFormatStr)
@@ -157,11 +191,14 @@ public class ConfigMessage extends Config
         return report;
     }
 
-    public LoadConfigReport validateStrings(LoadConfigReport report, String userFormatStr, String timeFormatStr, String contentBreakStr, String queueSizeStr, String messageSpeedStr, String expirationTimerStr, String hideEmptyBorderBool, String hideEmptyBgBool, String caseTypeStr, String joinBool, String userBool, String timestampBool, String specifyCaseBool, String msgCasingStr)
+    public LoadConfigReport validateStrings(LoadConfigReport report, String userFormatStr, String timeFormatStr, String contentBreakStr, String queueSizeStr, String messageSpeedStr, String expirationTimerStr, String hideEmptyBorderBool, String hideEmptyBgBool, String caseTypeStr, String joinBool, String userBool, String timestampBool, String specifyCaseBool, String msgCasingStr, String ingestPolicyStr, String ingestCapacityStr, String dedupBool, String dedupWindowStr)
     {
         validateStrings(report, timeFormatStr, queueSizeStr, messageSpeedStr, expirationTimerStr);
 
-        validateBooleanStrings(report, joinBool, userBool, timestampBool, specifyCaseBool, hideEmptyBorderBool, hideEmptyBgBool);
+        validateIntegerWithLimitString(FontificatorProperties.KEY_MESSAGE_INGEST_CAPACITY, ingestCapacityStr, MIN_INGEST_CAPACITY, MAX_INGEST_CAPACITY, report);
+        validateIntegerWithLimitString(FontificatorProperties.KEY_MESSAGE_DEDUP_WINDOW, dedupWindowStr, MIN_DEDUP_WINDOW, MAX_DEDUP_WINDOW, report);
+
+        validateBooleanStrings(report, joinBool, userBool, timestampBool, specifyCaseBool, hideEmptyBorderBool, hideEmptyBgBool, dedupBool);
 
         if (!UsernameCaseResolutionType.contains(caseTypeStr))
         {
@@ -173,6 +210,11 @@ public class ConfigMessage extends Config
             report.addError("Value of key \"" + FontificatorProperties.KEY_MESSAGE_CASING + "\" is invalid.", LoadConfigErrorType.PARSE_ERROR_ENUM);
         }
 
+        if (!IngestPolicy.contains(ingestPolicyStr))
+        {
+            report.addError("Value of key \"" + FontificatorProperties.KEY_MESSAGE_INGEST_POLICY + "\" is invalid.", LoadConfigErrorType.PARSE_ERROR_ENUM);
+        }
+
         return report;
     }
 
@@ -203,7 +245,11 @@ public class ConfigMessage extends Config
             final String expTimerStr = props.getProperty(FontificatorProperties.KEY_MESSAGE_EXPIRATION_TIME);
             final String hideEmptyBorderStr = props.getProperty(FontificatorProperties.KEY_MESSAGE_HIDE_EMPTY_BORDER);
             final String hideEmptyBgStr = props.getProperty(FontificatorProperties.KEY_MESSAGE_HIDE_EMPTY_BACKGROUND);
-            validateStrings(report, usrString, tfString, cbString, quSizeStr, msgSpeedStr, expTimerStr, hideEmptyBorderStr, hideEmptyBgStr, caseTpStr, joinBool, userBool, timestampBool, specifyCaseBool, msgCaseStr);
+            final String ingestPolicyStr = props.getProperty(FontificatorProperties.KEY_MESSAGE_INGEST_POLICY);
+            final String ingestCapacityStr = props.getProperty(FontificatorProperties.KEY_MESSAGE_INGEST_CAPACITY);
+            final String dedupBool = props.getProperty(FontificatorProperties.KEY_MESSAGE_DEDUP);
+            final String dedupWindowStr = props.getProperty(FontificatorProperties.KEY_MESSAGE_DEDUP_WINDOW);
+            validateStrings(report, usrString, tfString, cbString, quSizeStr, msgSpeedStr, expTimerStr, hideEmptyBorderStr, hideEmptyBgStr, caseTpStr, joinBool, userBool, timestampBool, specifyCaseBool, msgCaseStr, ingestPolicyStr, ingestCapacityStr, dedupBool, dedupWindowStr);
 
             // Fill the values
             if (report.isErrorFree())
@@ -222,6 +268,10 @@ public class ConfigMessage extends Config
                 this.caseResolutionType = UsernameCaseResolutionType.valueOf(caseTpStr);
                 this.specifyCaseAllowed = evaluateBooleanString(props, FontificatorProperties.KEY_MESSAGE_CASE_SPECIFY, report);
                 this.messageCasing = MessageCasing.valueOf(msgCaseStr);
+                this.ingestPolicy = IngestPolicy.valueOf(ingestPolicyStr);
+                this.ingestCapacity = evaluateIntegerString(props, FontificatorProperties.KEY_MESSAGE_INGEST_CAPACITY, report);
+                this.dedupEnabled = evaluateBooleanString(props, FontificatorProperties.KEY_MESSAGE_DEDUP, report);
+                this.dedupWindow = evaluateIntegerString(props, FontificatorProperties.KEY_MESSAGE_DEDUP_WINDOW, report);
             }
         }
 
@@ -445,6 +495,70 @@ public class ConfigMessage extends Config
         props.setProperty(FontificatorProperties.KEY_MESSAGE_CASING, messageCasing.name());
     }
 
+    /**
+     * Get what to do with incoming messages when the ingestion queue is full
+     * 
+     * @return ingestPolicy
+     */
+    public IngestPolicy getIngestPolicy()
+    {
+        return ingestPolicy;
+    }
+
+    public void setIngestPolicy(IngestPolicy ingestPolicy)
+    {
+        this.ingestPolicy = ingestPolicy;
+        props.setProperty(FontificatorProperties.KEY_MESSAGE_INGEST_POLICY, ingestPolicy.name());
+    }
+
+    /**
+     * Get the number of incoming messages that can wait to be added to the chat
+     * 
+     * @return ingestCapacity
+     */
+    public Integer getIngestCapacity()
+    {
+        return ingestCapacity;
+    }
+
+    public void setIngestCapacity(int ingestCapacity)
+    {
+        this.ingestCapacity = ingestCapacity;
+        props.setProperty(FontificatorProperties.KEY_MESSAGE_INGEST_CAPACITY, Integer.toString(ingestCapacity));
+    }
+
+    /**
+     * Get whether to drop messages that have already been received
+     * 
+     * @return dedupEnabled
+     */
+    public Boolean isDedupEnabled()
+    {
+        return dedupEnabled;
+    }
+
+    public void setDedupEnabled(Boolean dedupEnabled)
+    {
+        this.dedupEnabled = dedupEnabled;
+        props.setProperty(FontificatorProperties.KEY_MESSAGE_DEDUP, Boolean.toString(dedupEnabled));
+    }
+
+    /**
+     * Get how many seconds a message is remembered for catching duplicates of it
+     * 
+     * @return dedupWindow
+     */
+    public Integer getDedupWindow()
+    {
+        return dedupWindow;
+    }
+
+    public void setDedupWindow(int dedupWindow)
+    {
+        this.dedupWindow = dedupWindow;
+        props.setProperty(FontificatorProperties.KEY_MESSAGE_DEDUP_WINDOW, Integer.toString(dedupWindow));
+    }
+
     @Override
     public int hashCode()
     {
@@ -457,6 +571,10 @@ public class ConfigMessage extends Config
         result = prime * result + ((timestamps == null) ? 0 : timestamps.hashCode());
         result = prime * result + ((usernames == null) ? 0 : usernames.hashCode());
         result = prime * result + ((messageCasing == null) ? 0 : messageCasing.hashCode());
+        result = prime * result + ((ingestPolicy == null) ? 0 : ingestPolicy.hashCode());
+        result = prime * result + ((ingestCapacity == null) ? 0 : ingestCapacity.hashCode());
+        result = prime * result + ((dedupEnabled == null) ? 0 : dedupEnabled.hashCode());
+        result = prime * result + ((dedupWindow == null) ? 0 : dedupWindow.hashCode());
         return result;
     }
 
@@ -514,6 +632,29 @@ public class ConfigMessage extends Config
         }
         else if (!usernames.equals(other.usernames))
             return false;
+        if (ingestPolicy != other.ingestPolicy)
+            return false;
+        if (ingestCapacity == null)
+        {
+            if (other.ingestCapacity != null)
+                return false;
+        }
+        else if (!ingestCapacity.equals(other.ingestCapacity))
+            return false;
+        if (dedupEnabled == null)
+        {
+            if (other.dedupEnabled != null)
+                return false;
+        }
+        else if (!dedupEnabled.equals(other.dedupEnabled))
+            return false;
+        if (dedupWindow == null)
+        {
+            if (other.dedupWindow != null)
+                return false;
+        }
+        else if (!dedupWindow.equals(other.dedupWindow))
+            return false;
         return true;
     }
 
@@ -532,6 +673,10 @@ public class ConfigMessage extends Config
         this.timestamps = copy.timestamps;
         this.usernames = copy.usernames;
         this.messageCasing = copy.messageCasing;
+        this.ingestPolicy = copy.ingestPolicy;
+        this.ingestCapacity = copy.ingestCapacity;
+        this.dedupEnabled = copy.dedupEnabled;
+        this.dedupWindow = copy.dedupWindow;
     }
 
 }
@@ -65,8 +65,9 @@ public class FontificatorProperties extends Properties
     public static final String KEY_IRC_ANON = "ircAnon";
     public static final String KEY_IRC_CHAN = "ircChannel";
     public static final String KEY_IRC_AUTO_RECONNECT = "ircAutoReconnect";
+    public static final String KEY_IRC_CHAN_STYLES = "ircChannelStyles";
 
-    public static final String[] IRC_KEYS = new String[] { KEY_IRC_USER, KEY_IRC_HOST, KEY_IRC_PORT, KEY_IRC_AUTH, KEY_IRC_ANON, KEY_IRC_CHAN, KEY_IRC_AUTO_RECONNECT };
+    public static final String[] IRC_KEYS = new String[] { KEY_IRC_USER, KEY_IRC_HOST, KEY_IRC_PORT, KEY_IRC_AUTH, KEY_IRC_ANON, KEY_IRC_CHAN, KEY_IRC_AUTO_RECONNECT, KEY_IRC_CHAN_STYLES };
 
     public static final String KEY_FONT_FILE_BORDER = "fontBorderFile";
     public static final String KEY_FONT_FILE_FONT = "fontFile";
@@ -143,8 +144,12 @@ public class FontificatorProperties extends Properties
     public static final String KEY_MESSAGE_CASE_TYPE = "messageUserCase";
     public static final String KEY_MESSAGE_CASE_SPECIFY = "messageUserCaseSpecify";
     public static final String KEY_MESSAGE_CASING = "messageCasing";
+    public static final String KEY_MESSAGE_INGEST_POLICY = "messageIngestPolicy";
+    public static final String KEY_MESSAGE_INGEST_CAPACITY = "messageIngestCapacity";
+    public static final String KEY_MESSAGE_DEDUP = "messageDedup";
+    public static final String KEY_MESSAGE_DEDUP_WINDOW = "messageDedupWindow";
 
-    public static final String[] MESSAGE_KEYS = new String[] { KEY_MESSAGE_JOIN, KEY_MESSAGE_USERNAME, KEY_MESSAGE_TIMESTAMP, KEY_MESSAGE_USERFORMAT, KEY_MESSAGE_TIMEFORMAT, KEY_MESSAGE_CONTENT_BREAK, KEY_MESSAGE_QUEUE_SIZE, KEY_MESSAGE_SPEED, KEY_MESSAGE_EXPIRATION_TIME, KEY_MESSAGE_HIDE_EMPTY_BORDER, KEY_MESSAGE_HIDE_EMPTY_BACKGROUND, KEY_MESSAGE_CASE_TYPE, KEY_MESSAGE_CASE_SPECIFY, KEY_MESSAGE_CASING };
+    public static final String[] MESSAGE_KEYS = new String[] { KEY_MESSAGE_JOIN, KEY_MESSAGE_USERNAME, KEY_MESSAGE_TIMESTAMP, KEY_MESSAGE_USERFORMAT, KEY_MESSAGE_TIMEFORMAT, KEY_MESSAGE_CONTENT_BREAK, KEY_MESSAGE_QUEUE_SIZE, KEY_MESSAGE_SPEED, KEY_MESSAGE_EXPIRATION_TIME, KEY_MESSAGE_HIDE_EMPTY_BORDER, KEY_MESSAGE_HIDE_EMPTY_BACKGROUND, KEY_MESSAGE_CASE_TYPE, KEY_MESSAGE_CASE_SPECIFY, KEY_MESSAGE_CASING, KEY_MESSAGE_INGEST_POLICY, KEY_MESSAGE_INGEST_CAPACITY, KEY_MESSAGE_DEDUP, KEY_MESSAGE_DEDUP_WINDOW };
 
     public static final String KEY_EMOJI_ENABLED = "emojiEnabled";
     public static final String KEY_EMOJI_ANIMATION = "emojiAnimationEnabled";
@@ -670,6 +675,10 @@ public class FontificatorProperties extends Properties
         setPropertyOverride(KEY_MESSAGE_CASE_TYPE, UsernameCaseResolutionType.NONE.name(), override);
         setPropertyOverride(KEY_MESSAGE_CASE_SPECIFY, falseString, override);
         setPropertyOverride(KEY_MESSAGE_CASING, MessageCasing.MIXED_CASE.name(), override);
+        setPropertyOverride(KEY_MESSAGE_INGEST_POLICY, ConfigMessage.DEFAULT_INGEST_POLICY.name(), override);
+        setPropertyOverride(KEY_MESSAGE_INGEST_CAPACITY, Integer.toString(ConfigMessage.DEFAULT_INGEST_CAPACITY), override);
+        setPropertyOverride(KEY_MESSAGE_DEDUP, falseString, override);
+        setPropertyOverride(KEY_MESSAGE_DEDUP_WINDOW, Integer.toString(ConfigMessage.DEFAULT_DEDUP_WINDOW), override);
 
         setPropertyOverride(KEY_EMOJI_ENABLED, trueString, override);
         setPropertyOverride(KEY_EMOJI_ANIMATION, falseString, override);
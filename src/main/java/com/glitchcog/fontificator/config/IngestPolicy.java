@@ -0,0 +1,40 @@
+package com.glitchcog.fontificator.config;
+
+/**
+ * What to do when messages arrive faster than the chat display can take them in and the ingestion queue is full
+ * 
+ * @author Matt Yanos
+ */
+public enum IngestPolicy
+{
+    // @formatter:off
+    DROP_OLDEST("Drop the oldest waiting message"), 
+    DROP_NEWEST("Drop the newest message"), 
+    SAMPLE_PER_USER("Keep one waiting message per user"), 
+    COLLAPSE_DUPLICATES("Collapse repeated messages into \"xN\""); 
+    // @formatter:on
+
+    private final String label;
+
+    private IngestPolicy(String label)
+    {
+        this.label = label;
+    }
+
+    public static boolean contains(String name)
+    {
+        for (int i = 0; i < values().length; i++)
+        {
+            if (values()[i].name().equals(name))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String toString()
+    {
+        return label;
+    }
+}
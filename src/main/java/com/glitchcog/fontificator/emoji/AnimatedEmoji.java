@@ -0,0 +1,94 @@
+package com.glitchcog.fontificator.emoji;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * The frames of an animated emoji, decoded once and shared by every place the emoji is drawn. Which frame to draw is
+ * picked by time, so every copy of the emoji on screen is on the same frame without anything having to keep track of
+ * them.
+ *
+ * @author Matt Yanos
+ */
+public class AnimatedEmoji
+{
+    /**
+     * Each frame composited onto the whole canvas, so any one of them can be drawn on its own
+     */
+    private final BufferedImage[] frames;
+
+    /**
+     * The time into the animation each frame ends, in milliseconds
+     */
+    private final long[] frameEnds;
+
+    private final int width;
+
+    private final int height;
+
+    /**
+     * @param frames
+     *            The frames, all the same size
+     * @param delays
+     *            How long each frame is shown, in milliseconds
+     */
+    public AnimatedEmoji(BufferedImage[] frames, int[] delays)
+    {
+        this.frames = frames;
+        this.frameEnds = new long[frames.length];
+        long end = 0L;
+        for (int i = 0; i < frames.length; i++)
+        {
+            end += Math.max(1, delays[i]);
+            frameEnds[i] = end;
+        }
+        this.width = frames[0].getWidth();
+        this.height = frames[0].getHeight();
+    }
+
+    /**
+     * Get which frame is showing at a time
+     *
+     * @param millis
+     *            The time, like from System.currentTimeMillis()
+     * @return frame index
+     */
+    public int getFrameIndex(long millis)
+    {
+        if (frames.length == 1)
+        {
+            return 0;
+        }
+        final long t = millis % frameEnds[frameEnds.length - 1];
+        final int index = Arrays.binarySearch(frameEnds, t);
+        // An exact hit is the end of that frame, so it's the start of the next one
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    /**
+     * Get the frame showing at a time
+     *
+     * @param millis
+     *            The time, like from System.currentTimeMillis()
+     * @return frame
+     */
+    public BufferedImage getFrame(long millis)
+    {
+        return frames[getFrameIndex(millis)];
+    }
+
+    public int getFrameCount()
+    {
+        return frames.length;
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+}
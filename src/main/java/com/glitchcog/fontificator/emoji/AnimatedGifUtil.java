@@ -1,28 +1,20 @@
 package com.glitchcog.fontificator.emoji;
 
-import java.awt.Dimension;
-import java.awt.Graphics;
-import java.awt.Image;
-import java.awt.Toolkit;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
-import java.net.URL;
+import java.io.ByteArrayInputStream;
 
-import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
 import javax.imageio.ImageReader;
-import javax.imageio.ImageTypeSpecifier;
-import javax.imageio.ImageWriter;
 import javax.imageio.metadata.IIOMetadata;
 import javax.imageio.metadata.IIOMetadataNode;
-import javax.imageio.stream.ImageOutputStream;
-import javax.swing.ImageIcon;
 
 import org.apache.log4j.Logger;
 
 /**
- * Utility class for loading animated GIFs, largely just to deal with (ditto) so it displays as if it were in a browser
+ * Utility class for loading animated GIFs, decoding them into frames that display as if they were in a browser, which
+ * is largely to deal with (ditto)
  * 
  * @author Matt Yanos
  */
@@ -52,102 +44,162 @@ public class AnimatedGifUtil
     public static final String IMAGE_WIDTH = "imageWidth";
     public static final String IMAGE_HEIGHT = "imageHeight";
 
-    public static Image loadAnimatedGif(final URL url)
-    {
-        return new ImageIcon(url).getImage();
-    }
+    public static final String LOGICAL_SCREEN_DESC = "LogicalScreenDescriptor";
+    public static final String LOGICAL_SCREEN_WIDTH = "logicalScreenWidth";
+    public static final String LOGICAL_SCREEN_HEIGHT = "logicalScreenHeight";
 
     /**
-     * Fix (ditto) for Java's animated GIF interpretation
-     * 
-     * Adapted from http://stackoverflow.com/questions/26801433/fix-frame-rate-of-animated-gif-in-java#answer-26829534
+     * Browsers show the frames of animated GIFs with no delay, or next to none, for this long instead
+     */
+    private static final int MIN_BROWSER_DELAY = 2;
+
+    /**
+     * Decode an animated GIF from its file bytes, like from the emoji disk cache, into frames that can each be drawn on
+     * their own. Each frame is composited the way a browser does it, including restoring to the previous frame, which
+     * is what (ditto) needs.
      * 
-     * @param url
-     *            The URL for the animated GIF to be loaded
-     * @param dim
-     *            The dimension object to be filled by the width and height of the loaded animated GIF
-     * @return The loaded animated GIF
-     * @throws Exception
+     * @param data
+     *            The bytes of the animated GIF file
+     * @param ditto
+     *            Whether this is BTTV's (ditto), which is slowed down to its browser speed
+     * @return The decoded animation, or null if it couldn't be decoded
      */
-    public static Image loadDittoAnimatedGif(final URL url, Dimension dim)
+    public static AnimatedEmoji loadAnimatedGif(final byte[] data, boolean ditto)
     {
-        final Image dimImage = new ImageIcon(url).getImage();
-
-        Image image = null;
+        ImageReader gifReader = null;
         try
         {
-            ImageReader gifReader = ImageIO.getImageReadersByFormatName(GIF_EXTENSION).next();
-            InputStream imageStream = url.openStream();
-            gifReader.setInput(ImageIO.createImageInputStream(imageStream));
-            IIOMetadata imageMetaData = gifReader.getImageMetadata(0);
-            String metaFormatName = imageMetaData.getNativeMetadataFormatName();
+            gifReader = ImageIO.getImageReadersByFormatName(GIF_EXTENSION).next();
+            gifReader.setInput(ImageIO.createImageInputStream(new ByteArrayInputStream(data)));
             final int frameCount = gifReader.getNumImages(true);
+            if (frameCount < 1)
+            {
+                return null;
+            }
 
-            ByteArrayOutputStream baoStream = new ByteArrayOutputStream();
-            ImageOutputStream ios = ImageIO.createImageOutputStream(baoStream);
-            ImageWriter writer = ImageIO.getImageWriter(gifReader);
-            writer.setOutput(ios);
-            writer.prepareWriteSequence(null);
-
-            final int imgWidth = dimImage.getWidth(null);
-            final int imgHeight = dimImage.getHeight(null);
-            dim.setSize(imgWidth, imgHeight);
+            IIOMetadataNode[] frameNodes = new IIOMetadataNode[frameCount];
+            BufferedImage[] rawFrames = new BufferedImage[frameCount];
 
+            // The canvas is the logical screen, made big enough for every frame in case the GIF understates it
+            int canvasWidth = 0;
+            int canvasHeight = 0;
+            IIOMetadata streamMetaData = gifReader.getStreamMetadata();
+            if (streamMetaData != null)
+            {
+                IIOMetadataNode screen = findNode((IIOMetadataNode) streamMetaData.getAsTree(streamMetaData.getNativeMetadataFormatName()), LOGICAL_SCREEN_DESC);
+                canvasWidth = getIntAttribute(screen, LOGICAL_SCREEN_WIDTH, 0);
+                canvasHeight = getIntAttribute(screen, LOGICAL_SCREEN_HEIGHT, 0);
+            }
             for (int i = 0; i < frameCount; i++)
             {
-                // This read method takes into account the frame's top and left coordinates
-                BufferedImage frame = gifReader.read(i);
-                IIOMetadataNode nodes = (IIOMetadataNode) gifReader.getImageMetadata(i).getAsTree(metaFormatName);
+                IIOMetadata imageMetaData = gifReader.getImageMetadata(i);
+                frameNodes[i] = (IIOMetadataNode) imageMetaData.getAsTree(imageMetaData.getNativeMetadataFormatName());
+                rawFrames[i] = gifReader.read(i);
+                IIOMetadataNode desc = findNode(frameNodes[i], IMAGE_DESCRIPTOR);
+                canvasWidth = Math.max(canvasWidth, getIntAttribute(desc, IMAGE_LEFT, 0) + rawFrames[i].getWidth());
+                canvasHeight = Math.max(canvasHeight, getIntAttribute(desc, IMAGE_TOP, 0) + rawFrames[i].getHeight());
+            }
 
-                for (int j = 0; j < nodes.getLength(); j++)
+            BufferedImage canvas = new BufferedImage(canvasWidth, canvasHeight, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D canvasGraphics = canvas.createGraphics();
+            BufferedImage[] frames = new BufferedImage[frameCount];
+            int[] delays = new int[frameCount];
+            try
+            {
+                for (int i = 0; i < frameCount; i++)
                 {
-                    IIOMetadataNode node = (IIOMetadataNode) nodes.item(j);
-                    if (GRAPHIC_CTRL_EXT.equalsIgnoreCase(node.getNodeName()))
+                    IIOMetadataNode desc = findNode(frameNodes[i], IMAGE_DESCRIPTOR);
+                    IIOMetadataNode ctrl = findNode(frameNodes[i], GRAPHIC_CTRL_EXT);
+                    final int left = getIntAttribute(desc, IMAGE_LEFT, 0);
+                    final int top = getIntAttribute(desc, IMAGE_TOP, 0);
+                    final String disposal = ctrl == null ? DISPOSE_NONE : ctrl.getAttribute(ATTRIBUTE_DISPOSAL_METHOD);
+
+                    int delay = getIntAttribute(ctrl, ATTRIBUTE_DELAY_TIME, 0);
+                    if (delay < (ditto ? MIN_ANI_GIF_DELAY : MIN_BROWSER_DELAY))
                     {
-                        int delay = Integer.parseInt(node.getAttribute(ATTRIBUTE_DELAY_TIME));
-                        // Minimum delay for browsers, which delay animated GIFs much more than would be to spec
-                        if (delay < MIN_ANI_GIF_DELAY)
-                        {
-                            node.setAttribute(ATTRIBUTE_DELAY_TIME, Integer.toString(MIN_ANI_GIF_DELAY));
-                        }
-                        // Java's interpretation of restore to previous doesn't seem to work correctly, 
-                        // at least not for BTTV's (ditto)
-                        if (node.getAttribute(ATTRIBUTE_DISPOSAL_METHOD).equals(DISPOSE_RESTORE_TO_PREVIOUS))
-                        {
-                            node.setAttribute(ATTRIBUTE_DISPOSAL_METHOD, DISPOSE_RESTORE_TO_BGCOLOR);
-                        }
+                        delay = MIN_ANI_GIF_DELAY;
                     }
-                }
+                    // GIF delays are in hundredths of a second
+                    delays[i] = delay * 10;
 
-                IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(frame), null);
-                metadata.setFromTree(metadata.getNativeMetadataFormatName(), nodes);
+                    BufferedImage previous = null;
+                    if (DISPOSE_RESTORE_TO_PREVIOUS.equals(disposal))
+                    {
+                        previous = copy(canvas);
+                    }
 
-                // This modified frame is necessary to get the correct image placement, width, and height in the final GIF
-                BufferedImage frameMod = new BufferedImage(imgWidth, imgHeight, BufferedImage.TYPE_INT_ARGB);
-                Graphics big = frameMod.getGraphics();
-                big.drawImage(frame, 0, 0, null);
+                    canvasGraphics.drawImage(rawFrames[i], left, top, null);
+                    frames[i] = copy(canvas);
 
-                IIOImage fixedFrame = new IIOImage(frameMod, null, metadata);
-                writer.writeToSequence(fixedFrame, writer.getDefaultWriteParam());
+                    if (DISPOSE_RESTORE_TO_BGCOLOR.equals(disposal))
+                    {
+                        // Browsers restore to transparent rather than the background color
+                        canvasGraphics.setComposite(AlphaComposite.Clear);
+                        canvasGraphics.fillRect(left, top, rawFrames[i].getWidth(), rawFrames[i].getHeight());
+                        canvasGraphics.setComposite(AlphaComposite.SrcOver);
+                    }
+                    else if (previous != null)
+                    {
+                        canvasGraphics.setComposite(AlphaComposite.Src);
+                        canvasGraphics.drawImage(previous, 0, 0, null);
+                        canvasGraphics.setComposite(AlphaComposite.SrcOver);
+                    }
+                }
             }
-            writer.endWriteSequence();
-
-            if (ios != null)
+            finally
             {
-                ios.close();
+                canvasGraphics.dispose();
             }
 
-            image = Toolkit.getDefaultToolkit().createImage(baoStream.toByteArray());
+            return new AnimatedEmoji(frames, delays);
         }
         catch (Exception e)
         {
-            // If anything goes wrong, just load it normally
-            logger.error("Error loading animated GIF (ditto) from " + url, e);
-            image = new ImageIcon(url).getImage();
-            dim.setSize(image.getWidth(null), image.getHeight(null));
+            logger.error("Error loading animated GIF" + (ditto ? " (ditto)" : ""), e);
+            return null;
         }
+        finally
+        {
+            if (gifReader != null)
+            {
+                gifReader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage copy(BufferedImage image)
+    {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        image.copyData(copy.getRaster());
+        return copy;
+    }
 
-        return image;
+    private static IIOMetadataNode findNode(IIOMetadataNode root, String name)
+    {
+        for (int i = 0; i < root.getLength(); i++)
+        {
+            if (name.equalsIgnoreCase(root.item(i).getNodeName()))
+            {
+                return (IIOMetadataNode) root.item(i);
+            }
+        }
+        return null;
+    }
+
+    private static int getIntAttribute(IIOMetadataNode node, String name, int defaultValue)
+    {
+        if (node == null || !node.hasAttribute(name))
+        {
+            return defaultValue;
+        }
+        try
+        {
+            return Integer.parseInt(node.getAttribute(name));
+        }
+        catch (NumberFormatException e)
+        {
+            return defaultValue;
+        }
     }
 
 }
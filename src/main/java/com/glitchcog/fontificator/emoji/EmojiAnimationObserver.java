@@ -0,0 +1,32 @@
+package com.glitchcog.fontificator.emoji;
+
+import java.awt.image.ImageObserver;
+
+/**
+ * An image observer that draws animated emoji, and so decides what time they're drawn at and wants to know where they
+ * were drawn, to repaint just those spots when their frames change
+ *
+ * @author Matt Yanos
+ */
+public interface EmojiAnimationObserver extends ImageObserver
+{
+    /**
+     * Get the time the frames of animated emoji are picked by, the same for everything drawn at once
+     *
+     * @return millis
+     */
+    long getAnimationMillis();
+
+    /**
+     * Called when an animated emoji has been drawn
+     *
+     * @param animation
+     * @param visible
+     *            Whether the spot it was drawn in could actually be seen, rather than being outside what's being painted
+     * @param x
+     * @param y
+     * @param width
+     * @param height
+     */
+    void animationDrawn(AnimatedEmoji animation, boolean visible, int x, int y, int width, int height);
+}
@@ -0,0 +1,193 @@
+package com.glitchcog.fontificator.emoji;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Caches a whole set of emoji images at once, for the cache operation on a type of emoji. The images are downloaded by
+ * a pool of threads, so caching a channel's emotes is limited by bandwidth rather than by waiting on each request in
+ * turn. The disk cache keeps any one host from getting more than a few requests at a time. An image that can't be
+ * reached is tried again a couple of times, waiting longer each time, before it's given up on.
+ *
+ * @author Matt Yanos
+ */
+public class EmojiBulkCacher
+{
+    private static final Logger logger = Logger.getLogger(EmojiBulkCacher.class);
+
+    /**
+     * The number of images downloaded at once, across all hosts
+     */
+    private static final int THREAD_COUNT = 16;
+
+    /**
+     * The most times an image that couldn't be reached is tried again
+     */
+    private static final int MAX_RETRIES = 3;
+
+    /**
+     * How long to wait before the first retry, doubled for each one after it
+     */
+    private static final long RETRY_BACKOFF_MILLIS = 500L;
+
+    private final List<LazyLoadEmoji> emoji;
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    private final CountDownLatch remaining;
+
+    private final AtomicInteger completed;
+
+    private final AtomicInteger failed;
+
+    /**
+     * @param emojiToCache
+     *            The emoji to cache, where any nulls are skipped
+     */
+    public EmojiBulkCacher(Collection<LazyLoadEmoji> emojiToCache)
+    {
+        this.emoji = new ArrayList<LazyLoadEmoji>(emojiToCache);
+        this.remaining = new CountDownLatch(emoji.size());
+        this.completed = new AtomicInteger();
+        this.failed = new AtomicInteger();
+        this.executor = new ScheduledThreadPoolExecutor(THREAD_COUNT, new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "Emoji Cache " + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Start caching every emoji
+     */
+    public void start()
+    {
+        for (LazyLoadEmoji e : emoji)
+        {
+            if (e == null)
+            {
+                finish(true);
+            }
+            else
+            {
+                executor.execute(new CacheTask(e, 0));
+            }
+        }
+    }
+
+    /**
+     * Wait for the caching to finish, for no longer than the specified time
+     *
+     * @param millis
+     * @return whether every emoji is done being cached
+     * @throws InterruptedException
+     */
+    public boolean await(long millis) throws InterruptedException
+    {
+        final boolean done = remaining.await(millis, TimeUnit.MILLISECONDS);
+        if (done)
+        {
+            executor.shutdown();
+            if (failed.get() > 0)
+            {
+                logger.debug(failed.get() + " of " + emoji.size() + " emoji images could not be cached");
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Stop caching, abandoning any images not yet downloaded
+     */
+    public void cancel()
+    {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Get the percent of the emoji done being cached, whether or not they could be
+     *
+     * @return percent complete, 0 to 100
+     */
+    public int getPercentComplete()
+    {
+        return emoji.isEmpty() ? 100 : (int) (100.0f * completed.get() / emoji.size());
+    }
+
+    private void finish(boolean cached)
+    {
+        if (!cached)
+        {
+            failed.incrementAndGet();
+        }
+        completed.incrementAndGet();
+        remaining.countDown();
+    }
+
+    private class CacheTask implements Runnable
+    {
+        private final LazyLoadEmoji emoji;
+
+        private final int attempt;
+
+        private CacheTask(LazyLoadEmoji emoji, int attempt)
+        {
+            this.emoji = emoji;
+            this.attempt = attempt;
+        }
+
+        @Override
+        public void run()
+        {
+            boolean done;
+            try
+            {
+                done = emoji.cacheImage();
+            }
+            catch (Exception e)
+            {
+                // Not something trying again would fix
+                logger.debug("Unable to cache emoji " + emoji.getUrl(), e);
+                finish(false);
+                return;
+            }
+
+            if (done)
+            {
+                finish(true);
+            }
+            else if (attempt < MAX_RETRIES && !executor.isShutdown())
+            {
+                try
+                {
+                    executor.schedule(new CacheTask(emoji, attempt + 1), RETRY_BACKOFF_MILLIS << attempt, TimeUnit.MILLISECONDS);
+                }
+                catch (RejectedExecutionException e)
+                {
+                    // Canceled in the meantime
+                    finish(false);
+                }
+            }
+            else
+            {
+                finish(false);
+            }
+        }
+    }
+}
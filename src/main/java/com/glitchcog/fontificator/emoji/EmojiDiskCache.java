@@ -0,0 +1,565 @@
+package com.glitchcog.fontificator.emoji;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.glitchcog.fontificator.metrics.PipelineMetrics;
+
+/**
+ * Keeps the emoji images downloaded from the CDNs on disk between runs, so emotes, badges and Twitter emoji show up
+ * right away on a restart and still show up when the network is down. Each image is stored under the SHA-256 of its
+ * URL, as the bytes that were downloaded, alongside the ETag and Last-Modified the server sent with it.
+ * <p>
+ * An image served from disk is handed back immediately and checked against the server in the background once per run
+ * with a conditional request, replacing it only if it has changed. The cache is bounded by size, and the least
+ * recently used images are deleted once it grows past that.
+ * <p>
+ * No more than a few downloads from any one host are run at once, however many threads are asking, so caching a whole
+ * channel's emotes doesn't get throttled or refused by the CDN.
+ *
+ * @author Matt Yanos
+ */
+public final class EmojiDiskCache
+{
+    private static final Logger logger = Logger.getLogger(EmojiDiskCache.class);
+
+    /**
+     * System property to put the cache somewhere other than the .fontificator directory in the user's home directory
+     */
+    private static final String CACHE_DIR_PROPERTY = "fontificator.emojiCacheDir";
+
+    /**
+     * System property to change the most megabytes the cache can hold
+     */
+    private static final String CACHE_SIZE_PROPERTY = "fontificator.emojiCacheMegabytes";
+
+    private static final int DEFAULT_CACHE_MEGABYTES = 64;
+
+    private static final String DATA_EXTENSION = ".img";
+
+    private static final String META_EXTENSION = ".meta";
+
+    private static final String META_URL = "url";
+    private static final String META_ETAG = "etag";
+    private static final String META_LAST_MODIFIED = "lastModified";
+
+    private static final String USER_AGENT = "Mozilla/5.0 (Windows; U; Windows NT 6.0; en-US; rv:1.9.1.2) Gecko/20090729 Firefox/3.5.2 (.NET CLR 3.5.30729)";
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+
+    private static final int READ_TIMEOUT_MILLIS = 20000;
+
+    /**
+     * The most requests made to any one host at the same time
+     */
+    private static final int CONNECTIONS_PER_HOST = 6;
+
+    /**
+     * Permits for the requests to each host, keyed off of host name
+     */
+    private static final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<String, Semaphore>();
+
+    /**
+     * The result of fetching an image
+     */
+    public static class Fetch
+    {
+        private final byte[] data;
+
+        private final boolean missing;
+
+        private Fetch(byte[] data, boolean missing)
+        {
+            this.data = data;
+            this.missing = missing;
+        }
+
+        /**
+         * Get the image file bytes
+         *
+         * @return data, or null if the image couldn't be fetched
+         */
+        public byte[] getData()
+        {
+            return data;
+        }
+
+        /**
+         * Get whether the server said there is no image at the URL, as opposed to it just not being reachable
+         *
+         * @return missing
+         */
+        public boolean isMissing()
+        {
+            return missing;
+        }
+    }
+
+    private static final File directory;
+
+    private static final long maxBytes;
+
+    /**
+     * The size of each cached image keyed off of its hash, least recently used first. Guarded by itself.
+     */
+    private static final LinkedHashMap<String, Long> index = new LinkedHashMap<String, Long>(256, 0.75f, true);
+
+    private static long totalBytes;
+
+    /**
+     * The hashes of images already checked against the server this run. Guarded by index.
+     */
+    private static final Set<String> revalidated = new HashSet<String>();
+
+    /**
+     * Runs the revalidation requests one at a time, so they stay out of the way of images that aren't cached yet
+     */
+    private static final ExecutorService revalidator = new ThreadPoolExecutor(1, 1, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+    {
+        @Override
+        public Thread newThread(Runnable r)
+        {
+            Thread t = new Thread(r, "Emoji Cache Revalidation");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    static
+    {
+        final String dirProperty = System.getProperty(CACHE_DIR_PROPERTY);
+        directory = dirProperty != null ? new File(dirProperty) : new File(new File(System.getProperty("user.home"), ".fontificator"), "emoji-cache");
+        maxBytes = Integer.getInteger(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_MEGABYTES) * 1024L * 1024L;
+        loadIndex();
+    }
+
+    private EmojiDiskCache()
+    {
+    }
+
+    /**
+     * Get the image at the URL, from disk if it's been downloaded before, or from the network if it hasn't. Blocks
+     * while downloading, so it should never be called from the Swing event thread.
+     *
+     * @param url
+     * @return fetch
+     */
+    public static Fetch fetch(URL url)
+    {
+        final String key = getKey(url.toString());
+
+        byte[] cached = read(key);
+        if (cached != null)
+        {
+            PipelineMetrics.EMOJI_DISK_HITS.incrementAndGet();
+            scheduleRevalidation(url, key);
+            return new Fetch(cached, false);
+        }
+
+        final Semaphore permits = getHostPermits(url);
+        try
+        {
+            permits.acquire();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return new Fetch(null, false);
+        }
+
+        try
+        {
+            HttpURLConnection conn = openConnection(url);
+            final int responseCode = conn.getResponseCode();
+            if (responseCode != HttpURLConnection.HTTP_OK)
+            {
+                conn.disconnect();
+                logger.debug("Emoji image " + url + " answered " + responseCode);
+                // Too many requests or a server error might go away, anything else means there's no image there
+                final boolean transientError = responseCode == 429 || responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR;
+                return new Fetch(null, !transientError);
+            }
+            final byte[] data = readFully(conn.getInputStream());
+            write(key, url.toString(), data, conn.getHeaderField("ETag"), conn.getHeaderField("Last-Modified"));
+            synchronized (index)
+            {
+                revalidated.add(key);
+            }
+            return new Fetch(data, false);
+        }
+        catch (IOException e)
+        {
+            logger.debug("Unable to download emoji image " + url, e);
+            return new Fetch(null, false);
+        }
+        finally
+        {
+            permits.release();
+        }
+    }
+
+    /**
+     * Drop the cached copy of the image at the URL, so the next fetch downloads it again. Used when the bytes on disk
+     * turn out not to be a readable image.
+     *
+     * @param url
+     */
+    public static void discard(URL url)
+    {
+        final String key = getKey(url.toString());
+        remove(key);
+        synchronized (index)
+        {
+            revalidated.remove(key);
+        }
+    }
+
+    private static Semaphore getHostPermits(URL url)
+    {
+        final String host = url.getHost().toLowerCase();
+        Semaphore permits = hostPermits.get(host);
+        if (permits == null)
+        {
+            hostPermits.putIfAbsent(host, new Semaphore(CONNECTIONS_PER_HOST));
+            permits = hostPermits.get(host);
+        }
+        return permits;
+    }
+
+    /**
+     * Check a cached image against the server in the background, once per run, replacing it if it has changed. If the
+     * server can't be reached, the cached image is left as is.
+     *
+     * @param url
+     * @param key
+     */
+    private static void scheduleRevalidation(final URL url, final String key)
+    {
+        synchronized (index)
+        {
+            if (!revalidated.add(key))
+            {
+                return;
+            }
+        }
+
+        revalidator.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                revalidate(url, key);
+            }
+        });
+    }
+
+    private static void revalidate(URL url, String key)
+    {
+        final Properties meta = readMeta(key);
+        final Semaphore permits = getHostPermits(url);
+        permits.acquireUninterruptibly();
+        try
+        {
+            HttpURLConnection conn = openConnection(url);
+            if (meta != null && meta.getProperty(META_ETAG) != null)
+            {
+                conn.setRequestProperty("If-None-Match", meta.getProperty(META_ETAG));
+            }
+            if (meta != null && meta.getProperty(META_LAST_MODIFIED) != null)
+            {
+                conn.setRequestProperty("If-Modified-Since", meta.getProperty(META_LAST_MODIFIED));
+            }
+
+            final int responseCode = conn.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_OK)
+            {
+                logger.debug("Cached emoji image " + url + " has changed, updating it for next time");
+                write(key, url.toString(), readFully(conn.getInputStream()), conn.getHeaderField("ETag"), conn.getHeaderField("Last-Modified"));
+            }
+            else
+            {
+                conn.disconnect();
+            }
+        }
+        catch (IOException e)
+        {
+            logger.debug("Unable to revalidate cached emoji image " + url + ", keeping the cached copy", e);
+        }
+        finally
+        {
+            permits.release();
+        }
+    }
+
+    private static HttpURLConnection openConnection(URL url) throws IOException
+    {
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setInstanceFollowRedirects(true);
+        conn.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        conn.setReadTimeout(READ_TIMEOUT_MILLIS);
+        conn.setRequestProperty("User-Agent", USER_AGENT);
+        return conn;
+    }
+
+    private static byte[] read(String key)
+    {
+        synchronized (index)
+        {
+            if (index.get(key) == null)
+            {
+                return null;
+            }
+        }
+
+        final File file = new File(directory, key + DATA_EXTENSION);
+        try
+        {
+            InputStream in = new FileInputStream(file);
+            final byte[] data = readFully(in);
+            // The file time stands in for the last use, so the eviction order carries over to the next run
+            file.setLastModified(System.currentTimeMillis());
+            return data;
+        }
+        catch (IOException e)
+        {
+            logger.debug("Unable to read cached emoji image " + file, e);
+            remove(key);
+            return null;
+        }
+    }
+
+    private static Properties readMeta(String key)
+    {
+        Properties meta = new Properties();
+        try
+        {
+            InputStream in = new FileInputStream(new File(directory, key + META_EXTENSION));
+            try
+            {
+                meta.load(in);
+            }
+            finally
+            {
+                in.close();
+            }
+            return meta;
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+
+    private static void write(String key, String url, byte[] data, String etag, String lastModified)
+    {
+        if (data.length > maxBytes || (!directory.isDirectory() && !directory.mkdirs()))
+        {
+            return;
+        }
+
+        Properties meta = new Properties();
+        meta.setProperty(META_URL, url);
+        if (etag != null)
+        {
+            meta.setProperty(META_ETAG, etag);
+        }
+        if (lastModified != null)
+        {
+            meta.setProperty(META_LAST_MODIFIED, lastModified);
+        }
+
+        try
+        {
+            // Write to a temporary file and rename it, so a reader never sees half an image
+            File temp = new File(directory, key + DATA_EXTENSION + ".tmp");
+            OutputStream out = new FileOutputStream(temp);
+            try
+            {
+                out.write(data);
+            }
+            finally
+            {
+                out.close();
+            }
+
+            OutputStream metaOut = new FileOutputStream(new File(directory, key + META_EXTENSION));
+            try
+            {
+                meta.store(metaOut, null);
+            }
+            finally
+            {
+                metaOut.close();
+            }
+
+            File file = new File(directory, key + DATA_EXTENSION);
+            if (file.exists() && !file.delete() || !temp.renameTo(file))
+            {
+                temp.delete();
+                return;
+            }
+        }
+        catch (IOException e)
+        {
+            logger.debug("Unable to cache emoji image " + url, e);
+            return;
+        }
+
+        synchronized (index)
+        {
+            Long previous = index.put(key, (long) data.length);
+            totalBytes += data.length - (previous == null ? 0L : previous);
+            evict();
+        }
+    }
+
+    private static void remove(String key)
+    {
+        synchronized (index)
+        {
+            Long size = index.remove(key);
+            if (size != null)
+            {
+                totalBytes -= size;
+            }
+        }
+        new File(directory, key + DATA_EXTENSION).delete();
+        new File(directory, key + META_EXTENSION).delete();
+    }
+
+    /**
+     * Delete the least recently used images until the cache fits. Called holding the index lock.
+     */
+    private static void evict()
+    {
+        Iterator<Map.Entry<String, Long>> iter = index.entrySet().iterator();
+        while (totalBytes > maxBytes && iter.hasNext())
+        {
+            Map.Entry<String, Long> eldest = iter.next();
+            totalBytes -= eldest.getValue();
+            iter.remove();
+            new File(directory, eldest.getKey() + DATA_EXTENSION).delete();
+            new File(directory, eldest.getKey() + META_EXTENSION).delete();
+        }
+    }
+
+    /**
+     * Read what's already in the cache directory, oldest use first
+     */
+    private static void loadIndex()
+    {
+        File[] files = directory.listFiles();
+        if (files == null)
+        {
+            return;
+        }
+
+        files = Arrays.copyOf(files, files.length);
+        Arrays.sort(files, new Comparator<File>()
+        {
+            @Override
+            public int compare(File a, File b)
+            {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+
+        synchronized (index)
+        {
+            for (File file : files)
+            {
+                final String name = file.getName();
+                if (name.endsWith(DATA_EXTENSION))
+                {
+                    index.put(name.substring(0, name.length() - DATA_EXTENSION.length()), file.length());
+                    totalBytes += file.length();
+                }
+                else if (name.endsWith(".tmp"))
+                {
+                    file.delete();
+                }
+            }
+            evict();
+        }
+        logger.debug("Emoji disk cache at " + directory + " holds " + index.size() + " images, " + totalBytes + " bytes");
+    }
+
+    /**
+     * Get the number of bytes of images on disk
+     *
+     * @return bytes
+     */
+    public static long getTotalBytes()
+    {
+        synchronized (index)
+        {
+            return totalBytes;
+        }
+    }
+
+    private static String getKey(String url)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder(hash.length * 2);
+            for (byte b : hash)
+            {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // Every Java platform is required to have SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException
+    {
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.glitchcog.fontificator.emoji;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import com.glitchcog.fontificator.metrics.PipelineMetrics;
+
+/**
+ * Downloads emoji images in the background, so that a new emote showing up in chat never holds up painting while its
+ * image is fetched. A small fixed pool of threads does the downloading, with a bounded backlog; an emoji that can't be
+ * taken on because the backlog is full is simply requested again the next time it's drawn.
+ *
+ * @author Matt Yanos
+ */
+public final class EmojiImageLoader
+{
+    private static final Logger logger = Logger.getLogger(EmojiImageLoader.class);
+
+    /**
+     * The number of images downloaded at once
+     */
+    private static final int THREAD_COUNT = 4;
+
+    /**
+     * The most images waiting for a download thread
+     */
+    private static final int QUEUE_CAPACITY = 512;
+
+    private static final long KEEP_ALIVE_SECONDS = 30L;
+
+    private static final ThreadPoolExecutor executor;
+
+    static
+    {
+        executor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "Emoji Download " + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    private EmojiImageLoader()
+    {
+    }
+
+    /**
+     * Queue the emoji's image to be downloaded. Once it's loaded, the emoji lets whatever was waiting to draw it know.
+     *
+     * @param emoji
+     * @return whether the download was queued, or false if the backlog is full
+     */
+    static boolean submit(final LazyLoadEmoji emoji)
+    {
+        PipelineMetrics.EMOJI_PENDING.incrementAndGet();
+        try
+        {
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        emoji.loadImage();
+                    }
+                    catch (Exception e)
+                    {
+                        logger.error("Unable to load emoji " + emoji.getUrl(), e);
+                    }
+                    finally
+                    {
+                        PipelineMetrics.EMOJI_PENDING.decrementAndGet();
+                        emoji.finishAsyncLoad();
+                    }
+                }
+            });
+            return true;
+        }
+        catch (RejectedExecutionException e)
+        {
+            PipelineMetrics.EMOJI_PENDING.decrementAndGet();
+            logger.debug("Emoji download backlog is full, deferring " + emoji.getUrl());
+            return false;
+        }
+    }
+}
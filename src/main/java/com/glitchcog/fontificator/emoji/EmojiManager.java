@@ -1,9 +1,10 @@
 package com.glitchcog.fontificator.emoji;
 
 import java.net.MalformedURLException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 
@@ -53,6 +54,26 @@ public class EmojiManager
      */
     private Map<EmojiType, TypedEmojiMap> preloadedEmoji;
 
+    /**
+     * The pre-loaded emoji as seen by each channel that has loaded its own emotes, keyed off of the channel without its
+     * hash, in lowercase. They share every map with preloadedEmoji except those of the channel emote types, which hold
+     * only that channel's emotes. The channel emote maps in preloadedEmoji gather the emotes of every channel, for
+     * messages that aren't from any one channel.
+     */
+    private final Map<String, Map<EmojiType, TypedEmojiMap>> channelEmoji;
+
+    /**
+     * The pre-loaded emoji as seen by a channel that hasn't loaded any emotes of its own
+     */
+    private final Map<EmojiType, TypedEmojiMap> noChannelEmoji;
+
+    /**
+     * Word indexes across the pre-loaded emoji, one for each priority ordered list of types words are looked up in.
+     * There are only ever one or two of them, so they're scanned rather than hashed, and replaced whole when one is
+     * added.
+     */
+    private volatile EmojiWordIndex[] wordIndexes;
+
     /**
      * V1 Twitch emotes loaded whenever a loaded on the fly via the emote ID on the IRC post tags' emote ID. These
      * aren't ever lazy loaded because they are only loaded on the fly when used.
@@ -60,21 +81,36 @@ public class EmojiManager
     private Map<String, LazyLoadEmoji> emojiById;
 
     /**
-     * Map keyed off of FrankerFaceZ badge IDs that returns a set of users that have that badge
+     * The FrankerFaceZ badges of each user that has any, replaced whole once loaded
      */
-    private Map<Integer, Set<String>> ffzBadgeUsers;
+    private volatile FfzBadgeUsers ffzBadgeUsers;
+
+    /**
+     * Finds the Twitter emoji in words, made the first time it's needed since it has to load all the emoji sequences
+     */
+    private volatile TwitterEmojiSegmenter twitterEmojiSegmenter;
 
     /**
      * Construct an emoji manager object, instantiates the map of maps keyed off of all the possible emoji types
      */
     public EmojiManager()
     {
-        ffzBadgeUsers = new HashMap<Integer, Set<String>>();
+        ffzBadgeUsers = new FfzBadgeUsers();
         preloadedEmoji = new HashMap<EmojiType, TypedEmojiMap>();
         for (EmojiType type : EmojiType.values())
         {
-            preloadedEmoji.put(type, new TypedEmojiMap(type));
+            preloadedEmoji.put(type, new TypedEmojiMap(type, this));
+        }
+        channelEmoji = new ConcurrentHashMap<String, Map<EmojiType, TypedEmojiMap>>();
+        noChannelEmoji = new HashMap<EmojiType, TypedEmojiMap>(preloadedEmoji);
+        for (EmojiType type : EmojiType.values())
+        {
+            if (type.isChannelEmote())
+            {
+                noChannelEmoji.put(type, new TypedEmojiMap(type, this));
+            }
         }
+        wordIndexes = new EmojiWordIndex[0];
         emojiById = new HashMap<String, LazyLoadEmoji>();
     }
 
@@ -89,6 +125,64 @@ public class EmojiManager
         return preloadedEmoji.get(type);
     }
 
+    /**
+     * Get the map of only the specified type of emoji for a channel to load its emoji into. For a channel emote type,
+     * this is the channel's own map, made the first time it's needed, and what's put into it is also put into the map
+     * of every channel's emotes.
+     * 
+     * @param type
+     * @param channel
+     *            With or without the hash ('#'), or null for the map of every channel's emotes
+     * @return map
+     */
+    public TypedEmojiMap getEmojiByType(EmojiType type, String channel)
+    {
+        if (channel == null || !type.isChannelEmote())
+        {
+            return preloadedEmoji.get(type);
+        }
+
+        final String channelKey = getChannelKey(channel);
+        Map<EmojiType, TypedEmojiMap> maps = channelEmoji.get(channelKey);
+        if (maps == null)
+        {
+            synchronized (channelEmoji)
+            {
+                maps = channelEmoji.get(channelKey);
+                if (maps == null)
+                {
+                    maps = new HashMap<EmojiType, TypedEmojiMap>(preloadedEmoji);
+                    for (EmojiType channelType : EmojiType.values())
+                    {
+                        if (channelType.isChannelEmote())
+                        {
+                            maps.put(channelType, new TypedEmojiMap(channelType, this, preloadedEmoji.get(channelType)));
+                        }
+                    }
+                    channelEmoji.put(channelKey, maps);
+                }
+            }
+        }
+        return maps.get(type);
+    }
+
+    /**
+     * Get the maps words in a message from the channel are looked up in
+     * 
+     * @param channel
+     *            With or without the hash ('#'), or null for a message that isn't from any one channel
+     * @return maps
+     */
+    private Map<EmojiType, TypedEmojiMap> getEmojiMaps(String channel)
+    {
+        if (channel == null)
+        {
+            return preloadedEmoji;
+        }
+        Map<EmojiType, TypedEmojiMap> maps = channelEmoji.get(getChannelKey(channel));
+        return maps == null ? noChannelEmoji : maps;
+    }
+
     /**
      * Get an emoji, of the given type, where the testKey is the typed word indicating the emoji to display, if the
      * configuration allows for that type of emoji
@@ -120,13 +214,38 @@ public class EmojiManager
      */
     public LazyLoadEmoji getEmojiWords(EmojiType[] types, String testKey, ConfigEmoji config)
     {
+        return getEmojiWords(types, testKey, config, null);
+    }
+
+    /**
+     * Get an emoji, of the given types, where the testKey is the typed word indicating the emoji to display, if the
+     * configuration allows for that type of emoji. Channel emotes are only those of the specified channel.
+     * 
+     * @param types
+     *            Types of emoji to get
+     * @param testKey
+     *            The word keying the emoji
+     * @param config
+     *            The emoji configuration
+     * @param channel
+     *            The channel the word was posted in, or null for the emotes of every channel
+     * @return emoji or null if it's not found
+     */
+    public LazyLoadEmoji getEmojiWords(EmojiType[] types, String testKey, ConfigEmoji config, String channel)
+    {
+        final Map<EmojiType, TypedEmojiMap> maps = getEmojiMaps(channel);
+        if (config != null && types.length > 1)
+        {
+            return getWordIndex(maps, types).get(testKey, config);
+        }
+
         LazyLoadEmoji emoji = null;
         // If config is null, then just assume we want it. Used when caching.
         for (EmojiType type : types)
         {
             if (config == null || config.isTypeEnabledAndLoaded(type))
             {
-                TypedEmojiMap typedEmoji = preloadedEmoji.get(type);
+                TypedEmojiMap typedEmoji = maps.get(type);
                 if (typedEmoji != null)
                 {
                     emoji = typedEmoji.getEmoji(testKey, config);
@@ -140,6 +259,58 @@ public class EmojiManager
         return emoji;
     }
 
+    /**
+     * Get the word index for the specified types, in their order of priority, across the maps, creating it the first
+     * time it's needed
+     * 
+     * @param maps
+     * @param types
+     * @return word index
+     */
+    private EmojiWordIndex getWordIndex(Map<EmojiType, TypedEmojiMap> maps, EmojiType[] types)
+    {
+        for (EmojiWordIndex index : wordIndexes)
+        {
+            if (index.isFor(maps, types))
+            {
+                return index;
+            }
+        }
+        return addWordIndex(maps, types);
+    }
+
+    private synchronized EmojiWordIndex addWordIndex(Map<EmojiType, TypedEmojiMap> maps, EmojiType[] types)
+    {
+        // Another thread may have added it while this one was waiting
+        for (EmojiWordIndex index : wordIndexes)
+        {
+            if (index.isFor(maps, types))
+            {
+                return index;
+            }
+        }
+        EmojiWordIndex index = new EmojiWordIndex(maps, types);
+        EmojiWordIndex[] added = Arrays.copyOf(wordIndexes, wordIndexes.length + 1);
+        added[added.length - 1] = index;
+        wordIndexes = added;
+        return index;
+    }
+
+    /**
+     * Called by the typed emoji maps after a key is put into one of them, to keep the word indexes up to date
+     * 
+     * @param map
+     * @param key
+     * @param regex
+     */
+    void keyPut(TypedEmojiMap map, String key, boolean regex)
+    {
+        for (EmojiWordIndex index : wordIndexes)
+        {
+            index.keyPut(map, key, regex);
+        }
+    }
+
     /**
      * @param emojiId
      * @param word
@@ -206,12 +377,64 @@ public class EmojiManager
         return "FfzRep" + Integer.toString(emojiId);
     }
 
-    public void setFfzBadgeUsers(Map<Integer, Set<String>> ffzBadgeUsers)
+    /**
+     * Get the segmenter for finding Twitter emoji in words, which puts the emoji it finds into the Twitter emoji map
+     * 
+     * @return twitterEmojiSegmenter
+     */
+    public TwitterEmojiSegmenter getTwitterEmojiSegmenter()
+    {
+        TwitterEmojiSegmenter segmenter = twitterEmojiSegmenter;
+        if (segmenter == null)
+        {
+            synchronized (this)
+            {
+                segmenter = twitterEmojiSegmenter;
+                if (segmenter == null)
+                {
+                    segmenter = new TwitterEmojiSegmenter(getEmojiByType(EmojiType.TWITTER_EMOJI));
+                    twitterEmojiSegmenter = segmenter;
+                }
+            }
+        }
+        return segmenter;
+    }
+
+    /**
+     * Get the key a badge that differs from channel to channel, like the subscriber badge or a custom FrankerFaceZ
+     * moderator badge, is kept under for a channel, so the badges of every joined channel can share one bank
+     * 
+     * @param badgeKey
+     * @param channel
+     *            With or without the hash ('#'), or null for the key on its own
+     * @return key
+     */
+    public static String getChannelBadgeKey(String badgeKey, String channel)
+    {
+        if (channel == null)
+        {
+            return badgeKey;
+        }
+        return badgeKey + "__" + getChannelKey(channel);
+    }
+
+    /**
+     * Get the channel without its hash, in lowercase
+     * 
+     * @param channel
+     * @return key
+     */
+    private static String getChannelKey(String channel)
+    {
+        return (channel.startsWith("#") ? channel.substring(1) : channel).toLowerCase();
+    }
+
+    public void setFfzBadgeUsers(FfzBadgeUsers ffzBadgeUsers)
     {
         this.ffzBadgeUsers = ffzBadgeUsers;
     }
 
-    public Map<Integer, Set<String>> getFfzBadgeUsers()
+    public FfzBadgeUsers getFfzBadgeUsers()
     {
         return ffzBadgeUsers;
     }
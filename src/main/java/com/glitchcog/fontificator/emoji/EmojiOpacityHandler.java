@@ -9,6 +9,8 @@ import java.util.Map;
 
 import org.apache.log4j.Logger;
 
+import com.glitchcog.fontificator.sprite.RasterUtil;
+
 /**
  * Handles the few Twitch emotes that have opaque backgrounds
  * 
@@ -58,15 +60,7 @@ public class EmojiOpacityHandler
         //                                    imageType != BufferedImage.TYPE_INT_ARGB_PRE;
         // @formatter:on
 
-        boolean specificEmojiQualifies = false;
-        for (String key : TWITCH_EMOTES_WITH_OPAQUE_BACKGROUNDS.keySet())
-        {
-            if (key.equals(identifier))
-            {
-                specificEmojiQualifies = true;
-                break;
-            }
-        }
+        final boolean specificEmojiQualifies = identifier != null && TWITCH_EMOTES_WITH_OPAQUE_BACKGROUNDS.containsKey(identifier);
 
         return emojiTypeQualifies && specificEmojiQualifies;
     }
@@ -97,38 +91,42 @@ public class EmojiOpacityHandler
 
         // Go through the pixels in the buffered image and switch out the background color for the
         // transparent color
-        for (int y = 0; y < customTransparencyImage.getHeight(); y++)
-        {
-            for (int x = 0; x < customTransparencyImage.getWidth(); x++)
-            {
-                if (getDifferenceBetweenColors(customTransparencyImage.getRGB(x, y), pixelThatShouldBeTransparent) <= TWITCH_EMOTES_WITH_OPAQUE_BACKGROUNDS.get(identifier))
-                {
-                    customTransparencyImage.setRGB(x, y, transparentPixel);
-                }
-            }
-        }
+        RasterUtil.replacePixels(customTransparencyImage, new ColorDistanceMatcher(pixelThatShouldBeTransparent, TWITCH_EMOTES_WITH_OPAQUE_BACKGROUNDS.get(identifier)), transparentPixel);
 
         return customTransparencyImage;
     }
 
     /**
-     * Just a quick and dirty Euclidean distance between two colors
-     * 
-     * @param a
-     * @param b
-     * @return percent different
+     * Matches the pixels within a quick and dirty Euclidean distance of a color, ignoring alpha. The distance is a
+     * percent of the biggest possible distance, and is compared squared so no square root is taken per pixel.
      */
-    private static double getDifferenceBetweenColors(int a, int b)
+    private static class ColorDistanceMatcher implements RasterUtil.PixelMatcher
     {
-        Color ca = new Color(a);
-        Color cb = new Color(b);
+        private static final double MAX_DISTANCE_SQUARED = 255 * 255 + 255 * 255 + 255 * 255;
+
+        private final int red;
 
-        final double rDiff = ca.getRed() - cb.getRed();
-        final double gDiff = ca.getGreen() - cb.getGreen();
-        final double bDiff = ca.getBlue() - cb.getBlue();
-        final double diff = Math.sqrt(rDiff * rDiff + gDiff * gDiff + bDiff * bDiff);
-        final double percentDiff = diff / Math.sqrt(255 * 255 + 255 * 255 + 255 * 255);
+        private final int green;
 
-        return percentDiff;
+        private final int blue;
+
+        private final double thresholdSquared;
+
+        private ColorDistanceMatcher(int rgb, double percentThreshold)
+        {
+            this.red = (rgb >> 16) & 0xFF;
+            this.green = (rgb >> 8) & 0xFF;
+            this.blue = rgb & 0xFF;
+            this.thresholdSquared = percentThreshold * percentThreshold * MAX_DISTANCE_SQUARED;
+        }
+
+        @Override
+        public boolean matches(int argb)
+        {
+            final int rDiff = ((argb >> 16) & 0xFF) - red;
+            final int gDiff = ((argb >> 8) & 0xFF) - green;
+            final int bDiff = (argb & 0xFF) - blue;
+            return rDiff * rDiff + gDiff * gDiff + bDiff * bDiff <= thresholdSquared;
+        }
     }
 }
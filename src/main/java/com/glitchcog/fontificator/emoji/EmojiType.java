@@ -65,6 +65,16 @@ public enum EmojiType
         return badge;
     }
 
+    /**
+     * Whether each channel has its own emotes of this type, which are only shown in messages from that channel
+     * 
+     * @return channel emote
+     */
+    public boolean isChannelEmote()
+    {
+        return this == FRANKERFACEZ_CHANNEL || this == BETTER_TTV_CHANNEL;
+    }
+
     public String getDescription()
     {
         return description;
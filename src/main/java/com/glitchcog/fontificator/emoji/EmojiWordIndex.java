@@ -0,0 +1,259 @@
+package com.glitchcog.fontificator.emoji;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.glitchcog.fontificator.config.ConfigEmoji;
+
+/**
+ * One word-to-emoji index across a priority ordered list of emoji types, so looking up the emoji for a word in a
+ * message is a single hash lookup no matter how many types are enabled. Every word key of the enabled and loaded types
+ * is resolved ahead of time to the emoji the highest priority type has for it. Words that are only matched by regular
+ * expression keys, or that aren't emoji at all, are resolved the first time they're seen and remembered.
+ * <p>
+ * The index is kept up to date a piece at a time: a word put into a type's map only re-resolves that word, and a type
+ * being loaded, enabled or disabled only re-resolves that type's words.
+ *
+ * @author Matt Yanos
+ */
+class EmojiWordIndex
+{
+    /**
+     * The most words matched by regular expression or not matched at all to remember before they're all forgotten,
+     * since chat can say anything
+     */
+    private static final int MAX_RESOLVED = 8192;
+
+    private final Map<EmojiType, TypedEmojiMap> maps;
+
+    /**
+     * The types, highest priority first
+     */
+    private final EmojiType[] types;
+
+    /**
+     * Which of the types were enabled and loaded when the index was last brought up to date, one bit per type
+     */
+    private volatile int enabledMask;
+
+    /**
+     * Set when a regular expression key is added to an enabled type, since it could change what any word resolves to
+     */
+    private volatile boolean stale;
+
+    /**
+     * The word keys of the enabled types, resolved
+     */
+    private final Map<String, LazyLoadEmoji> words;
+
+    /**
+     * Words that aren't word keys of any enabled type but were resolved to an emoji by a regular expression key
+     */
+    private final Map<String, LazyLoadEmoji> matched;
+
+    /**
+     * Words that don't resolve to any emoji
+     */
+    private final Set<String> misses;
+
+    EmojiWordIndex(Map<EmojiType, TypedEmojiMap> maps, EmojiType[] types)
+    {
+        this.maps = maps;
+        this.types = types.clone();
+        this.words = new ConcurrentHashMap<String, LazyLoadEmoji>();
+        this.matched = new ConcurrentHashMap<String, LazyLoadEmoji>();
+        this.misses = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    }
+
+    /**
+     * Whether this is the index for the types, in the same order of priority, across the maps
+     *
+     * @param maps
+     * @param types
+     * @return whether this index covers those types
+     */
+    boolean isFor(Map<EmojiType, TypedEmojiMap> maps, EmojiType[] types)
+    {
+        return this.maps == maps && Arrays.equals(this.types, types);
+    }
+
+    /**
+     * Get the emoji for a word
+     *
+     * @param word
+     * @param config
+     *            Used to tell which types are enabled and loaded
+     * @return emoji or null if the word isn't an emoji of any enabled type
+     */
+    LazyLoadEmoji get(String word, ConfigEmoji config)
+    {
+        final int mask = getEnabledMask(config);
+        if (mask != enabledMask || stale)
+        {
+            update(mask);
+        }
+
+        LazyLoadEmoji emoji = words.get(word);
+        if (emoji != null)
+        {
+            return emoji;
+        }
+        emoji = matched.get(word);
+        if (emoji != null || misses.contains(word))
+        {
+            return emoji;
+        }
+
+        emoji = resolve(word, mask);
+        if (matched.size() + misses.size() >= MAX_RESOLVED)
+        {
+            matched.clear();
+            misses.clear();
+        }
+        if (emoji == null)
+        {
+            misses.add(word);
+        }
+        else
+        {
+            matched.put(word, emoji);
+        }
+        return emoji;
+    }
+
+    /**
+     * Called after a key has been put into a map, which is only indexed here if it's one of this index's maps
+     *
+     * @param map
+     * @param key
+     * @param regex
+     *            Whether the key is a regular expression
+     */
+    synchronized void keyPut(TypedEmojiMap map, String key, boolean regex)
+    {
+        final EmojiType type = map.getType();
+        if (maps.get(type) != map)
+        {
+            return;
+        }
+
+        final int bit = getBit(type);
+        if (bit == 0 || (enabledMask & bit) == 0)
+        {
+            // Not indexed yet, it'll be picked up when the type is enabled and loaded
+            return;
+        }
+
+        if (regex)
+        {
+            stale = true;
+        }
+        else
+        {
+            reindex(key, enabledMask);
+        }
+        matched.clear();
+        misses.clear();
+    }
+
+    /**
+     * Bring the index up to date with which types are enabled and loaded, re-resolving the words of only the types
+     * that changed, or of every enabled type if a regular expression key was added
+     *
+     * @param mask
+     */
+    private synchronized void update(int mask)
+    {
+        final int changed = stale ? (mask | enabledMask) : (mask ^ enabledMask);
+        if (changed == 0)
+        {
+            return;
+        }
+
+        // Cleared first so a regular expression added while this runs marks it stale again
+        stale = false;
+        for (int i = 0; i < types.length; i++)
+        {
+            if ((changed & (1 << i)) != 0)
+            {
+                TypedEmojiMap map = maps.get(types[i]);
+                if (map != null)
+                {
+                    for (String key : map.getWordKeys())
+                    {
+                        reindex(key, mask);
+                    }
+                }
+            }
+        }
+        matched.clear();
+        misses.clear();
+        enabledMask = mask;
+    }
+
+    private void reindex(String key, int mask)
+    {
+        LazyLoadEmoji emoji = resolve(key, mask);
+        if (emoji == null)
+        {
+            words.remove(key);
+        }
+        else
+        {
+            words.put(key, emoji);
+        }
+    }
+
+    /**
+     * Look the word up type by type in priority order, the same as checking each type's map in turn
+     *
+     * @param word
+     * @param mask
+     * @return emoji or null if none of the enabled types have it
+     */
+    private LazyLoadEmoji resolve(String word, int mask)
+    {
+        for (int i = 0; i < types.length; i++)
+        {
+            if ((mask & (1 << i)) != 0)
+            {
+                TypedEmojiMap map = maps.get(types[i]);
+                LazyLoadEmoji emoji = map == null ? null : map.getEmoji(word, null);
+                if (emoji != null)
+                {
+                    return emoji;
+                }
+            }
+        }
+        return null;
+    }
+
+    private int getEnabledMask(ConfigEmoji config)
+    {
+        int mask = 0;
+        for (int i = 0; i < types.length; i++)
+        {
+            if (config.isTypeEnabledAndLoaded(types[i]))
+            {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
+
+    private int getBit(EmojiType type)
+    {
+        int bit = 0;
+        for (int i = 0; i < types.length; i++)
+        {
+            if (types[i] == type)
+            {
+                bit |= 1 << i;
+            }
+        }
+        return bit;
+    }
+}
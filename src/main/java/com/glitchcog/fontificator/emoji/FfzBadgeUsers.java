@@ -0,0 +1,248 @@
+package com.glitchcog.fontificator.emoji;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Which users have which FrankerFaceZ badges, indexed by username so the badges for the poster of a message are found
+ * with a single lookup. Each lowercased username is stored once, alongside a bitmask of its badges, in a pair of
+ * parallel arrays using open addressing rather than a set of usernames per badge. Usernames are looked up ignoring
+ * case without making a lowercase copy.
+ * <p>
+ * Users are added while the badge data is loaded, and it's only read once it's been handed off to the emoji manager.
+ *
+ * @author Matt Yanos
+ */
+public class FfzBadgeUsers
+{
+    private static final Logger logger = Logger.getLogger(FfzBadgeUsers.class);
+
+    /**
+     * One bit of the mask per badge
+     */
+    public static final int MAX_BADGES = 64;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * The badge IDs, in the order they were first seen, indexed by bit
+     */
+    private final int[] badgeIds;
+
+    /**
+     * The badge IDs as the keys the badges are stored under in the emoji map, indexed by bit
+     */
+    private final String[] badgeKeys;
+
+    private int badgeCount;
+
+    /**
+     * Lowercased usernames, null for an empty slot
+     */
+    private String[] names;
+
+    /**
+     * The badges of the user in the same slot of names
+     */
+    private long[] masks;
+
+    private int userCount;
+
+    public FfzBadgeUsers()
+    {
+        this.badgeIds = new int[MAX_BADGES];
+        this.badgeKeys = new String[MAX_BADGES];
+        this.names = new String[INITIAL_CAPACITY];
+        this.masks = new long[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Record that a user has a badge
+     *
+     * @param badgeId
+     * @param username
+     */
+    public void addUser(int badgeId, String username)
+    {
+        final int bit = getBit(badgeId);
+        if (bit < 0 || username == null)
+        {
+            return;
+        }
+
+        if ((userCount + 1) * 2 > names.length)
+        {
+            resize(names.length * 2);
+        }
+
+        final String name = toLowercase(username);
+        final int slot = findSlot(name);
+        if (names[slot] == null)
+        {
+            names[slot] = name;
+            userCount++;
+        }
+        masks[slot] |= 1L << bit;
+    }
+
+    /**
+     * Get the badges a user has, as a bitmask to be decoded with {@link #getBadgeKey(int)}
+     *
+     * @param username
+     *            Any case
+     * @return bitmask, or 0 if the user has no badges
+     */
+    public long getBadgeMask(String username)
+    {
+        if (username == null || userCount == 0)
+        {
+            return 0L;
+        }
+
+        final int mask = names.length - 1;
+        for (int slot = lowercaseHash(username) & mask;; slot = (slot + 1) & mask)
+        {
+            final String name = names[slot];
+            if (name == null)
+            {
+                return 0L;
+            }
+            else if (equalsLowercase(name, username))
+            {
+                return masks[slot];
+            }
+        }
+    }
+
+    /**
+     * Get the key of the badge for a bit of a mask returned by {@link #getBadgeMask(String)}
+     *
+     * @param bit
+     * @return badge key, the badge ID as a string
+     */
+    public String getBadgeKey(int bit)
+    {
+        return badgeKeys[bit];
+    }
+
+    public int getBadgeCount()
+    {
+        return badgeCount;
+    }
+
+    public int getUserCount()
+    {
+        return userCount;
+    }
+
+    private int getBit(int badgeId)
+    {
+        for (int i = 0; i < badgeCount; i++)
+        {
+            if (badgeIds[i] == badgeId)
+            {
+                return i;
+            }
+        }
+
+        if (badgeCount == MAX_BADGES)
+        {
+            logger.warn("Too many FrankerFaceZ badges, ignoring users of badge " + badgeId);
+            return -1;
+        }
+
+        badgeIds[badgeCount] = badgeId;
+        badgeKeys[badgeCount] = Integer.toString(badgeId);
+        return badgeCount++;
+    }
+
+    /**
+     * Find the slot holding the name, or the empty slot it belongs in
+     *
+     * @param name
+     *            Already lowercased
+     * @return slot
+     */
+    private int findSlot(String name)
+    {
+        final int mask = names.length - 1;
+        int slot = lowercaseHash(name) & mask;
+        while (names[slot] != null && !names[slot].equals(name))
+        {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize(int capacity)
+    {
+        final String[] oldNames = names;
+        final long[] oldMasks = masks;
+        names = new String[capacity];
+        masks = new long[capacity];
+        for (int i = 0; i < oldNames.length; i++)
+        {
+            if (oldNames[i] != null)
+            {
+                final int slot = findSlot(oldNames[i]);
+                names[slot] = oldNames[i];
+                masks[slot] = oldMasks[i];
+            }
+        }
+    }
+
+    /**
+     * The hash of the lowercase version of the string, the same for any case of it
+     *
+     * @param str
+     * @return hash
+     */
+    private static int lowercaseHash(String str)
+    {
+        int h = 0;
+        for (int i = 0; i < str.length(); i++)
+        {
+            h = 31 * h + Character.toLowerCase(str.charAt(i));
+        }
+        // Spread the high bits down, since only the low ones pick the slot
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Lowercase a string the same way the lookups do, a character at a time
+     *
+     * @param str
+     * @return lowercase string, the same instance if it was already lowercase
+     */
+    private static String toLowercase(String str)
+    {
+        for (int i = 0; i < str.length(); i++)
+        {
+            if (Character.toLowerCase(str.charAt(i)) != str.charAt(i))
+            {
+                char[] chars = str.toCharArray();
+                for (int j = i; j < chars.length; j++)
+                {
+                    chars[j] = Character.toLowerCase(chars[j]);
+                }
+                return new String(chars);
+            }
+        }
+        return str;
+    }
+
+    private static boolean equalsLowercase(String lowercase, String str)
+    {
+        if (lowercase.length() != str.length())
+        {
+            return false;
+        }
+        for (int i = 0; i < str.length(); i++)
+        {
+            if (lowercase.charAt(i) != Character.toLowerCase(str.charAt(i)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
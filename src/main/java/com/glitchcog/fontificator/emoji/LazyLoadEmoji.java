@@ -1,20 +1,24 @@
 package com.glitchcog.fontificator.emoji;
 
 import java.awt.Color;
-import java.awt.Dimension;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.imageio.ImageIO;
 
 import org.apache.log4j.Logger;
 
+import com.glitchcog.fontificator.metrics.PipelineMetrics;
+
 /**
  * Holds the URL for an emoji image until it is needed, at which point it load it into memory. This is a combination of
  * every possible version of emoji that could be read from its JSON source, be it Twitch V2, Twitch V3, or FrankerFaceZ.
@@ -22,7 +26,8 @@ import org.apache.log4j.Logger;
  * LazyLoadEmoji[]> map in EmojiManager.
  * 
  * This object acts as part of an array because Twitch V2 and V3 emoji seem to indicate they'll use multiple instances
- * of emoji as frames of animation. This is as of yet unused. Third party emoji BetterTTV already use animated GIFs.
+ * of emoji as frames of animation. This is as of yet unused. Third party emoji BetterTTV already use animated GIFs,
+ * which are decoded into frames once and drawn by time, see {@link AnimatedEmoji}.
  * 
  * @author Matt Yanos
  */
@@ -31,9 +36,15 @@ public class LazyLoadEmoji
     private static final Logger logger = Logger.getLogger(LazyLoadEmoji.class);
 
     /**
-     * Keep track of any failed URLs so we don't clobber the display trying to reload them over and over
+     * Keep track of any failed URLs so we don't clobber the display trying to reload them over and over, keyed off of
+     * the URL string and holding when the URL may be tried again
+     */
+    private static final Map<String, Long> BUSTED_URLS = new ConcurrentHashMap<String, Long>();
+
+    /**
+     * How long a failed URL is left alone before it's tried again, in case the emote was only missing for a while
      */
-    private static List<String> BUSTED_URLS = new ArrayList<String>();
+    private static final long BUSTED_URL_RETRY_MILLIS = 10L * 60L * 1000L;
 
     /**
      * The word or regex that identifies this emoji
@@ -47,28 +58,54 @@ public class LazyLoadEmoji
 
     private final EmojiType type;
 
-    private Image image;
+    /**
+     * Set by whichever thread downloads it, and read while painting
+     */
+    private volatile Image image;
 
-    private Image animatedGifImage;
+    private volatile AnimatedEmoji animation;
 
     private URL url;
 
+    /**
+     * The URL as a string, made once for checking the failed URLs
+     */
+    private final String urlKey;
+
     private boolean subscriber;
 
     private String state;
 
-    private int width;
+    private volatile int width;
 
-    private int height;
+    private volatile int height;
 
     private boolean animated;
 
-    private boolean animatedGif;
+    private volatile boolean animatedGif;
 
     private static final int DEFAULT_EMOJI_SIZE = 24;
 
     private boolean firstLoadFailureReported;
 
+    /**
+     * Whether the image is queued to be downloaded or being downloaded in the background. Guarded by this emoji's
+     * monitor.
+     */
+    private boolean loading;
+
+    /**
+     * Whatever tried to draw this emoji before its image was loaded, to be told once it is. Guarded by this emoji's
+     * monitor.
+     */
+    private final List<ImageObserver> waiters = new ArrayList<ImageObserver>(1);
+
+    /**
+     * Held while the image is downloaded, so it's only downloaded once when it's cached ahead of time and drawn at the
+     * same time. Kept apart from this emoji's monitor so that painting never waits on a download.
+     */
+    private final Object loadLock = new Object();
+
     /**
      * Used for FFZ badges only
      */
@@ -99,6 +136,7 @@ public class LazyLoadEmoji
         this.identifier = identifier;
         this.replaces = replaces;
         this.url = new URL(url);
+        this.urlKey = this.url.toString();
         this.type = type;
         this.width = width;
         this.height = height;
@@ -106,55 +144,204 @@ public class LazyLoadEmoji
         this.bgColor = bgColor;
     }
 
-    public void cacheImage()
+    /**
+     * Load the image right away on the calling thread, for caching emoji ahead of time off of the Swing event thread
+     * 
+     * @return whether loading is done with, or false if the image couldn't be reached and it's worth trying again
+     */
+    public boolean cacheImage()
     {
-        getImage(isAnimatedGif());
+        return loadImage();
     }
 
     /**
-     * Lazy-loaded image
+     * Get the image if it has been loaded, without waiting for it. If it hasn't been loaded yet, its download is queued
+     * and null is returned, so the caller can draw a placeholder in the meantime.
      * 
-     * @return image
+     * @param animated
+     * @return image or null if it isn't loaded yet
      */
     public Image getImage(boolean animated)
     {
-        if (url == null || BUSTED_URLS.contains(url.toString()))
+        return getImage(animated, null);
+    }
+
+    /**
+     * Get the image if it has been loaded, without waiting for it. If it hasn't been loaded yet, its download is queued
+     * and null is returned, so the caller can draw a placeholder in the meantime. The observer is told once the image
+     * arrives, which for a component means it's repainted.
+     * 
+     * @param animated
+     * @param observer
+     *            Notified when the image has loaded, or null if nothing needs to be
+     * @return image or null if it isn't loaded yet
+     */
+    public Image getImage(boolean animated, ImageObserver observer)
+    {
+        if (url == null || isBusted(urlKey))
         {
             return null;
         }
-        // Lazy load the still image whether or not the emoji is animated
-        if (image == null)
+
+        if (isLoaded())
         {
-            if (!checkUrl(url))
+            PipelineMetrics.EMOJI_CACHE_HITS.incrementAndGet();
+        }
+        else
+        {
+            PipelineMetrics.EMOJI_CACHE_MISSES.incrementAndGet();
+            requestAsyncLoad(observer);
+        }
+
+        // Return the animated GIF frame only if animated is requested AND this emoji is an animated GIF
+        if (animated && animatedGif)
+        {
+            final AnimatedEmoji loadedAnimation = animation;
+            if (loadedAnimation == null)
             {
-                BUSTED_URLS.add(url.toString());
                 return null;
             }
+            return loadedAnimation.getFrame(observer instanceof EmojiAnimationObserver ? ((EmojiAnimationObserver) observer).getAnimationMillis() : System.currentTimeMillis());
+        }
+        return image;
+    }
+
+    /**
+     * Whether everything this emoji needs drawn has been loaded, the still image and the animation if it has one
+     * 
+     * @return loaded
+     */
+    private boolean isLoaded()
+    {
+        return image != null && (!animatedGif || animation != null);
+    }
+
+    /**
+     * Queue the image to be downloaded unless it already is, and remember who to tell when it's done
+     * 
+     * @param observer
+     */
+    private synchronized void requestAsyncLoad(ImageObserver observer)
+    {
+        if (observer != null && !waiters.contains(observer))
+        {
+            waiters.add(observer);
+        }
+        if (!loading)
+        {
+            loading = EmojiImageLoader.submit(this);
+        }
+    }
+
+    /**
+     * Called by the loader once a queued download is done, whether or not it worked, to let everything waiting to draw
+     * this emoji know to try again
+     */
+    void finishAsyncLoad()
+    {
+        final ImageObserver[] observers;
+        synchronized (this)
+        {
+            loading = false;
+            observers = waiters.toArray(new ImageObserver[waiters.size()]);
+            waiters.clear();
+        }
+
+        final Image loaded = image;
+        if (loaded != null)
+        {
+            for (ImageObserver observer : observers)
+            {
+                observer.imageUpdate(loaded, ImageObserver.ALLBITS, 0, 0, width, height);
+            }
+        }
+    }
+
+    /**
+     * Load the image, blocking until it's downloaded. This is the slow part, so it should never be called from the
+     * Swing event thread.
+     * 
+     * @return whether loading is done with, or false if the image couldn't be reached and it's worth trying again
+     */
+    boolean loadImage()
+    {
+        synchronized (loadLock)
+        {
+            return loadImageLocked();
+        }
+    }
+
+    private boolean loadImageLocked()
+    {
+        if (url == null || isBusted(urlKey))
+        {
+            return true;
+        }
+
+        // Both the still image and the animation are decoded from the same bytes, which come from the disk cache
+        // when this emoji has been downloaded on an earlier run
+        byte[] data = null;
+        if (image == null || (animatedGif && animation == null))
+        {
+            EmojiDiskCache.Fetch fetch = EmojiDiskCache.fetch(url);
+            if (fetch.isMissing())
+            {
+                markBusted(urlKey);
+                return true;
+            }
+            data = fetch.getData();
+            if (data == null)
+            {
+                // The network is down or the server didn't answer, so try again the next time it's drawn rather than
+                // writing it off
+                if (!firstLoadFailureReported)
+                {
+                    logger.error("Unable to load emoji: " + url);
+                    firstLoadFailureReported = true;
+                }
+                return false;
+            }
+        }
 
+        // Lazy load the still image whether or not the emoji is animated
+        if (image == null)
+        {
             try
             {
-                BufferedImage imageFromTwitch = ImageIO.read(url);
+                BufferedImage imageFromTwitch = ImageIO.read(new ByteArrayInputStream(data));
+                if (imageFromTwitch == null)
+                {
+                    // Downloading it again each time it's drawn won't change what it is, and the bad bytes shouldn't be
+                    // what's read back once the retry window is up
+                    EmojiDiskCache.discard(url);
+                    markBusted(urlKey);
+                    throw new IOException("Unrecognized image format");
+                }
 
                 // Hack to make image background transparent because Twitch emote V1 of sizes 2.0 and 3.0 sometimes are
                 // not of the correct type for transparency. Kappa (ID 25) is an example of a non transparent emoji in
                 // sizes 2.0 and 3.0. Seriously. Download a Kappa size 2.0 image from the V1 URL and open it in an
                 // editor. The background is solid, but when Twitch displays it in their chat, it displays transparent.
+                Image loadedImage;
                 if (EmojiOpacityHandler.isCandidateForModification(type, imageFromTwitch.getType(), identifier))
                 {
-                    image = EmojiOpacityHandler.fixOpaqueEmote(identifier, imageFromTwitch);
+                    loadedImage = EmojiOpacityHandler.fixOpaqueEmote(identifier, imageFromTwitch);
                 }
                 // No hack required
                 else
                 {
-                    image = imageFromTwitch;
+                    loadedImage = imageFromTwitch;
                 }
 
-                if (image != null)
+                if (loadedImage != null)
                 {
-                    this.width = this.image.getWidth(null);
-                    this.height = this.image.getHeight(null);
+                    this.width = loadedImage.getWidth(null);
+                    this.height = loadedImage.getHeight(null);
+                    PipelineMetrics.EMOJI_BYTES.addAndGet(4L * width * height);
                 }
 
+                // Published last, so anyone who sees the image also sees its size
+                image = loadedImage;
             }
             catch (IOException e)
             {
@@ -167,25 +354,52 @@ public class LazyLoadEmoji
             }
         }
 
-        // Only lazy load the animated GIF image if the image is an animatedGif type
-        if (animatedGif && animatedGifImage == null)
+        // Only lazy load the animated GIF frames if the image is an animatedGif type
+        if (animatedGif && animation == null)
         {
             // BTTV emote (ditto) gets special care
-            if ("(ditto)".equals(identifier))
+            AnimatedEmoji loadedAnimation = AnimatedGifUtil.loadAnimatedGif(data, "(ditto)".equals(identifier));
+            if (loadedAnimation == null)
             {
-                Dimension dim = new Dimension();
-                animatedGifImage = AnimatedGifUtil.loadDittoAnimatedGif(url, dim);
-                this.width = (int) dim.getWidth();
-                this.height = (int) dim.getHeight();
+                // Show the still image instead rather than trying again on every draw
+                animatedGif = false;
             }
             else
             {
-                animatedGifImage = AnimatedGifUtil.loadAnimatedGif(url);
+                this.width = loadedAnimation.getWidth();
+                this.height = loadedAnimation.getHeight();
+                PipelineMetrics.EMOJI_BYTES.addAndGet(4L * width * height * loadedAnimation.getFrameCount());
+                animation = loadedAnimation;
             }
         }
+        return true;
+    }
+
+    /**
+     * Whether the URL failed recently enough that it shouldn't be tried again yet
+     * 
+     * @param urlKey
+     * @return busted
+     */
+    private static boolean isBusted(String urlKey)
+    {
+        final Long retryMillis = BUSTED_URLS.get(urlKey);
+        if (retryMillis == null)
+        {
+            return false;
+        }
+        else if (System.currentTimeMillis() < retryMillis)
+        {
+            return true;
+        }
+        // Expired, so let it be tried again, unless it's been marked busted again in the meantime
+        BUSTED_URLS.remove(urlKey, retryMillis);
+        return false;
+    }
 
-        // Return the animated GIF image only if animated is requested AND this emoji is an animated GIF
-        return animated && animatedGif ? animatedGifImage : image;
+    private static void markBusted(String urlKey)
+    {
+        BUSTED_URLS.put(urlKey, System.currentTimeMillis() + BUSTED_URL_RETRY_MILLIS);
     }
 
     public boolean isSubscriber()
@@ -248,6 +462,16 @@ public class LazyLoadEmoji
         this.animated = animated;
     }
 
+    /**
+     * Get the decoded frames of an animated GIF emoji
+     * 
+     * @return animation, or null if this isn't an animated GIF or it isn't loaded yet
+     */
+    public AnimatedEmoji getAnimation()
+    {
+        return animatedGif ? animation : null;
+    }
+
     public boolean isAnimatedGif()
     {
         return animatedGif;
@@ -282,22 +506,4 @@ public class LazyLoadEmoji
     {
         return replaces;
     }
-
-    public static boolean checkUrl(URL url)
-    {
-        try
-        {
-            HttpURLConnection.setFollowRedirects(true); // Does not work for http to https redirects
-            HttpURLConnection httpURLConnection = (HttpURLConnection) url.openConnection();
-            httpURLConnection.setRequestMethod("HEAD");
-            httpURLConnection.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows; U; Windows NT 6.0; en-US; rv:1.9.1.2) Gecko/20090729 Firefox/3.5.2 (.NET CLR 3.5.30729)");
-            int responseCode = httpURLConnection.getResponseCode();
-            return responseCode == HttpURLConnection.HTTP_OK;
-        }
-        catch (Exception e)
-        {
-            logger.debug(e.getMessage(), e);
-            return false;
-        }
-    }
 }
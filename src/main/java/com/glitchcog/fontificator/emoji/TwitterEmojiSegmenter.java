@@ -0,0 +1,389 @@
+package com.glitchcog.fontificator.emoji;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Finds the Twitter emoji (twemoji) in a word in one pass over it, using a trie of code points built from the Unicode
+ * emoji sequences bundled as the emoji_sequences.txt resource. This recognizes every kind of emoji sequence, like skin
+ * tones, flags, keycaps and ZWJ sequences, and always the longest one. Each sequence has its twemoji icon ID worked out
+ * when the trie is built and keeps the emoji made for it, so finding emoji in a message builds no strings.
+ *
+ * @author Matt Yanos
+ */
+public class TwitterEmojiSegmenter
+{
+    private static final Logger logger = Logger.getLogger(TwitterEmojiSegmenter.class);
+
+    private static final String SEQUENCES_FILENAME = "emoji_sequences.txt";
+
+    private static final String TWEMOJI_URL_PREFIX = "https://twemoji.maxcdn.com/2/72x72/";
+
+    private static final String TWEMOJI_URL_SUFFIX = ".png";
+
+    private static final int ZERO_WIDTH_JOINER = 0x200D;
+
+    private static final int TEXT_PRESENTATION_SELECTOR = 0xFE0E;
+
+    private static final int EMOJI_PRESENTATION_SELECTOR = 0xFE0F;
+
+    /**
+     * Emoji that default to text below this code point, like the copyright sign, are only emoji when followed by the
+     * emoji presentation selector. From here up they're emoji on their own too, as chat often leaves the selector off.
+     */
+    private static final int MIN_BARE_EMOJI = 0x2600;
+
+    /**
+     * Receives the pieces of a word as it's split into text and emoji
+     */
+    public interface Segments
+    {
+        /**
+         * A stretch of the word that isn't emoji
+         *
+         * @param word
+         * @param start
+         * @param end
+         */
+        void text(String word, int start, int end);
+
+        /**
+         * An emoji in the word
+         *
+         * @param emoji
+         */
+        void emoji(LazyLoadEmoji emoji);
+    }
+
+    /**
+     * A node of the trie, for one code point of a sequence
+     */
+    private static class Node
+    {
+        /**
+         * The next code points of the sequences through here, sorted
+         */
+        private int[] keys = new int[0];
+
+        private Node[] children = new Node[0];
+
+        /**
+         * The twemoji icon ID if a sequence ends here, or null if not
+         */
+        private String iconId;
+
+        /**
+         * Made the first time this sequence is found
+         */
+        private volatile LazyLoadEmoji emoji;
+
+        private Node getChild(int codePoint)
+        {
+            final int index = Arrays.binarySearch(keys, codePoint);
+            return index < 0 ? null : children[index];
+        }
+
+        private Node addChild(int codePoint)
+        {
+            int index = Arrays.binarySearch(keys, codePoint);
+            if (index >= 0)
+            {
+                return children[index];
+            }
+            index = -index - 1;
+
+            int[] newKeys = new int[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            newKeys[index] = codePoint;
+            newChildren[index] = new Node();
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[index];
+        }
+    }
+
+    private final Node root;
+
+    /**
+     * The emoji map the Twitter emoji are put into as they're made
+     */
+    private final TypedEmojiMap emojiMap;
+
+    /**
+     * @param emojiMap
+     *            The Twitter emoji map, for the emoji made for found sequences to be put into
+     */
+    public TwitterEmojiSegmenter(TypedEmojiMap emojiMap)
+    {
+        this.emojiMap = emojiMap;
+        this.root = new Node();
+
+        int sequenceCount = 0;
+        try
+        {
+            sequenceCount = loadSequences();
+        }
+        catch (Exception e)
+        {
+            logger.error("Unable to load the emoji sequences from " + SEQUENCES_FILENAME, e);
+        }
+        logger.debug(sequenceCount + " emoji sequences loaded");
+    }
+
+    private int loadSequences() throws IOException
+    {
+        InputStream is = TwitterEmojiSegmenter.class.getClassLoader().getResourceAsStream(SEQUENCES_FILENAME);
+        if (is == null)
+        {
+            throw new IOException("Missing resource " + SEQUENCES_FILENAME);
+        }
+
+        // Sequences that differ only by presentation selectors share an icon, so they're kept by that ID as they're
+        // read to reuse the same string
+        Map<String, String> iconIds = new HashMap<String, String>();
+        int sequenceCount = 0;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+        try
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                final int commentIndex = line.indexOf('#');
+                final String data = (commentIndex < 0 ? line : line.substring(0, commentIndex)).trim();
+                if (data.isEmpty())
+                {
+                    continue;
+                }
+
+                final String codes = data.substring(0, data.indexOf(';') < 0 ? data.length() : data.indexOf(';')).trim();
+                final int rangeIndex = codes.indexOf("..");
+                if (rangeIndex >= 0)
+                {
+                    final int first = Integer.parseInt(codes.substring(0, rangeIndex), 16);
+                    final int last = Integer.parseInt(codes.substring(rangeIndex + 2), 16);
+                    for (int cp = first; cp <= last; cp++)
+                    {
+                        addSequence(new int[] { cp }, iconIds);
+                        sequenceCount++;
+                    }
+                }
+                else
+                {
+                    String[] hexCodes = codes.split("\\s+");
+                    int[] sequence = new int[hexCodes.length];
+                    for (int i = 0; i < hexCodes.length; i++)
+                    {
+                        sequence[i] = Integer.parseInt(hexCodes[i], 16);
+                    }
+                    addSequence(sequence, iconIds);
+                    sequenceCount++;
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return sequenceCount;
+    }
+
+    /**
+     * Add a sequence to the trie, along with the same sequence without its emoji presentation selectors, since chat
+     * often leaves them off
+     *
+     * @param sequence
+     * @param iconIds
+     */
+    private void addSequence(int[] sequence, Map<String, String> iconIds)
+    {
+        boolean hasJoiner = false;
+        int selectorCount = 0;
+        for (int cp : sequence)
+        {
+            hasJoiner |= cp == ZERO_WIDTH_JOINER;
+            selectorCount += cp == EMOJI_PRESENTATION_SELECTOR ? 1 : 0;
+        }
+
+        int[] stripped = new int[sequence.length - selectorCount];
+        int s = 0;
+        for (int cp : sequence)
+        {
+            if (cp != EMOJI_PRESENTATION_SELECTOR)
+            {
+                stripped[s++] = cp;
+            }
+        }
+
+        // The twemoji file names leave out the presentation selectors, unless it's a ZWJ sequence
+        String iconId = toIconId(hasJoiner ? sequence : stripped);
+        final String existingId = iconIds.get(iconId);
+        if (existingId == null)
+        {
+            iconIds.put(iconId, iconId);
+        }
+        else
+        {
+            iconId = existingId;
+        }
+
+        putSequence(sequence, iconId);
+        if (stripped.length > 0 && (stripped.length > 1 || stripped[0] >= MIN_BARE_EMOJI))
+        {
+            putSequence(stripped, iconId);
+        }
+    }
+
+    private void putSequence(int[] sequence, String iconId)
+    {
+        Node node = root;
+        for (int cp : sequence)
+        {
+            node = node.addChild(cp);
+        }
+        // The first one read wins, which keeps a fully qualified sequence's own ID over one it was stripped to
+        if (node.iconId == null)
+        {
+            node.iconId = iconId;
+        }
+    }
+
+    private static String toIconId(int[] sequence)
+    {
+        StringBuilder id = new StringBuilder(sequence.length * 6);
+        for (int cp : sequence)
+        {
+            if (id.length() > 0)
+            {
+                id.append('-');
+            }
+            id.append(Integer.toHexString(cp));
+        }
+        return id.toString();
+    }
+
+    /**
+     * Split a word into its text and Twitter emoji. If no emoji are found, nothing is passed to the segments, so the
+     * caller can treat the word as a whole.
+     *
+     * @param word
+     * @param segments
+     *            Receives the text and emoji, in order
+     * @return whether any emoji were found
+     */
+    public boolean segment(String word, Segments segments)
+    {
+        if (root.keys.length == 0)
+        {
+            return false;
+        }
+
+        final int minCodePoint = root.keys[0];
+        final int length = word.length();
+        boolean found = false;
+        int textStart = 0;
+        int i = 0;
+        while (i < length)
+        {
+            final int cp = word.codePointAt(i);
+            Node match = null;
+            int matchEnd = -1;
+
+            Node node = cp < minCodePoint ? null : root.getChild(cp);
+            int j = i + Character.charCount(cp);
+            // Walk as far as the sequence goes, remembering the longest one that ends at an emoji
+            while (node != null)
+            {
+                if (node.iconId != null)
+                {
+                    match = node;
+                    matchEnd = j;
+                }
+                if (j >= length)
+                {
+                    break;
+                }
+                final int next = word.codePointAt(j);
+                node = node.getChild(next);
+                j += Character.charCount(next);
+            }
+
+            if (match != null && matchEnd < length)
+            {
+                final char after = word.charAt(matchEnd);
+                if (after == EMOJI_PRESENTATION_SELECTOR)
+                {
+                    // A trailing selector that's already implied
+                    matchEnd++;
+                }
+                else if (after == TEXT_PRESENTATION_SELECTOR)
+                {
+                    // Asked to be shown as text
+                    match = null;
+                }
+            }
+
+            if (match == null)
+            {
+                i += Character.charCount(cp);
+                continue;
+            }
+
+            LazyLoadEmoji emoji = getEmoji(match);
+            if (emoji != null)
+            {
+                if (i > textStart)
+                {
+                    segments.text(word, textStart, i);
+                }
+                segments.emoji(emoji);
+                textStart = matchEnd;
+                found = true;
+            }
+            i = matchEnd;
+        }
+
+        if (found && textStart < length)
+        {
+            segments.text(word, textStart, length);
+        }
+        return found;
+    }
+
+    private LazyLoadEmoji getEmoji(Node node)
+    {
+        LazyLoadEmoji emoji = node.emoji;
+        if (emoji == null)
+        {
+            emoji = emojiMap.getEmoji(node.iconId);
+            if (emoji == null)
+            {
+                final String url = TWEMOJI_URL_PREFIX + node.iconId + TWEMOJI_URL_SUFFIX;
+                try
+                {
+                    emoji = new LazyLoadEmoji(node.iconId, url, EmojiType.TWITTER_EMOJI);
+                    emojiMap.put(node.iconId, emoji);
+                }
+                catch (MalformedURLException e)
+                {
+                    logger.error("Couldn't parse emoji URL: " + url, e);
+                    return null;
+                }
+            }
+            node.emoji = emoji;
+        }
+        return emoji;
+    }
+}
@@ -1,10 +1,19 @@
 package com.glitchcog.fontificator.emoji;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.log4j.Logger;
 
 import com.glitchcog.fontificator.config.ConfigEmoji;
 
@@ -17,22 +26,80 @@ import com.glitchcog.fontificator.config.ConfigEmoji;
  * This separation is to permit the speedier access of emoji keyed off of words before checking through all the regular
  * expression keys, which takes longer because each key must be accessed and compared as a regular expression.<br />
  * <br />
+ * The regular expressions are compiled once, the first time they're needed after the map changes, and indexed by the
+ * literal character they have to start with, so a word is only tested against the handful of expressions that could
+ * possibly match it. Words that don't match any emoji are remembered until the map changes again, so the words of
+ * ordinary chat cost one hash lookup after the first time they're seen.
  * 
  * @author Matt Yanos
  */
 public class TypedEmojiMap
 {
+    private static final Logger logger = Logger.getLogger(TypedEmojiMap.class);
+
+    /**
+     * The most words remembered as not being emoji before they're all forgotten, since chat can say anything
+     */
+    private static final int MAX_MISSES = 8192;
+
     private final EmojiType type;
 
+    /**
+     * Told about every key put into this map, so it can keep its word index up to date. Null if nothing is indexing
+     * this map.
+     */
+    private final EmojiManager manager;
+
+    /**
+     * Every key put into this map is put into this one as well, or null if it isn't. Used to gather the emotes of
+     * every channel into one map for messages that aren't from any one channel.
+     */
+    private final TypedEmojiMap union;
+
+    /**
+     * Concurrent because words are looked up on the message thread while emoji jobs put into it
+     */
     private Map<String, LazyLoadEmoji> normalMap;
 
+    /**
+     * Kept in the order the expressions were added, so when more than one matches a word the same one always wins
+     */
     private Map<String, LazyLoadEmoji> regexMap;
 
+    /**
+     * The compiled regular expressions, or null when the map has changed since they were last compiled
+     */
+    private volatile CompiledRegexes compiled;
+
+    /**
+     * Words already found not to match any emoji in this map
+     */
+    private final Set<String> misses;
+
+    /**
+     * Goes up with every put, so a lookup that raced a put doesn't remember a word as a miss after the put cleared
+     * them
+     */
+    private volatile int version;
+
     public TypedEmojiMap(EmojiType type)
+    {
+        this(type, null);
+    }
+
+    TypedEmojiMap(EmojiType type, EmojiManager manager)
+    {
+        this(type, manager, null);
+    }
+
+    TypedEmojiMap(EmojiType type, EmojiManager manager, TypedEmojiMap union)
     {
         this.type = type;
-        normalMap = new HashMap<String, LazyLoadEmoji>();
-        regexMap = new HashMap<String, LazyLoadEmoji>();
+        this.manager = manager;
+        this.union = union;
+        normalMap = new ConcurrentHashMap<String, LazyLoadEmoji>();
+        regexMap = new LinkedHashMap<String, LazyLoadEmoji>();
+        misses = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
     }
 
     /**
@@ -72,17 +139,35 @@ public class TypedEmojiMap
             return null;
         }
 
+        if (testKey == null || misses.contains(testKey))
+        {
+            return null;
+        }
+
+        final int lookupVersion = version;
         LazyLoadEmoji emoji = normalMap.get(testKey);
 
         if (emoji == null)
         {
-            for (String regex : regexMap.keySet())
+            CompiledRegexes regexes = compiled;
+            if (regexes == null)
             {
-                if (testKey.matches(regex))
-                {
-                    emoji = regexMap.get(regex);
-                    break;
-                }
+                regexes = compile();
+            }
+            emoji = regexes.match(testKey);
+        }
+
+        if (emoji == null)
+        {
+            if (misses.size() >= MAX_MISSES)
+            {
+                misses.clear();
+            }
+            misses.add(testKey);
+            // Checked after adding, since a put bumps the version before clearing the misses
+            if (version != lookupVersion)
+            {
+                misses.remove(testKey);
             }
         }
 
@@ -91,18 +176,67 @@ public class TypedEmojiMap
 
     public LazyLoadEmoji put(String key, LazyLoadEmoji value)
     {
-        if (isRegularExpression(key))
+        if (union != null)
+        {
+            union.put(key, value);
+        }
+
+        final boolean regex = isRegularExpression(key);
+        LazyLoadEmoji previous;
+        synchronized (this)
+        {
+            if (regex)
+            {
+                key = fixRegularExpression(key);
+                previous = regexMap.put(key, value);
+                compiled = null;
+            }
+            else
+            {
+                previous = normalMap.put(key, value);
+            }
+            version++;
+            misses.clear();
+        }
+
+        // Outside of the lock, since the index takes its own lock and then reads this map
+        if (manager != null)
         {
-            key = fixRegularExpression(key);
-            return regexMap.put(key, value);
+            manager.keyPut(this, key, regex);
         }
-        else
+        return previous;
+    }
+
+    /**
+     * Compile the regular expressions as they are now
+     * 
+     * @return compiled regular expressions
+     */
+    private synchronized CompiledRegexes compile()
+    {
+        if (compiled == null)
         {
-            return normalMap.put(key, value);
+            compiled = new CompiledRegexes(regexMap);
         }
+        return compiled;
+    }
+
+    EmojiType getType()
+    {
+        return type;
+    }
+
+    /**
+     * Get a copy of the keys that are just words, not regular expressions
+     * 
+     * @return word keys
+     */
+    synchronized Collection<String> getWordKeys()
+    {
+        return new ArrayList<String>(normalMap.keySet());
     }
 
-    public Collection<String> keySet()
+    public synchronized Collection<String> keySet()
     {
         Set<String> keys = new HashSet<String>(normalMap.keySet().size() + regexMap.keySet().size());
         keys.addAll(normalMap.keySet());
@@ -151,12 +285,162 @@ public class TypedEmojiMap
 
     public Map<String, LazyLoadEmoji> getNormalMap()
     {
-        return normalMap;
+        return Collections.unmodifiableMap(normalMap);
     }
 
     public Map<String, LazyLoadEmoji> getRegexMap()
     {
-        return regexMap;
+        return Collections.unmodifiableMap(regexMap);
+    }
+
+    /**
+     * A snapshot of the regular expression keys, compiled, and grouped by the character a word has to start with to
+     * match them. Expressions that don't start with a single literal character are tried against every word.
+     */
+    private static class CompiledRegexes
+    {
+        private final Map<Character, CompiledRegex[]> byFirstChar;
+
+        private final CompiledRegex[] anyFirstChar;
+
+        private CompiledRegexes(Map<String, LazyLoadEmoji> regexMap)
+        {
+            Map<Character, List<CompiledRegex>> grouped = new HashMap<Character, List<CompiledRegex>>();
+            List<CompiledRegex> ungrouped = new ArrayList<CompiledRegex>();
+            int index = 0;
+            for (Map.Entry<String, LazyLoadEmoji> entry : regexMap.entrySet())
+            {
+                final Pattern pattern;
+                try
+                {
+                    pattern = Pattern.compile(entry.getKey());
+                }
+                catch (PatternSyntaxException e)
+                {
+                    logger.debug("Skipping emoji with an invalid regular expression " + entry.getKey());
+                    continue;
+                }
+
+                CompiledRegex cr = new CompiledRegex(index++, pattern, entry.getValue());
+                Character first = getLiteralFirstChar(entry.getKey());
+                if (first == null)
+                {
+                    ungrouped.add(cr);
+                }
+                else
+                {
+                    List<CompiledRegex> group = grouped.get(first);
+                    if (group == null)
+                    {
+                        group = new ArrayList<CompiledRegex>();
+                        grouped.put(first, group);
+                    }
+                    group.add(cr);
+                }
+            }
+
+            byFirstChar = new HashMap<Character, CompiledRegex[]>(grouped.size() * 2);
+            for (Map.Entry<Character, List<CompiledRegex>> group : grouped.entrySet())
+            {
+                byFirstChar.put(group.getKey(), group.getValue().toArray(new CompiledRegex[group.getValue().size()]));
+            }
+            anyFirstChar = ungrouped.toArray(new CompiledRegex[ungrouped.size()]);
+        }
+
+        /**
+         * Get the emoji for the first expression, in the order they were added, that matches the whole word
+         * 
+         * @param word
+         * @return emoji or null if none match
+         */
+        private LazyLoadEmoji match(String word)
+        {
+            CompiledRegex best = null;
+            if (!word.isEmpty())
+            {
+                best = firstMatch(byFirstChar.get(word.charAt(0)), word, Integer.MAX_VALUE);
+            }
+            CompiledRegex any = firstMatch(anyFirstChar, word, best == null ? Integer.MAX_VALUE : best.index);
+            if (any != null)
+            {
+                best = any;
+            }
+            return best == null ? null : best.emoji;
+        }
+
+        private static CompiledRegex firstMatch(CompiledRegex[] candidates, String word, int before)
+        {
+            if (candidates != null)
+            {
+                for (CompiledRegex cr : candidates)
+                {
+                    if (cr.index >= before)
+                    {
+                        break;
+                    }
+                    if (cr.pattern.matcher(word).matches())
+                    {
+                        return cr;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Get the character every match of the expression has to start with, if that can be told from its first
+         * character or escaped character alone. Anything with alternation or flags is left ungrouped to be safe.
+         * 
+         * @param regex
+         * @return first character or null if it can't be told
+         */
+        private static Character getLiteralFirstChar(String regex)
+        {
+            if (regex.isEmpty() || regex.indexOf('|') >= 0)
+            {
+                return null;
+            }
+
+            char first = regex.charAt(0);
+            int next = 1;
+            if (first == '\\')
+            {
+                if (regex.length() < 2 || Character.isLetterOrDigit(regex.charAt(1)))
+                {
+                    // Character classes like \d and \w, or a quoted block
+                    return null;
+                }
+                first = regex.charAt(1);
+                next = 2;
+            }
+            else if (!Character.isLetterOrDigit(first) && first != '_' && first != ':' && first != ';' && first != '<' && first != '>' && first != '&' && first != '-' && first != '=')
+            {
+                return null;
+            }
+
+            // A quantifier right after the first character could make it optional
+            if (next < regex.length() && "?*{".indexOf(regex.charAt(next)) >= 0)
+            {
+                return null;
+            }
+            return first;
+        }
+    }
+
+    private static class CompiledRegex
+    {
+        private final int index;
+
+        private final Pattern pattern;
+
+        private final LazyLoadEmoji emoji;
+
+        private CompiledRegex(int index, Pattern pattern, LazyLoadEmoji emoji)
+        {
+            this.index = index;
+            this.pattern = pattern;
+            this.emoji = emoji;
+        }
     }
 
 }
@@ -2,23 +2,47 @@ package com.glitchcog.fontificator.emoji.loader;
 
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
 
 import org.apache.log4j.Logger;
 
 import com.glitchcog.fontificator.emoji.EmojiType;
 
 /**
- * Loads emoji JSON information from an API
+ * Loads emoji JSON information from an API, either all at once into a String or as a stream to be parsed as it
+ * arrives. Either way the progress is measured in bytes downloaded.
  * 
  * @author Matt Yanos
  */
 public class EmojiApiLoader
 {
+    /**
+     * Told how much has been downloaded as a streamed load is read
+     */
+    public interface ProgressListener
+    {
+        /**
+         * @param progress
+         *            Percent loaded, or byte count loaded depending on isPercentCalculationPossible()
+         * @throws IOException
+         *             To stop the load, like an InterruptedIOException if it's been canceled
+         */
+        void progress(int progress) throws IOException;
+    }
+
+    /**
+     * How many bytes are read between each report of progress to the listener of a streamed load
+     */
+    private static final int PROGRESS_INTERVAL_BYTES = 16 * 1024;
+
     private static final Logger logger = Logger.getLogger(EmojiApiLoader.class);
 
     private static final String CHANNEL_NAME_REPLACE = "%CHANNEL_NAME%";
@@ -77,6 +101,8 @@ public class EmojiApiLoader
 
     private BufferedReader reader;
 
+    private CountingInputStream countingStream;
+
     private boolean loadComplete;
 
     /**
@@ -123,7 +149,19 @@ public class EmojiApiLoader
         this.jsonStringBuilder = null;
         this.url = null;
         this.jsonLength = 0.0f;
+        if (reader != null)
+        {
+            try
+            {
+                reader.close();
+            }
+            catch (IOException e)
+            {
+                logger.debug("Unable to close emoji API connection", e);
+            }
+        }
         this.reader = null;
+        this.countingStream = null;
         this.loadComplete = false;
     }
 
@@ -190,7 +228,8 @@ public class EmojiApiLoader
             URL url = new URL(this.url);
             URLConnection conn = url.openConnection();
             this.jsonLength = conn.getContentLengthLong();
-            this.reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
+            this.countingStream = new CountingInputStream(conn.getInputStream());
+            this.reader = new BufferedReader(new InputStreamReader(countingStream, StandardCharsets.UTF_8));
             return true;
         }
         else
@@ -222,7 +261,32 @@ public class EmojiApiLoader
         {
             jsonStringBuilder.append(buffer, 0, n);
         }
-        return isPercentCalculationPossible() ? (int) (100.0f * (jsonStringBuilder.length() / jsonLength)) : jsonStringBuilder.length();
+        return getProgress();
+    }
+
+    /**
+     * Get the reader for the JSON being loaded, to be parsed as it arrives instead of loaded with loadChunk. Must be
+     * called after initLoad.
+     * 
+     * @param listener
+     *            Told the progress every so often as the JSON is read, or null if nothing needs to be
+     * @return reader
+     */
+    public Reader getStreamingReader(ProgressListener listener)
+    {
+        countingStream.listener = listener;
+        return reader;
+    }
+
+    /**
+     * Get how much has been downloaded so far
+     * 
+     * @return percent loaded, or byte count loaded depending on isPercentCalculationPossible()
+     */
+    public int getProgress()
+    {
+        final long bytes = countingStream == null ? 0L : countingStream.count;
+        return isPercentCalculationPossible() ? (int) Math.min(100L, (long) (100.0f * (bytes / jsonLength))) : (int) Math.min(Integer.MAX_VALUE, bytes);
     }
 
     public boolean isLoadComplete()
@@ -235,4 +299,54 @@ public class EmojiApiLoader
         return jsonStringBuilder == null ? null : jsonStringBuilder.toString();
     }
 
+    /**
+     * Counts the bytes read from the connection, so the progress of a load is measured the same no matter how the JSON
+     * is read out of it
+     */
+    private class CountingInputStream extends FilterInputStream
+    {
+        private volatile long count;
+
+        private long lastReported;
+
+        private ProgressListener listener;
+
+        private CountingInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            final int b = super.read();
+            if (b != -1)
+            {
+                counted(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            final int n = super.read(b, off, len);
+            if (n > 0)
+            {
+                counted(n);
+            }
+            return n;
+        }
+
+        private void counted(int n) throws IOException
+        {
+            count += n;
+            if (listener != null && count - lastReported >= PROGRESS_INTERVAL_BYTES)
+            {
+                lastReported = count;
+                listener.progress(getProgress());
+            }
+        }
+    }
+
 }
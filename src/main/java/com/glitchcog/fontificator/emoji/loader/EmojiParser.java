@@ -2,37 +2,41 @@ package com.glitchcog.fontificator.emoji.loader;
 
 import java.awt.Color;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import com.glitchcog.fontificator.bot.UserType;
 import com.glitchcog.fontificator.config.ConfigEmoji;
 import com.glitchcog.fontificator.emoji.AnimatedGifUtil;
 import com.glitchcog.fontificator.emoji.EmojiManager;
 import com.glitchcog.fontificator.emoji.EmojiType;
+import com.glitchcog.fontificator.emoji.FfzBadgeUsers;
 import com.glitchcog.fontificator.emoji.LazyLoadEmoji;
 import com.glitchcog.fontificator.emoji.TypedEmojiMap;
 import com.glitchcog.fontificator.emoji.loader.betterttv.BttvEmote;
 import com.glitchcog.fontificator.emoji.loader.frankerfacez.Badge;
-import com.glitchcog.fontificator.emoji.loader.frankerfacez.FfzBadgesAndUsers;
 import com.glitchcog.fontificator.emoji.loader.frankerfacez.FfzEmote;
 import com.glitchcog.fontificator.emoji.loader.frankerfacez.Room;
 import com.glitchcog.fontificator.emoji.loader.twitch.TwitchBadges;
 import com.glitchcog.fontificator.emoji.loader.twitch.TwitchIdSetLink;
 import com.glitchcog.fontificator.gui.controls.panel.LogBox;
 import com.google.gson.Gson;
-import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 /**
- * Parses emote JSON data for Twitch V2, V3, FrankerFaceZ, and BetterTTV
+ * Parses emote JSON data for Twitch V2, V3, FrankerFaceZ, and BetterTTV. The emote and badge APIs are parsed as a
+ * stream, so each emoji is put into the manager as soon as it's read, and a large response like the FrankerFaceZ badge
+ * user lists never has to be held in memory whole or built into a tree.
  * 
  * @author Matt Yanos
  */
@@ -64,7 +68,39 @@ public class EmojiParser
      */
     public void putJsonEmojiIntoManager(EmojiManager manager, EmojiType type, String jsonData) throws IOException
     {
-        TypedEmojiMap emojiMap = manager.getEmojiByType(type);
+        putJsonEmojiIntoManager(manager, type, new StringReader(jsonData));
+    }
+
+    /**
+     * @param manager
+     *            the emoji manager to load the parsed emoji into
+     * @param type
+     *            the type of the emoji
+     * @param jsonReader
+     *            the JSON data of the emoji to parse, read as it arrives
+     * @throws IOException
+     */
+    public void putJsonEmojiIntoManager(EmojiManager manager, EmojiType type, Reader jsonReader) throws IOException
+    {
+        putJsonEmojiIntoManager(manager, type, jsonReader, null);
+    }
+
+    /**
+     * @param manager
+     *            the emoji manager to load the parsed emoji into
+     * @param type
+     *            the type of the emoji
+     * @param jsonReader
+     *            the JSON data of the emoji to parse, read as it arrives
+     * @param channel
+     *            the channel the emoji were loaded for, which keys the channel emotes and the badges that differ from
+     *            channel to channel
+     * @throws IOException
+     */
+    public void putJsonEmojiIntoManager(EmojiManager manager, EmojiType type, Reader jsonReader, String channel) throws IOException
+    {
+        TypedEmojiMap emojiMap = manager.getEmojiByType(type, channel);
+        JsonReader jsonData = new JsonReader(jsonReader);
         switch (type)
         {
         case FRANKERFACEZ_CHANNEL:
@@ -81,7 +117,7 @@ public class EmojiParser
         //     parseTwitchEmoteJsonV3(manager, jsonData, jsonMapData);
         //     break;
         case TWITCH_BADGE:
-            parseTwitchBadges(emojiMap, jsonData);
+            parseTwitchBadges(emojiMap, jsonData, channel);
             break;
         case BETTER_TTV_CHANNEL:
         case BETTER_TTV_GLOBAL:
@@ -120,51 +156,82 @@ public class EmojiParser
         return setIdByEmoteId;
     }
 
-    private void parseTwitchBadges(TypedEmojiMap badgeMap, String jsonData) throws IOException
+    private void parseTwitchBadges(TypedEmojiMap badgeMap, JsonReader jsonData, String channel) throws IOException
     {
-        JsonElement jsonElement = new JsonParser().parse(jsonData);
-
         Gson gson = new Gson();
 
-        Type emoteType = new TypeToken<Map<String, TwitchBadges>>()
-        {
-        }.getType();
-        Map<String, TwitchBadges> jsonMap = gson.fromJson(jsonElement, emoteType);
-
         final Color subBgColor = new Color(0x6441A4);
         int badgeCount = 0;
-        for (Entry<String, TwitchBadges> badge : jsonMap.entrySet())
+        jsonData.beginObject();
+        while (jsonData.hasNext())
         {
-            if (badge.getValue() != null && badge.getValue().getImage() != null)
+            final String badgeKey = jsonData.nextName();
+            if (jsonData.peek() != JsonToken.BEGIN_OBJECT)
+            {
+                jsonData.skipValue();
+                continue;
+            }
+
+            TwitchBadges badge = gson.fromJson(jsonData, TwitchBadges.class);
+            if (badge != null && badge.getImage() != null)
             {
                 // Sub badge color is a background color hack to make the sub badge visible against black backgrounds until the new Twitch badge system is implemented
-                final boolean isSubBadge = "subscriber".equals(badge.getKey());
+                final boolean isSubBadge = "subscriber".equals(badgeKey);
                 badgeCount++;
-                LazyLoadEmoji llBadge = new LazyLoadEmoji(badge.getKey(), badge.getValue().getImage(), TWITCH_BADGE_PIXEL_SIZE, TWITCH_BADGE_PIXEL_SIZE, isSubBadge ? subBgColor : null, EmojiType.TWITCH_BADGE);
-                badgeMap.put(badge.getKey(), llBadge);
+                LazyLoadEmoji llBadge = new LazyLoadEmoji(badgeKey, badge.getImage(), TWITCH_BADGE_PIXEL_SIZE, TWITCH_BADGE_PIXEL_SIZE, isSubBadge ? subBgColor : null, EmojiType.TWITCH_BADGE);
+                // The subscriber badge is the channel's own, so each channel's is kept separately
+                badgeMap.put(isSubBadge ? EmojiManager.getChannelBadgeKey(badgeKey, channel) : badgeKey, llBadge);
             }
         }
+        jsonData.endObject();
 
         logBox.log(badgeCount + " Twitch badge" + (badgeCount == 1 ? "" : "s") + " loaded");
     }
 
-    private void parseFrankerFaceZBadges(EmojiManager manager, String jsonData) throws IOException
+    private void parseFrankerFaceZBadges(EmojiManager manager, JsonReader jsonData) throws IOException
     {
-        JsonElement ffzBadgesAndUsersElement = new JsonParser().parse(jsonData);
-
         Gson gson = new Gson();
 
-        Type emoteType = new TypeToken<FfzBadgesAndUsers>()
-        {
-        }.getType();
-        FfzBadgesAndUsers badgesAndUsers = gson.fromJson(ffzBadgesAndUsersElement, emoteType);
+        FfzBadgeUsers users = new FfzBadgeUsers();
 
-        for (Badge b : badgesAndUsers.getBadges())
+        jsonData.beginObject();
+        while (jsonData.hasNext())
         {
-            manager.getEmojiByType(EmojiType.FRANKERFACEZ_BADGE).put("" + b.getId(), new LazyLoadEmoji(b.getName(), "moderator".equals(b.getReplaces()) ? UserType.MOD.getKey() : b.getReplaces(), "https:" + b.getImage(), b.getColorParsed(), EmojiType.FRANKERFACEZ_BADGE));
+            final String name = jsonData.nextName();
+            if ("badges".equals(name) && jsonData.peek() == JsonToken.BEGIN_ARRAY)
+            {
+                jsonData.beginArray();
+                while (jsonData.hasNext())
+                {
+                    Badge b = gson.fromJson(jsonData, Badge.class);
+                    manager.getEmojiByType(EmojiType.FRANKERFACEZ_BADGE).put("" + b.getId(), new LazyLoadEmoji(b.getName(), "moderator".equals(b.getReplaces()) ? UserType.MOD.getKey() : b.getReplaces(), "https:" + b.getImage(), b.getColorParsed(), EmojiType.FRANKERFACEZ_BADGE));
+                }
+                jsonData.endArray();
+            }
+            else if ("users".equals(name) && jsonData.peek() == JsonToken.BEGIN_OBJECT)
+            {
+                // Keyed off of badge ID, each with an array of usernames
+                jsonData.beginObject();
+                while (jsonData.hasNext())
+                {
+                    final int badgeId = Integer.parseInt(jsonData.nextName());
+                    jsonData.beginArray();
+                    while (jsonData.hasNext())
+                    {
+                        users.addUser(badgeId, jsonData.nextString());
+                    }
+                    jsonData.endArray();
+                }
+                jsonData.endObject();
+            }
+            else
+            {
+                jsonData.skipValue();
+            }
         }
+        jsonData.endObject();
 
-        manager.setFfzBadgeUsers(badgesAndUsers.getUsers());
+        manager.setFfzBadgeUsers(users);
     }
 
     /**
@@ -172,9 +239,11 @@ public class EmojiParser
      * 
      * @param manager
      * @param jsonData
+     * @param channel
+     *            the channel of the room, which the badge is kept under
      * @throws IOException
      */
-    public void parseFrankerFaceZModBadge(EmojiManager manager, String jsonData) throws IOException
+    public void parseFrankerFaceZModBadge(EmojiManager manager, String jsonData, String channel) throws IOException
     {
         Gson gson = new Gson();
 
@@ -188,8 +257,8 @@ public class EmojiParser
         if (customFfzModBadgeExists)
         {
             LazyLoadEmoji modLle = new LazyLoadEmoji(UserType.MOD.getKey(), UserType.MOD.getKey(), "https:" + room.getModerator_badge(), ConfigEmoji.MOD_BADGE_COLOR, EmojiType.FRANKERFACEZ_BADGE);
-            manager.getEmojiByType(EmojiType.FRANKERFACEZ_BADGE).put(UserType.MOD.getKey(), modLle);
-            logBox.log("Loaded the custom FrankerFaceZ moderator badge");
+            manager.getEmojiByType(EmojiType.FRANKERFACEZ_BADGE).put(EmojiManager.getChannelBadgeKey(UserType.MOD.getKey(), channel), modLle);
+            logBox.log("Loaded the custom FrankerFaceZ moderator badge" + (channel == null ? "" : " for " + channel));
         }
     }
 
@@ -202,76 +271,100 @@ public class EmojiParser
      *            Whether the FFZ emotes to be loaded are the FFZ global emotes
      * @throws IOException
      */
-    private void parseFrankerFaceZEmoteJson(TypedEmojiMap emoji, String jsonData, boolean isGlobal) throws IOException
+    private void parseFrankerFaceZEmoteJson(TypedEmojiMap emoji, JsonReader jsonData, boolean isGlobal) throws IOException
     {
-        JsonParser jp = new JsonParser();
+        Gson gson = new Gson();
 
-        JsonObject root = jp.parse(jsonData).getAsJsonObject();
+        boolean error = false;
+        String message = null;
+        boolean setsFound = false;
+        boolean defaultSetsFound = false;
 
-        if (root.get("error") != null)
+        int frankerCount = 0;
+        int eMultiCount = 0;
+        List<String> setNames = new ArrayList<String>();
+
+        jsonData.beginObject();
+        while (jsonData.hasNext())
         {
-            String errorMessage = "Unable to load FrankerFaceZ emotes";
-            if (!root.get("message").isJsonNull())
+            final String name = jsonData.nextName();
+            final JsonToken token = jsonData.peek();
+            if ("sets".equals(name) && token == JsonToken.BEGIN_OBJECT)
             {
-                errorMessage += ": " + root.get("message");
+                setsFound = true;
+                jsonData.beginObject();
+                while (jsonData.hasNext())
+                {
+                    setNames.add(jsonData.nextName());
+                    if (jsonData.peek() != JsonToken.BEGIN_OBJECT)
+                    {
+                        jsonData.skipValue();
+                        continue;
+                    }
+
+                    jsonData.beginObject();
+                    while (jsonData.hasNext())
+                    {
+                        if ("emoticons".equals(jsonData.nextName()) && jsonData.peek() == JsonToken.BEGIN_ARRAY)
+                        {
+                            jsonData.beginArray();
+                            while (jsonData.hasNext())
+                            {
+                                FfzEmote e = gson.fromJson(jsonData, FfzEmote.class);
+                                LazyLoadEmoji lle = null;
+                                for (String key : e.getUrls().keySet())
+                                {
+                                    lle = new LazyLoadEmoji(e.getName(), "https:" + e.getUrls().get(key), e.getWidth(), e.getHeight(), isGlobal ? EmojiType.FRANKERFACEZ_GLOBAL : EmojiType.FRANKERFACEZ_CHANNEL);
+                                    break;
+                                }
+                                if (e.getUrls().size() > 1)
+                                {
+                                    eMultiCount++;
+                                }
+                                emoji.put(e.getName(), lle);
+                                frankerCount++;
+                            }
+                            jsonData.endArray();
+                        }
+                        else
+                        {
+                            jsonData.skipValue();
+                        }
+                    }
+                    jsonData.endObject();
+                }
+                jsonData.endObject();
             }
-            logBox.log(errorMessage);
-            return;
-        }
-        else if (root.get("sets").isJsonNull() || (isGlobal && root.get("default_sets").isJsonNull()))
-        {
-            logBox.log("Unable to load FrankerFaceZ global emotes");
-            return;
-        }
-
-        List<String> setsToLoad;
-
-        if (isGlobal)
-        {
-            setsToLoad = new ArrayList<String>();
-            JsonArray defaultSetsArray = root.get("default_sets").getAsJsonArray();
-            for (int i = 0; i < defaultSetsArray.size(); i++)
+            else if ("default_sets".equals(name) && token != JsonToken.NULL)
             {
-                setsToLoad.add(defaultSetsArray.get(i).getAsString());
+                defaultSetsFound = true;
+                jsonData.skipValue();
+            }
+            else if ("error".equals(name) && token != JsonToken.NULL)
+            {
+                error = true;
+                jsonData.skipValue();
+            }
+            else if ("message".equals(name) && token == JsonToken.STRING)
+            {
+                message = jsonData.nextString();
+            }
+            else
+            {
+                jsonData.skipValue();
             }
         }
-        else
-        {
-            setsToLoad = null;
-        }
+        jsonData.endObject();
 
-        JsonObject sets = root.get("sets").getAsJsonObject();
-
-        Gson gson = new Gson();
-        Type emoteType = new TypeToken<FfzEmote[]>()
+        if (error)
         {
-        }.getType();
-
-        int frankerCount = 0;
-        int eMultiCount = 0;
-        List<String> setNames = new ArrayList<String>();
-        for (Map.Entry<String, JsonElement> entry : sets.entrySet())
+            logBox.log("Unable to load FrankerFaceZ emotes" + (message == null ? "" : ": " + message));
+            return;
+        }
+        else if (!setsFound || (isGlobal && !defaultSetsFound))
         {
-            setNames.add(entry.getKey());
-
-            JsonElement emoteElement = entry.getValue().getAsJsonObject().get("emoticons");
-
-            FfzEmote[] jsonEmoteObjects = gson.fromJson(emoteElement, emoteType);
-            for (FfzEmote e : jsonEmoteObjects)
-            {
-                LazyLoadEmoji lle = null;
-                for (String key : e.getUrls().keySet())
-                {
-                    lle = new LazyLoadEmoji(e.getName(), "https:" + e.getUrls().get(key), e.getWidth(), e.getHeight(), isGlobal ? EmojiType.FRANKERFACEZ_GLOBAL : EmojiType.FRANKERFACEZ_CHANNEL);
-                    break;
-                }
-                if (e.getUrls().size() > 1)
-                {
-                    eMultiCount++;
-                }
-                emoji.put(e.getName(), lle);
-                frankerCount++;
-            }
+            logBox.log("Unable to load FrankerFaceZ global emotes");
+            return;
         }
 
         String allSets = "";
@@ -292,37 +385,71 @@ public class EmojiParser
      *            Whether the BetterTTV emotes to be loaded are the BetterTTV global emotes
      * @throws IOException
      */
-    private void parseBetterTtvEmoteJson(TypedEmojiMap emoji, String jsonData, boolean isGlobal) throws IOException
+    private void parseBetterTtvEmoteJson(TypedEmojiMap emoji, JsonReader jsonData, boolean isGlobal) throws IOException
     {
-        JsonParser jp = new JsonParser();
+        Gson gson = new Gson();
 
-        JsonObject root = jp.parse(jsonData).getAsJsonObject();
+        String urlTemplate = null;
+        boolean emotesFound = false;
+        // Only used if the emotes come before the URL template they need
+        List<BttvEmote> waitingForTemplate = new ArrayList<BttvEmote>();
 
-        if (root.get("emotes").isJsonNull())
+        int bttvCount = 0;
+        jsonData.beginObject();
+        while (jsonData.hasNext())
         {
-            logBox.log("Unable to load Better TTV global emotes");
-            return;
+            final String name = jsonData.nextName();
+            final JsonToken token = jsonData.peek();
+            if ("urlTemplate".equals(name) && token == JsonToken.STRING)
+            {
+                urlTemplate = "https:" + jsonData.nextString().replace("{{image}}", "2x");
+                for (BttvEmote be : waitingForTemplate)
+                {
+                    putBetterTtvEmote(emoji, be, urlTemplate, isGlobal);
+                    bttvCount++;
+                }
+                waitingForTemplate.clear();
+            }
+            else if ("emotes".equals(name) && token == JsonToken.BEGIN_ARRAY)
+            {
+                emotesFound = true;
+                jsonData.beginArray();
+                while (jsonData.hasNext())
+                {
+                    BttvEmote be = gson.fromJson(jsonData, BttvEmote.class);
+                    if (urlTemplate == null)
+                    {
+                        waitingForTemplate.add(be);
+                    }
+                    else
+                    {
+                        putBetterTtvEmote(emoji, be, urlTemplate, isGlobal);
+                        bttvCount++;
+                    }
+                }
+                jsonData.endArray();
+            }
+            else
+            {
+                jsonData.skipValue();
+            }
         }
+        jsonData.endObject();
 
-        Gson gson = new Gson();
-        Type emoteType = new TypeToken<BttvEmote[]>()
+        if (!emotesFound || urlTemplate == null)
         {
-        }.getType();
-
-        final String urlTemplate = "https:" + root.get("urlTemplate").getAsString().replace("{{image}}", "2x");
-
-        BttvEmote[] bttvEmotes = gson.fromJson(root.get("emotes").getAsJsonArray(), emoteType);
-
-        int bttvCount = 0;
-        for (BttvEmote be : bttvEmotes)
-        {
-            LazyLoadEmoji lle = new LazyLoadEmoji(be.getCode(), urlTemplate.replace("{{id}}", be.getId()), isGlobal ? EmojiType.BETTER_TTV_GLOBAL : EmojiType.BETTER_TTV_CHANNEL);
-            lle.setAnimatedGif(AnimatedGifUtil.GIF_EXTENSION.equals(be.getImageType()));
-            emoji.put(be.getCode(), lle);
-            bttvCount++;
+            logBox.log("Unable to load Better TTV global emotes");
+            return;
         }
 
         logBox.log(bttvCount + " Better TTV emote" + (bttvCount == 1 ? "" : "s") + " found");
     }
 
+    private static void putBetterTtvEmote(TypedEmojiMap emoji, BttvEmote be, String urlTemplate, boolean isGlobal) throws IOException
+    {
+        LazyLoadEmoji lle = new LazyLoadEmoji(be.getCode(), urlTemplate.replace("{{id}}", be.getId()), isGlobal ? EmojiType.BETTER_TTV_GLOBAL : EmojiType.BETTER_TTV_CHANNEL);
+        lle.setAnimatedGif(AnimatedGifUtil.GIF_EXTENSION.equals(be.getImageType()));
+        emoji.put(be.getCode(), lle);
+    }
+
 }
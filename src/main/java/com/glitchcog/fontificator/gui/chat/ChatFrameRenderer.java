@@ -0,0 +1,231 @@
+package com.glitchcog.fontificator.gui.chat;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Renders the chat into an offscreen image and encodes it as a PNG, so the overlay can be pulled over HTTP instead of
+ * being window captured. The background is left transparent unless asked for, so no chroma key is needed. A frame is
+ * only rendered again once the chat has asked to be repainted since the last one, and is only encoded again if its
+ * pixels actually came out different. Otherwise the previous frame is handed back as is, along with the same ETag, since
+ * the chat asks to be repainted on timers whether or not anything changed.
+ *
+ * @author Matt Yanos
+ */
+public class ChatFrameRenderer
+{
+    private static final Logger logger = Logger.getLogger(ChatFrameRenderer.class);
+
+    /**
+     * Keeps ETags from one run of the program from matching frames cached from an earlier run
+     */
+    private static final String ETAG_PREFIX = Long.toHexString(System.currentTimeMillis());
+
+    /**
+     * An encoded frame
+     */
+    public static class Frame
+    {
+        private final byte[] png;
+
+        private final String etag;
+
+        /**
+         * A hash of the pixels the frame was encoded from
+         */
+        private final long contentHash;
+
+        /**
+         * The latest version of the chat this frame was checked against
+         */
+        private final long version;
+
+        private Frame(byte[] png, String etag, long contentHash, long version)
+        {
+            this.png = png;
+            this.etag = etag;
+            this.contentHash = contentHash;
+            this.version = version;
+        }
+
+        public byte[] getPng()
+        {
+            return png;
+        }
+
+        /**
+         * Get the entity tag for the frame, already quoted for use in an HTTP header
+         *
+         * @return etag
+         */
+        public String getEtag()
+        {
+            return etag;
+        }
+
+        public long getVersion()
+        {
+            return version;
+        }
+    }
+
+    private final ChatPanel chat;
+
+    /**
+     * The last frame encoded with a transparent background, and the last one with the background drawn. Guarded by
+     * this renderer's monitor.
+     */
+    private Frame transparentFrame;
+
+    private Frame opaqueFrame;
+
+    public ChatFrameRenderer(ChatPanel chat)
+    {
+        this.chat = chat;
+    }
+
+    /**
+     * Get the version of the chat's appearance, which goes up every time the chat asks to be repainted. Callers
+     * streaming frames can poll this cheaply to know when a new frame is worth getting.
+     *
+     * @return version
+     */
+    public long getVersion()
+    {
+        return chat.getFrameVersion();
+    }
+
+    /**
+     * Get the current frame, rendering it only if the chat has asked to be repainted since the last one, and encoding it
+     * only if it looks different
+     *
+     * @param transparent
+     *            Whether to leave out the background and chroma key
+     * @return frame, or null if the chat isn't ready to be drawn
+     * @throws IOException
+     *             If the frame couldn't be rendered or encoded
+     */
+    public synchronized Frame getFrame(boolean transparent) throws IOException
+    {
+        if (!chat.isLoaded())
+        {
+            return null;
+        }
+
+        // Read the version before rendering, so a change that comes in partway through still gets the next frame
+        final long version = chat.getFrameVersion();
+        final Frame cached = transparent ? transparentFrame : opaqueFrame;
+        if (cached != null && cached.getVersion() == version)
+        {
+            return cached;
+        }
+
+        final BufferedImage image = renderOnEventThread(transparent);
+        if (image == null)
+        {
+            return null;
+        }
+
+        final long contentHash = hashPixels(image);
+        Frame frame;
+        if (cached != null && cached.contentHash == contentHash)
+        {
+            // Repainted, but nothing that shows changed, so the same bytes and ETag still stand
+            frame = new Frame(cached.png, cached.etag, contentHash, version);
+        }
+        else
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(1024, image.getWidth() * image.getHeight() / 4));
+            ImageIO.write(image, "png", out);
+            final String etag = "\"" + ETAG_PREFIX + "-" + Long.toHexString(contentHash) + (transparent ? "t" : "o") + "\"";
+            frame = new Frame(out.toByteArray(), etag, contentHash, version);
+        }
+
+        if (transparent)
+        {
+            transparentFrame = frame;
+        }
+        else
+        {
+            opaqueFrame = frame;
+        }
+        return frame;
+    }
+
+    /**
+     * Hash the size and every pixel of a frame, going straight over the array behind it when it's a plain ARGB image
+     *
+     * @param image
+     * @return hash
+     */
+    private static long hashPixels(BufferedImage image)
+    {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        long hash = 0xCBF29CE484222325L;
+        hash = (hash ^ width) * 0x100000001B3L;
+        hash = (hash ^ height) * 0x100000001B3L;
+
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB && image.getRaster().getDataBuffer() instanceof DataBufferInt)
+        {
+            for (int argb : ((DataBufferInt) image.getRaster().getDataBuffer()).getData())
+            {
+                hash = (hash ^ argb) * 0x100000001B3L;
+            }
+        }
+        else
+        {
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++)
+            {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                for (int argb : row)
+                {
+                    hash = (hash ^ argb) * 0x100000001B3L;
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Paint the chat on the Swing event thread, where all its other painting happens
+     *
+     * @param transparent
+     * @return image
+     * @throws IOException
+     */
+    private BufferedImage renderOnEventThread(final boolean transparent) throws IOException
+    {
+        if (SwingUtilities.isEventDispatchThread())
+        {
+            return chat.renderFrame(transparent);
+        }
+
+        final BufferedImage[] result = new BufferedImage[1];
+        try
+        {
+            SwingUtilities.invokeAndWait(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    result[0] = chat.renderFrame(transparent);
+                }
+            });
+        }
+        catch (Exception e)
+        {
+            logger.error("Unable to render chat frame", e);
+            throw new IOException("Unable to render chat frame", e);
+        }
+        return result[0];
+    }
+}
@@ -5,22 +5,34 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Image;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.JPanel;
+import javax.swing.Timer;
 
 import org.apache.log4j.Logger;
 
 import com.glitchcog.fontificator.bot.Message;
+import com.glitchcog.fontificator.bot.replay.LatencyStats;
 import com.glitchcog.fontificator.config.ConfigCensor;
 import com.glitchcog.fontificator.config.ConfigChat;
 import com.glitchcog.fontificator.config.ConfigColor;
@@ -28,12 +40,16 @@ import com.glitchcog.fontificator.config.ConfigEmoji;
 import com.glitchcog.fontificator.config.ConfigFont;
 import com.glitchcog.fontificator.config.ConfigMessage;
 import com.glitchcog.fontificator.config.FontificatorProperties;
+import com.glitchcog.fontificator.emoji.AnimatedEmoji;
+import com.glitchcog.fontificator.emoji.EmojiAnimationObserver;
 import com.glitchcog.fontificator.emoji.EmojiManager;
+import com.glitchcog.fontificator.gui.chat.clock.EmojiAnimator;
 import com.glitchcog.fontificator.gui.chat.clock.MessageExpirer;
 import com.glitchcog.fontificator.gui.chat.clock.MessageProgressor;
 import com.glitchcog.fontificator.gui.controls.panel.ControlPanelDebug;
 import com.glitchcog.fontificator.gui.controls.panel.ControlPanelFont;
 import com.glitchcog.fontificator.gui.controls.panel.MessageCensorPanel;
+import com.glitchcog.fontificator.metrics.PipelineMetrics;
 import com.glitchcog.fontificator.sprite.Sprite;
 import com.glitchcog.fontificator.sprite.SpriteFont;
 import com.glitchcog.fontificator.bot.ChatViewerBot;
@@ -44,19 +60,59 @@ import com.glitchcog.fontificator.bot.ChatViewerBot;
  * 
  * @author Matt Yanos
  */
-public class ChatPanel extends JPanel implements MouseWheelListener
+public class ChatPanel extends JPanel implements MouseWheelListener, EmojiAnimationObserver
 {
     private static final Logger logger = Logger.getLogger(ChatPanel.class);
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Emoji that finish loading within this long of the first one share a single repaint of the chat
+     */
+    private static final int EMOJI_LOADED_REPAINT_DELAY_MILLIS = 50;
+
     /**
      * The cache of messages to be displayed
      */
     private ConcurrentLinkedQueue<Message> messages;
 
+    /**
+     * Index of the messages in the cache keyed off of the lowercase username, each in the order they were added. Kept
+     * in step with the cache so moderation purges only touch the messages of the user being purged. Guarded by this
+     * panel's monitor.
+     */
+    private Map<String, Deque<Message>> messagesByUser;
+
+    /**
+     * Index of the messages in the cache keyed off of the Twitch message ID, for messages that have one. Guarded by this
+     * panel's monitor.
+     */
+    private Map<String, Message> messagesById;
+
+    /**
+     * The bounded hand-off between the message sources and this panel, so a flood of messages can't back up the
+     * threads reading them
+     */
+    private MessageIngestQueue ingestQueue;
+
+    /**
+     * Remembers recent messages so the ones that arrive more than once can be dropped before they're parsed
+     */
+    private MessageDeduplicator deduplicator;
+
     private MessageCensorPanel censor;
 
+    /**
+     * Goes up every time this panel asks to be repainted, so offscreen frames are only rendered again when something
+     * has changed
+     */
+    private AtomicLong frameVersion;
+
+    /**
+     * Set only while painting an offscreen frame that should leave out the background and chroma key
+     */
+    private boolean renderingTransparent;
+
     /**
      * Contains the timed task and a reference to this chat to be used to progress rolling out new messages at the
      * appropriate speed
@@ -69,6 +125,16 @@ public class ChatPanel extends JPanel implements MouseWheelListener
      */
     private MessageExpirer messageExpirer;
 
+    /**
+     * The one clock for all the animated emoji, which repaints just the spots where their frames have changed
+     */
+    private EmojiAnimator emojiAnimator;
+
+    /**
+     * Repaints the chat once for a batch of emoji that have finished loading, rather than once per emoji
+     */
+    private Timer emojiLoadedRepaint;
+
     /**
      * The sprite used to draw the border around the chat, to be displayed if the border scale is greater than zero
      */
@@ -139,6 +205,11 @@ public class ChatPanel extends JPanel implements MouseWheelListener
      * Manages emoji loading, caching, and access
      */
     private EmojiManager emojiManager;
+
+    /**
+     * When set, collects the time from each message being received to its first glyph being painted
+     */
+    private volatile LatencyStats drawLatencyStats;
 	
 	/**
 	 * The IRC bot that interacts with the chat
@@ -181,10 +252,93 @@ public class ChatPanel extends JPanel implements MouseWheelListener
         lineCount = Integer.MAX_VALUE;
         onScreenLineCount = 0;
         messages = new ConcurrentLinkedQueue<Message>();
+        messagesByUser = new HashMap<String, Deque<Message>>();
+        messagesById = new HashMap<String, Message>();
+        ingestQueue = new MessageIngestQueue(this);
+        deduplicator = new MessageDeduplicator(this);
+        frameVersion = new AtomicLong();
 
         emojiManager = new EmojiManager();
         messageProgressor = new MessageProgressor(this);
         messageExpirer = new MessageExpirer(this);
+        emojiAnimator = new EmojiAnimator(this);
+        emojiLoadedRepaint = new Timer(EMOJI_LOADED_REPAINT_DELAY_MILLIS, new ActionListener()
+        {
+            @Override
+            public void actionPerformed(ActionEvent e)
+            {
+                repaint();
+            }
+        });
+        emojiLoadedRepaint.setRepeats(false);
+
+        registerMetrics();
+    }
+
+    /**
+     * Expose the sizes of the chat's queues and caches to the pipeline metrics
+     */
+    private void registerMetrics()
+    {
+        PipelineMetrics.registerGauge(PipelineMetrics.GAUGE_QUEUE_DEPTH, "Messages waiting to be added to the chat", new PipelineMetrics.GaugeSource()
+        {
+            @Override
+            public long getValue()
+            {
+                return ingestQueue.getPendingCount();
+            }
+        });
+        PipelineMetrics.registerCounter("fontificator_ingest_dropped_total", "Messages dropped because the chat was flooded", new PipelineMetrics.GaugeSource()
+        {
+            @Override
+            public long getValue()
+            {
+                return ingestQueue.getDroppedCount();
+            }
+        });
+        PipelineMetrics.registerCounter("fontificator_ingest_collapsed_total", "Duplicate messages collapsed while waiting", new PipelineMetrics.GaugeSource()
+        {
+            @Override
+            public long getValue()
+            {
+                return ingestQueue.getCollapsedCount();
+            }
+        });
+        PipelineMetrics.registerCounter("fontificator_duplicates_dropped_total", "Messages dropped because they had already been received", new PipelineMetrics.GaugeSource()
+        {
+            @Override
+            public long getValue()
+            {
+                return deduplicator.getDuplicateCount();
+            }
+        });
+        PipelineMetrics.registerGauge("fontificator_chat_messages", "Messages held in the chat", new PipelineMetrics.GaugeSource()
+        {
+            @Override
+            public long getValue()
+            {
+                return messages.size();
+            }
+        });
+        PipelineMetrics.registerGauge("fontificator_tint_cache_size", "Tinted copies of the font and border sprites that are cached", new PipelineMetrics.GaugeSource()
+        {
+            @Override
+            public long getValue()
+            {
+                final SpriteFont currentFont = font;
+                final Sprite currentBorder = border;
+                return (currentFont == null ? 0 : currentFont.getColorCacheSize()) + (currentBorder == null ? 0 : currentBorder.getColorCacheSize());
+            }
+        });
+        PipelineMetrics.registerGauge("fontificator_scaled_emoji_cache_size", "Emoji images cached already scaled to the size they're drawn at", new PipelineMetrics.GaugeSource()
+        {
+            @Override
+            public long getValue()
+            {
+                final SpriteFont currentFont = font;
+                return currentFont == null ? 0 : currentFont.getScaledEmojiCacheSize();
+            }
+        });
     }
 
     /**
@@ -228,6 +382,17 @@ public class ChatPanel extends JPanel implements MouseWheelListener
         loaded = true;
     }
 
+    /**
+     * Set the collector for the time from each message being received to its first glyph being painted, or null to stop
+     * collecting
+     * 
+     * @param drawLatencyStats
+     */
+    public void setDrawLatencyStats(LatencyStats drawLatencyStats)
+    {
+        this.drawLatencyStats = drawLatencyStats;
+    }
+
     /**
      * Set the Control Panel for debugging on this chat panel
      * 
@@ -252,6 +417,9 @@ public class ChatPanel extends JPanel implements MouseWheelListener
             return;
         }
 
+        final long paintStart = System.nanoTime();
+        emojiAnimator.beginFrame();
+
         Graphics2D g2d = (Graphics2D) g;
 
         if (chatConfig.isAntiAlias())
@@ -293,7 +461,11 @@ public class ChatPanel extends JPanel implements MouseWheelListener
         }
 
         // Draws the background color and the chroma key border
-        if (messageConfig.isHideEmptyBackground() && drawMessages.isEmpty())
+        if (renderingTransparent)
+        {
+            // Offscreen frames carry alpha, so the background is left for whatever they're composited over
+        }
+        else if (messageConfig.isHideEmptyBackground() && drawMessages.isEmpty())
         {
             // If the messages are empty and the background should be hidden, draw the chroma color regardless of whether it's enabled
             g2d.setColor(colorConfig.getChromaColor());
@@ -324,6 +496,98 @@ public class ChatPanel extends JPanel implements MouseWheelListener
         }
 
         drawChat(g2d, drawMessages, offset, debugSettings.isDrawTextGrid(), debugSettings.getTextGridColor());
+        emojiAnimator.endFrame();
+
+        PipelineMetrics.PAINT.record(System.nanoTime() - paintStart);
+        PipelineMetrics.markPainted();
+    }
+
+    @Override
+    public void repaint(long tm, int x, int y, int width, int height)
+    {
+        // The superclass constructor can call this before the version counter exists
+        if (frameVersion != null)
+        {
+            frameVersion.incrementAndGet();
+        }
+        super.repaint(tm, x, y, width, height);
+    }
+
+    /**
+     * Called by each emoji as it finishes loading. Its size can change the layout of the lines around it, so the whole
+     * chat is repainted, but only once for all the emoji that finish within a short window of each other.
+     */
+    @Override
+    public boolean imageUpdate(Image img, int infoflags, int x, int y, int width, int height)
+    {
+        if ((infoflags & ALLBITS) != 0)
+        {
+            // Does nothing if the timer is already waiting to repaint
+            emojiLoadedRepaint.start();
+            return false;
+        }
+        return super.imageUpdate(img, infoflags, x, y, width, height);
+    }
+
+    @Override
+    public long getAnimationMillis()
+    {
+        return emojiAnimator.getFrameMillis();
+    }
+
+    @Override
+    public void animationDrawn(AnimatedEmoji animation, boolean visible, int x, int y, int width, int height)
+    {
+        emojiAnimator.animationDrawn(animation, visible, x, y, width, height);
+    }
+
+    /**
+     * Get the number of times this panel has asked to be repainted, for knowing whether an offscreen frame is stale
+     * 
+     * @return frameVersion
+     */
+    public long getFrameVersion()
+    {
+        return frameVersion.get();
+    }
+
+    /**
+     * Paint the chat into a new offscreen image the size of this panel, or the configured chat size if the panel hasn't
+     * been laid out. This should be called on the Swing event thread.
+     * 
+     * @param transparent
+     *            Whether to leave out the background and chroma key so the image has an alpha channel
+     * @return image, or null if the chat has no size
+     */
+    public BufferedImage renderFrame(boolean transparent)
+    {
+        int width = getWidth();
+        int height = getHeight();
+        if ((width <= 0 || height <= 0) && chatConfig != null && chatConfig.getWidth() != null && chatConfig.getHeight() != null)
+        {
+            width = chatConfig.getWidth();
+            height = chatConfig.getHeight();
+            setSize(width, height);
+        }
+
+        if (width <= 0 || height <= 0)
+        {
+            return null;
+        }
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = image.createGraphics();
+        renderingTransparent = transparent;
+        try
+        {
+            paint(g2d);
+        }
+        finally
+        {
+            renderingTransparent = false;
+            g2d.dispose();
+        }
+        return image;
     }
 
     /**
@@ -387,6 +651,7 @@ public class ChatPanel extends JPanel implements MouseWheelListener
         final int leftEdge = offset.x + (border == null || fontConfig.getBorderScale() <= 0.0f ? 0 : border.getSpriteDrawWidth(fontConfig.getBorderScale())) + fontConfig.getBorderInsetX();
 
         // totalHeight is the height of all the messages
+        final long layoutStart = System.nanoTime();
         int totalHeight = 0;
         for (int i = 0; i < drawMessages.size(); i++)
         {
@@ -395,6 +660,7 @@ public class ChatPanel extends JPanel implements MouseWheelListener
             Dimension dim = font.getMessageDimensions(msg, g2d.getFontMetrics(), messageConfig, emojiConfig, emojiManager, lineWrapLength, lastMessage);
             totalHeight += dim.getHeight();
         }
+        PipelineMetrics.LAYOUT.record(System.nanoTime() - layoutStart);
 
         // Used for scrolling
         int lineHeight = font.getLineHeightScaled();
@@ -475,6 +741,12 @@ public class ChatPanel extends JPanel implements MouseWheelListener
             // The call to drawMessage in SpriteFont will determine whether to draw each character based on whether it is located at a position appropriate to be drawn on
             Dimension dim = font.drawMessage(g2d, g2d.getFontMetrics(), msg, col, colorConfig, messageConfig, emojiConfig, emojiManager, leftEdge, y, borderEdgeThickness, botLimit, lineWrapLength, debug, debugColor, this, lastMessage);
             y += dim.getHeight();
+
+            final LatencyStats latencyStats = drawLatencyStats;
+            if (latencyStats != null && msg.getDrawCursor() >= 1.0f && msg.markPainted())
+            {
+                latencyStats.add(System.nanoTime() - msg.getReceivedNanos());
+            }
         }
     }
 
@@ -485,6 +757,11 @@ public class ChatPanel extends JPanel implements MouseWheelListener
         {
             col = colorConfig.getHighlight();
         }
+        else if (msg.getPrivmsg().getChannelStyle() != null && msg.getPrivmsg().getChannelStyle().getColor() != null)
+        {
+            // A color specified for the channel the message came from takes precedence to tell the channels apart
+            col = msg.getPrivmsg().getChannelStyle().getColor();
+        }
         else if (colorConfig.isUseTwitchColors() && msg.getPrivmsg().getColor() != null)
         {
             col = msg.getPrivmsg().getColor();
@@ -583,6 +860,49 @@ public class ChatPanel extends JPanel implements MouseWheelListener
         }
     }
 
+    /**
+     * Queue a message to be added to the cache on the ingestion thread. This is what message sources should call, so
+     * they are never held up by drawing or censorship.
+     * 
+     * @param addition
+     * @return whether the message was queued, or false if it was dropped because the queue was full
+     */
+    public boolean enqueueMessage(Message addition)
+    {
+        return ingestQueue.offer(addition);
+    }
+
+    /**
+     * Queue a batch of messages to be added to the cache on the ingestion thread, all in one hand-off
+     * 
+     * @param additions
+     * @return for each message, whether it was queued, or false if it was dropped because the queue was full
+     */
+    public boolean[] enqueueMessages(List<Message> additions)
+    {
+        return ingestQueue.offerAll(additions);
+    }
+
+    /**
+     * Get the queue between the message sources and this panel, for its counters
+     * 
+     * @return ingestQueue
+     */
+    public MessageIngestQueue getIngestQueue()
+    {
+        return ingestQueue;
+    }
+
+    /**
+     * Get the record of recent messages shared by all the message sources, for dropping duplicates
+     * 
+     * @return deduplicator
+     */
+    public MessageDeduplicator getDeduplicator()
+    {
+        return deduplicator;
+    }
+
     /**
      * Add a message to the cache, and call method to process any censorship
      * 
@@ -590,6 +910,8 @@ public class ChatPanel extends JPanel implements MouseWheelListener
      */
     synchronized public void addMessage(Message addition)
     {
+        PipelineMetrics.markChatAdded();
+
         if (addition.isJoinType() && !messageConfig.showJoinMessages())
         {
             return;
@@ -600,12 +922,13 @@ public class ChatPanel extends JPanel implements MouseWheelListener
         // Note that for a moment here, the size of messages can exceed the specified queueSize in the message config,
         // so if another thread is accessing this, be sure to take that into consideration
         messages.add(addition);
+        indexMessage(addition);
         int remCount = Math.max(0, messages.size() - messageConfig.getQueueSize());
 
         Iterator<Message> iter = messages.iterator();
         while (iter.hasNext() && remCount > 0)
         {
-            iter.next();
+            unindexMessage(iter.next());
             iter.remove();
             remCount--;
         }
@@ -624,10 +947,133 @@ public class ChatPanel extends JPanel implements MouseWheelListener
      */
     synchronized public void clearChat()
     {
+        ingestQueue.clear();
         messages.clear();
+        messagesByUser.clear();
+        messagesById.clear();
         repaint();
     }
 
+    private static String getUserKey(String username)
+    {
+        return username == null ? null : username.toLowerCase();
+    }
+
+    /**
+     * Add the message to the user and message ID indexes. Must be called while holding this panel's monitor.
+     * 
+     * @param msg
+     */
+    private void indexMessage(Message msg)
+    {
+        final String userKey = getUserKey(msg.getUsername());
+        if (userKey != null)
+        {
+            Deque<Message> userMessages = messagesByUser.get(userKey);
+            if (userMessages == null)
+            {
+                userMessages = new ArrayDeque<Message>();
+                messagesByUser.put(userKey, userMessages);
+            }
+            userMessages.addLast(msg);
+        }
+
+        if (msg.getMessageId() != null)
+        {
+            messagesById.put(msg.getMessageId(), msg);
+        }
+    }
+
+    /**
+     * Remove the message from the user and message ID indexes. Messages leave the cache oldest first, so this is
+     * normally the head of the user's deque. Must be called while holding this panel's monitor.
+     * 
+     * @param msg
+     */
+    private void unindexMessage(Message msg)
+    {
+        final String userKey = getUserKey(msg.getUsername());
+        Deque<Message> userMessages = userKey == null ? null : messagesByUser.get(userKey);
+        if (userMessages != null)
+        {
+            if (userMessages.peekFirst() == msg)
+            {
+                userMessages.pollFirst();
+            }
+            else
+            {
+                userMessages.remove(msg);
+            }
+            if (userMessages.isEmpty())
+            {
+                messagesByUser.remove(userKey);
+            }
+        }
+
+        if (msg.getMessageId() != null)
+        {
+            messagesById.remove(msg.getMessageId());
+        }
+    }
+
+    /**
+     * Get the messages in the cache posted by the specified user, optionally only those posted to a specific channel
+     * 
+     * @param username
+     *            Case insensitive
+     * @param channel
+     *            The channel the messages were posted to, or null for any channel
+     * @return messages, oldest first
+     */
+    synchronized public List<Message> getMessagesForUser(String username, String channel)
+    {
+        Deque<Message> userMessages = username == null ? null : messagesByUser.get(getUserKey(username));
+        if (userMessages == null)
+        {
+            return Collections.emptyList();
+        }
+
+        List<Message> result = new ArrayList<Message>(userMessages.size());
+        for (Message msg : userMessages)
+        {
+            if (isFromChannel(msg, channel))
+            {
+                result.add(msg);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the message in the cache with the specified Twitch message ID
+     * 
+     * @param messageId
+     * @return message, or null if it isn't in the cache
+     */
+    synchronized public Message getMessageById(String messageId)
+    {
+        return messageId == null ? null : messagesById.get(messageId);
+    }
+
+    /**
+     * Get whether the message was posted to the channel. Messages with no channel, like Social Stream and manual
+     * messages, don't belong to any Twitch channel, so they're only matched when no channel is specified.
+     * 
+     * @param msg
+     * @param channel
+     *            Or null to match any channel
+     * @return from channel
+     */
+    private static boolean isFromChannel(Message msg, String channel)
+    {
+        if (channel == null)
+        {
+            return true;
+        }
+        final String msgChannel = msg.getPrivmsg() == null ? null : msg.getPrivmsg().getChannel();
+        return channel.equalsIgnoreCase(msgChannel);
+    }
+
     /**
      * Reset the scroll offset to zero
      */
@@ -811,14 +1257,76 @@ public class ChatPanel extends JPanel implements MouseWheelListener
     }
 
     /**
-     * Used to purge messages from chat whenever a user is timed-out or banned by a Twitch moderator
+     * Used to purge messages from chat whenever a user is timed-out or banned by a Twitch moderator. The purge is queued
+     * behind the messages still waiting to be added, so it covers them too.
      * 
      * @param username
+     * @param channel
+     *            The channel the ban applies to, or null for every channel
      * @param reason
      */
-    public void purgeMessagesForUser(final String username, final String reason)
+    public void purgeMessagesForUser(final String username, final String channel, final String reason)
     {
-        censor.purgeMessagesForUser(username, reason);
+        ingestQueue.offerAction(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                censor.purgeMessages(getMessagesForUser(username, channel), reason);
+            }
+        });
+    }
+
+    /**
+     * Used to purge a single message from chat whenever it is deleted by a Twitch moderator. The purge is queued behind
+     * the messages still waiting to be added, so it can find the message even if it's one of them.
+     * 
+     * @param messageId
+     *            The Twitch message ID
+     * @param reason
+     */
+    public void purgeMessageById(final String messageId, final String reason)
+    {
+        ingestQueue.offerAction(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                final Message msg = getMessageById(messageId);
+                if (msg != null)
+                {
+                    censor.purgeMessages(Collections.singletonList(msg), reason);
+                }
+            }
+        });
+    }
+
+    /**
+     * Used to purge every message from chat whenever the chat is cleared by a Twitch moderator. The purge is queued
+     * behind the messages still waiting to be added, so it covers them too.
+     * 
+     * @param channel
+     *            The channel cleared, or null for every channel
+     * @param reason
+     */
+    public void purgeAllMessages(final String channel, final String reason)
+    {
+        ingestQueue.offerAction(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                List<Message> toPurge = new ArrayList<Message>();
+                for (Message msg : getMessages())
+                {
+                    if (isFromChannel(msg, channel))
+                    {
+                        toPurge.add(msg);
+                    }
+                }
+                censor.purgeMessages(toPurge, reason);
+            }
+        });
     }
 
     public String getFontGameName()
@@ -0,0 +1,284 @@
+package com.glitchcog.fontificator.gui.chat;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.glitchcog.fontificator.config.ConfigMessage;
+
+/**
+ * Remembers the messages received over the last few seconds so that the same message arriving again, whether a relay
+ * retried it or it came in over both IRC and Social Stream, can be dropped before it is parsed or drawn. Messages are
+ * keyed off of the id their source gave them when there is one, and off of their username and content when there
+ * isn't.
+ * <p>
+ * Only a 64-bit hash of each key is kept, in a ring of fixed-size open-addressed tables that each cover a slice of the
+ * window. The oldest table is emptied and reused as time moves on, or early if the current table fills up in a flood,
+ * so the memory used never grows past the ring no matter how busy the chat gets. A flood can shorten how far back
+ * duplicates are caught, but never makes the dedup stage any more expensive.
+ *
+ * @author Matt Yanos
+ */
+public class MessageDeduplicator
+{
+    /**
+     * The number of tables the window is split across. One more than this is kept so that a key added at the very end
+     * of a slice is still remembered for the whole window.
+     */
+    private static final int SLICE_COUNT = 8;
+
+    private static final int TABLE_COUNT = SLICE_COUNT + 1;
+
+    /**
+     * Slots per table, a power of two. Tables are rotated early once they're half full to keep probes short.
+     */
+    private static final int TABLE_SLOTS = 8192;
+
+    private static final int MAX_TABLE_ENTRIES = TABLE_SLOTS / 2;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final ChatPanel chat;
+
+    /**
+     * The key hashes for each slice, with zero marking an empty slot. Only allocated once dedup is first used. Guarded
+     * by this deduplicator's monitor.
+     */
+    private long[][] tables;
+
+    private int[] tableSizes;
+
+    /**
+     * When each table started taking keys, or zero if it hasn't yet
+     */
+    private long[] tableStarts;
+
+    private int current;
+
+    /**
+     * The window the tables were filled for, so they can be emptied if it changes
+     */
+    private long windowMillis;
+
+    private final AtomicLong duplicateCount;
+
+    public MessageDeduplicator(ChatPanel chat)
+    {
+        this.chat = chat;
+        this.duplicateCount = new AtomicLong();
+    }
+
+    /**
+     * Get the key for a message that its source gave an id
+     *
+     * @param source
+     *            A short name for where the id came from, so ids from different sources can't collide
+     * @param id
+     * @return key
+     */
+    public static String getIdKey(String source, String id)
+    {
+        return source + ":" + id;
+    }
+
+    /**
+     * Get the key for a message that has no id, made from who posted it and what it says
+     *
+     * @param username
+     * @param content
+     * @return key
+     */
+    public static String getContentKey(String username, String content)
+    {
+        return "content:" + (username == null ? "" : username.toLowerCase()) + "\n" + content;
+    }
+
+    /**
+     * Check whether a message with the specified key has already been seen within the window, remembering it if it
+     * hasn't. Always false if dedup is turned off.
+     *
+     * @param key
+     *            A key from getIdKey or getContentKey
+     * @return whether the message is a duplicate and should be dropped
+     */
+    public boolean isDuplicate(String key)
+    {
+        return isDuplicate(key, null);
+    }
+
+    /**
+     * Check whether a message has already been seen within the window under either of two keys, remembering both if it
+     * hasn't. A message is checked under its id and its content both, so a copy relayed by another source that gave it a
+     * different id, or none, is still caught. Always false if dedup is turned off.
+     *
+     * @param idKey
+     *            A key from getIdKey, or null if the message has no id
+     * @param contentKey
+     *            A key from getContentKey, or null to go by the id alone
+     * @return whether the message is a duplicate and should be dropped
+     */
+    public boolean isDuplicate(String idKey, String contentKey)
+    {
+        if ((idKey == null && contentKey == null) || !isEnabled())
+        {
+            return false;
+        }
+
+        final long idHash = idKey == null ? 0L : hash(idKey);
+        final long contentHash = contentKey == null ? 0L : hash(contentKey);
+        final long window = getWindowMillis();
+        final long now = System.currentTimeMillis();
+
+        synchronized (this)
+        {
+            if (tables == null)
+            {
+                tables = new long[TABLE_COUNT][TABLE_SLOTS];
+                tableSizes = new int[TABLE_COUNT];
+                tableStarts = new long[TABLE_COUNT];
+            }
+            if (window != windowMillis)
+            {
+                clear();
+                windowMillis = window;
+            }
+
+            final long slice = Math.max(1L, window / SLICE_COUNT);
+            if (tableStarts[current] == 0L)
+            {
+                tableStarts[current] = now;
+            }
+            else if (now - tableStarts[current] >= slice || tableSizes[current] >= MAX_TABLE_ENTRIES)
+            {
+                rotate(now);
+            }
+
+            for (int i = 0; i < TABLE_COUNT; i++)
+            {
+                final long start = tableStarts[i];
+                if (start != 0L && now - start < window + slice && ((idHash != 0L && contains(tables[i], idHash)) || (contentHash != 0L && contains(tables[i], contentHash))))
+                {
+                    duplicateCount.incrementAndGet();
+                    return true;
+                }
+            }
+
+            if (idHash != 0L)
+            {
+                add(tables[current], idHash);
+                tableSizes[current]++;
+            }
+            if (contentHash != 0L)
+            {
+                add(tables[current], contentHash);
+                tableSizes[current]++;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Forget every message seen so far
+     */
+    public synchronized void clear()
+    {
+        if (tables != null)
+        {
+            for (int i = 0; i < TABLE_COUNT; i++)
+            {
+                Arrays.fill(tables[i], 0L);
+                tableSizes[i] = 0;
+                tableStarts[i] = 0L;
+            }
+        }
+        current = 0;
+    }
+
+    /**
+     * Move on to the oldest table, emptying it for the new slice
+     *
+     * @param now
+     */
+    private void rotate(long now)
+    {
+        current = (current + 1) % TABLE_COUNT;
+        Arrays.fill(tables[current], 0L);
+        tableSizes[current] = 0;
+        tableStarts[current] = now;
+    }
+
+    private static boolean contains(long[] table, long hash)
+    {
+        final int mask = table.length - 1;
+        for (int slot = spread(hash) & mask; table[slot] != 0L; slot = (slot + 1) & mask)
+        {
+            if (table[slot] == hash)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void add(long[] table, long hash)
+    {
+        final int mask = table.length - 1;
+        int slot = spread(hash) & mask;
+        while (table[slot] != 0L)
+        {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = hash;
+    }
+
+    private static int spread(long hash)
+    {
+        return (int) (hash ^ (hash >>> 32)) * 0x9E3779B9;
+    }
+
+    /**
+     * 64-bit FNV-1a over the characters of the key, with zero moved aside since it marks an empty slot
+     *
+     * @param key
+     * @return hash
+     */
+    private static long hash(String key)
+    {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < key.length(); i++)
+        {
+            hash ^= key.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash == 0L ? 1L : hash;
+    }
+
+    /**
+     * Get whether dedup is turned on, so callers can skip building keys when it isn't
+     *
+     * @return enabled
+     */
+    public boolean isEnabled()
+    {
+        final ConfigMessage messageConfig = chat.getMessageConfig();
+        return messageConfig != null && Boolean.TRUE.equals(messageConfig.isDedupEnabled());
+    }
+
+    private long getWindowMillis()
+    {
+        final ConfigMessage messageConfig = chat.getMessageConfig();
+        final int seconds = messageConfig == null || messageConfig.getDedupWindow() == null ? ConfigMessage.DEFAULT_DEDUP_WINDOW : messageConfig.getDedupWindow();
+        return seconds * 1000L;
+    }
+
+    /**
+     * Get the number of messages dropped as duplicates
+     *
+     * @return duplicateCount
+     */
+    public long getDuplicateCount()
+    {
+        return duplicateCount.get();
+    }
+}
@@ -0,0 +1,490 @@
+package com.glitchcog.fontificator.gui.chat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.glitchcog.fontificator.bot.Message;
+import com.glitchcog.fontificator.config.ConfigMessage;
+import com.glitchcog.fontificator.config.IngestPolicy;
+
+/**
+ * A bounded hand-off between the threads that produce messages, like the IRC bot and the HTTP server, and the chat
+ * panel. Producers only ever wait on this queue's own short lock, never on the chat panel, and a single daemon thread
+ * drains the queue into the chat. When messages arrive faster than the chat can take them in and the queue fills up,
+ * the configured IngestPolicy decides which message is let go, so overload thins out the chat instead of backing up the
+ * socket. Moderator purges go through the queue too, so they apply to the messages that arrived before them even when
+ * those are still waiting.
+ *
+ * @author Matt Yanos
+ */
+public class MessageIngestQueue implements Runnable
+{
+    private static final Logger logger = Logger.getLogger(MessageIngestQueue.class);
+
+    /**
+     * A message waiting to be added to the chat, along with the number of identical messages collapsed into it, or an
+     * action waiting to be run on the chat once the messages ahead of it are in
+     */
+    private static class Entry
+    {
+        private final Message message;
+
+        private final Runnable action;
+
+        private final String userKey;
+
+        private final String collapseKey;
+
+        private int repeats;
+
+        private Entry(Message message)
+        {
+            this.message = message;
+            this.action = null;
+            this.userKey = message.getUsername() == null ? "" : message.getUsername().toLowerCase();
+            final String channel = message.getPrivmsg() == null ? null : message.getPrivmsg().getChannel();
+            this.collapseKey = channel + " " + message.getType() + " " + userKey + " " + message.getContent();
+            this.repeats = 1;
+        }
+
+        private Entry(Runnable action)
+        {
+            this.message = null;
+            this.action = action;
+            this.userKey = null;
+            this.collapseKey = null;
+            this.repeats = 1;
+        }
+    }
+
+    private final ChatPanel chat;
+
+    /**
+     * The messages waiting to be added to the chat, oldest first. Guarded by this queue's monitor.
+     */
+    private final Deque<Entry> pending;
+
+    /**
+     * The waiting messages keyed off of channel, type, user and content, used to collapse duplicates. Guarded by this
+     * queue's monitor.
+     */
+    private final Map<String, Entry> pendingByContent;
+
+    /**
+     * The number of waiting messages per lowercase username, used to sample per user. Guarded by this queue's monitor.
+     */
+    private final Map<String, Integer> pendingPerUser;
+
+    /**
+     * Count of messages let into the queue. A message that is accepted can still be dropped later if it is evicted to
+     * make room.
+     */
+    private final AtomicLong acceptedCount;
+
+    /**
+     * Count of messages let go because the queue was full, whether rejected on arrival or evicted while waiting
+     */
+    private final AtomicLong droppedCount;
+
+    /**
+     * Count of messages folded into an identical waiting message instead of being queued
+     */
+    private final AtomicLong collapsedCount;
+
+    /**
+     * The number of threads waiting in awaitRoom. Guarded by this queue's monitor.
+     */
+    private int roomWaiters;
+
+    private Thread thread;
+
+    public MessageIngestQueue(ChatPanel chat)
+    {
+        this.chat = chat;
+        this.pending = new ArrayDeque<Entry>();
+        this.pendingByContent = new HashMap<String, Entry>();
+        this.pendingPerUser = new HashMap<String, Integer>();
+        this.acceptedCount = new AtomicLong();
+        this.droppedCount = new AtomicLong();
+        this.collapsedCount = new AtomicLong();
+    }
+
+    /**
+     * Hand a message off to be added to the chat. This never blocks on the chat panel, so it is safe to call from a
+     * socket reading thread.
+     *
+     * @param msg
+     * @return whether the message was queued or collapsed into a waiting message, false if it was dropped on arrival
+     */
+    public boolean offer(Message msg)
+    {
+        final IngestPolicy policy = getPolicy();
+        final int capacity = getCapacity();
+        final Entry entry = new Entry(msg);
+
+        synchronized (this)
+        {
+            final boolean result = offer(entry, policy, capacity);
+            wakeDrain();
+            return result;
+        }
+    }
+
+    /**
+     * Hand a batch of messages off to be added to the chat, taking the lock and waking the drain thread once for the
+     * whole batch
+     *
+     * @param msgs
+     * @return for each message, whether it was queued or collapsed, false if it was dropped on arrival
+     */
+    public boolean[] offerAll(List<Message> msgs)
+    {
+        final IngestPolicy policy = getPolicy();
+        final int capacity = getCapacity();
+        final boolean[] results = new boolean[msgs.size()];
+
+        List<Entry> entries = new ArrayList<Entry>(msgs.size());
+        for (Message msg : msgs)
+        {
+            entries.add(new Entry(msg));
+        }
+
+        synchronized (this)
+        {
+            for (int i = 0; i < results.length; i++)
+            {
+                results[i] = offer(entries.get(i), policy, capacity);
+            }
+            wakeDrain();
+        }
+        return results;
+    }
+
+    /**
+     * Run an action on the chat after every message already waiting has been added, so a purge can't miss a message
+     * that arrived before it. Actions are never dropped, however full the queue is.
+     *
+     * @param action
+     */
+    public void offerAction(Runnable action)
+    {
+        final Entry entry = new Entry(action);
+        synchronized (this)
+        {
+            pending.addLast(entry);
+            wakeDrain();
+        }
+    }
+
+    /**
+     * Apply the policy to a single incoming entry. Must be called while holding this queue's monitor.
+     *
+     * @param entry
+     * @param policy
+     * @param capacity
+     * @return whether the entry was queued or collapsed
+     */
+    private boolean offer(Entry entry, IngestPolicy policy, int capacity)
+    {
+        if (policy == IngestPolicy.COLLAPSE_DUPLICATES)
+        {
+            Entry duplicate = pendingByContent.get(entry.collapseKey);
+            if (duplicate != null)
+            {
+                duplicate.repeats++;
+                collapsedCount.incrementAndGet();
+                return true;
+            }
+        }
+
+        if (pending.size() >= capacity)
+        {
+            Entry evicted = selectEviction(policy, entry);
+            droppedCount.incrementAndGet();
+            if (evicted == null)
+            {
+                return false;
+            }
+            pending.removeFirstOccurrence(evicted);
+            unindex(evicted);
+        }
+
+        pending.addLast(entry);
+        index(entry);
+        acceptedCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Start the drain thread if it isn't running yet and wake it up. Must be called while holding this queue's monitor.
+     */
+    private void wakeDrain()
+    {
+        if (pending.isEmpty())
+        {
+            return;
+        }
+
+        if (thread == null)
+        {
+            thread = new Thread(this, "Message Ingest");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Pick which waiting message to evict to make room for the incoming one when the queue is full
+     *
+     * @param policy
+     * @param incoming
+     * @return the waiting entry to evict, or null to drop the incoming message instead
+     */
+    private Entry selectEviction(IngestPolicy policy, Entry incoming)
+    {
+        switch (policy)
+        {
+        case DROP_NEWEST:
+            return null;
+        case SAMPLE_PER_USER:
+            // A user who already has a message waiting doesn't get a second one while the queue is full
+            if (pendingPerUser.containsKey(incoming.userKey))
+            {
+                return null;
+            }
+            // Make room by taking the oldest message of whoever has the most waiting
+            String busiestUser = null;
+            int busiestCount = 1;
+            for (Map.Entry<String, Integer> count : pendingPerUser.entrySet())
+            {
+                if (count.getValue() > busiestCount)
+                {
+                    busiestUser = count.getKey();
+                    busiestCount = count.getValue();
+                }
+            }
+            if (busiestUser != null)
+            {
+                for (Entry e : pending)
+                {
+                    if (e.message != null && busiestUser.equals(e.userKey))
+                    {
+                        return e;
+                    }
+                }
+            }
+            return getOldestMessage();
+        case DROP_OLDEST:
+        case COLLAPSE_DUPLICATES:
+        default:
+            return getOldestMessage();
+        }
+    }
+
+    /**
+     * Get the oldest waiting message, skipping over any actions, which are never evicted
+     *
+     * @return the oldest message entry, or null if only actions are waiting
+     */
+    private Entry getOldestMessage()
+    {
+        for (Entry e : pending)
+        {
+            if (e.message != null)
+            {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    private void index(Entry entry)
+    {
+        if (entry.message == null)
+        {
+            return;
+        }
+        pendingByContent.put(entry.collapseKey, entry);
+        Integer count = pendingPerUser.get(entry.userKey);
+        pendingPerUser.put(entry.userKey, count == null ? 1 : count + 1);
+    }
+
+    private void unindex(Entry entry)
+    {
+        if (entry.message == null)
+        {
+            return;
+        }
+        if (pendingByContent.get(entry.collapseKey) == entry)
+        {
+            pendingByContent.remove(entry.collapseKey);
+        }
+        Integer count = pendingPerUser.get(entry.userKey);
+        if (count == null || count <= 1)
+        {
+            pendingPerUser.remove(entry.userKey);
+        }
+        else
+        {
+            pendingPerUser.put(entry.userKey, count - 1);
+        }
+    }
+
+    /**
+     * Discard every waiting message, used when the chat is cleared
+     */
+    public synchronized void clear()
+    {
+        pending.clear();
+        pendingByContent.clear();
+        pendingPerUser.clear();
+        if (roomWaiters > 0)
+        {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Wait until the queue is no more than half full, so a streaming source can hold off on sending more until the chat
+     * has caught up instead of having its messages let go by the policy
+     *
+     * @param timeoutMillis
+     * @return whether there is room
+     * @throws InterruptedException
+     */
+    public synchronized boolean awaitRoom(long timeoutMillis) throws InterruptedException
+    {
+        final int threshold = getCapacity() / 2;
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        roomWaiters++;
+        try
+        {
+            long remaining;
+            while (pending.size() > threshold && (remaining = deadline - System.currentTimeMillis()) > 0L)
+            {
+                wait(remaining);
+            }
+            return pending.size() <= threshold;
+        }
+        finally
+        {
+            roomWaiters--;
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        while (true)
+        {
+            final Entry entry;
+            synchronized (this)
+            {
+                while (pending.isEmpty())
+                {
+                    try
+                    {
+                        wait();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        thread = null;
+                        return;
+                    }
+                }
+                entry = pending.pollFirst();
+                unindex(entry);
+                if (roomWaiters > 0)
+                {
+                    notifyAll();
+                }
+            }
+
+            if (entry.action != null)
+            {
+                try
+                {
+                    entry.action.run();
+                }
+                catch (Exception e)
+                {
+                    logger.error("Unable to run action on chat", e);
+                }
+                continue;
+            }
+
+            try
+            {
+                chat.addMessage(entry.repeats > 1 ? collapse(entry) : entry.message);
+            }
+            catch (Exception e)
+            {
+                logger.error("Unable to add message to chat: " + entry.message, e);
+            }
+        }
+    }
+
+    /**
+     * Build the single message that stands in for a run of identical messages
+     *
+     * @param entry
+     * @return collapsed message
+     */
+    private static Message collapse(Entry entry)
+    {
+        final Message original = entry.message;
+        Message collapsed = new Message(original.getType(), original.getUsername(), original.getTimestamp(), original.getContent() + " x" + entry.repeats, original.getPrivmsg());
+        collapsed.setReceivedNanos(original.getReceivedNanos());
+        return collapsed;
+    }
+
+    private IngestPolicy getPolicy()
+    {
+        final ConfigMessage messageConfig = chat.getMessageConfig();
+        return messageConfig == null || messageConfig.getIngestPolicy() == null ? ConfigMessage.DEFAULT_INGEST_POLICY : messageConfig.getIngestPolicy();
+    }
+
+    private int getCapacity()
+    {
+        final ConfigMessage messageConfig = chat.getMessageConfig();
+        return messageConfig == null || messageConfig.getIngestCapacity() == null ? ConfigMessage.DEFAULT_INGEST_CAPACITY : messageConfig.getIngestCapacity();
+    }
+
+    public synchronized int getPendingCount()
+    {
+        return pending.size();
+    }
+
+    public long getAcceptedCount()
+    {
+        return acceptedCount.get();
+    }
+
+    public long getDroppedCount()
+    {
+        return droppedCount.get();
+    }
+
+    public long getCollapsedCount()
+    {
+        return collapsedCount.get();
+    }
+
+    /**
+     * Get a one line human readable summary of the counters
+     *
+     * @return stats
+     */
+    public String getStats()
+    {
+        return "Message ingest (" + getPolicy().name() + ", capacity " + getCapacity() + "): accepted " + getAcceptedCount() + ", dropped " + getDroppedCount() + ", collapsed " + getCollapsedCount() + ", waiting " + getPendingCount();
+    }
+}
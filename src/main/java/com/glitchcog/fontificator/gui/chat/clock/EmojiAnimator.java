@@ -0,0 +1,196 @@
+package com.glitchcog.fontificator.gui.chat.clock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import com.glitchcog.fontificator.emoji.AnimatedEmoji;
+import com.glitchcog.fontificator.gui.chat.ChatPanel;
+
+/**
+ * The one clock for every animated emoji in the chat. Each paint picks the frames of the animated emoji by the same
+ * time, and remembers where each was drawn and which frame it was on. The clock then checks them every tick and
+ * repaints only the spots of the emoji whose frames have changed, so a dozen copies of an animated emote cost a dozen
+ * small repaint regions that get merged into one paint, rather than a whole repaint of the chat for each frame of each
+ * copy.
+ *
+ * @author Matt Yanos
+ */
+public class EmojiAnimator extends MessageClock
+{
+    /**
+     * How often to check for frame changes, the smallest delay an animated GIF can have
+     */
+    private static final long TICK_MILLIS = 10L;
+
+    /**
+     * Where an animated emoji was drawn, and which of its frames it was drawn with
+     */
+    private static class DrawnAnimation
+    {
+        private final AnimatedEmoji animation;
+
+        private final int frameIndex;
+
+        private final int x;
+
+        private final int y;
+
+        private final int width;
+
+        private final int height;
+
+        /**
+         * Set by the clock's thread, and carried forward by paints that don't cover this spot
+         */
+        private volatile boolean repaintRequested;
+
+        private DrawnAnimation(AnimatedEmoji animation, int frameIndex, int x, int y, int width, int height)
+        {
+            this.animation = animation;
+            this.frameIndex = frameIndex;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        private boolean isSameSpot(AnimatedEmoji animation, int x, int y, int width, int height)
+        {
+            return this.animation == animation && this.x == x && this.y == y && this.width == width && this.height == height;
+        }
+    }
+
+    /**
+     * The time the paint in progress picks frames by. Only touched while painting.
+     */
+    private long frameMillis;
+
+    /**
+     * The animated emoji drawn by the paint in progress. Only touched while painting.
+     */
+    private List<DrawnAnimation> drawing;
+
+    /**
+     * The animated emoji drawn by the last paint, handed off to the clock's thread
+     */
+    private volatile List<DrawnAnimation> drawn;
+
+    public EmojiAnimator(ChatPanel chat)
+    {
+        super(chat);
+        this.frameMillis = System.currentTimeMillis();
+        this.drawing = new ArrayList<DrawnAnimation>();
+        this.drawn = Collections.emptyList();
+    }
+
+    public void startClock()
+    {
+        startClock(TICK_MILLIS);
+    }
+
+    @Override
+    public void startClock(long tickMillis)
+    {
+        cancelLatest();
+        initTask();
+        clock = new Timer("Emoji Animation", true);
+        clock.schedule(task, tickMillis, tickMillis);
+        active = true;
+    }
+
+    /**
+     * Called at the start of a paint, to settle the time all the animated emoji in it are drawn at
+     */
+    public void beginFrame()
+    {
+        frameMillis = System.currentTimeMillis();
+        drawing = new ArrayList<DrawnAnimation>();
+    }
+
+    /**
+     * Get the time the paint in progress picks frames by
+     *
+     * @return millis
+     */
+    public long getFrameMillis()
+    {
+        return frameMillis;
+    }
+
+    /**
+     * Called while painting for each animated emoji drawn
+     *
+     * @param animation
+     * @param visible
+     *            Whether it was inside what's being painted, and so actually shows the frame it was drawn with
+     * @param x
+     * @param y
+     * @param width
+     * @param height
+     */
+    public void animationDrawn(AnimatedEmoji animation, boolean visible, int x, int y, int width, int height)
+    {
+        if (visible)
+        {
+            drawing.add(new DrawnAnimation(animation, animation.getFrameIndex(frameMillis), x, y, width, height));
+            return;
+        }
+
+        // A spot outside what's being painted still shows whatever frame the last paint there left, so that's carried
+        // forward. If nothing was drawn there before, it's left out until a paint covers it.
+        for (DrawnAnimation previous : drawn)
+        {
+            if (previous.isSameSpot(animation, x, y, width, height))
+            {
+                DrawnAnimation carried = new DrawnAnimation(animation, previous.frameIndex, x, y, width, height);
+                carried.repaintRequested = previous.repaintRequested;
+                drawing.add(carried);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Called at the end of a paint, to hand what was drawn off to the clock, starting it the first time there's
+     * something to animate
+     */
+    public void endFrame()
+    {
+        drawn = drawing;
+        if (!active && !drawing.isEmpty())
+        {
+            startClock();
+        }
+    }
+
+    @Override
+    public void initTask()
+    {
+        super.task = new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                final List<DrawnAnimation> check = drawn;
+                if (chat == null || check.isEmpty())
+                {
+                    return;
+                }
+
+                final long now = System.currentTimeMillis();
+                for (DrawnAnimation d : check)
+                {
+                    if (!d.repaintRequested && d.animation.getFrameIndex(now) != d.frameIndex)
+                    {
+                        d.repaintRequested = true;
+                        chat.repaint(d.x, d.y, d.width, d.height);
+                    }
+                }
+            }
+        };
+    }
+
+}
@@ -66,6 +66,7 @@ import com.glitchcog.fontificator.gui.controls.panel.ControlPanelDebug;
 import com.glitchcog.fontificator.gui.controls.panel.ControlPanelFont;
 import com.glitchcog.fontificator.gui.controls.panel.ControlTabs;
 import com.glitchcog.fontificator.gui.controls.panel.LogBox;
+import com.glitchcog.fontificator.sprite.RasterUtil;
 
 /**
  * This is the window for containing all the options of the chat display window
@@ -703,16 +704,14 @@ public class ControlWindow extends JDialog
             final int chromaKey = new Color(Integer.parseInt(fProps.getProperty(FontificatorProperties.KEY_COLOR_CHROMA_KEY), 16)).getRGB();
             final int transparentPixel = new Color(0, true).getRGB();
 
-            for (int r = 0; r < chatImage.getHeight(); r++)
+            RasterUtil.replacePixels(chatImage, new RasterUtil.PixelMatcher()
             {
-                for (int c = 0; c < chatImage.getWidth(); c++)
+                @Override
+                public boolean matches(int argb)
                 {
-                    if (chatImage.getRGB(c, r) == chromaKey)
-                    {
-                        chatImage.setRGB(c, r, transparentPixel);
-                    }
+                    return argb == chromaKey;
                 }
-            }
+            }, transparentPixel);
         }
 
         File saveFile = getTargetSaveFile(screenshotSaver, DEFAULT_SCREENSHOT_FILE_EXTENSION);
@@ -797,6 +796,16 @@ public class ControlWindow extends JDialog
         bot.sendMessageToChat(MessageType.MANUAL, message, new TwitchPrivmsg(username));
     }
 
+    /**
+     * Get the IRC bot, exposed for the debug tab to record and replay IRC traffic
+     * 
+     * @return bot
+     */
+    public ChatViewerBot getBot()
+    {
+        return bot;
+    }
+
     public void disconnect()
     {
         bot.disconnect();
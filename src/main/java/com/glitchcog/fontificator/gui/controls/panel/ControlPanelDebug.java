@@ -6,10 +6,13 @@ import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
 import java.util.Random;
 
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JFileChooser;
 import javax.swing.JPanel;
 import javax.swing.JSlider;
 import javax.swing.JToggleButton;
@@ -20,11 +23,16 @@ import javax.swing.event.ChangeListener;
 import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Logger;
 
+import com.glitchcog.fontificator.bot.ChatViewerBot;
+import com.glitchcog.fontificator.bot.fake.FakeTwitchIrcServer;
+import com.glitchcog.fontificator.bot.replay.IrcRecorder;
+import com.glitchcog.fontificator.bot.replay.IrcReplayer;
 import com.glitchcog.fontificator.config.FontificatorProperties;
 import com.glitchcog.fontificator.config.loadreport.LoadConfigReport;
 import com.glitchcog.fontificator.gui.DebugAppender;
 import com.glitchcog.fontificator.gui.chat.ChatWindow;
 import com.glitchcog.fontificator.gui.component.ColorButton;
+import com.glitchcog.fontificator.gui.component.LabeledInput;
 import com.glitchcog.fontificator.gui.component.LabeledSlider;
 import com.glitchcog.fontificator.gui.controls.ControlWindow;
 import com.glitchcog.fontificator.sprite.SpriteFont;
@@ -61,6 +69,35 @@ public class ControlPanelDebug extends ControlPanelBase
 
     private ColorButton borderGridColorButton;
 
+    private JToggleButton recordIrcButton;
+
+    private JButton replayIrcButton;
+
+    private JComboBox<String> replaySpeedBox;
+
+    private JFileChooser recordingChooser;
+
+    private IrcReplayer replayer;
+
+    /**
+     * Logs the accepted, dropped and collapsed counters of the queue between the message sources and the chat
+     */
+    private JButton ingestStatsButton;
+
+    private JToggleButton fakeIrcButton;
+
+    private LabeledInput fakeIrcPortInput;
+
+    private LabeledSlider fakeIrcMessageRateSlider;
+
+    private LabeledSlider fakeIrcBanRateSlider;
+
+    private JButton fakeIrcDisconnectButton;
+
+    private JButton fakeIrcStatsButton;
+
+    private FakeTwitchIrcServer fakeIrcServer;
+
     private Random rnd;
 
     private Timer postClock;
@@ -168,6 +205,114 @@ public class ControlPanelDebug extends ControlPanelBase
         ctrlWindow.addManualMessage(username, message);
     }
 
+    /**
+     * The replay speed options, matched by index to REPLAY_SPEEDS
+     */
+    private static final String[] REPLAY_SPEED_LABELS = new String[] { "1x", "2x", "5x", "10x", "Max" };
+
+    private static final double[] REPLAY_SPEEDS = new double[] { 1.0, 2.0, 5.0, 10.0, IrcReplayer.MAX_SPEED };
+
+    /**
+     * Start recording the raw IRC lines to a file selected by the user, or stop the current recording
+     */
+    private void toggleRecording()
+    {
+        final ChatViewerBot bot = ctrlWindow.getBot();
+        IrcRecorder recorder = bot.getRecorder();
+        if (recorder != null)
+        {
+            bot.setRecorder(null);
+            recorder.close();
+            logBox.log("Recorded " + recorder.getRecordCount() + " IRC lines to " + recorder.getFile().getAbsolutePath());
+        }
+
+        if (recordIrcButton.isSelected())
+        {
+            if (recordingChooser.showSaveDialog(ctrlWindow) == JFileChooser.APPROVE_OPTION)
+            {
+                final File file = recordingChooser.getSelectedFile();
+                try
+                {
+                    bot.setRecorder(new IrcRecorder(file));
+                    logBox.log("Recording IRC lines to " + file.getAbsolutePath());
+                }
+                catch (Exception ex)
+                {
+                    recordIrcButton.setSelected(false);
+                    ChatWindow.popup.handleProblem("Unable to record IRC lines to " + file.getAbsolutePath(), ex);
+                }
+            }
+            else
+            {
+                recordIrcButton.setSelected(false);
+            }
+        }
+    }
+
+    /**
+     * Replay a recording selected by the user at the selected speed, or halt the replay in progress
+     */
+    private void replayRecording()
+    {
+        if (replayer != null && replayer.isRunning())
+        {
+            replayer.halt();
+            return;
+        }
+
+        if (recordingChooser.showOpenDialog(ctrlWindow) == JFileChooser.APPROVE_OPTION)
+        {
+            final double speed = REPLAY_SPEEDS[replaySpeedBox.getSelectedIndex()];
+            replayer = new IrcReplayer(recordingChooser.getSelectedFile(), ctrlWindow.getBot(), chat, logBox, speed);
+            replayer.start();
+        }
+    }
+
+    /**
+     * Start the fake Twitch IRC server on the specified port, or stop it if it's running
+     */
+    private void toggleFakeIrcServer()
+    {
+        if (fakeIrcServer != null)
+        {
+            logBox.log(fakeIrcServer.getStats());
+            fakeIrcServer.stop();
+            fakeIrcServer = null;
+        }
+
+        if (fakeIrcButton.isSelected())
+        {
+            try
+            {
+                fakeIrcServer = new FakeTwitchIrcServer(Integer.parseInt(fakeIrcPortInput.getText().trim()));
+                updateFakeIrcRates();
+                fakeIrcServer.start();
+                logBox.log("Fake Twitch IRC server started, connect to host localhost port " + fakeIrcServer.getPort());
+            }
+            catch (Exception ex)
+            {
+                fakeIrcServer = null;
+                fakeIrcButton.setSelected(false);
+                ChatWindow.popup.handleProblem("Unable to start the fake Twitch IRC server on port " + fakeIrcPortInput.getText(), ex);
+            }
+        }
+
+        fakeIrcPortInput.setEnabled(!fakeIrcButton.isSelected());
+        fakeIrcDisconnectButton.setEnabled(fakeIrcButton.isSelected());
+        fakeIrcStatsButton.setEnabled(fakeIrcButton.isSelected());
+    }
+
+    private void updateFakeIrcRates()
+    {
+        if (fakeIrcServer != null)
+        {
+            fakeIrcServer.setMessagesPerSecond(fakeIrcMessageRateSlider.getValue());
+            fakeIrcServer.setBansPerSecond(fakeIrcBanRateSlider.getValue() / 60.0);
+            // Twitch pings about every five minutes, but ping more often here to exercise the reply
+            fakeIrcServer.setPingsPerSecond(1.0 / 30.0);
+        }
+    }
+
     /**
      * Construct a debug control panel
      * 
@@ -264,6 +409,95 @@ public class ControlPanelDebug extends ControlPanelBase
             }
         });
 
+        recordingChooser = new JFileChooser();
+        recordIrcButton = new JToggleButton("Record IRC");
+        recordIrcButton.setToolTipText("Record the raw IRC lines received to a file for replaying later");
+        recordIrcButton.addActionListener(new ActionListener()
+        {
+            @Override
+            public void actionPerformed(ActionEvent e)
+            {
+                toggleRecording();
+            }
+        });
+
+        replayIrcButton = new JButton("Replay IRC");
+        replayIrcButton.setToolTipText("Replay a recording through the bot and report the timing, or halt the current replay");
+        replayIrcButton.addActionListener(new ActionListener()
+        {
+            @Override
+            public void actionPerformed(ActionEvent e)
+            {
+                replayRecording();
+            }
+        });
+
+        replaySpeedBox = new JComboBox<String>(REPLAY_SPEED_LABELS);
+
+        fakeIrcButton = new JToggleButton("Fake IRC Server");
+        fakeIrcButton.setToolTipText("Run a local fake Twitch IRC server that posts synthetic tagged messages and bans");
+        fakeIrcButton.addActionListener(new ActionListener()
+        {
+            @Override
+            public void actionPerformed(ActionEvent e)
+            {
+                toggleFakeIrcServer();
+            }
+        });
+        fakeIrcPortInput = new LabeledInput("Port", 4);
+        fakeIrcPortInput.setText("6668");
+        fakeIrcMessageRateSlider = new LabeledSlider("Messages ", " / sec", 0, 500, 5, 3);
+        fakeIrcBanRateSlider = new LabeledSlider("Bans ", " / min", 0, 120, 0, 3);
+        ChangeListener fakeIrcRateListener = new ChangeListener()
+        {
+            @Override
+            public void stateChanged(ChangeEvent e)
+            {
+                updateFakeIrcRates();
+            }
+        };
+        fakeIrcMessageRateSlider.addChangeListener(fakeIrcRateListener);
+        fakeIrcBanRateSlider.addChangeListener(fakeIrcRateListener);
+        fakeIrcDisconnectButton = new JButton("Inject Disconnect");
+        fakeIrcDisconnectButton.setEnabled(false);
+        fakeIrcDisconnectButton.addActionListener(new ActionListener()
+        {
+            @Override
+            public void actionPerformed(ActionEvent e)
+            {
+                if (fakeIrcServer != null)
+                {
+                    fakeIrcServer.injectDisconnect();
+                }
+            }
+        });
+        fakeIrcStatsButton = new JButton("Stats");
+        fakeIrcStatsButton.setEnabled(false);
+        fakeIrcStatsButton.addActionListener(new ActionListener()
+        {
+            @Override
+            public void actionPerformed(ActionEvent e)
+            {
+                if (fakeIrcServer != null)
+                {
+                    logBox.log(fakeIrcServer.getStats());
+                }
+            }
+        });
+
+        ingestStatsButton = new JButton("Ingest Stats");
+        ingestStatsButton.addActionListener(new ActionListener()
+        {
+            @Override
+            public void actionPerformed(ActionEvent e)
+            {
+                if (chat != null)
+                {
+                    logBox.log(chat.getIngestQueue().getStats());
+                }
+            }
+        });
+
         drawTextGridBox = new JCheckBox("Draw Text Grid");
         textGridColorButton = new ColorButton("Text Grid Color", new Color(0x99FF88), "Color of the border grid", this);
         drawBorderGridBox = new JCheckBox("Draw Border Grid");
@@ -297,12 +531,46 @@ public class ControlPanelDebug extends ControlPanelBase
         gbc.weightx = 1.0;
         gbc.fill = GridBagConstraints.HORIZONTAL;
         topPanel.add(postRateSlider, gbc);
+        gbc.gridx++;
+        gbc.weightx = 0.0;
+        gbc.fill = GridBagConstraints.NONE;
+        topPanel.add(recordIrcButton, gbc);
+        gbc.gridx++;
+        topPanel.add(replayIrcButton, gbc);
+        gbc.gridx++;
+        topPanel.add(replaySpeedBox, gbc);
+        gbc.gridx++;
+        topPanel.add(ingestStatsButton, gbc);
+
+        JPanel fakeIrcPanel = new JPanel(new GridBagLayout());
+        gbc.gridx = 0;
+        gbc.weightx = 0.0;
+        gbc.fill = GridBagConstraints.NONE;
+        fakeIrcPanel.add(fakeIrcButton, gbc);
+        gbc.gridx++;
+        fakeIrcPanel.add(fakeIrcPortInput, gbc);
+        gbc.gridx++;
+        gbc.weightx = 0.5;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        fakeIrcPanel.add(fakeIrcMessageRateSlider, gbc);
+        gbc.gridx++;
+        fakeIrcPanel.add(fakeIrcBanRateSlider, gbc);
+        gbc.gridx++;
+        gbc.weightx = 0.0;
+        gbc.fill = GridBagConstraints.NONE;
+        fakeIrcPanel.add(fakeIrcDisconnectButton, gbc);
+        gbc.gridx++;
+        fakeIrcPanel.add(fakeIrcStatsButton, gbc);
 
         gbc.gridwidth = 4;
         gbc.gridx = 0;
         gbc.gridy = 0;
+        gbc.weightx = 1.0;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
         add(topPanel, gbc);
         gbc.gridy++;
+        add(fakeIrcPanel, gbc);
+        gbc.gridy++;
 
         gbc.gridwidth = 1;
 
@@ -379,6 +647,11 @@ public class ControlPanelDebug extends ControlPanelBase
             // Turn off everything before disabling the debug tab
             postClock.stop();
             postMessagesButton.setSelected(false);
+            if (fakeIrcButton.isSelected())
+            {
+                fakeIrcButton.setSelected(false);
+                toggleFakeIrcServer();
+            }
             drawTextGridBox.setSelected(false);
             drawBorderGridBox.setSelected(false);
             chat.repaint();
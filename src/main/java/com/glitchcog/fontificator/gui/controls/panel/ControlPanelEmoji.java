@@ -4,8 +4,10 @@ import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import javax.swing.BorderFactory;
@@ -314,102 +316,73 @@ public class ControlPanelEmoji extends ControlPanelBase
                     final boolean clickBttvCache = clickAll || cacheBetterTtv.equals(source);
 
                     // Badges is independent of enableAll
-                    final boolean clickTwitchBadges = !config.isTwitchBadgesLoaded(getConnectChannel()) && enableTwitchBadges.equals(source);
-                    final boolean clickFfzBadges = !config.isFfzBadgesLoaded(getConnectChannel()) && enableFfzBadges.equals(source);
+                    final boolean clickTwitchBadges = enableTwitchBadges.equals(source);
+                    final boolean clickFfzBadges = enableFfzBadges.equals(source);
 
                     final String oauth = fProps.getProperty(FontificatorProperties.KEY_IRC_AUTH);
+                    final List<String> channels = getConnectChannels();
 
-                    if (clickFfzLoad && !config.isFfzLoaded(getConnectChannel()))
+                    if (clickFfzLoad)
                     {
-                        EmojiJob jobA = new EmojiJob(oauth, EmojiType.FRANKERFACEZ_CHANNEL, EmojiOperation.LOAD, getConnectChannel());
-                        EmojiJob jobB = new EmojiJob(oauth, EmojiType.FRANKERFACEZ_GLOBAL, EmojiOperation.LOAD);
-
-                        if (enableAll.isSelected() && enableFrankerFaceZ.isSelected())
+                        final boolean run = enableAll.isSelected() && enableFrankerFaceZ.isSelected();
+                        boolean channelWork = false;
+                        for (String channel : channels)
                         {
-                            jobsToRun.add(jobA);
-                            jobsToRun.add(jobB);
+                            if (!config.isFfzLoaded(channel))
+                            {
+                                sortJob(new EmojiJob(oauth, EmojiType.FRANKERFACEZ_CHANNEL, EmojiOperation.LOAD, channel), run, jobsToRun, jobsToCancel);
+                                channelWork = true;
+                            }
                         }
-                        else
+                        if (channelWork)
                         {
-                            jobsToCancel.add(jobA);
-                            jobsToCancel.add(jobB);
+                            sortJob(new EmojiJob(oauth, EmojiType.FRANKERFACEZ_GLOBAL, EmojiOperation.LOAD), run, jobsToRun, jobsToCancel);
                         }
                     }
 
-                    if (clickBttvLoad && !config.isBttvLoaded(getConnectChannel()))
+                    if (clickBttvLoad)
                     {
-                        EmojiJob jobA = new EmojiJob(oauth, EmojiType.BETTER_TTV_CHANNEL, EmojiOperation.LOAD, getConnectChannel());
-                        EmojiJob jobB = new EmojiJob(oauth, EmojiType.BETTER_TTV_GLOBAL, EmojiOperation.LOAD);
-
-                        if (enableAll.isSelected() && enableBetterTtv.isSelected())
+                        final boolean run = enableAll.isSelected() && enableBetterTtv.isSelected();
+                        boolean channelWork = false;
+                        for (String channel : channels)
                         {
-                            jobsToRun.add(jobA);
-                            jobsToRun.add(jobB);
+                            if (!config.isBttvLoaded(channel))
+                            {
+                                sortJob(new EmojiJob(oauth, EmojiType.BETTER_TTV_CHANNEL, EmojiOperation.LOAD, channel), run, jobsToRun, jobsToCancel);
+                                channelWork = true;
+                            }
                         }
-                        else
+                        if (channelWork)
                         {
-                            jobsToCancel.add(jobA);
-                            jobsToCancel.add(jobB);
+                            sortJob(new EmojiJob(oauth, EmojiType.BETTER_TTV_GLOBAL, EmojiOperation.LOAD), run, jobsToRun, jobsToCancel);
                         }
                     }
 
                     if (clickFfzCache && !config.isFfzCached())
                     {
-                        EmojiJob jobA = new EmojiJob(oauth, EmojiType.FRANKERFACEZ_CHANNEL, EmojiOperation.CACHE);
-                        EmojiJob jobB = new EmojiJob(oauth, EmojiType.FRANKERFACEZ_GLOBAL, EmojiOperation.CACHE);
-                        if (enableAll.isSelected() && cacheFrankerFaceZ.isSelected())
-                        {
-                            jobsToRun.add(jobA);
-                            jobsToRun.add(jobB);
-                        }
-                        else
-                        {
-                            jobsToCancel.add(jobA);
-                            jobsToCancel.add(jobB);
-                        }
+                        final boolean run = enableAll.isSelected() && cacheFrankerFaceZ.isSelected();
+                        sortJob(new EmojiJob(oauth, EmojiType.FRANKERFACEZ_CHANNEL, EmojiOperation.CACHE), run, jobsToRun, jobsToCancel);
+                        sortJob(new EmojiJob(oauth, EmojiType.FRANKERFACEZ_GLOBAL, EmojiOperation.CACHE), run, jobsToRun, jobsToCancel);
                     }
 
                     if (clickBttvCache && !config.isBttvCached())
                     {
-                        EmojiJob jobA = new EmojiJob(oauth, EmojiType.BETTER_TTV_CHANNEL, EmojiOperation.CACHE);
-                        EmojiJob jobB = new EmojiJob(oauth, EmojiType.BETTER_TTV_GLOBAL, EmojiOperation.CACHE);
-                        if (enableAll.isSelected() && cacheBetterTtv.isSelected())
-                        {
-                            jobsToRun.add(jobA);
-                            jobsToRun.add(jobB);
-                        }
-                        else
-                        {
-                            jobsToCancel.add(jobA);
-                            jobsToCancel.add(jobB);
-                        }
+                        final boolean run = enableAll.isSelected() && cacheBetterTtv.isSelected();
+                        sortJob(new EmojiJob(oauth, EmojiType.BETTER_TTV_CHANNEL, EmojiOperation.CACHE), run, jobsToRun, jobsToCancel);
+                        sortJob(new EmojiJob(oauth, EmojiType.BETTER_TTV_GLOBAL, EmojiOperation.CACHE), run, jobsToRun, jobsToCancel);
                     }
 
-                    if (clickTwitchBadges && !config.isTwitchBadgesLoaded(getConnectChannel()))
+                    // No check for enable all for badges, because badges are independent of the emoji enableAll toggle
+                    for (String channel : channels)
                     {
-                        EmojiJob job = new EmojiJob(oauth, EmojiType.TWITCH_BADGE, EmojiOperation.LOAD, getConnectChannel());
-                        // No check for enable all here, because badges are independent of the emoji enableAll toggle
-                        if (enableTwitchBadges.isSelected())
-                        {
-                            jobsToRun.add(job);
-                        }
-                        else
+                        if (clickTwitchBadges && !config.isTwitchBadgesLoaded(channel))
                         {
-                            jobsToCancel.add(job);
+                            sortJob(new EmojiJob(oauth, EmojiType.TWITCH_BADGE, EmojiOperation.LOAD, channel), enableTwitchBadges.isSelected(), jobsToRun, jobsToCancel);
                         }
-                    }
 
-                    if (clickFfzBadges && !config.isFfzBadgesLoaded(getConnectChannel()))
-                    {
-                        EmojiJob job = new EmojiJob(oauth, EmojiType.FRANKERFACEZ_BADGE, EmojiOperation.LOAD, getConnectChannel());
-                        // No check for enable all here, because badges are independent of the emoji enableAll toggle
-                        if (enableFfzBadges.isSelected())
-                        {
-                            jobsToRun.add(job);
-                        }
-                        else
+                        if (clickFfzBadges && !config.isFfzBadgesLoaded(channel))
                         {
-                            jobsToCancel.add(job);
+                            sortJob(new EmojiJob(oauth, EmojiType.FRANKERFACEZ_BADGE, EmojiOperation.LOAD, channel), enableFfzBadges.isSelected(), jobsToRun, jobsToCancel);
                         }
                     }
 
@@ -578,9 +551,40 @@ public class ControlPanelEmoji extends ControlPanelBase
         gbc.gridy++;
     }
 
-    private String getConnectChannel()
+    /**
+     * Get every channel on the Connection tab, without the hash ('#'), since the channel specific emoji and badges are
+     * loaded for each of them into the shared banks
+     * 
+     * @return channels
+     */
+    private List<String> getConnectChannels()
     {
-        return fProps.getIrcConfig().getChannelNoHash();
+        List<String> channels = new ArrayList<String>();
+        for (String channel : fProps.getIrcConfig().getChannels())
+        {
+            channels.add(channel.substring(1));
+        }
+        return channels;
+    }
+
+    /**
+     * Put a job in the set to run if its checkbox is checked, or in the set to cancel if it's not
+     * 
+     * @param job
+     * @param run
+     * @param jobsToRun
+     * @param jobsToCancel
+     */
+    private static void sortJob(EmojiJob job, boolean run, Set<EmojiJob> jobsToRun, Set<EmojiJob> jobsToCancel)
+    {
+        if (run)
+        {
+            jobsToRun.add(job);
+        }
+        else
+        {
+            jobsToCancel.add(job);
+        }
     }
 
     /**
@@ -616,26 +620,33 @@ public class ControlPanelEmoji extends ControlPanelBase
             return count;
         }
 
-        final String channel = getConnectChannel();
+        final List<String> channels = getConnectChannels();
 
         if (enableAll.isSelected())
         {
             final boolean workTwitchLoad = !config.isTwitchLoaded() && enableTwitch.isSelected();
             final boolean workTwitchCache = !config.isTwitchCached() && cacheTwitch.isSelected();
-            final boolean workFfzLoad = !config.isFfzLoaded(channel) && enableFrankerFaceZ.isSelected();
             final boolean workFfzGlobalLoad = !config.isFfzGlobalLoaded() && enableFrankerFaceZ.isSelected();
             final boolean workFfzCache = !config.isFfzCached() && cacheFrankerFaceZ.isSelected();
-            final boolean workBttvLoad = !config.isBttvLoaded(channel) && enableBetterTtv.isSelected();
             final boolean workBttvGlobalLoad = !config.isBttvGlobalLoaded() && enableBetterTtv.isSelected();
             final boolean workBttvCache = !config.isBttvCached() && cacheBetterTtv.isSelected();
 
-            count += countBooleans(workTwitchLoad, workTwitchCache, workFfzLoad, workFfzGlobalLoad, workFfzCache, workBttvLoad, workBttvGlobalLoad, workBttvCache);
-        }
+            count += countBooleans(workTwitchLoad, workTwitchCache, workFfzGlobalLoad, workFfzCache, workBttvGlobalLoad, workBttvCache);
 
-        final boolean workTwitchBadges = enableTwitchBadges.isSelected() && !config.isTwitchBadgesLoaded(channel);
-        final boolean workFfzBadges = enableFfzBadges.isSelected() && !config.isFfzBadgesLoaded(channel);
+            for (String channel : channels)
+            {
+                final boolean workFfzLoad = !config.isFfzLoaded(channel) && enableFrankerFaceZ.isSelected();
+                final boolean workBttvLoad = !config.isBttvLoaded(channel) && enableBetterTtv.isSelected();
+                count += countBooleans(workFfzLoad, workBttvLoad);
+            }
+        }
 
-        count += countBooleans(workTwitchBadges, workFfzBadges);
+        for (String channel : channels)
+        {
+            final boolean workTwitchBadges = enableTwitchBadges.isSelected() && !config.isTwitchBadgesLoaded(channel);
+            final boolean workFfzBadges = enableFfzBadges.isSelected() && !config.isFfzBadgesLoaded(channel);
+            count += countBooleans(workTwitchBadges, workFfzBadges);
+        }
 
         return count;
     }
@@ -669,26 +680,33 @@ public class ControlPanelEmoji extends ControlPanelBase
             return jobs;
         }
 
-        final String channel = getConnectChannel();
+        final List<String> channels = getConnectChannels();
         final String oauth = fProps.getProperty(FontificatorProperties.KEY_IRC_AUTH);
 
         if (enableAll.isSelected())
         {
-            final boolean workFfzLoad = !config.isFfzLoaded(channel) && enableFrankerFaceZ.isSelected();
             final boolean workFfzGlobalLoad = !config.isFfzGlobalLoaded() && enableFrankerFaceZ.isSelected();
             final boolean workFfzCache = !config.isFfzCached() && cacheFrankerFaceZ.isSelected();
-            final boolean workBttvLoad = !config.isBttvLoaded(channel) && enableBetterTtv.isSelected();
             final boolean workBttvGlobalLoad = !config.isBttvGlobalLoaded() && enableBetterTtv.isSelected();
             final boolean workBttvCache = !config.isBttvCached() && cacheBetterTtv.isSelected();
 
-            if (workFfzLoad)
+            if (channels.isEmpty() && (enableFrankerFaceZ.isSelected() || enableBetterTtv.isSelected()))
             {
-                jobs.add(new EmojiJob(oauth, EmojiType.FRANKERFACEZ_CHANNEL, EmojiOperation.LOAD, channel));
-                if (channel == null)
+                ChatWindow.popup.handleProblem("Please specify a channel on the Connection tab to load emoji");
+                jobs.clear();
+                return jobs;
+            }
+
+            for (String channel : channels)
+            {
+                if (!config.isFfzLoaded(channel) && enableFrankerFaceZ.isSelected())
+                {
+                    jobs.add(new EmojiJob(oauth, EmojiType.FRANKERFACEZ_CHANNEL, EmojiOperation.LOAD, channel));
+                }
+
+                if (!config.isBttvLoaded(channel) && enableBetterTtv.isSelected())
                 {
-                    ChatWindow.popup.handleProblem("Please specify a channel on the Connection tab to load emoji");
-                    jobs.clear();
-                    return jobs;
+                    jobs.add(new EmojiJob(oauth, EmojiType.BETTER_TTV_CHANNEL, EmojiOperation.LOAD, channel));
                 }
             }
 
@@ -703,17 +721,6 @@ public class ControlPanelEmoji extends ControlPanelBase
                 jobs.add(new EmojiJob(oauth, EmojiType.FRANKERFACEZ_GLOBAL, EmojiOperation.CACHE));
             }
 
-            if (workBttvLoad)
-            {
-                jobs.add(new EmojiJob(oauth, EmojiType.BETTER_TTV_CHANNEL, EmojiOperation.LOAD, channel));
-                if (channel == null)
-                {
-                    ChatWindow.popup.handleProblem("Please specify a channel on the Connection tab to load emoji");
-                    jobs.clear();
-                    return jobs;
-                }
-            }
-
             if (workBttvGlobalLoad)
             {
                 jobs.add(new EmojiJob(oauth, EmojiType.BETTER_TTV_GLOBAL, EmojiOperation.LOAD));
@@ -726,28 +733,23 @@ public class ControlPanelEmoji extends ControlPanelBase
             }
         }
 
-        final boolean workTwitchBadges = enableTwitchBadges.isSelected() && !config.isTwitchBadgesLoaded(channel);
-        final boolean workFfzBadges = enableFfzBadges.isSelected() && !config.isFfzBadgesLoaded(channel);
+        if (channels.isEmpty() && (enableTwitchBadges.isSelected() || enableFfzBadges.isSelected()))
+        {
+            ChatWindow.popup.handleProblem("Please specify a channel on the Connection tab to load badges");
+            jobs.clear();
+            return jobs;
+        }
 
-        if (workTwitchBadges)
+        for (String channel : channels)
         {
-            jobs.add(new EmojiJob(oauth, EmojiType.TWITCH_BADGE, EmojiOperation.LOAD, channel));
-            if (channel == null)
+            if (enableTwitchBadges.isSelected() && !config.isTwitchBadgesLoaded(channel))
             {
-                ChatWindow.popup.handleProblem("Please specify a channel on the Connection tab to load badges");
-                jobs.clear();
-                return jobs;
+                jobs.add(new EmojiJob(oauth, EmojiType.TWITCH_BADGE, EmojiOperation.LOAD, channel));
             }
-        }
 
-        if (workFfzBadges)
-        {
-            jobs.add(new EmojiJob(oauth, EmojiType.FRANKERFACEZ_BADGE, EmojiOperation.LOAD, channel));
-            if (channel == null)
+            if (enableFfzBadges.isSelected() && !config.isFfzBadgesLoaded(channel))
             {
-                ChatWindow.popup.handleProblem("Please specify a channel on the Connection tab to load badges");
-                jobs.clear();
-                return jobs;
+                jobs.add(new EmojiJob(oauth, EmojiType.FRANKERFACEZ_BADGE, EmojiOperation.LOAD, channel));
             }
         }
 
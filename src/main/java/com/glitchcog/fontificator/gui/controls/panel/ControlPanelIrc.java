@@ -21,6 +21,7 @@ import org.jibble.pircbot.IrcException;
 import org.jibble.pircbot.NickAlreadyInUseException;
 
 import com.glitchcog.fontificator.bot.ChatViewerBot;
+import com.glitchcog.fontificator.config.ChannelStyle;
 import com.glitchcog.fontificator.config.ConfigIrc;
 import com.glitchcog.fontificator.config.FontificatorProperties;
 import com.glitchcog.fontificator.config.loadreport.LoadConfigErrorType;
@@ -61,6 +62,8 @@ public class ControlPanelIrc extends ControlPanelBase
 
     private LabeledInput chanInput;
 
+    private LabeledInput chanStylesInput;
+
     private JButton clearChatButton;
 
     private JCheckBox autoReconnectBox;
@@ -137,20 +140,22 @@ public class ControlPanelIrc extends ControlPanelBase
     }
 
     /**
-     * Join the specified channel for after a connection is made
+     * Join each of the specified channels for after a connection is made. All the channels share the one connection.
      */
     public void joinChannel()
     {
         final String host = config.getHost();
-        String connectChannel = config.getChannel();
 
-        // Force lowercase channel names for twitch.tv
-        if ("irc.twitch.tv".equals(host))
+        for (String connectChannel : config.getChannels())
         {
-            connectChannel = connectChannel.toLowerCase();
-        }
+            // Force lowercase channel names for twitch.tv
+            if ("irc.twitch.tv".equals(host))
+            {
+                connectChannel = connectChannel.toLowerCase();
+            }
 
-        bot.joinChannel(connectChannel);
+            bot.joinChannel(connectChannel);
+        }
     }
 
     private LoadConfigReport validateInputForConnect()
@@ -208,6 +213,9 @@ public class ControlPanelIrc extends ControlPanelBase
         authInput = new LabeledInput("OAuth Token", true, 25);
         authHelpButton = new JButton("Get OAuth Token");
         chanInput = new LabeledInput("Channel", 11);
+        chanInput.setToolTipText("Separate multiple channels with commas to merge their chat into one display");
+        chanStylesInput = new LabeledInput("Channel Styles", 25);
+        chanStylesInput.setToolTipText("Optional per channel username color and prefix, as channel:color:prefix separated by commas, for example alice:#FF0000:[A],bob::[B]");
 
         hostInput = new LabeledInput("Host", 7);
         portInput = new LabeledInput("Port", 3);
@@ -252,6 +260,7 @@ public class ControlPanelIrc extends ControlPanelBase
         userInput.addFocusListener(fl);
         authInput.addFocusListener(fl);
         chanInput.addFocusListener(fl);
+        chanStylesInput.addFocusListener(fl);
         hostInput.addFocusListener(fl);
         portInput.addFocusListener(fl);
 
@@ -382,6 +391,8 @@ public class ControlPanelIrc extends ControlPanelBase
         midRow.add(authHelpButton, gbc);
         gbc.fill = GridBagConstraints.HORIZONTAL;
         gbc.weightx = 1.0;
+        gbc.gridx++;
+        midRow.add(chanStylesInput, gbc);
 
         gbc.gridx = 0;
         botRow.add(hostInput, gbc);
@@ -425,6 +436,7 @@ public class ControlPanelIrc extends ControlPanelBase
         userInput.setEnabled(!anonymous.isSelected() && !connected);
         authInput.setEnabled(!anonymous.isSelected() && !connected);
         chanInput.setEnabled(!connected);
+        chanStylesInput.setEnabled(!connected);
         hostInput.setEnabled(!connected);
         portInput.setEnabled(!connected);
         anonymous.setEnabled(!connected);
@@ -443,7 +455,8 @@ public class ControlPanelIrc extends ControlPanelBase
     protected void fillInputFromConfig()
     {
         userInput.setText(config.getUsername());
-        chanInput.setText(config.getChannel());
+        chanInput.setText(config.getChannelText());
+        chanStylesInput.setText(config.getChannelStyles());
         authInput.setText(config.getAuthorization());
         anonymous.setSelected(config.isAnonymous());
 
@@ -472,6 +485,7 @@ public class ControlPanelIrc extends ControlPanelBase
         config.setAuthorization(authInput.getText());
         config.setAnonymous(anonymous.isSelected());
         config.setChannel(chanInput.getText());
+        config.setChannelStyles(chanStylesInput.getText());
 
         config.setHost(hostInput.getText());
         config.setPort(portInput.getText());
@@ -486,16 +500,28 @@ public class ControlPanelIrc extends ControlPanelBase
 
     /**
      * This value is exposed so the ChatViewerBot that has a reference to this object can access the current no-hash
-     * version of the channel value. It uses it to determine whether to give a user the broadcaster badge because Twitch
-     * does not set that usertype in its IRC tags.
+     * version of the primary channel value. It uses it to determine whether to give a user the broadcaster badge
+     * because Twitch does not set that usertype in its IRC tags, when the channel of the message itself is unknown.
      * 
-     * @return channel, no hash ('#')
+     * @return primary channel, no hash ('#')
      */
     public String getChannelNoHash()
     {
         return config.getChannelNoHash();
     }
 
+    /**
+     * Get the style for messages posted to the specified channel, exposed for the ChatViewerBot to tag each message
+     * with the style of its source channel
+     * 
+     * @param channel
+     * @return channel style or null if the channel isn't styled
+     */
+    public ChannelStyle getChannelStyle(String channel)
+    {
+        return config.getChannelStyle(channel);
+    }
+
     public boolean isAutoReconnect()
     {
         return autoReconnectBox.isSelected();
@@ -24,6 +24,7 @@ import javax.swing.event.DocumentListener;
 import com.glitchcog.fontificator.bot.ChatViewerBot;
 import com.glitchcog.fontificator.config.ConfigMessage;
 import com.glitchcog.fontificator.config.FontificatorProperties;
+import com.glitchcog.fontificator.config.IngestPolicy;
 import com.glitchcog.fontificator.config.MessageCasing;
 import com.glitchcog.fontificator.config.UsernameCaseResolutionType;
 import com.glitchcog.fontificator.config.loadreport.LoadConfigReport;
@@ -140,6 +141,26 @@ public class ControlPanelMessage extends ControlPanelBase
      */
     private JComboBox<MessageCasing> messageCasingDropdown;
 
+    /**
+     * Dropdown menu to specify what to do with incoming messages when they arrive faster than the chat can take them in
+     */
+    private JComboBox<IngestPolicy> ingestPolicyDropdown;
+
+    /**
+     * Slider to specify how many incoming messages can wait to be added to the chat before the ingest policy kicks in
+     */
+    private LabeledSlider ingestCapacitySlider;
+
+    /**
+     * Checkbox to indicate whether messages that have already been received should be dropped
+     */
+    private JCheckBox dedupBox;
+
+    /**
+     * Slider to specify how many seconds a message is remembered for catching duplicates of it
+     */
+    private LabeledSlider dedupWindowSlider;
+
     /**
      * Construct a message control panel
      * 
@@ -238,6 +259,10 @@ public class ControlPanelMessage extends ControlPanelBase
         caseTypeDropdown = new JComboBox<UsernameCaseResolutionType>(UsernameCaseResolutionType.values());
         specifyCaseBox = new JCheckBox("Permit users to specify their own username case in posts");
         messageCasingDropdown = new JComboBox<MessageCasing>(MessageCasing.values());
+        ingestPolicyDropdown = new JComboBox<IngestPolicy>(IngestPolicy.values());
+        ingestCapacitySlider = new LabeledSlider("Waiting Messages", "messages", ConfigMessage.MIN_INGEST_CAPACITY, ConfigMessage.MAX_INGEST_CAPACITY);
+        dedupBox = new JCheckBox("Drop duplicate messages");
+        dedupWindowSlider = new LabeledSlider("Remember Messages For", "sec", ConfigMessage.MIN_DEDUP_WINDOW, ConfigMessage.MAX_DEDUP_WINDOW);
 
         DocumentListener docListener = new DocumentListener()
         {
@@ -289,6 +314,15 @@ public class ControlPanelMessage extends ControlPanelBase
             }
         });
 
+        ingestPolicyDropdown.addActionListener(new ActionListener()
+        {
+            @Override
+            public void actionPerformed(ActionEvent e)
+            {
+                config.setIngestPolicy((IngestPolicy) ingestPolicyDropdown.getSelectedItem());
+            }
+        });
+
         ActionListener boxListener = new ActionListener()
         {
             @Override
@@ -322,6 +356,11 @@ public class ControlPanelMessage extends ControlPanelBase
                 {
                     config.setHideEmptyBackground(hideEmptyBackground.isSelected());
                 }
+                else if (dedupBox.equals(source))
+                {
+                    config.setDedupEnabled(dedupBox.isSelected());
+                    toggleEnableds();
+                }
                 chat.repaint();
             }
         };
@@ -332,6 +371,7 @@ public class ControlPanelMessage extends ControlPanelBase
         specifyCaseBox.addActionListener(boxListener);
         hideEmptyBorder.addActionListener(boxListener);
         hideEmptyBackground.addActionListener(boxListener);
+        dedupBox.addActionListener(boxListener);
 
         ActionListener updateButtonListener = new ActionListener()
         {
@@ -388,6 +428,14 @@ public class ControlPanelMessage extends ControlPanelBase
                     {
                         config.setMessageSpeed(messageSpeedSlider.getValue(), chat.getMessageProgressor());
                     }
+                    else if (ingestCapacitySlider.getSlider().equals(source))
+                    {
+                        config.setIngestCapacity(ingestCapacitySlider.getValue());
+                    }
+                    else if (dedupWindowSlider.getSlider().equals(source))
+                    {
+                        config.setDedupWindow(dedupWindowSlider.getValue());
+                    }
                     else if (expirationTimeSlider.getSlider().equals(source))
                     {
                         config.setExpirationTime(expirationTimeSlider.getValue(), chat.getMessageExpirer());
@@ -400,6 +448,8 @@ public class ControlPanelMessage extends ControlPanelBase
         messageSpeedSlider.addChangeListener(cl);
         expirationTimeSlider.addChangeListener(cl);
         queueSizeSlider.addChangeListener(cl);
+        ingestCapacitySlider.addChangeListener(cl);
+        dedupWindowSlider.addChangeListener(cl);
 
         gbc.weightx = 0.0;
         gbc.weighty = 0.0;
@@ -504,6 +554,33 @@ public class ControlPanelMessage extends ControlPanelBase
         add(casingOptions, gbc);
         gbc.gridy++;
 
+        JPanel ingestOptions = new JPanel(new GridBagLayout());
+        ingestOptions.setBorder(new TitledBorder(baseBorder, "Chat Flood Options", TitledBorder.CENTER, TitledBorder.TOP));
+        GridBagConstraints iGbc = new GridBagConstraints(0, 0, 1, 1, 0.0, 0.0, GridBagConstraints.EAST, GridBagConstraints.NONE, DEFAULT_INSETS, 0, 0);
+        ingestOptions.add(new JLabel("When messages arrive too fast: "), iGbc);
+        iGbc.gridx++;
+        iGbc.anchor = GridBagConstraints.WEST;
+        ingestOptions.add(ingestPolicyDropdown, iGbc);
+        iGbc.gridx = 0;
+        iGbc.gridy++;
+        iGbc.gridwidth = 2;
+        iGbc.weightx = 1.0;
+        iGbc.fill = GridBagConstraints.HORIZONTAL;
+        ingestOptions.add(ingestCapacitySlider, iGbc);
+        iGbc.gridy++;
+        iGbc.weightx = 0.0;
+        iGbc.fill = GridBagConstraints.NONE;
+        ingestOptions.add(dedupBox, iGbc);
+        iGbc.gridy++;
+        iGbc.weightx = 1.0;
+        iGbc.fill = GridBagConstraints.HORIZONTAL;
+        ingestOptions.add(dedupWindowSlider, iGbc);
+
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        add(ingestOptions, gbc);
+        gbc.fill = GridBagConstraints.NONE;
+        gbc.gridy++;
+
         // Filler panel
         gbc.gridy++;
         gbc.anchor = GridBagConstraints.SOUTH;
@@ -520,6 +597,7 @@ public class ControlPanelMessage extends ControlPanelBase
     {
         usernameFormatInput.setEnabled(config.showUsernames());
         timeFormatInput.setEnabled(config.showTimestamps());
+        dedupWindowSlider.setEnabled(Boolean.TRUE.equals(config.isDedupEnabled()));
         // Username Formatter
         boolean ufModified = false;
         // Timestamp Formatter
@@ -573,6 +651,10 @@ public class ControlPanelMessage extends ControlPanelBase
         caseTypeDropdown.setSelectedItem(config.getCaseResolutionType());
         specifyCaseBox.setSelected(config.isSpecifyCaseAllowed());
         messageCasingDropdown.setSelectedItem(config.getMessageCasing());
+        ingestPolicyDropdown.setSelectedItem(config.getIngestPolicy());
+        ingestCapacitySlider.setValue(config.getIngestCapacity());
+        dedupBox.setSelected(config.isDedupEnabled());
+        dedupWindowSlider.setValue(config.getDedupWindow());
     }
 
     @Override
@@ -601,6 +683,10 @@ public class ControlPanelMessage extends ControlPanelBase
         config.setCaseResolutionType((UsernameCaseResolutionType) caseTypeDropdown.getSelectedItem());
         config.setSpecifyCaseAllowed(specifyCaseBox.isSelected());
         config.setMessageCasing((MessageCasing) messageCasingDropdown.getSelectedItem());
+        config.setIngestPolicy((IngestPolicy) ingestPolicyDropdown.getSelectedItem());
+        config.setIngestCapacity(ingestCapacitySlider.getValue());
+        config.setDedupEnabled(dedupBox.isSelected());
+        config.setDedupWindow(dedupWindowSlider.getValue());
     }
 
 }
@@ -4,6 +4,7 @@ import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.Collection;
 import java.util.regex.Pattern;
 
 import javax.swing.JCheckBox;
@@ -213,14 +214,16 @@ public class MessageCensorPanel extends ControlPanelBase
     }
 
     /**
-     * Used to purge messages from chat whenever a user is timed-out or banned by a Twitch moderator
+     * Used to purge messages from chat whenever a user is timed-out or banned, a single message is deleted, or the
+     * whole chat is cleared by a Twitch moderator
      * 
-     * @param username
+     * @param toPurge
+     *            The messages to purge, looked up by the caller from the chat message indexes
      * @param reason
      */
-    public void purgeMessagesForUser(final String username, String reason)
+    public void purgeMessages(final Collection<Message> toPurge, String reason)
     {
-        if (!config.isCensorshipEnabled() || !config.isPurgeOnTwitchBan() || username == null)
+        if (!config.isCensorshipEnabled() || !config.isPurgeOnTwitchBan() || toPurge == null || toPurge.isEmpty())
         {
             return;
         }
@@ -229,14 +232,11 @@ public class MessageCensorPanel extends ControlPanelBase
             reason = "TWITCH PURGE";
         }
 
-        for (Message msg : chat.getMessages())
+        for (Message msg : toPurge)
         {
-            if (msg.getUsername() != null && username.toLowerCase().equals(msg.getUsername().toLowerCase()))
-            {
-                msg.setCensoredReason(reason);
-                msg.setCensored(true, config.isCensorshipEnabled());
-                msg.setPurged(true);
-            }
+            msg.setCensoredReason(reason);
+            msg.setCensored(true, config.isCensorshipEnabled());
+            msg.setPurged(true);
         }
         refreshListAndMessages();
     }
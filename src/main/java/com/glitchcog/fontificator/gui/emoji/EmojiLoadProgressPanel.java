@@ -5,6 +5,10 @@ import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import javax.swing.JButton;
@@ -27,6 +31,10 @@ import com.glitchcog.fontificator.gui.controls.panel.LogBox;
  * Window. It also contains a cancel button to stop jobs currently being worked and a manual reload button for canceling
  * everything and starting all loads from scratch. This panel contains methods for adding and removing work to and from
  * the worker queue as well.
+ * <p>
+ * Independent jobs are run at the same time, up to a limit, so the emote sets and badges from the different services
+ * all download together. Every load job is finished before any cache job starts, since caching reads what the loads
+ * put into the emoji manager. The progress bar shows the progress of all the jobs in the current batch put together.
  * 
  * @author Matt Yanos
  */
@@ -41,6 +49,18 @@ public class EmojiLoadProgressPanel extends JPanel
      */
     private static final String EMPTY_VALUE_TEXT = "    ";
 
+    /**
+     * System property to change the number of emoji jobs run at the same time
+     */
+    private static final String PARALLELISM_PROPERTY = "fontificator.emojiJobs";
+
+    private static final int DEFAULT_PARALLELISM = 4;
+
+    /**
+     * The most emoji jobs run at the same time
+     */
+    private static final int PARALLELISM = Math.max(1, Integer.getInteger(PARALLELISM_PROPERTY, DEFAULT_PARALLELISM));
+
     /**
      * Visually shows the progress
      */
@@ -83,19 +103,25 @@ public class EmojiLoadProgressPanel extends JPanel
     private ConfigEmoji emojiConfig;
 
     /**
-     * List of load tasks to be executed in series
+     * List of load tasks to be executed
      */
     private ConcurrentLinkedQueue<EmojiWorker> workerTaskListLoad;
 
     /**
-     * List of cache tasks to be executed in series, after all the loading is done
+     * List of cache tasks to be executed, after all the loading is done
      */
     private ConcurrentLinkedQueue<EmojiWorker> workerTaskListCache;
 
     /**
-     * The cursor for the emoji worker task currently being run
+     * The emoji worker tasks currently being run
+     */
+    private List<EmojiWorker> runningWorkers;
+
+    /**
+     * The percent complete of every worker started in the current batch of work, for the combined progress. Workers
+     * that aren't in here were canceled or are from an earlier batch, so their reports are ignored.
      */
-    private EmojiWorker currentWorker;
+    private Map<EmojiWorker, Integer> batchProgress;
 
     private final ControlPanelEmoji emojiControlPanel;
 
@@ -115,7 +141,8 @@ public class EmojiLoadProgressPanel extends JPanel
 
         this.workerTaskListLoad = new ConcurrentLinkedQueue<EmojiWorker>();
         this.workerTaskListCache = new ConcurrentLinkedQueue<EmojiWorker>();
-        this.currentWorker = null;
+        this.runningWorkers = new ArrayList<EmojiWorker>(PARALLELISM);
+        this.batchProgress = new LinkedHashMap<EmojiWorker, Integer>();
         this.emojiLogBox = new LogBox();
 
         this.bar = new JProgressBar(JProgressBar.HORIZONTAL, 0, 100);
@@ -137,7 +164,7 @@ public class EmojiLoadProgressPanel extends JPanel
                 JButton source = (JButton) e.getSource();
                 if (cancelButton.equals(source))
                 {
-                    if (currentWorker != null)
+                    if (isCurrentlyRunning())
                     {
                         reset();
                     }
@@ -198,7 +225,7 @@ public class EmojiLoadProgressPanel extends JPanel
 
     synchronized public boolean isCurrentlyRunning()
     {
-        return currentWorker != null;
+        return !runningWorkers.isEmpty();
     }
 
     synchronized public void handleButtonEnables()
@@ -206,13 +233,13 @@ public class EmojiLoadProgressPanel extends JPanel
         cancelButton.setEnabled(isCurrentlyRunning());
         resetButton.setEnabled(emojiConfig != null && emojiConfig.isAnyWorkDone());
         final int remainingJobs = emojiControlPanel.countJobs();
-        manualButton.setEnabled(remainingJobs > 0 && currentWorker == null && workerTaskListLoad.isEmpty() && workerTaskListCache.isEmpty());
+        manualButton.setEnabled(remainingJobs > 0 && runningWorkers.isEmpty() && workerTaskListLoad.isEmpty() && workerTaskListCache.isEmpty());
 
         // @formatter:off
-        logger.trace("Cancel: " + cancelButton.isEnabled() + " b/c currWork " + (currentWorker == null ? "is null" : "is NOT null") + 
+        logger.trace("Cancel: " + cancelButton.isEnabled() + " b/c " + runningWorkers.size() + " running" + 
         "; Reset: " + resetButton.isEnabled() + " b/c " + (emojiConfig != null && emojiConfig.isAnyWorkDone() ? "some work is done" : "no work has been done") + 
         "; Manual: " + manualButton.isEnabled() + " b/c there " + (remainingJobs == 1 ? "is" : "are") + " " + remainingJobs + " job" + (remainingJobs == 1 ? "" : "s") + " left undone and " + 
-        (currentWorker == null && workerTaskListLoad.isEmpty() && workerTaskListCache.isEmpty() ? "nothing" : "something") + " is currently running or is queued");
+        (runningWorkers.isEmpty() && workerTaskListLoad.isEmpty() && workerTaskListCache.isEmpty() ? "nothing" : "something") + " is currently running or is queued");
         // @formatter:on
     }
 
@@ -227,12 +254,20 @@ public class EmojiLoadProgressPanel extends JPanel
     }
 
     /**
-     * Takes a report and updates all the display components with the appropriate information
+     * Takes a report from one of the workers and updates all the display components with the appropriate information
      * 
+     * @param worker
+     *            The worker the report is from
      * @param report
      */
-    synchronized public void update(EmojiWorkerReport report)
+    synchronized public void update(EmojiWorker worker, EmojiWorkerReport report)
     {
+        if (!batchProgress.containsKey(worker))
+        {
+            // From work that has been canceled or reset since
+            return;
+        }
+
         if (report.isCanceled())
         {
             emojiLogBox.log(report.getMessage());
@@ -243,35 +278,80 @@ public class EmojiLoadProgressPanel extends JPanel
         else if (report.isError())
         {
             emojiLogBox.log(report.getMessage());
-            blankAllValues();
-
-            if (currentWorker != null)
-            {
-                currentWorker.haltCurrentJob();
-            }
-            currentWorker = null;
-            initiateNextWork();
+            worker.haltCurrentJob();
+            batchProgress.put(worker, 100);
+            updateProgress();
         }
         else
         {
-            bar.setValue(report.getPercentComplete());
-            percentValue.setText(report.getPercentText());
+            batchProgress.put(worker, report.getPercentComplete());
+            updateProgress();
 
             if (report.isComplete())
             {
                 emojiLogBox.log(report.getMessage());
-                if (currentWorker != null)
-                {
-                    emojiConfig.setWorkCompleted(currentWorker.getEmojiJob());
-                }
-                initiateNextWork();
             }
         }
         repaint();
     }
 
     /**
-     * Reverts the panel to its ready state
+     * Called once a worker has finished, whether or not it worked, to free up its place for the next job
+     * 
+     * @param worker
+     * @param succeeded
+     *            Whether the job finished without error, halting or canceling
+     */
+    synchronized void workerDone(EmojiWorker worker, boolean succeeded)
+    {
+        if (!runningWorkers.remove(worker))
+        {
+            // Already canceled or reset
+            return;
+        }
+
+        if (succeeded)
+        {
+            emojiConfig.setWorkCompleted(worker.getEmojiJob());
+        }
+        batchProgress.put(worker, 100);
+
+        chat.repaint();
+        startQueuedWork();
+        if (runningWorkers.isEmpty())
+        {
+            reset();
+            handleButtonEnables();
+        }
+        else
+        {
+            updateProgress();
+        }
+    }
+
+    /**
+     * Show the progress of all the work in the current batch put together, counting what's still queued as not started
+     */
+    synchronized private void updateProgress()
+    {
+        if (runningWorkers.isEmpty())
+        {
+            return;
+        }
+
+        long total = 0L;
+        for (Integer percent : batchProgress.values())
+        {
+            total += percent;
+        }
+        final int jobCount = batchProgress.size() + workerTaskListLoad.size() + workerTaskListCache.size();
+        EmojiWorkerReport combined = new EmojiWorkerReport(null, (int) (total / jobCount));
+        bar.setValue(combined.getPercentComplete());
+        percentValue.setText(combined.getPercentText());
+    }
+
+    /**
+     * Reverts the panel to its ready state, halting anything still running
      */
     synchronized private void reset()
     {
@@ -279,7 +359,12 @@ public class EmojiLoadProgressPanel extends JPanel
         blankAllValues();
         workerTaskListLoad.clear();
         workerTaskListCache.clear();
-        currentWorker = null;
+        for (EmojiWorker worker : runningWorkers)
+        {
+            worker.haltCurrentJob();
+        }
+        runningWorkers.clear();
+        batchProgress.clear();
     }
 
     /**
@@ -310,6 +395,12 @@ public class EmojiLoadProgressPanel extends JPanel
             }
         }
         taskList.add(emojiWorker);
+
+        // Work added while a batch is running joins it if there's room
+        if (!runningWorkers.isEmpty())
+        {
+            startQueuedWork();
+        }
     }
 
     /**
@@ -317,37 +408,50 @@ public class EmojiLoadProgressPanel extends JPanel
      */
     synchronized public void initiateWork()
     {
-        ConcurrentLinkedQueue<EmojiWorker> taskList = getTaskList();
-        if (!taskList.isEmpty())
+        if (runningWorkers.isEmpty() && !getTaskList().isEmpty())
         {
-            currentWorker = taskList.poll();
+            batchProgress.clear();
             setLocation(getParent().getLocation().x + (getParent().getWidth() - getWidth()) / 2, getParent().getLocation().y + (getParent().getHeight() - getHeight()) / 2);
             cancelButton.setEnabled(true);
-            update(currentWorker.getInitialReport());
-            currentWorker.execute();
         }
+        startQueuedWork();
     }
 
     /**
-     * Kick off the next worker when the current worker is done
+     * Start queued workers until the limit of jobs running at the same time is reached. Cache jobs aren't started
+     * until every load job is done.
      */
-    synchronized private void initiateNextWork()
+    synchronized private void startQueuedWork()
     {
-        this.percentValue.setText(EMPTY_VALUE_TEXT);
-
-        ConcurrentLinkedQueue<EmojiWorker> taskList = getTaskList();
-        this.currentWorker = taskList.poll();
-
-        chat.repaint();
-        if (currentWorker == null)
+        while (runningWorkers.size() < PARALLELISM)
         {
-            reset();
-            handleButtonEnables();
+            EmojiWorker worker = workerTaskListLoad.poll();
+            if (worker == null && !isLoadRunning())
+            {
+                worker = workerTaskListCache.poll();
+            }
+            if (worker == null)
+            {
+                break;
+            }
+
+            runningWorkers.add(worker);
+            batchProgress.put(worker, 0);
+            update(worker, worker.getInitialReport());
+            worker.execute();
         }
-        else
+    }
+
+    synchronized private boolean isLoadRunning()
+    {
+        for (EmojiWorker worker : runningWorkers)
         {
-            currentWorker.execute();
+            if (worker.getEmojiJob().getOp() == EmojiOperation.LOAD)
+            {
+                return true;
+            }
         }
+        return false;
     }
 
     /**
@@ -358,12 +462,12 @@ public class EmojiLoadProgressPanel extends JPanel
      */
     synchronized public void removeWorkFromQueue(EmojiJob job)
     {
-        if (currentWorker != null)
+        for (EmojiWorker worker : runningWorkers)
         {
-            if (jobMatch(job, currentWorker))
+            if (jobMatch(job, worker))
             {
                 logger.trace("Canceling " + job.toString());
-                currentWorker.haltCurrentJob();
+                worker.haltCurrentJob();
             }
         }
 
@@ -374,8 +478,7 @@ public class EmojiLoadProgressPanel extends JPanel
             {
                 logger.trace("Canceling " + job.toString());
                 worker.haltCurrentJob();
-                // Is this thread safe?
-                workerTaskListLoad.remove(worker);
+                taskList.remove(worker);
             }
         }
     }
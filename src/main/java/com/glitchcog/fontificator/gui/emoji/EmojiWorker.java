@@ -1,6 +1,8 @@
 package com.glitchcog.fontificator.gui.emoji;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -10,6 +12,7 @@ import javax.swing.SwingWorker;
 
 import org.apache.log4j.Logger;
 
+import com.glitchcog.fontificator.emoji.EmojiBulkCacher;
 import com.glitchcog.fontificator.emoji.EmojiJob;
 import com.glitchcog.fontificator.emoji.EmojiManager;
 import com.glitchcog.fontificator.emoji.EmojiOperation;
@@ -42,6 +45,11 @@ public class EmojiWorker extends SwingWorker<Integer, EmojiWorkerReport>
      */
     private static final String FFZ_BASE_NO_EMOTES_URL = "https://api.frankerfacez.com/v1/_room/";
 
+    /**
+     * How often the progress of caching is reported
+     */
+    private static final long CACHE_PROGRESS_MILLIS = 100L;
+
     // @formatter:off
 
     /**
@@ -187,18 +195,14 @@ public class EmojiWorker extends SwingWorker<Integer, EmojiWorkerReport>
             {
                 // The proper load for the emoji
                 loader.prepLoad(emojiType, channel, oauth);
-                String data = runLoader(emojiType);
-                if (data != null)
-                {
-                    parser.putJsonEmojiIntoManager(manager, emojiType, data);
-                }
+                runStreamingLoader(emojiType);
 
                 // Some custom loading required for custom FFZ moderator badges
                 if (emojiType == EmojiType.FRANKERFACEZ_BADGE)
                 {
                     loader.prepLoad(FFZ_BASE_NO_EMOTES_URL + channel);
                     String ffzRoomJson = runLoader(emojiType);
-                    parser.parseFrankerFaceZModBadge(manager, ffzRoomJson);
+                    parser.parseFrankerFaceZModBadge(manager, ffzRoomJson, channel);
                 }
 
                 // Some custom loading required for the Twitch Prime badge
@@ -254,8 +258,6 @@ public class EmojiWorker extends SwingWorker<Integer, EmojiWorkerReport>
                 }
 
                 publish(new EmojiWorkerReport("Caching " + emojiType.getDescription(), 0));
-                Thread.sleep(1L);
-                int count = 0;
                 List<LazyLoadEmoji> emojiToCache = new ArrayList<LazyLoadEmoji>();
                 for (String regex : regexes)
                 {
@@ -268,23 +270,29 @@ public class EmojiWorker extends SwingWorker<Integer, EmojiWorkerReport>
                     emojiToCache.add(emoji);
                 }
 
-                for (LazyLoadEmoji emoji : emojiToCache)
+                // Download them all at once, reporting progress while waiting
+                EmojiBulkCacher cacher = new EmojiBulkCacher(emojiToCache);
+                cacher.start();
+                try
                 {
-                    if (emoji != null)
-                    {
-                        emoji.cacheImage();
-                    }
-                    count++;
-                    // This is safe from divide by zero exceptions, because we won't be here if emojiToCache is empty
-                    int percentComplete = (int) (100.0f * count / emojiToCache.size());
-                    publish(new EmojiWorkerReport("Caching " + emojiType.getDescription(), percentComplete));
-
-                    if (terminateWork)
+                    while (!cacher.await(CACHE_PROGRESS_MILLIS))
                     {
-                        throw new EmojiCancelException();
+                        publish(new EmojiWorkerReport("Caching " + emojiType.getDescription(), cacher.getPercentComplete()));
+
+                        if (terminateWork)
+                        {
+                            throw new EmojiCancelException();
+                        }
+                        else if (silentlyTerminateWork)
+                        {
+                            throw new EmojiHaltException();
+                        }
                     }
-
-                    Thread.sleep(1L);
+                }
+                finally
+                {
+                    // Stops anything still downloading if the caching was canceled
+                    cacher.cancel();
                 }
 
                 publish(new EmojiWorkerReport(emojiType.getDescription() + " caching complete", 100));
@@ -337,6 +345,67 @@ public class EmojiWorker extends SwingWorker<Integer, EmojiWorkerReport>
         }
     }
 
+    /**
+     * Downloads the JSON data for emoji and parses it as it arrives, so the emoji are put into the manager while the
+     * rest of the data is still downloading. Progress is reported by how much of the data has been read.
+     * 
+     * @param emojiType
+     * @throws Exception
+     */
+    private void runStreamingLoader(final EmojiType emojiType) throws Exception
+    {
+        if (!loader.initLoad())
+        {
+            logger.debug("EmojiApiLoader run for " + emojiType.getDescription() + " without required call to prepLoad.");
+            return;
+        }
+
+        try
+        {
+            parser.putJsonEmojiIntoManager(manager, emojiType, loader.getStreamingReader(new EmojiApiLoader.ProgressListener()
+            {
+                @Override
+                public void progress(int progress) throws IOException
+                {
+                    publish(new EmojiWorkerReport("Downloading " + emojiType.getDescription(), progress));
+                    if (isWorkTerminatedAlready())
+                    {
+                        // Stops the parse where it is, to be turned into a cancel or halt below
+                        throw new InterruptedIOException();
+                    }
+                }
+            }), job.getChannel());
+        }
+        catch (InterruptedIOException e)
+        {
+            // Timeouts are interrupted IO too, so only a stop asked for is a cancel or halt
+            if (terminateWork)
+            {
+                throw new EmojiCancelException();
+            }
+            else if (silentlyTerminateWork)
+            {
+                throw new EmojiHaltException();
+            }
+            throw e;
+        }
+        finally
+        {
+            loader.reset();
+        }
+
+        if (terminateWork)
+        {
+            throw new EmojiCancelException();
+        }
+        else if (silentlyTerminateWork)
+        {
+            throw new EmojiHaltException();
+        }
+
+        publish(new EmojiWorkerReport(emojiType.getDescription() + " loading complete", 100));
+    }
+
     /**
      * Gives you back the data from a website, used to get JSON data for emoji, or for loading the FFZ donor list
      * 
@@ -352,7 +421,6 @@ public class EmojiWorker extends SwingWorker<Integer, EmojiWorkerReport>
             while (!loader.isLoadComplete())
             {
                 int percentComplete = loader.loadChunk();
-                // Let the thread rest so the main thread can get the publish
                 publish(new EmojiWorkerReport("Downloading " + emojiType.getDescription(), percentComplete));
                 if (terminateWork)
                 {
@@ -362,7 +430,6 @@ public class EmojiWorker extends SwingWorker<Integer, EmojiWorkerReport>
                 {
                     throw new EmojiHaltException();
                 }
-                Thread.sleep(1L);
             }
             data = loader.getLoadedJson();
             loader.reset();
@@ -395,8 +462,24 @@ public class EmojiWorker extends SwingWorker<Integer, EmojiWorkerReport>
         {
             EmojiWorkerReport latestReport = reports.get(reports.size() - 1);
             reports.clear();
-            progressPanel.update(latestReport);
+            progressPanel.update(this, latestReport);
+        }
+    }
+
+    @Override
+    protected void done()
+    {
+        boolean succeeded;
+        try
+        {
+            succeeded = !isCancelled() && Integer.valueOf(0).equals(get()) && !isWorkTerminatedAlready();
+        }
+        catch (Exception e)
+        {
+            // Halted, canceled or failed
+            succeeded = false;
         }
+        progressPanel.workerDone(this, succeeded);
     }
 
     public void cancel()
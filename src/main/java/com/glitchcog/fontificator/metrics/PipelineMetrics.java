@@ -0,0 +1,325 @@
+package com.glitchcog.fontificator.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Counters, timings and gauges for the whole path from a message arriving to it being painted, gathered in one place so
+ * they can be exported in the Prometheus text format and summarized for a health check. Everything here is static so
+ * any part of the pipeline can record to it without having to be handed a reference.
+ *
+ * @author Matt Yanos
+ */
+public final class PipelineMetrics
+{
+    private static final Logger logger = Logger.getLogger(PipelineMetrics.class);
+
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    /**
+     * Provides the current value of a gauge when the metrics are read
+     */
+    public interface GaugeSource
+    {
+        long getValue();
+    }
+
+    /**
+     * Accumulates how many times something happened and how long it took in total and at most
+     */
+    public static final class Timing
+    {
+        private final String name;
+
+        private final String help;
+
+        private final AtomicLong count = new AtomicLong();
+
+        private final AtomicLong sumNanos = new AtomicLong();
+
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private Timing(String name, String help)
+        {
+            this.name = name;
+            this.help = help;
+        }
+
+        public void record(long nanos)
+        {
+            count.incrementAndGet();
+            sumNanos.addAndGet(nanos);
+            long max;
+            while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos))
+            {
+                // Retry until the larger value sticks
+            }
+        }
+
+        public long getCount()
+        {
+            return count.get();
+        }
+    }
+
+    private static final class Gauge
+    {
+        private final String help;
+
+        private final String type;
+
+        private final GaugeSource source;
+
+        private Gauge(String help, String type, GaugeSource source)
+        {
+            this.help = help;
+            this.type = type;
+            this.source = source;
+        }
+    }
+
+    // @formatter:off
+    public static final Timing IRC_PARSE = new Timing("fontificator_irc_parse_seconds", "Time to parse and dispatch a raw IRC line");
+    public static final Timing SOCIAL_STREAM_PARSE = new Timing("fontificator_social_stream_parse_seconds", "Time to decode a Social Stream message");
+    public static final Timing LAYOUT = new Timing("fontificator_layout_seconds", "Time to measure the messages for a frame");
+    public static final Timing PAINT = new Timing("fontificator_paint_seconds", "Time to paint a whole frame of the chat");
+    // @formatter:on
+
+    /**
+     * Names of the gauges the health check reads
+     */
+    public static final String GAUGE_QUEUE_DEPTH = "fontificator_ingest_queue_depth";
+    public static final String GAUGE_IRC_CONNECTED = "fontificator_irc_connected";
+
+    private static final Timing[] TIMINGS = new Timing[] { IRC_PARSE, SOCIAL_STREAM_PARSE, LAYOUT, PAINT };
+
+    public static final AtomicLong EMOJI_CACHE_HITS = new AtomicLong();
+
+    public static final AtomicLong EMOJI_CACHE_MISSES = new AtomicLong();
+
+    public static final AtomicLong EMOJI_DISK_HITS = new AtomicLong();
+
+    public static final AtomicLong EMOJI_BYTES = new AtomicLong();
+
+    public static final AtomicLong EMOJI_PENDING = new AtomicLong();
+
+    /**
+     * Messages handed off to the chat, keyed off of where they came from
+     */
+    private static final Map<String, AtomicLong> ingested = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * Gauges registered by the parts of the pipeline that own the values, in registration order. Guarded by itself.
+     */
+    private static final Map<String, Gauge> gauges = new LinkedHashMap<String, Gauge>();
+
+    private static final long startMillis = System.currentTimeMillis();
+
+    private static volatile long lastPaintMillis;
+
+    private static volatile long lastChatAddMillis;
+
+    private PipelineMetrics()
+    {
+    }
+
+    /**
+     * Count messages handed off to the chat from the specified source
+     *
+     * @param source
+     *            A short lowercase name, like irc or socialstream
+     * @param count
+     */
+    public static void countIngested(String source, int count)
+    {
+        AtomicLong counter = ingested.get(source);
+        if (counter == null)
+        {
+            ingested.putIfAbsent(source, new AtomicLong());
+            counter = ingested.get(source);
+        }
+        counter.addAndGet(count);
+    }
+
+    /**
+     * Register a value to be read whenever the metrics are exported, replacing any gauge already registered with the
+     * same name
+     *
+     * @param name
+     *            Prometheus metric name
+     * @param help
+     * @param source
+     */
+    public static void registerGauge(String name, String help, GaugeSource source)
+    {
+        synchronized (gauges)
+        {
+            gauges.put(name, new Gauge(help, "gauge", source));
+        }
+    }
+
+    /**
+     * Register a count kept elsewhere that only ever goes up, to be read whenever the metrics are exported
+     *
+     * @param name
+     *            Prometheus metric name, ending in _total
+     * @param help
+     * @param source
+     */
+    public static void registerCounter(String name, String help, GaugeSource source)
+    {
+        synchronized (gauges)
+        {
+            gauges.put(name, new Gauge(help, "counter", source));
+        }
+    }
+
+    /**
+     * Get the current value of a registered gauge
+     *
+     * @param name
+     * @return value, or null if no such gauge is registered or it couldn't be read
+     */
+    public static Long getGauge(String name)
+    {
+        final Gauge gauge;
+        synchronized (gauges)
+        {
+            gauge = gauges.get(name);
+        }
+        return gauge == null ? null : readGauge(name, gauge);
+    }
+
+    private static Long readGauge(String name, Gauge gauge)
+    {
+        try
+        {
+            return gauge.source.getValue();
+        }
+        catch (Exception e)
+        {
+            logger.debug("Unable to read gauge " + name, e);
+            return null;
+        }
+    }
+
+    public static void markPainted()
+    {
+        lastPaintMillis = System.currentTimeMillis();
+    }
+
+    public static void markChatAdded()
+    {
+        lastChatAddMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Get how long ago the chat was last painted
+     *
+     * @return millis, or -1 if it hasn't been painted yet
+     */
+    public static long getMillisSincePaint()
+    {
+        final long last = lastPaintMillis;
+        return last == 0L ? -1L : System.currentTimeMillis() - last;
+    }
+
+    /**
+     * Get how long ago a message was last added to the chat
+     *
+     * @return millis, or -1 if nothing has been added yet
+     */
+    public static long getMillisSinceChatAdd()
+    {
+        final long last = lastChatAddMillis;
+        return last == 0L ? -1L : System.currentTimeMillis() - last;
+    }
+
+    public static long getUptimeMillis()
+    {
+        return System.currentTimeMillis() - startMillis;
+    }
+
+    /**
+     * Write out everything in the Prometheus text exposition format
+     *
+     * @return metrics text
+     */
+    public static String toPrometheusText()
+    {
+        StringBuilder out = new StringBuilder(4096);
+
+        appendHeader(out, "fontificator_messages_ingested_total", "Messages handed off to the chat by source", "counter");
+        List<String> sources = new ArrayList<String>(ingested.keySet());
+        Collections.sort(sources);
+        for (String source : sources)
+        {
+            out.append("fontificator_messages_ingested_total{source=\"").append(source).append("\"} ").append(ingested.get(source).get()).append('\n');
+        }
+
+        for (Timing t : TIMINGS)
+        {
+            appendHeader(out, t.name, t.help, "summary");
+            out.append(t.name).append("_count ").append(t.count.get()).append('\n');
+            out.append(t.name).append("_sum ").append(t.sumNanos.get() / NANOS_PER_SECOND).append('\n');
+            appendHeader(out, t.name + "_max", "Longest " + t.help.substring(0, 1).toLowerCase() + t.help.substring(1), "gauge");
+            out.append(t.name).append("_max ").append(t.maxNanos.get() / NANOS_PER_SECOND).append('\n');
+        }
+
+        appendCounter(out, "fontificator_emoji_cache_hits_total", "Emoji image lookups served from memory", EMOJI_CACHE_HITS.get());
+        appendCounter(out, "fontificator_emoji_cache_misses_total", "Emoji image lookups that had to load the image", EMOJI_CACHE_MISSES.get());
+        appendCounter(out, "fontificator_emoji_disk_hits_total", "Emoji images loaded from the disk cache instead of downloaded", EMOJI_DISK_HITS.get());
+        appendGauge(out, "fontificator_emoji_cache_bytes", "Approximate decoded size of the emoji images loaded", EMOJI_BYTES.get());
+        appendGauge(out, "fontificator_emoji_pending_downloads", "Emoji images being downloaded right now", EMOJI_PENDING.get());
+        appendGauge(out, "fontificator_seconds_since_paint", "Seconds since the chat was last painted, or -1 if never", secondsOrNegative(getMillisSincePaint()));
+        appendGauge(out, "fontificator_seconds_since_chat_add", "Seconds since a message was last added to the chat, or -1 if never", secondsOrNegative(getMillisSinceChatAdd()));
+        appendGauge(out, "fontificator_uptime_seconds", "Seconds since the program started", getUptimeMillis() / 1000.0);
+
+        List<Map.Entry<String, Gauge>> gaugeEntries;
+        synchronized (gauges)
+        {
+            gaugeEntries = new ArrayList<Map.Entry<String, Gauge>>(gauges.entrySet());
+        }
+        for (Map.Entry<String, Gauge> entry : gaugeEntries)
+        {
+            Long value = readGauge(entry.getKey(), entry.getValue());
+            if (value != null)
+            {
+                appendHeader(out, entry.getKey(), entry.getValue().help, entry.getValue().type);
+                out.append(entry.getKey()).append(' ').append(value).append('\n');
+            }
+        }
+
+        return out.toString();
+    }
+
+    private static double secondsOrNegative(long millis)
+    {
+        return millis < 0L ? -1.0 : millis / 1000.0;
+    }
+
+    private static void appendHeader(StringBuilder out, String name, String help, String type)
+    {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void appendCounter(StringBuilder out, String name, String help, long value)
+    {
+        appendHeader(out, name, help, "counter");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void appendGauge(StringBuilder out, String name, String help, Object value)
+    {
+        appendHeader(out, name, help, "gauge");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+}
@@ -0,0 +1,212 @@
+package com.glitchcog.fontificator.sprite;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.glitchcog.fontificator.config.ConfigEmoji;
+import com.glitchcog.fontificator.emoji.LazyLoadEmoji;
+
+/**
+ * Contains the emoji images already scaled to the size they're drawn at, so drawing an emoji is a plain copy rather than
+ * a rescale of its full size image every paint, along with the size each emoji is drawn at. Everything is thrown out
+ * whenever the emoji scale settings, the scaled line height or the rendering hints change.
+ *
+ * @author Matt Yanos
+ */
+public class EmojiScaleCache
+{
+    /**
+     * The most scaled images to keep, counting each frame of an animated emoji
+     */
+    private static final int MAX_SCALED_IMAGES = 2048;
+
+    /**
+     * The on screen size of each emoji, along with the size of its image it was worked out from
+     */
+    private final Map<LazyLoadEmoji, int[]> dimensions;
+
+    /**
+     * Scaled copies keyed off of the image they were scaled from, least recently drawn first
+     */
+    private final Map<Image, BufferedImage> scaled;
+
+    private int emojiScale;
+
+    private int badgeScale;
+
+    private boolean emojiScaleToLine;
+
+    private boolean badgeScaleToLine;
+
+    private int lineHeightScaled;
+
+    private Object interpolation;
+
+    private Object rendering;
+
+    public EmojiScaleCache()
+    {
+        dimensions = new HashMap<LazyLoadEmoji, int[]>();
+        scaled = new LinkedHashMap<Image, BufferedImage>(64, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Image, BufferedImage> eldest)
+            {
+                return size() > MAX_SCALED_IMAGES;
+            }
+        };
+        lineHeightScaled = -1;
+    }
+
+    /**
+     * Throw everything out if any setting the sizes depend on has changed since the last call
+     *
+     * @param emojiConfig
+     * @param lineHeight
+     *            The scaled line height
+     */
+    public synchronized void checkScale(ConfigEmoji emojiConfig, int lineHeight)
+    {
+        if (emojiScale != emojiConfig.getEmojiScale() || badgeScale != emojiConfig.getBadgeScale() || emojiScaleToLine != emojiConfig.isEmojiScaleToLine() || badgeScaleToLine != emojiConfig.isBadgeScaleToLine() || lineHeightScaled != lineHeight)
+        {
+            emojiScale = emojiConfig.getEmojiScale();
+            badgeScale = emojiConfig.getBadgeScale();
+            emojiScaleToLine = emojiConfig.isEmojiScaleToLine();
+            badgeScaleToLine = emojiConfig.isBadgeScaleToLine();
+            lineHeightScaled = lineHeight;
+            clear();
+        }
+    }
+
+    /**
+     * Get the size an emoji is drawn at, if it's been worked out already for the current size of its image
+     *
+     * @param emoji
+     * @return width and height, or null if it needs to be worked out
+     */
+    public synchronized int[] getDimensions(LazyLoadEmoji emoji)
+    {
+        int[] dim = dimensions.get(emoji);
+        if (dim != null && dim[2] == emoji.getWidth() && dim[3] == emoji.getHeight())
+        {
+            return dim;
+        }
+        return null;
+    }
+
+    /**
+     * Remember the size an emoji is drawn at
+     *
+     * @param emoji
+     * @param width
+     * @param height
+     * @return width and height
+     */
+    public synchronized int[] putDimensions(LazyLoadEmoji emoji, int width, int height)
+    {
+        int[] dim = new int[] { width, height, emoji.getWidth(), emoji.getHeight() };
+        dimensions.put(emoji, dim);
+        return dim;
+    }
+
+    /**
+     * Get an image scaled to the size it's drawn at, scaling it now if it hasn't been already
+     *
+     * @param g2d
+     *            The graphics it'll be drawn with, whose rendering hints are used to scale it
+     * @param image
+     * @param width
+     * @param height
+     * @return scaled image, or the image itself if it's already that size or can't be scaled yet
+     */
+    public synchronized Image getScaledImage(Graphics2D g2d, Image image, int width, int height)
+    {
+        final int imageWidth = image.getWidth(null);
+        final int imageHeight = image.getHeight(null);
+        if (width <= 0 || height <= 0 || imageWidth <= 0 || imageHeight <= 0 || (width == imageWidth && height == imageHeight))
+        {
+            return image;
+        }
+
+        final Object drawInterpolation = g2d.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        final Object drawRendering = g2d.getRenderingHint(RenderingHints.KEY_RENDERING);
+        if (!equal(interpolation, drawInterpolation) || !equal(rendering, drawRendering))
+        {
+            interpolation = drawInterpolation;
+            rendering = drawRendering;
+            scaled.clear();
+        }
+
+        BufferedImage scaledImage = scaled.get(image);
+        if (scaledImage == null || scaledImage.getWidth() != width || scaledImage.getHeight() != height)
+        {
+            scaledImage = createImage(width, height);
+            Graphics2D sg = scaledImage.createGraphics();
+            try
+            {
+                // Scaled the same way drawing it at this size would have scaled it
+                if (drawInterpolation != null)
+                {
+                    sg.setRenderingHint(RenderingHints.KEY_INTERPOLATION, drawInterpolation);
+                }
+                if (drawRendering != null)
+                {
+                    sg.setRenderingHint(RenderingHints.KEY_RENDERING, drawRendering);
+                }
+                sg.drawImage(image, 0, 0, width, height, null);
+            }
+            finally
+            {
+                sg.dispose();
+            }
+            scaled.put(image, scaledImage);
+        }
+        return scaledImage;
+    }
+
+    public synchronized void clear()
+    {
+        dimensions.clear();
+        scaled.clear();
+    }
+
+    /**
+     * Get the number of scaled images cached
+     *
+     * @return size
+     */
+    public synchronized int getSize()
+    {
+        return scaled.size();
+    }
+
+    /**
+     * Make an image in the format the screen draws fastest, or a plain translucent image if there's no screen
+     *
+     * @param width
+     * @param height
+     * @return image
+     */
+    private static BufferedImage createImage(int width, int height)
+    {
+        if (!GraphicsEnvironment.isHeadless())
+        {
+            return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration().createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        }
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+    }
+
+    private static boolean equal(Object a, Object b)
+    {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,162 @@
+package com.glitchcog.fontificator.sprite;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Utility class for going over every pixel of an image as a plain pass over the array behind it, rather than a call to
+ * getRGB and setRGB for each pixel that goes through the color model every time. Big images are split into stripes of
+ * rows that are done in parallel.
+ *
+ * @author Matt Yanos
+ */
+public class RasterUtil
+{
+    private static final Logger logger = Logger.getLogger(RasterUtil.class);
+
+    /**
+     * Images with at least this many pixels are done a stripe of rows per processor at a time
+     */
+    private static final int PARALLEL_PIXEL_COUNT = 256 * 1024;
+
+    /**
+     * Decides which pixels to replace
+     */
+    public interface PixelMatcher
+    {
+        /**
+         * @param argb
+         *            The pixel, in the same non-premultiplied ARGB form getRGB returns
+         * @return whether to replace the pixel
+         */
+        boolean matches(int argb);
+    }
+
+    /**
+     * Replace every pixel of an image that matches
+     *
+     * @param image
+     * @param matcher
+     * @param replacement
+     *            The ARGB value to replace matching pixels with
+     */
+    public static void replacePixels(final BufferedImage image, final PixelMatcher matcher, final int replacement)
+    {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int stripeCount = width * height < PARALLEL_PIXEL_COUNT ? 1 : Math.min(height, Runtime.getRuntime().availableProcessors());
+        if (stripeCount <= 1)
+        {
+            replaceRows(image, matcher, replacement, 0, height);
+            return;
+        }
+
+        List<Callable<Void>> stripes = new ArrayList<Callable<Void>>(stripeCount);
+        for (int s = 0; s < stripeCount; s++)
+        {
+            final int rowStart = height * s / stripeCount;
+            final int rowEnd = height * (s + 1) / stripeCount;
+            stripes.add(new Callable<Void>()
+            {
+                @Override
+                public Void call()
+                {
+                    replaceRows(image, matcher, replacement, rowStart, rowEnd);
+                    return null;
+                }
+            });
+        }
+
+        try
+        {
+            for (Future<Void> stripe : ForkJoinPool.commonPool().invokeAll(stripes))
+            {
+                stripe.get();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            logger.debug("Interrupted replacing pixels", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new RuntimeException("Unable to replace pixels", e.getCause());
+        }
+    }
+
+    private static void replaceRows(BufferedImage image, PixelMatcher matcher, int replacement, int rowStart, int rowEnd)
+    {
+        final int width = image.getWidth();
+        final WritableRaster raster = image.getRaster();
+        final DataBuffer buffer = raster.getDataBuffer();
+        final boolean unshifted = raster.getParent() == null && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0 && buffer.getNumBanks() == 1 && buffer.getOffset() == 0;
+
+        if (unshifted && buffer instanceof DataBufferInt && (image.getType() == BufferedImage.TYPE_INT_ARGB || image.getType() == BufferedImage.TYPE_INT_RGB))
+        {
+            final int[] data = ((DataBufferInt) buffer).getData();
+            final int opaque = image.getType() == BufferedImage.TYPE_INT_RGB ? 0xFF000000 : 0;
+            final int end = rowEnd * width;
+            for (int i = rowStart * width; i < end; i++)
+            {
+                if (matcher.matches(data[i] | opaque))
+                {
+                    data[i] = replacement;
+                }
+            }
+        }
+        else if (unshifted && buffer instanceof DataBufferByte && image.getType() == BufferedImage.TYPE_4BYTE_ABGR)
+        {
+            final byte[] data = ((DataBufferByte) buffer).getData();
+            final byte a = (byte) (replacement >>> 24);
+            final byte r = (byte) (replacement >>> 16);
+            final byte g = (byte) (replacement >>> 8);
+            final byte b = (byte) replacement;
+            final int end = rowEnd * width * 4;
+            for (int i = rowStart * width * 4; i < end; i += 4)
+            {
+                final int argb = (data[i] & 0xFF) << 24 | (data[i + 3] & 0xFF) << 16 | (data[i + 2] & 0xFF) << 8 | (data[i + 1] & 0xFF);
+                if (matcher.matches(argb))
+                {
+                    data[i] = a;
+                    data[i + 1] = b;
+                    data[i + 2] = g;
+                    data[i + 3] = r;
+                }
+            }
+        }
+        else
+        {
+            // Any other layout goes through the color model, but still a whole row at a time
+            int[] row = new int[width];
+            for (int y = rowStart; y < rowEnd; y++)
+            {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                boolean changed = false;
+                for (int x = 0; x < width; x++)
+                {
+                    if (matcher.matches(row[x]))
+                    {
+                        row[x] = replacement;
+                        changed = true;
+                    }
+                }
+                if (changed)
+                {
+                    image.setRGB(0, y, width, 1, row, 0, width);
+                }
+            }
+        }
+    }
+}
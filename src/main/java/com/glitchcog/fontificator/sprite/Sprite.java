@@ -34,6 +34,11 @@ public class Sprite
 
     private Map<Color, BufferedImage> coloredImgs;
 
+    /**
+     * The number of tinted copies in coloredImgs, kept separately so it can be read off of the painting thread
+     */
+    private volatile int colorCacheSize;
+
     /**
      * The number of frames that make up the width of the image grid
      */
@@ -268,10 +273,21 @@ public class Sprite
         coloredImg = swapOp.filter(img, coloredImg);
 
         coloredImgs.put(drawColor, coloredImg);
+        colorCacheSize = coloredImgs.size();
 
         return coloredImg;
     }
 
+    /**
+     * Get the number of tinted copies of the sprite image that are cached
+     * 
+     * @return colorCacheSize
+     */
+    public int getColorCacheSize()
+    {
+        return colorCacheSize;
+    }
+
     public void draw(Graphics2D g2d, int x, int y, int frame, float scale, Color color)
     {
         int sourceX = (frame % gridWidth) * pixelWidth;
@@ -31,7 +31,7 @@ public class SpriteCache
         cache.put(null, new Sprite()); // An empty sprite
     }
 
-    public Sprite getSprite(ConfigFont fontConfig)
+    public synchronized Sprite getSprite(ConfigFont fontConfig)
     {
         if (!cache.containsKey(fontConfig.getFontFilename()))
         {
@@ -61,4 +61,19 @@ public class SpriteCache
         logger.error("SpriteCache returning empty default Sprite");
         return cache.get(null);
     }
+
+    /**
+     * Get the number of tinted images cached across all the sprites in this cache
+     * 
+     * @return colorCacheSize
+     */
+    public synchronized int getColorCacheSize()
+    {
+        int size = 0;
+        for (Sprite sprite : cache.values())
+        {
+            size += sprite.getColorCacheSize();
+        }
+        return size;
+    }
 }
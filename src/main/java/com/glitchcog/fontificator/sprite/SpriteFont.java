@@ -19,6 +19,8 @@ import com.glitchcog.fontificator.config.ConfigEmoji;
 import com.glitchcog.fontificator.config.ConfigFont;
 import com.glitchcog.fontificator.config.ConfigMessage;
 import com.glitchcog.fontificator.config.FontType;
+import com.glitchcog.fontificator.emoji.AnimatedEmoji;
+import com.glitchcog.fontificator.emoji.EmojiAnimationObserver;
 import com.glitchcog.fontificator.emoji.EmojiManager;
 import com.glitchcog.fontificator.emoji.LazyLoadEmoji;
 
@@ -40,6 +42,11 @@ public class SpriteFont
 
     protected SpriteCache sprites;
 
+    /**
+     * The emoji images scaled to the size they're drawn at, and the sizes themselves
+     */
+    protected EmojiScaleCache emojiScales;
+
     protected Map<Integer, Rectangle> characterBounds;
 
     /**
@@ -65,6 +72,7 @@ public class SpriteFont
         this.config = config;
         this.characterBounds = new HashMap<Integer, Rectangle>();
         this.sprites = new SpriteCache(config);
+        this.emojiScales = new EmojiScaleCache();
     }
 
     /**
@@ -79,6 +87,16 @@ public class SpriteFont
         LazyLoadEmoji emoji = c.getEmoji();
         Image img = emoji.getImage(emojiConfig.isAnimationEnabled());
 
+        emojiScales.checkScale(emojiConfig, getLineHeightScaled());
+        if (img != null)
+        {
+            int[] cached = emojiScales.getDimensions(emoji);
+            if (cached != null)
+            {
+                return cached;
+            }
+        }
+
         int iw;
         int ih;
 
@@ -126,7 +144,8 @@ public class SpriteFont
             h = eScale * ih;
         }
 
-        return new int[] { (int) w, (int) h };
+        // Only remembered once the image is loaded, since until then the size is a placeholder
+        return img == null ? new int[] { (int) w, (int) h } : emojiScales.putDimensions(emoji, (int) w, (int) h);
     }
 
     /**
@@ -336,6 +355,26 @@ public class SpriteFont
         calculateCharacterDimensions();
     }
 
+    /**
+     * Get the number of tinted copies of the font sprites that are cached
+     * 
+     * @return colorCacheSize
+     */
+    public int getColorCacheSize()
+    {
+        return sprites.getColorCacheSize();
+    }
+
+    /**
+     * Get the number of emoji images cached already scaled to the size they're drawn at
+     * 
+     * @return scaledEmojiCacheSize
+     */
+    public int getScaledEmojiCacheSize()
+    {
+        return emojiScales.getSize();
+    }
+
     /**
      * Get the distance in pixels from the top of one line of text to the top of the next line of text, scaled
      * 
@@ -635,10 +674,11 @@ public class SpriteFont
             // yOffset is to center the emoji on the line
             int yOffset = (int) (sprites.getSprite(config).getSpriteDrawHeight(config.getFontScale()) / 2 - config.getBaselineOffset() * config.getFontScale()) - (sck.isBadge() ? emojiConfig.getBadgeHeightOffset() : 0);
             drawY += yOffset - eDim[1] / 2;
-            Image eImage = sck.getEmoji().getImage(emojiConfig.isAnimationEnabled());
+            Image eImage = sck.getEmoji().getImage(emojiConfig.isAnimationEnabled(), emojiObserver);
             if (eImage == null)
             {
-                // If the image is null, then it's not loaded, so do the backup display strategy
+                // If the image is null, then it's not loaded yet, so do the backup display strategy until the observer is
+                // told it has arrived
                 g2d.setColor(color);
                 switch (emojiConfig.getDisplayStrategy())
                 {
@@ -665,8 +705,15 @@ public class SpriteFont
                     g2d.setColor(sck.getEmojiBgColor());
                     g2d.fillRect(drawX, drawY, eDim[0] + 1, eDim[1] + 1);
                 }
-                // Draw the emoji image
-                g2d.drawImage(eImage, drawX, drawY, eDim[0], eDim[1], emojiObserver);
+                // Draw the emoji image, already scaled to size
+                g2d.drawImage(emojiScales.getScaledImage(g2d, eImage, eDim[0], eDim[1]), drawX, drawY, eDim[0], eDim[1], emojiObserver);
+
+                // Let whatever's drawing know where the animation is, so it can be repainted when its frame changes
+                AnimatedEmoji animation = emojiConfig.isAnimationEnabled() ? sck.getEmoji().getAnimation() : null;
+                if (animation != null && emojiObserver instanceof EmojiAnimationObserver)
+                {
+                    ((EmojiAnimationObserver) emojiObserver).animationDrawn(animation, g2d.hitClip(drawX, drawY, eDim[0] + 1, eDim[1] + 1), drawX, drawY, eDim[0] + 1, eDim[1] + 1);
+                }
             }
         }
     }